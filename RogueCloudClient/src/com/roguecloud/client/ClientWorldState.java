@@ -16,6 +16,7 @@
 
 package com.roguecloud.client;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -47,8 +48,10 @@ import com.roguecloud.items.IObject;
 import com.roguecloud.items.IObject.ObjectType;
 import com.roguecloud.items.OwnableObject;
 import com.roguecloud.items.Weapon;
+import com.roguecloud.json.BinaryFrameUpdateCodec;
 import com.roguecloud.json.JsonActionMessageResponse;
 import com.roguecloud.json.JsonArmour;
+import com.roguecloud.json.JsonCreatureDelta;
 import com.roguecloud.json.JsonDoorProperty;
 import com.roguecloud.json.JsonDrinkableItem;
 import com.roguecloud.json.JsonFrameUpdate;
@@ -74,7 +77,7 @@ import com.roguecloud.map.IMap;
 import com.roguecloud.map.ITerrain;
 import com.roguecloud.map.ImmutableImpassableTerrain;
 import com.roguecloud.map.ImmutablePassableTerrain;
-import com.roguecloud.map.RCCloneMap;
+import com.roguecloud.map.RCChunkedMap;
 import com.roguecloud.map.Tile;
 import com.roguecloud.map.TileType;
 import com.roguecloud.utils.LogContext;
@@ -115,7 +118,9 @@ public class ClientWorldState {
 	/** The id of the next frame that we _expect_ to received from the server. */
 	private long nextFrame_synch_lock = 1;
 	
-	private RCCloneMap map_synch_lock = null;
+	/** The map that frame updates are applied to; the AI is given a read-only clone of it (see RCChunkedMap.cloneForRead()), 
+	 * which only the tiles (and chunks) that later frames change are copied away from. */
+	private RCChunkedMap map_synch_lock = null;
 	
 	/** Players that our character has seen */
 	private final HashMap<Long /* player id*/, PlayerCreature> playerDb_sync_lock = new HashMap<>();
@@ -123,6 +128,9 @@ public class ClientWorldState {
 	/** Monsters that our character has seen*/
 	private final HashMap<Long /* creature id*/, Monster> monsterDb_synch_lock = new HashMap<>();
 	
+	/** The creatures in the most recently processed frame, as last sent (or updated by a JsonCreatureDelta) by the server */
+	private final HashMap<Long /* creature id*/, JsonVisibleCreature> visibleCreatures_synch_lock = new HashMap<>();
+	
 	/** Objects that our character has seen*/
 	private final HashMap<Long /* armour/weapon/drinkable id*/, IObject> objectDb_synch_lock = new HashMap<>();
 	
@@ -225,6 +233,22 @@ public class ClientWorldState {
 		});
 	}
 	
+	/** Decode a frame update that was sent using BinaryFrameUpdateCodec, then apply it as receiveFrameUpdate(JsonFrameUpdate) */
+	public void receiveFrameUpdate(byte[] binaryFrameUpdate) {
+		
+		if(disposed) { return; }
+		
+		JsonFrameUpdate update;
+		try {
+			update = BinaryFrameUpdateCodec.decode(binaryFrameUpdate);
+		} catch (IOException e) {
+			log.severe("Unable to decode binary frame update", e, lc);
+			return;
+		}
+		
+		receiveFrameUpdate(update);
+	}
+	
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public void receiveFrameUpdate(JsonFrameUpdate update) {
 		
@@ -232,7 +256,7 @@ public class ClientWorldState {
 		
 //		log.info("Processing frame: "+update.getFrame()+", game ticks: "+update.getGameTicks(), lc);
 		
-		RCCloneMap mapToCallAIWith = null;
+		IMap mapToCallAIWith = null;
 	
 		JsonWorldState jws;
 		synchronized (lock) {
@@ -253,18 +277,23 @@ public class ClientWorldState {
 			jws = update.getWorldState();
 						
 			if(map_synch_lock == null) {
-				map_synch_lock = new RCCloneMap(jws.getWorldWidth(), jws.getWorldHeight());
+				map_synch_lock = new RCChunkedMap(jws.getWorldWidth(), jws.getWorldHeight());
 			}
 			
-			RCCloneMap localMap = map_synch_lock.cloneMap();
+			RCChunkedMap localMap = map_synch_lock;
 			
-			// Clear the localMap's view tiles of objects and monsters (we will add them back in the next section)
+			// Clear the localMap's view tiles of objects and monsters (we will add them back in the next section). Only
+			// tiles that have contents are written to, so empty tiles remain shared with the map the AI was last given.
 			for(int x = jws.getClientViewPosX(); x < jws.getClientViewPosX()+jws.getClientViewWidth(); x++) {
 				for(int y = jws.getClientViewPosY(); y < jws.getClientViewPosY()+jws.getClientViewHeight(); y++) {
 					
 					Tile t = localMap.getTile(x, y);
 					if(t == null) { continue; }
 					
+					if(t.getCreatures().isEmpty() && t.getGroundObjects().isEmpty() && t.getTileProperties().isEmpty()) { continue; }
+					
+					t = localMap.getTileForWriteUnchecked(x, y);
+					t.setLastTickUpdated(update.getGameTicks());
 					t.getCreaturesForModification().clear();
 					t.getGroundObjectForModification().clear();
 					t.getTilePropertiesForModification().clear();
@@ -324,7 +353,32 @@ public class ClientWorldState {
 				objectDb_synch_lock.put(di.getId(), di);
 			}
 			
+			// Bring our copy of the visible creatures up to date: either the frame contains every visible creature, or only 
+			// the creatures that are new since the previous frame, plus the changes to (and removals of) the others.
+			if(!Boolean.TRUE.equals(jws.getCreatureDeltas())) {
+				visibleCreatures_synch_lock.clear();
+			}
+			
+			for(Long creatureId : jws.getRemovedCreatureIds()) {
+				visibleCreatures_synch_lock.remove(creatureId);
+			}
+			
+			List<JsonVisibleCreature> updatedCreatures = new ArrayList<>(jws.getVisibleCreatures());
 			for(JsonVisibleCreature jvc : jws.getVisibleCreatures()) {
+				visibleCreatures_synch_lock.put(jvc.getCreatureId(), jvc);
+			}
+			
+			for(JsonCreatureDelta jcd : jws.getChangedCreatures()) {
+				JsonVisibleCreature jvc = visibleCreatures_synch_lock.get(jcd.getCreatureId());
+				if(jvc == null) {
+					log.err("Could not find changed creature id: "+jcd.getCreatureId(), lc);
+					continue;
+				}
+				jcd.applyTo(jvc);
+				updatedCreatures.add(jvc);
+			}
+			
+			for(JsonVisibleCreature jvc : updatedCreatures) {
 				
 				Weapon creatureWeapon = (Weapon) objectDb_synch_lock.get(jvc.getWeaponId());
 				ArmourSet creatureArmourSet = new ArmourSet();
@@ -353,14 +407,6 @@ public class ClientWorldState {
 						playerCreature.internalUpdateFromJson(jvc, creatureArmourSet, creatureWeapon);
 					}
 					
-					
-					Tile t = localMap.getTile(playerCreature.getPosition());
-					if(t != null) {
-						t.setLastTickUpdated(update.getGameTicks());
-						t.getCreaturesForModification().add(playerCreature);
-					}
-					
-					
 				} else {
 					
 					Monster monster = monsterDb_synch_lock.get(jvc.getCreatureId());
@@ -371,26 +417,35 @@ public class ClientWorldState {
 					} else {
 						monster.internalUpdateFromJson(jvc, creatureArmourSet, creatureWeapon);
 					}
-
-					Tile monsterTile = localMap.getTile(monster.getPosition());
-					if(monsterTile == null) {
-						/* ignore */
-					} else {
-						monsterTile.setLastTickUpdated(update.getGameTicks());
-						monsterTile.getCreaturesForModification().add(monster);
-					}
 					
 				}
 				
 			}
 			
+			// Add every visible creature (whether or not it changed in this frame) back to the local map
+			for(JsonVisibleCreature jvc : visibleCreatures_synch_lock.values()) {
+				
+				ICreature creature = jvc.isPlayer() ? playerDb_sync_lock.get(jvc.getCreatureId()) : monsterDb_synch_lock.get(jvc.getCreatureId());
+				if(creature == null) { continue; }
+				
+				Tile t = localMap.getTile(creature.getPosition());
+				if(t != null) {
+					t = localMap.getTileForWriteUnchecked(creature.getPosition());
+					t.setLastTickUpdated(update.getGameTicks());
+					t.getCreaturesForModification().add(creature);
+				}
+			}
+			
 			for(JsonVisibleObject jvo : jws.getVisibleObjects()) {
 				
 				IObject containedObject = objectDb_synch_lock.get(jvo.getContainedObjectId());
 				if(containedObject != null) {
 					GroundObject go = new GroundObject(jvo.getObjectId(), containedObject, jvo.getPosition().toPosition());
 					Tile t = localMap.getTile(go.getPosition());
-					t.getGroundObjectForModification().add(go);
+					if(t != null) {
+						t = localMap.getTileForWriteUnchecked(go.getPosition());
+						t.getGroundObjectForModification().add(go);
+					}
 				} else {
 					log.severe("Unable to locate contained object in database: contained-object-id: "+jvo.getContainedObjectId(), lc);
 				}
@@ -408,8 +463,11 @@ public class ClientWorldState {
 						JsonDoorProperty jdp = new JsonDoorProperty(m);
 						
 						Tile t = localMap.getTile(jdp.getPosition().getX(), jdp.getPosition().getY());
-						t.setLastTickUpdated(update.getGameTicks());
-						t.getTilePropertiesForModification().add(new DoorTileProperty(jdp));
+						if(t != null) {
+							t = localMap.getTileForWriteUnchecked(jdp.getPosition().getX(), jdp.getPosition().getY());
+							t.setLastTickUpdated(update.getGameTicks());
+							t.getTilePropertiesForModification().add(new DoorTileProperty(jdp));
+						}
 					}
 				}
 			}
@@ -546,16 +604,14 @@ public class ClientWorldState {
 			
 			nextFrame_synch_lock++;
 			
-			map_synch_lock = localMap;
-			
 			// If the next frame is already in the buffer, then process it now
 			JsonFrameUpdate nextFrame = unprocessedFrames_synch_lock.get(nextFrame_synch_lock);
 			if(nextFrame != null) {
 				unprocessedFrames_synch_lock.remove(nextFrame_synch_lock);
 				receiveFrameUpdate(nextFrame);
 			} else {
-				// Only call the AI if there are no more frames to process
-				mapToCallAIWith = map_synch_lock;
+				// Only call the AI if there are no more frames to process; the clone is O(1), and is not affected by later frames.
+				mapToCallAIWith = map_synch_lock.cloneForRead();
 			}
 			
 		} // end synchronized on lock
@@ -703,6 +759,7 @@ public class ClientWorldState {
 			
 			playerDb_sync_lock.clear();
 			monsterDb_synch_lock.clear();
+			visibleCreatures_synch_lock.clear();
 			objectDb_synch_lock.clear();
 			event_log_synch_lock.dispose();
 		}
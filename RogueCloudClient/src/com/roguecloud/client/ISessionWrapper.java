@@ -42,6 +42,9 @@ public interface ISessionWrapper  {
 	/** This method is called when a message is received on the WebSocket wrapped by this class */
 	void receiveJson(String str, Session session);
 
+	/** This method is called when a binary frame update (see BinaryFrameUpdateCodec) is received on the WebSocket wrapped by this class */
+	void receiveBinaryFrameUpdate(byte[] binaryFrameUpdate, Session session);
+
 	/** Close the WebSocket and dispose of any other class resources*/
 	void dispose();
 
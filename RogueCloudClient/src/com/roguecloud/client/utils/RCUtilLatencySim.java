@@ -89,6 +89,19 @@ public class RCUtilLatencySim {
 		}
 	}
 	
+	/** Add a binary frame update, to be passed to ISessionWrapper.receiveBinaryFrameUpdate(...) after the delay. */
+	public void addMessage(ISessionWrapper wrapper, byte[] binaryFrameUpdate, Session session) {
+		if(session == null || wrapper == null) { throw new IllegalArgumentException(); }
+		if(disposed) { return; }
+		
+		long pushTime = System.nanoTime()+(long)(Math.random()*(RCRuntime.MAX_LATENCY_SIM_IN_NANOS-RCRuntime.MIN_LATENCY_SIM_IN_NANOS))+RCRuntime.MIN_LATENCY_SIM_IN_NANOS;
+		
+		synchronized(queue_synch) {
+			queue_synch.add(new Entry(binaryFrameUpdate, wrapper, session, pushTime));
+			queue_synch.notify();
+		}
+	}
+	
 	public void dispose() {
 		synchronized(queue_synch) {
 			queue_synch.clear();
@@ -142,6 +155,8 @@ public class RCUtilLatencySim {
 						// If addMessage was called with an object that implements ILatencySimReceiver, then call that interface
 						if(entry.getLatencySimReceiver() != null) {
 							entry.getLatencySimReceiver().addMessageToSend(entry.getStr());
+						} else if(entry.getBinaryFrameUpdate() != null) {
+							entry.getWrapper().receiveBinaryFrameUpdate(entry.getBinaryFrameUpdate(), entry.getSession());
 						} else {
 							// ... otherwise, just call receiveJson on the session wrapper.
 							entry.getWrapper().receiveJson(entry.getStr(), entry.getSession());	
@@ -177,6 +192,7 @@ public class RCUtilLatencySim {
 	 * One (and only one) of the following must be true:
 	 * A) wrapper/session/str are not null
 	 * B) lsr/str are not null
+	 * C) wrapper/session/binaryFrameUpdate are not null
 	 * 
 	 * These correspond to addMessage(...) signatures above.
 	 * 
@@ -185,6 +201,9 @@ public class RCUtilLatencySim {
 
 		/** JSON message received by the client endpoint, which the RCUtilLatencySim class will send after a delay */
 		private final String str;
+		
+		/** Binary frame update received by the client endpoint, which is sent in place of 'str' */
+		private final byte[] binaryFrameUpdate;
 
 		/** An absolute time in nanos; the 'str' message should be sent after System.nanoTime() > pushTimeInNanos. */
 		private final long pushTimeInNanos;
@@ -196,6 +215,7 @@ public class RCUtilLatencySim {
 		
 		private Entry(String str, ILatencySimReceiver lsr, long addTimeInNanos) {
 			this.str = str;
+			this.binaryFrameUpdate = null;
 			this.lsr = lsr;
 			this.wrapper = null;
 			this.session = null;
@@ -204,6 +224,16 @@ public class RCUtilLatencySim {
 		
 		private Entry(String str, ISessionWrapper wrapper, Session session, long addTimeInNanos) {
 			this.str = str;
+			this.binaryFrameUpdate = null;
+			this.wrapper = wrapper;
+			this.session = session;
+			this.pushTimeInNanos = addTimeInNanos;
+			this.lsr = null;
+		}
+		
+		private Entry(byte[] binaryFrameUpdate, ISessionWrapper wrapper, Session session, long addTimeInNanos) {
+			this.str = null;
+			this.binaryFrameUpdate = binaryFrameUpdate;
 			this.wrapper = wrapper;
 			this.session = session;
 			this.pushTimeInNanos = addTimeInNanos;
@@ -214,6 +244,10 @@ public class RCUtilLatencySim {
 			return str;
 		}
 		
+		public byte[] getBinaryFrameUpdate() {
+			return binaryFrameUpdate;
+		}
+		
 		public long getPushTimeInNanos() {
 			return pushTimeInNanos;
 		}
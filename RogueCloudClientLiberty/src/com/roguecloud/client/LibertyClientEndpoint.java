@@ -17,6 +17,7 @@
 package com.roguecloud.client;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import javax.websocket.CloseReason;
 import javax.websocket.Endpoint;
@@ -30,8 +31,11 @@ import com.roguecloud.client.ClientState;
 import com.roguecloud.client.ISessionWrapper;
 import com.roguecloud.client.utils.ClientUtil;
 import com.roguecloud.client.utils.RCUtilLatencySim;
+import com.roguecloud.json.BinaryFrameUpdateCodec;
+import com.roguecloud.utils.CompressionContext;
 import com.roguecloud.utils.CompressionUtils;
 import com.roguecloud.utils.Logger;
+import com.roguecloud.utils.MessageEnvelope;
 import com.roguecloud.utils.ResourceLifecycleUtil;
 
 /** 
@@ -45,6 +49,9 @@ public class LibertyClientEndpoint extends Endpoint {
 	
 	private final static Logger log = Logger.getInstance();
 
+	/** Session user property key of the session's CompressionContext */
+	private static final String COMPRESSION_CONTEXT = CompressionContext.class.getName();
+
 	private final ClientState clientState;
 	
 	private final LibertySessionWrapper sessionWrapper;
@@ -74,6 +81,7 @@ public class LibertyClientEndpoint extends Endpoint {
 				clientState.getLogContext());
 		
 		session.setMaxBinaryMessageBufferSize(128 * 1024);
+		session.getUserProperties().put(COMPRESSION_CONTEXT, new CompressionContext());
 		session.addMessageHandler(new BinaryMessageHandler(this, session, sessionWrapper));
 		
 //		session.addMessageHandler(new StringMessageHandler(this, session));
@@ -94,6 +102,11 @@ public class LibertyClientEndpoint extends Endpoint {
 		sessionWrapper.onDisconnect(session);
 
 		ResourceLifecycleUtil.getInstance().removeSession(ClientUtil.convertSessionToManagedResource(session));
+		
+		CompressionContext context = getCompressionContext(session);
+		if(context != null) {
+			context.dispose();
+		}
 
 	}
 
@@ -108,10 +121,18 @@ public class LibertyClientEndpoint extends Endpoint {
 			latencySim.dispose();
 		}
 	}
+	
+	/** The CompressionContext of a session opened by this endpoint: used to decompress streamed messages from the server, 
+	 * and (once the server has confirmed that it supports them) to compress streamed messages to the server. */
+	static CompressionContext getCompressionContext(Session session) {
+		return (CompressionContext) session.getUserProperties().get(COMPRESSION_CONTEXT);
+	}
 
 	/** Messages to/from the server are sent as Deflate-compressed whole binary messages; the use of compression
 	 * significantly reduces the overall side of the JSON payload. Once the message is decompressed, we pass
-	 * it to next step in the process. */
+	 * it to next step in the process: frame updates in the binary encoding (see BinaryFrameUpdateCodec) are 
+	 * passed directly to the session wrapper, and all other messages are passed as JSON. A message may also contain 
+	 * several messages in a MessageEnvelope, each of which is handled in the same way. */
 	private static class BinaryMessageHandler implements MessageHandler.Whole<byte[]> {
 		final LibertyClientEndpoint parent;
 		final Session session;
@@ -125,7 +146,36 @@ public class LibertyClientEndpoint extends Endpoint {
 		
 		@Override
 		public void onMessage(byte[] b) {
-			String str = CompressionUtils.decompressToString(b);
+			byte[] decompressed;
+			CompressionContext context = getCompressionContext(session);
+			if(context != null) {
+				decompressed = context.decompress(b);
+			} else {
+				decompressed = CompressionUtils.decompressToBytes(b);
+			}
+			
+			if(MessageEnvelope.isEnvelope(decompressed)) {
+				// Several messages that were queued by the server at the same time; handle each in order
+				for(byte[] message : MessageEnvelope.decode(decompressed)) {
+					receiveMessage(message);
+				}
+			} else {
+				receiveMessage(decompressed);
+			}
+		}
+		
+		private void receiveMessage(byte[] message) {
+			
+			if(BinaryFrameUpdateCodec.isBinaryFrameUpdate(message)) {
+				if(parent.latencySim != null) {
+					parent.latencySim.addMessage(sessionWrapper, message, session);
+				} else {
+					parent.sessionWrapper.receiveBinaryFrameUpdate(message, session);
+				}
+				return;
+			}
+			
+			String str = new String(message, StandardCharsets.UTF_8);
 			
 			if(NG.ENABLED) { NG.log(RCRuntime.GAME_TICKS.get(), "received in LibertyClientEndpoint: "+str); }
 			if(parent.latencySim != null) {
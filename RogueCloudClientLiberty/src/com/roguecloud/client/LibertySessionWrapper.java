@@ -19,11 +19,12 @@ package com.roguecloud.client;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
 
@@ -42,10 +43,13 @@ import com.roguecloud.client.ClientState;
 import com.roguecloud.client.ISessionWrapper;
 import com.roguecloud.client.utils.RCUtilLatencySim;
 import com.roguecloud.client.utils.RCUtilLatencySim.ILatencySimReceiver;
+import com.roguecloud.json.BinaryFrameUpdateCodec;
+import com.roguecloud.json.JsonAbstractTypedMessage;
 import com.roguecloud.json.JsonClientConnect;
 import com.roguecloud.json.JsonClientConnectResponse;
-import com.roguecloud.json.JsonMessageMap;
+import com.roguecloud.json.JsonMessageDecoder;
 import com.roguecloud.json.JsonClientConnectResponse.ConnectResult;
+import com.roguecloud.utils.CompressionContext;
 import com.roguecloud.utils.CompressionUtils;
 import com.roguecloud.utils.Logger;
 
@@ -96,6 +100,10 @@ public class LibertySessionWrapper implements ISessionWrapper {
 	private Session session_synch_lock;
 	private Basic basicRemote_synch_lock;
 	
+	/** Non-null once the server has confirmed that it supports streaming compression for the current session: the 
+	 * session's CompressionContext, which is then used to compress all messages that we send. */
+	private CompressionContext outboundCompression_synch_lock;
+	
 	private boolean disposed = false;
 	
 	private String url_synch_lock  = null;
@@ -177,6 +185,24 @@ public class LibertySessionWrapper implements ISessionWrapper {
 		ccj.setLastActionResponseReceived(parent.getNextSynchronousMessageId()-1);
 		
 		ccj.setRoundToEnter(parent.getCurrentRound());
+		
+		if(RCRuntime.ENABLE_BINARY_FRAME_UPDATES) {
+			ccj.setFrameUpdateEncodings(Arrays.asList(BinaryFrameUpdateCodec.ENCODING_NAME));
+		}
+		
+		if(RCRuntime.ENABLE_STREAMING_COMPRESSION && RCRuntime.ENABLE_DEFLATE_COMPRESSION) {
+			ccj.setStreamingCompression(true);
+		}
+		
+		if(RCRuntime.ENABLE_MESSAGE_BATCHING) {
+			// Received envelopes are split by LibertyClientEndpoint
+			ccj.setMessageBatching(true);
+		}
+		
+		if(RCRuntime.ENABLE_CREATURE_DELTAS) {
+			// Applied by ClientWorldState
+			ccj.setCreatureDeltas(true);
+		}
 				
 		synchronized (lock) {
 			
@@ -193,6 +219,7 @@ public class LibertySessionWrapper implements ISessionWrapper {
 				
 				session_synch_lock = session;
 				basicRemote_synch_lock = session.getBasicRemote();
+				outboundCompression_synch_lock = null;
 				basicRemote_synch_lock.sendBinary(CompressionUtils.compressToByteBuffer(connectJsonString));
 								
 //				basicRemote_synch_lock.sendText(om.writeValueAsString(ccj));
@@ -368,6 +395,14 @@ public class LibertySessionWrapper implements ISessionWrapper {
 		
 	}
 	
+	/** Compress a message to be sent on the current session; the caller must hold 'lock'. */
+	private ByteBuffer compress_synch_lock(String str) {
+		if(outboundCompression_synch_lock != null) {
+			return outboundCompression_synch_lock.compress(str);
+		}
+		return CompressionUtils.compressToByteBuffer(str);
+	}
+	
 	// Called by endpoint message handler
 	public void receiveJson(String str, Session session) {
 		
@@ -375,18 +410,22 @@ public class LibertySessionWrapper implements ISessionWrapper {
 			log.interesting("Client received message: "+str, null);
 		}
 		
-		ObjectMapper om = new ObjectMapper();
 		try {
-			String messageType = (String) om.readValue(str, Map.class).get("type");
-			
-			Class<?> c = JsonMessageMap.getMap().get(messageType);
-
-			Object o = om.readValue(str, c);
+			JsonAbstractTypedMessage o = JsonMessageDecoder.getInstance().decode(str);
+			String messageType = o.getType();
 			
-			if(messageType.equals(JsonClientConnectResponse.TYPE)) {
+			if(o instanceof JsonClientConnectResponse) {
 				JsonClientConnectResponse jccr = (JsonClientConnectResponse)o;
 				
 				if(jccr.getConnectResult().equals(ConnectResult.SUCCESS.name())) {
+					log.info("Frame update encoding: "+(jccr.getFrameUpdateEncoding() != null ? jccr.getFrameUpdateEncoding() : "json"), parent.getLogContext());
+					if(Boolean.TRUE.equals(jccr.getStreamingCompression())) {
+						synchronized(lock) {
+							if(session == session_synch_lock) {
+								outboundCompression_synch_lock = LibertyClientEndpoint.getCompressionContext(session);
+							}
+						}
+					}
 					parent.setCurrentRound(jccr.getRoundEntered());
 					changeState(WrapperState.WAITING_FOR_RESEND);
 				} else if(jccr.getConnectResult().equals(ConnectResult.FAIL_ROUND_NOT_STARTED.name())) {
@@ -411,6 +450,21 @@ public class LibertySessionWrapper implements ISessionWrapper {
 		
 	}
 
+	
+	// Called by endpoint message handler
+	public void receiveBinaryFrameUpdate(byte[] binaryFrameUpdate, Session session) {
+		
+		if(Logger.CLIENT_RECEIVED) {
+			log.interesting("Client received binary frame update ("+binaryFrameUpdate.length+")", null);
+		}
+		
+		try {
+			parent.getClientWorldState().receiveFrameUpdate(binaryFrameUpdate);
+		} catch (Exception e) {
+			e.printStackTrace();
+			log.severe("Exception on receive binary frame update", e, null);
+		}
+	}
 
 	@Override
 	public void dispose() {
@@ -538,7 +592,7 @@ public class LibertySessionWrapper implements ISessionWrapper {
 								if(Logger.CLIENT_SENT) { log.interesting("Client sending previous text: "+previousMessage, parent.getLogContext()); }
 								if(NG.ENABLED) { NG.log(RCRuntime.GAME_TICKS.get(), "Sending previous text:" +previousMessage); }
 								try {
-									basicRemote_synch_lock.sendBinary(CompressionUtils.compressToByteBuffer(previousMessage));
+									basicRemote_synch_lock.sendBinary(compress_synch_lock(previousMessage));
 //									basicRemote_synch_lock.sendText(previousMessage);
 								} catch (IOException e) {
 									log.err("Errored occured on writing previous text", e, parent.getLogContext());
@@ -586,7 +640,7 @@ public class LibertySessionWrapper implements ISessionWrapper {
 									if(Logger.CLIENT_SENT) { log.interesting("Client sending text: "+str, parent.getLogContext()); }
 									if(NG.ENABLED) { NG.log(RCRuntime.GAME_TICKS.get(), "Sending current text:" +str); }
 									
-									basicRemote_synch_lock.sendBinary(CompressionUtils.compressToByteBuffer(str));
+									basicRemote_synch_lock.sendBinary(compress_synch_lock(str));
 //									basicRemote_synch_lock.sendText(str);
 								} catch (IOException e) {
 									log.err("Exception occurred on writing text", e, parent.getLogContext());
@@ -18,7 +18,6 @@ package com.roguecloud.client.container;
 
 import java.io.IOException;
 import java.util.Collections;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import javax.json.Json;
@@ -38,6 +37,8 @@ import com.roguecloud.client.LibertyClientInstance;
 import com.roguecloud.client.WorldStateListeners;
 import com.roguecloud.client.ClientWorldState.ClientWorldStateListener;
 import com.roguecloud.client.utils.ClientUtil;
+import com.roguecloud.json.JsonAbstractTypedMessage;
+import com.roguecloud.json.JsonMessageDecoder;
 import com.roguecloud.json.browser.JsonBrowserConnect;
 import com.roguecloud.json.browser.JsonUpdateBrowserUI;
 import com.roguecloud.map.IMap;
@@ -87,12 +88,11 @@ public class LibertyWsBrowserEndpoint {
 	@OnMessage
 	public void handleMessage(String message, Session session) {
 		
-		ObjectMapper om = new ObjectMapper();
 		try {
-			String messageType = (String) om.readValue(message, Map.class).get("type");
+			JsonAbstractTypedMessage o = JsonMessageDecoder.getInstance().decode(message);
 
-			if(messageType.equals(JsonBrowserConnect.TYPE) ) {
-				JsonBrowserConnect jbc = (JsonBrowserConnect)om.readValue(message, JsonBrowserConnect.class);
+			if(o instanceof JsonBrowserConnect) {
+				JsonBrowserConnect jbc = (JsonBrowserConnect)o;
 				
 				LibertyClientBrowserSessionWrapper wrapper = new LibertyClientBrowserSessionWrapper(session); 
 						//LibertyClientBrowserSessions.getInstance().addSession(jbc.getUuid(), session);
@@ -119,7 +119,7 @@ public class LibertyWsBrowserEndpoint {
 				}
 								
 			} else {
-				log.severe("Unrecognized message type: "+messageType+" msg: "+message, null);
+				log.severe("Unrecognized message type: "+o.getType()+" msg: "+message, null);
 				return;
 			}
 			
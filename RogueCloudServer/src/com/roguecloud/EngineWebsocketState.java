@@ -20,9 +20,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import com.roguecloud.creatures.IMutableCreature;
+import com.roguecloud.json.JsonVisibleCreature;
 
 /**
  * Used to support both the browser and agent api clients, including tracking the following data:
@@ -33,6 +35,7 @@ import com.roguecloud.creatures.IMutableCreature;
  * - which message ids we have received from the player
  * - which message ids we have responsed to
  * - which objects a player has seen
+ * - which creatures were sent to the player in the most recent frame, and their state at the time
  *
  */
 public class EngineWebsocketState {
@@ -48,6 +51,9 @@ public class EngineWebsocketState {
 
 	private final HashMap<Long /* object id */, Boolean> objectSeenByPlayer = new HashMap<>();
 
+	/** The creatures sent in the most recent frame, as they were sent; null if the next frame should send every creature in full. */
+	private Map<Long /* creature id */, JsonVisibleCreature> creaturesSentToPlayer = null;
+
 	private final HashMap<Long /* message id */, Boolean> mapReceivedMessageIds = new HashMap<>();
 
 	private final HashMap<Long, /* message id */ String> mapResponseToMessage = new HashMap<>();
@@ -97,6 +103,7 @@ public class EngineWebsocketState {
 	
 	public void clearClientState() {
 		objectSeenByPlayer.clear();
+		creaturesSentToPlayer = null;
 		mapReceivedMessageIds.clear();
 		mapResponseToMessage.clear();
 	}
@@ -113,10 +120,23 @@ public class EngineWebsocketState {
 		objectSeenByPlayer.put(id, true);
 	}
 
+	/** The objects will be described to the player again, the next time they are seen. */
+	public void clearObjectsSeenByPlayer() {
+		objectSeenByPlayer.clear();
+	}
+
 	public boolean isObjectSeenByPlayer(long id) {
 		return objectSeenByPlayer.get(id) != null;
 	}
 
+	public Map<Long, JsonVisibleCreature> getCreaturesSentToPlayer() {
+		return creaturesSentToPlayer;
+	}
+
+	public void setCreaturesSentToPlayer(Map<Long, JsonVisibleCreature> creaturesSentToPlayer) {
+		this.creaturesSentToPlayer = creaturesSentToPlayer;
+	}
+
 	public void putResponseToMessage(long messageId, String response) {
 		mapResponseToMessage.put(messageId, response);
 
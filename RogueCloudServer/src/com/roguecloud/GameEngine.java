@@ -26,16 +26,20 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import javax.json.Json;
+import javax.json.JsonArray;
 import javax.json.JsonBuilderFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.roguecloud.Combat.CombatResult;
 import com.roguecloud.UniqueIdGenerator.IdType;
 import com.roguecloud.WorldGenFromFile.RoomSpawn;
@@ -93,12 +97,14 @@ import com.roguecloud.items.IObject.ObjectType;
 import com.roguecloud.items.OwnableObject;
 import com.roguecloud.items.Weapon;
 import com.roguecloud.items.WeaponList;
+import com.roguecloud.json.BinaryFrameUpdateCodec;
 import com.roguecloud.json.JsonAbstractTypedMessage;
 import com.roguecloud.json.JsonActionMessageResponse;
 import com.roguecloud.json.JsonClientInterrupt;
 import com.roguecloud.json.JsonFrameUpdate;
 import com.roguecloud.json.JsonRoundComplete;
 import com.roguecloud.json.JsonSelfState;
+import com.roguecloud.json.JsonVisibleCreature;
 import com.roguecloud.json.JsonWorldState;
 import com.roguecloud.json.actions.JsonCombatAction;
 import com.roguecloud.json.actions.JsonDrinkItemAction;
@@ -117,8 +123,10 @@ import com.roguecloud.json.browser.JsonUpdateBrowserUI.JsonServiceStatEntry;
 import com.roguecloud.json.client.JsonHealthCheck;
 import com.roguecloud.map.IMap;
 import com.roguecloud.map.IMutableMap;
-import com.roguecloud.map.RCArrayMap;
+import com.roguecloud.map.RCChunkedMap;
+import com.roguecloud.map.SpatialIndex;
 import com.roguecloud.map.Tile;
+import com.roguecloud.map.TileSerializationCache;
 import com.roguecloud.map.TileType;
 import com.roguecloud.map.TileTypeList;
 import com.roguecloud.server.ActiveWSClient;
@@ -127,13 +135,16 @@ import com.roguecloud.server.ActiveWSClient.ReceivedAction;
 import com.roguecloud.server.ActiveWSClient.ViewType;
 import com.roguecloud.server.ActiveWSClientSession;
 import com.roguecloud.server.ActiveWSClientSession.Type;
+import com.roguecloud.server.relay.SpectatorDeltaPublisher;
 import com.roguecloud.utils.AIUtils;
 import com.roguecloud.utils.LogContext;
 import com.roguecloud.utils.Logger;
 import com.roguecloud.utils.MonsterMachine;
 import com.roguecloud.utils.MonsterRuntimeStats;
 import com.roguecloud.utils.MonsterRuntimeStats.MonsterRuntimeEntry;
+import com.roguecloud.utils.NavigationGraph;
 import com.roguecloud.utils.RoomList;
+import com.roguecloud.utils.SharedPathCache;
 
 public final class GameEngine {
 
@@ -157,7 +168,13 @@ public final class GameEngine {
 		
 		gc.roomSpawns = Collections.unmodifiableList(gwr.getRoomSpawns());
 		
-		gc.map = gwr.getNewMap();
+		gc.map = RCChunkedMap.copyOf(gwr.getNewMap());
+		gc.agentTileCache = new TileSerializationCache<>(gc.map.getXSize(), gc.map.getYSize());
+		gc.agentBinaryTileCache = new TileSerializationCache<>(gc.map.getXSize(), gc.map.getYSize());
+		gc.browserTileCache = new TileSerializationCache<>(gc.map.getXSize(), gc.map.getYSize());
+		gc.navigation = NavigationGraph.build(gc.map);
+		gc.creatureIndex = SpatialIndex.buildCreatureIndex(gc.map);
+		gc.groundObjectIndex = SpatialIndex.buildGroundObjectIndex(gc.map);
 		
 		gwr.getNewGroundObjects().forEach( go -> {
 			gc.groundObjects.put(go.getId(), go);
@@ -218,7 +235,7 @@ public final class GameEngine {
 	
 	private long elapsedNanosSinceReset = 0;
 	
-	private boolean gameLoop(RCArrayMap map, GameContext gc) throws InterruptedException {
+	private boolean gameLoop(RCChunkedMap map, GameContext gc) throws InterruptedException {
 		
 		if(gc.roundScope.getCurrentRoundEndInNanos() == null) {
 			String MSG = "The game loop started with no round end in nanos, which should not happen.";
@@ -246,13 +263,17 @@ public final class GameEngine {
 		final int serverFollowHeight = RCConstants.SERVER_FOLLOW_HEIGHT;
 		
 		ObjectMapper om = new ObjectMapper();
+		
+		final SpectatorDeltaPublisher spectatorPublisher = SpectatorDeltaPublisher.getInstance();
+		
+		// The browser UI updates of the spectator views that are served by the spectator relay, if any 
+		String relayWorldViewUi = null;
+		String relayFollowViewUi = null;
 
 		// Create the browser update JSON object, based on previous events
 		try {
 			perf.startSection();
 			
-			List<IEvent> evListPrevFrame = gc.eventsPreviousFrames.getList(gc.ticks-1);
-			
 			// Create a mapping of the current active players to their user name
 			Map<Long /*user id*/, String /* user name */> localUserIdToUserNameMap = new HashMap<>();
 			for(ActiveWSClient client : roundScope.getActiveClients().getList()) {
@@ -344,12 +365,23 @@ public final class GameEngine {
 			for(ActiveWSClient client : roundScope.getActiveClients().getList()) {
 			
 				try {
-					generateUpdateBrowserUI(client, evListPrevFrame, idtoScoreMap, scores, localUserIdToUserNameMap, statsList, om, gc);
+					generateUpdateBrowserUI(client, idtoScoreMap, scores, localUserIdToUserNameMap, statsList, om, gc);
 				} catch(Exception e) {
 					log.severe("Exception in browser ui update code", e, lc);
 				}
 			}
 			
+			if(spectatorPublisher.isActive()) {
+				// Spectators are not logged in users, as with the spectator browser clients above.
+				JsonUpdateBrowserUI worldUi = createUpdateBrowserUI(ViewType.SERVER_VIEW_WORLD, 0, null, gc.relayWorldView, 
+						idtoScoreMap, scores, localUserIdToUserNameMap, statsList, gc);
+				relayWorldViewUi = worldUi != null ? om.writeValueAsString(worldUi) : null;
+				
+				JsonUpdateBrowserUI followUi = createUpdateBrowserUI(ViewType.SERVER_VIEW_FOLLOW, 0, null, gc.relayFollowView, 
+						idtoScoreMap, scores, localUserIdToUserNameMap, statsList, gc);
+				relayFollowViewUi = followUi != null ? om.writeValueAsString(followUi) : null;
+			}
+			
 			perf.endSection(GameLoopPerf.Section.BROWSER_UI_UPDATE);
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -373,6 +405,16 @@ public final class GameEngine {
 				}
 			}
 			
+			// Drop the serialized form of tiles that changed since the last tick
+			gc.agentTileCache.invalidate(gc.changedTiles);
+			gc.agentBinaryTileCache.invalidate(gc.changedTiles);
+			gc.browserTileCache.invalidate(gc.changedTiles);
+			
+			// Only returns a new graph if the passability of a changed tile (for example, a door) has changed
+			gc.navigation = gc.navigation.updateTiles(map, gc.changedTiles);
+			
+			List<FrameUpdateJob> frameUpdateJobs = new ArrayList<>();
+			
 			for(ActiveWSClient client : roundScope.getActiveClients().getList()) {
 				try {
 					
@@ -381,7 +423,13 @@ public final class GameEngine {
 					if(clientSession == null) { continue; }
 					
 					if(!gc.isRoundOver) {
-						generateAndSendFrameUpdate(clientSession, client, agentClientWidth, agentClientHeight, gc, changedTilesNewPlayers);
+						if(clientSession.isAboveHighWaterMark() && client.getGameEngineInfo() != null) {
+							// The client is not keeping up: skip this frame, and send a full frame once it has caught up.
+							clientSession.coalesceFrameUpdate();
+							continue;
+						}
+						
+						frameUpdateJobs.add(prepareFrameUpdate(clientSession, client, agentClientWidth, agentClientHeight, gc, changedTilesNewPlayers));
 						
 					} else {
 						int nextRoundStartInSeconds = (int) TimeUnit.SECONDS.convert(gc.roundScope.getNextRoundStartInNanos() - System.nanoTime(), TimeUnit.NANOSECONDS );
@@ -397,6 +445,20 @@ public final class GameEngine {
 				}
 				
 			} // end send world state for loop
+			
+			if(frameUpdateJobs.size() > 0) {
+				generateFrameUpdates(frameUpdateJobs, gc);
+				
+				for(FrameUpdateJob job : frameUpdateJobs) {
+					try {
+						sendFrameUpdate(job, gc);
+					} catch(Exception e) {
+						// Prevent client failures from impacting the for loop
+						e.printStackTrace();
+						log.severe("Exception in sending world state to agent", e, lc);
+					}
+				}
+			}
 
 			perf.endSection(GameLoopPerf.Section.WORLD_STATE_TO_EACH_AGENT);
 		}
@@ -481,16 +543,21 @@ public final class GameEngine {
 		{
 			perf.startSection();
 			JsonBuilderFactory factory = Json.createBuilderFactory(new HashMap<String, Object>());
-		
-			List<ICreature> creatures = gc.creatureEntryMap.values().stream().map(e -> e.mutableCreature).collect(Collectors.toList());
 			
+			// Browser views with the same view type, size, and previous/new position (for example, every spectator of the 
+			// follow view that received the previous frame) are sent the same frame: it is generated once per tick, and the
+			// same (immutable) string is written to every session in the group.
+			Map<BrowserFrameKey, String> browserFrameGroups = new HashMap<>();
+		
 			for(ActiveWSClient activeClient : roundScope.getActiveClients().getList()) {
 				try {
 					if(!activeClient.getSessions().stream().anyMatch(e -> e.getType() == Type.BROWSER && e.isSessionOpenUnsynchronized() )) { continue; }
 				
 					// When a new browser client connects (and thus they need a full state update), we send a full update to all the streams
+					// (Lagging streams are excluded until they catch up, as they will not be sent the update.)
 					boolean doesOneOfTheStreamsNeedAFullUpdate = activeClient.getSessions()
-							.stream().anyMatch( e -> e.getType() == Type.BROWSER && e.isSessionOpenUnsynchronized() && e.isBrowserFirstConnect());
+							.stream().anyMatch( e -> e.getType() == Type.BROWSER && e.isSessionOpenUnsynchronized() && e.isBrowserFirstConnect()
+								&& !e.isAboveHighWaterMark());
 					
 					EngineWebsocketState ews = (EngineWebsocketState) activeClient.getGameEngineInfo();
 					if((ews == null || doesOneOfTheStreamsNeedAFullUpdate) && (activeClient.getViewType() != ViewType.CLIENT_VIEW) ) {
@@ -538,13 +605,31 @@ public final class GameEngine {
 						continue;
 					}
 					
-					String str = BrowserWebSocketClientShared.generateBrowserJson(ews.getCurrClientWorldX(), ews.getCurrClientWorldY(), 
-							innerClientPosX /*clientPosX*/, innerClientPosY /*clientPosY*/, ews.getWidth(), ews.getHeight(), map, changedTiles, creatures, gc.ticks, factory);
+					BrowserFrameKey frameKey = new BrowserFrameKey(activeClient.getViewType(), ews.getWidth(), ews.getHeight(), 
+							ews.getCurrClientWorldX(), ews.getCurrClientWorldY(), innerClientPosX, innerClientPosY);
+					
+					// Agent client views follow a single creature, and so are never shared.
+					String str = frameKey.viewType != ViewType.CLIENT_VIEW ? browserFrameGroups.get(frameKey) : null;
+					if(str == null) {
+						str = BrowserWebSocketClientShared.generateBrowserJson(ews.getCurrClientWorldX(), ews.getCurrClientWorldY(), 
+								innerClientPosX /*clientPosX*/, innerClientPosY /*clientPosY*/, ews.getWidth(), ews.getHeight(), map, changedTiles, gc.creatureIndex, gc.ticks, factory, gc.browserTileCache);
+						if(frameKey.viewType != ViewType.CLIENT_VIEW) {
+							browserFrameGroups.put(frameKey, str);
+						}
+						perf.browserFrameGenerated();
+					} else {
+						perf.browserFrameShared();
+					}
+					final String frame = str;
 					
 					activeClient.getSessions().stream().filter(e -> e.getType() == Type.BROWSER && e.isSessionOpenUnsynchronized()).forEach( e -> {
 						try {
-							e.writeToClientAsync(str);
+							if(e.isAboveHighWaterMark()) {
+								e.coalesceFrameUpdate();
+								return;
+							}
 							e.setBrowserFirstConnect(false);
+							e.writeFrameUpdateAsync(frame);
 						} catch(Exception ex) {
 							// Previous a problematic session from impacting the rest.
 							log.err("Error sending state to browser", ex, lc);
@@ -564,6 +649,29 @@ public final class GameEngine {
 					e.printStackTrace();
 				}
 			}
+			
+			// Spectator views that are served by the spectator relay only need the changes to the world, not a frame
+			if(spectatorPublisher.isActive()) {
+				try {
+					spectatorPublisher.publishTick(roundScope.getRoundId(), gc.ticks, map, changedTiles, gc.creatureIndex, 
+							viewOnlyClientPosNew.getX(), viewOnlyClientPosNew.getY(), serverFollowWidth, serverFollowHeight, 
+							relayWorldViewUi, relayFollowViewUi);
+					
+					gc.relayWorldView.setWidth(map.getXSize());
+					gc.relayWorldView.setHeight(map.getYSize());
+					gc.relayWorldView.setCurrClientWorldX(0);
+					gc.relayWorldView.setCurrClientWorldY(0);
+					
+					gc.relayFollowView.setWidth(serverFollowWidth);
+					gc.relayFollowView.setHeight(serverFollowHeight);
+					gc.relayFollowView.setCurrClientWorldX(viewOnlyClientPosNew.getX());
+					gc.relayFollowView.setCurrClientWorldY(viewOnlyClientPosNew.getY());
+					
+				} catch(Exception e) {
+					log.severe("Error on publishing to spectator relay", e, lc);
+				}
+			}
+			
 			perf.endSection(GameLoopPerf.Section.UPDATE_BROWSER_CLIENTS);
 		}
 		
@@ -572,9 +680,15 @@ public final class GameEngine {
 		if(!gc.isRoundOver) {
 			perf.startSection();
 			
-			map = map.collapseOverlayIntoNewMap();
-			gc.map = map;
-			RCArrayMap immutableMapForRead = map.cloneForRead();
+			// The read-only clone shares every chunk with 'map'; only chunks that are written to after this point are copied.
+			RCChunkedMap immutableMapForRead = map.cloneForRead();
+			
+			// Monsters that are chasing the same target on this tick share a single path search (see SharedPathCache)
+			SharedPathCache pathCache = new SharedPathCache(immutableMapForRead);
+			
+			// As with the map, the snapshots are not affected by changes made by the game thread while the monsters are running.
+			SpatialIndex<ICreature> creatureIndexForRead = gc.creatureIndex.snapshot();
+			SpatialIndex<IGroundObject> groundObjectIndexForRead = gc.groundObjectIndex.snapshot();
 
 			List<IEvent> lastTurnsEvents = gc.eventsPreviousFrames.getList(gc.ticks-1);
 			
@@ -583,6 +697,10 @@ public final class GameEngine {
 			gc.sharedMonsterEventLog.internalClearOldEvents(gc.ticks);
 
 			int roundTimeRemainingInSeconds = (int) TimeUnit.SECONDS.convert( roundScope.getCurrentRoundEndInNanos() - System.nanoTime(), TimeUnit.NANOSECONDS);
+			
+			// Monster actions for this tick are harvested on the next; this sets the deadline and time slice for the updates below.
+			gc.monsterMachine.beginTick(gc.ticks, gc.monsterToAIMap.size());
+			
 			for(CreatureEntry ce : gc.creatureEntryMap.values()) {
 				
 				try {
@@ -603,6 +721,10 @@ public final class GameEngine {
 					worldState.setViewHeight(agentClientHeight); 
 					worldState.setViewWidth(agentClientWidth);
 					worldState.setRemainingSecondsInRound(roundTimeRemainingInSeconds);
+					worldState.setNavigationGraph(gc.navigation);
+					worldState.setPathCache(pathCache);
+					worldState.setCreatureIndex(creatureIndexForRead);
+					worldState.setGroundObjectIndex(groundObjectIndexForRead);
 					
 					gc.monsterMachine.informMonster(gc.ticks, selfState, worldState, aiContext, gc.sharedMonsterEventLog);
 					
@@ -680,6 +802,8 @@ public final class GameEngine {
 
 			perf.outputStats();
 			
+			System.out.println("monster scheduling (last tick): "+gc.monsterMachine.getLastTickCounters());
+			
 			perf.reset();
 			
 			elapsedNanosSinceReset = 0;
@@ -695,9 +819,6 @@ public final class GameEngine {
 		
 		gc.startOfLastFrameInNanos = System.nanoTime();
 		
-		// Keep the last 100 frames of events
-		gc.eventsPreviousFrames.removeFramesOlderThanX(gc.ticks-100);
-
 		changedTiles.clear();
 		
 		changedTiles.addAll(changedTilesNewPlayers);
@@ -721,13 +842,17 @@ public final class GameEngine {
 			
 			IDatabase db = DatabaseInstance.get();
 			
+			List<DbLeaderboardEntry> entries = new ArrayList<>();
 			gc.scoreMap.entrySet().stream().forEach( e -> {
 				long userId = e.getKey();
 				long score = e.getValue();
 			
-				db.createOrUpdateDbLeaderboardEntry(new DbLeaderboardEntry(userId, score, gc.roundScope.getRoundId(), System.currentTimeMillis()));
+				entries.add(new DbLeaderboardEntry(userId, score, gc.roundScope.getRoundId(), System.currentTimeMillis()));
 			});
 			
+			// Applied (and queued for the backend) together, rather than one database update per player
+			db.createOrUpdateDbLeaderboardEntries(entries);
+			
 		}
 				
 		// After the round is over, and then after a short delay, we stop the game thread and start a new round.
@@ -971,12 +1096,14 @@ public final class GameEngine {
 		
 					newGroundObjects.forEach( go -> {
 						gc.groundObjects.put(go.getId(), go);
+						gc.groundObjectIndex.add(go, go.getPosition());
 						gc.changedTiles.add(go.getPosition());
 					});
 	
 					newMonsters.forEach( e -> {
 						gc.changedTiles.add(e.getPosition());
 						gc.getOrCreateCreatureEntry(e);
+						gc.creatureIndex.add(e, e.getPosition());
 					});
 					
 					aiContextList.forEach( e -> {
@@ -1067,7 +1194,7 @@ public final class GameEngine {
 		return continueGameThread;
 	}
 	
-	private static ProcessActionReturn processPlayerAction(ReceivedAction receivedAction, RCArrayMap map, ActiveWSClientSession clientSession, EngineWebsocketState ews, GameContext gc, ObjectMapper om, LogContext lc) throws JsonProcessingException {
+	private static ProcessActionReturn processPlayerAction(ReceivedAction receivedAction, RCChunkedMap map, ActiveWSClientSession clientSession, EngineWebsocketState ews, GameContext gc, ObjectMapper om, LogContext lc) throws JsonProcessingException {
 		
 		ProcessActionReturn result = new ProcessActionReturn();
 		
@@ -1191,7 +1318,7 @@ public final class GameEngine {
 	
 	 
 
-	private static void generateUpdateBrowserUI(ActiveWSClient client, List<IEvent> evListPrevFrame, Map<Long /* player id */, JsonScore> idtoScoreMap, 
+	private static void generateUpdateBrowserUI(ActiveWSClient client, Map<Long /* player id */, JsonScore> idtoScoreMap, 
 			List<JsonScore> scores, Map<Long /*user id*/, String /* user name */> localUserIdToUserNameMap, List<JsonServiceStatEntry> statsList, ObjectMapper om, GameContext gc) throws JsonProcessingException {
 		
 		ActiveWSClientSession clientSession = client.getMostRecentSessionOfType(Type.CLIENT);
@@ -1202,20 +1329,30 @@ public final class GameEngine {
 		
 		if(clientSession == null) { return; }
 		
-		List<IMutableEvent> newEvents = new ArrayList<>();
 		EngineWebsocketState ews = (EngineWebsocketState) client.getGameEngineInfo();
 		
 		if(ews == null) { return; }
+		
+		JsonUpdateBrowserUI result = createUpdateBrowserUI(client.getViewType(), client.getUserId(), client.getUsername(), ews, 
+				idtoScoreMap, scores, localUserIdToUserNameMap, statsList, gc);
+		
+		if(result != null) {
+			clientSession.writeToClientAsync( om.writeValueAsString(result));
+		}
+	}
+	
+	/** Returns the browser UI update of a view whose position and size are 'ews', or null if there is nothing new to send to the view. */
+	private static JsonUpdateBrowserUI createUpdateBrowserUI(ViewType viewType, long userId, String username, EngineWebsocketState ews, 
+			Map<Long /* player id */, JsonScore> idtoScoreMap, List<JsonScore> scores, 
+			Map<Long /*user id*/, String /* user name */> localUserIdToUserNameMap, List<JsonServiceStatEntry> statsList, GameContext gc) {
+		
+		List<IMutableEvent> newEvents = new ArrayList<>();
 
 		if(ews.getCurrClientWorldX() >= 0 && ews.getCurrClientWorldY() >= 0 && ews.getHeight() > 0 && ews.getWidth() > 0) {
-			for(IEvent e : evListPrevFrame) {
-				// Is the event visible to the creature?
-				if(Position.containedInBox(e.getWorldLocation(), 
-						ews.getCurrClientWorldX(), ews.getCurrClientWorldY(), 
-						ews.getWidth(), ews.getHeight())) {
-					
-					newEvents.add((IMutableEvent)e);
-				} 
+			// The events of the previous frame that are visible in the view
+			for(IEvent e : gc.eventsPreviousFrames.getEventsInBox(gc.ticks-1, gc.ticks-1, ews.getCurrClientWorldX(), ews.getCurrClientWorldY(), 
+					ews.getWidth(), ews.getHeight())) {
+				newEvents.add((IMutableEvent)e);
 			}
 		}
 
@@ -1226,8 +1363,8 @@ public final class GameEngine {
 		RoundScope rs = gc.roundScope;
 		if(gc.isRoundOver)  {
 			
-			if(client.getViewType() == ViewType.CLIENT_VIEW) {
-				Long[] scoreAndRank = DatabaseInstance.get().getUserBestScoreAndRank(client.getUserId());
+			if(viewType == ViewType.CLIENT_VIEW) {
+				Long[] scoreAndRank = DatabaseInstance.get().getUserBestScoreAndRank(userId);
 				if(scoreAndRank != null && scoreAndRank.length == 2) {
 					result.setCurrentPlayerBestTotalScore(scoreAndRank[0]);
 					result.setCurrentPlayerBestTotalRank(scoreAndRank[1]);
@@ -1245,18 +1382,18 @@ public final class GameEngine {
 			result.setRoundState(jari);
 		}
 		
-		if(client.getViewType() == ViewType.CLIENT_VIEW) {
-			result.setCurrentPlayerScore(gc.scoreMap.get(client.getUserId()));
+		if(viewType == ViewType.CLIENT_VIEW) {
+			result.setCurrentPlayerScore(gc.scoreMap.get(userId));
 		}
 		
 		if(scores != null && idtoScoreMap != null) {
 			result.setCurrentRoundScores(scores);
-			if(client.getViewType() == ViewType.CLIENT_VIEW) {
-				JsonScore playerScore = idtoScoreMap.get(client.getUserId());
+			if(viewType == ViewType.CLIENT_VIEW) {
+				JsonScore playerScore = idtoScoreMap.get(userId);
 				if(playerScore != null) {
 					result.setCurrentPlayerRank(playerScore.getRank());
-				} else if(client.getViewType() == ViewType.CLIENT_VIEW){
-					log.severe("Unable to find player score in rank list: "+client.getUserId()+" "+client.getUsername(), gc.lc);
+				} else if(viewType == ViewType.CLIENT_VIEW){
+					log.severe("Unable to find player score in rank list: "+userId+" "+username, gc.lc);
 				}
 			}
 		}
@@ -1311,9 +1448,9 @@ public final class GameEngine {
 				
 				String str= "["+gc.ticks+"] ";
 
-				str += convertCreatureToHtml(cae.getAttacker(), client.getUserId(), localUserIdToUserNameMap, gc);
+				str += convertCreatureToHtml(cae.getAttacker(), userId, localUserIdToUserNameMap, gc);
 				str += " attacked ";
-				str += convertCreatureToHtml(cae.getDefender(), client.getUserId(), localUserIdToUserNameMap, gc);
+				str += convertCreatureToHtml(cae.getDefender(), userId, localUserIdToUserNameMap, gc);
 				str += ". "+cae.userVisibleCombatResult()+", ";
 				
 				boolean defenderIsPlayer = false;
@@ -1338,7 +1475,7 @@ public final class GameEngine {
 			} else if(e.getActionType() == EventType.DRINK) {
 				DrinkItemActionEvent dae = (DrinkItemActionEvent)e;
 				
-				String str = "["+gc.ticks+"] "+convertCreatureToHtml(dae.getCreature(), client.getUserId(), localUserIdToUserNameMap, gc)+" drank "+dae.getDrinkableItem().getName()+".";
+				String str = "["+gc.ticks+"] "+convertCreatureToHtml(dae.getCreature(), userId, localUserIdToUserNameMap, gc)+" drank "+dae.getDrinkableItem().getName()+".";
 				result.getNewEventHtml().add(str);
 				
 			} else if(e.getActionType() == EventType.STEP) {
@@ -1352,7 +1489,7 @@ public final class GameEngine {
 				
 				String ttSubstring = convertObjectToHtml(eae.getEquippedObject());
 				
-				str += convertCreatureToHtml(eae.getCreature(), client.getUserId(), localUserIdToUserNameMap, gc)+" equipped "+eae.getEquippedObject().getName()+ttSubstring+".";
+				str += convertCreatureToHtml(eae.getCreature(), userId, localUserIdToUserNameMap, gc)+" equipped "+eae.getEquippedObject().getName()+ttSubstring+".";
 				
 				result.getNewEventHtml().add(str);
 				
@@ -1365,7 +1502,7 @@ public final class GameEngine {
 				
 				String ttSubstring = convertObjectToHtml(miiae.getObject());
 				
-				str += convertCreatureToHtml(miiae.getCreature(), client.getUserId(), localUserIdToUserNameMap, gc)+" "+verb+" "+miiae.getObject().getName()+ttSubstring+".";
+				str += convertCreatureToHtml(miiae.getCreature(), userId, localUserIdToUserNameMap, gc)+" "+verb+" "+miiae.getObject().getName()+ttSubstring+".";
 				result.getNewEventHtml().add(str);
 				
 			} else {
@@ -1378,11 +1515,8 @@ public final class GameEngine {
 			result.setCombatEvents(browserCombatEvents);
 		}
 		
-		if(result.utilContainsAnyData()) {
-			// Only write to the client if it actually contains useful data.
-			clientSession.writeToClientAsync( om.writeValueAsString(result));
-		}
-
+		// Only write to the client if it actually contains useful data.
+		return result.utilContainsAnyData() ? result : null;
 	}
 
 	private static Weapon getDefaultWeapon(GameContext gc) {
@@ -1394,15 +1528,15 @@ public final class GameEngine {
 		return bareHands;
 	}
 		
-	private static void generateAndSendFrameUpdate(ActiveWSClientSession clientSession, ActiveWSClient client, 
-			int clientWidth, int clientHeight, GameContext gc,  List<Position> changedTilesNewPlayers) throws JsonProcessingException {
-		
-		ObjectMapper om = gc.om;
+	/** 
+	 * Game thread, serial: create the player's creature if this is a new client, and determine what kind of frame to send.
+	 * The frame itself is generated by generateFrameUpdates(...) and sent by sendFrameUpdate(...).
+	 **/
+	private static FrameUpdateJob prepareFrameUpdate(ActiveWSClientSession clientSession, ActiveWSClient client, 
+			int clientWidth, int clientHeight, GameContext gc,  List<Position> changedTilesNewPlayers) {
 		
-		RCArrayMap map = gc.map;
+		RCChunkedMap map = gc.map;
 		
-		JsonWorldState jws;
-	
 		boolean fullResetClientState = clientSession.getAndResetFullClientResetState();
 		
 		EngineWebsocketState ews = (EngineWebsocketState) client.getGameEngineInfo();
@@ -1444,6 +1578,7 @@ public final class GameEngine {
 			ce.clientStats.setStartTimeInNanos(System.nanoTime());
 			
 			map.getTileForWrite(pc.getPosition()).getCreaturesForModification().add(pc);
+			gc.creatureIndex.add(pc, pc.getPosition());
 			changedTilesNewPlayers.add(pc.getPosition());
 			
 			ews.setPlayerCreature(pc);
@@ -1468,9 +1603,67 @@ public final class GameEngine {
 			}
 		}
 		
+		// Likewise if a frame update was dropped or coalesced because the client was not reading quickly enough: the client 
+		// will wait for a full frame, which must also include the objects that were only described in the missed frames.
+		if(clientSession.getAndResetFullFrameNeeded()) {
+			ews.setCurrClientWorldX(-1);
+			ews.setCurrClientWorldY(-1);
+			ews.clearObjectsSeenByPlayer();
+			sendFullFrame = true;
+		}
+		
+		return new FrameUpdateJob(clientSession, client, ews, clientWidth, clientHeight, sendFullFrame, client.getAndIncrementNextClientFrameNumber());
+	}
+	
+	/** 
+	 * Generate (and serialize to JSON) the frame update of each job. When there is more than one job, the jobs are 
+	 * run in parallel on the round's frameGenerationPool, and this method returns once all have completed. Every job shares the same 
+	 * read-only clone of the map and the same PreviousEvents (which are not added to until the jobs complete); nothing that is shared between clients is mutated.
+	 **/
+	private static void generateFrameUpdates(List<FrameUpdateJob> jobs, GameContext gc) {
+		
+		// Snapshot the map after all new players have been added to it by prepareFrameUpdate(...)
+		final RCChunkedMap mapForRead = gc.map.cloneForRead();
+		
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for(FrameUpdateJob job : jobs) {
+			tasks.add( () -> { 
+				try {
+					generateFrameUpdate(job, mapForRead, gc);
+				} catch(Throwable t) {
+					// Including Errors, so that a failure is reported by sendFrameUpdate(...) whether or not the pool was used
+					job.error = t;
+				}
+				return null;
+			});
+		}
+		
+		if(tasks.size() == 1) {
+			// Not worth the hand-off
+			try {
+				tasks.get(0).call();
+			} catch (Exception e) { 
+				/* ignore, handled by the task. */ 
+			}
+		} else {
+			gc.frameGenerationPool.invokeAll(tasks);
+		}
+		
+	}
+	
+	/** Thread-safe for distinct jobs; see generateFrameUpdates(...) */ 
+	private static void generateFrameUpdate(FrameUpdateJob job, IMap mapForRead, GameContext gc) throws IOException {
+		
+		EngineWebsocketState ews = job.ews;
+		
 		IMutableCreature playerCreature = ews.getPlayerCreature();
 					
-		jws = WorldStateJsonGenerator.generateJsonWorldState(clientWidth, clientHeight, ews, map, gc.changedTiles, gc, gc.lc, gc.roundScope, sendFullFrame);
+		boolean binary = job.clientSession.isBinaryFrameUpdates();
+		
+		JsonWorldState jws = WorldStateJsonGenerator.generateJsonWorldState(job.clientWidth, job.clientHeight, ews, mapForRead, 
+				gc.changedTiles, gc.eventsPreviousFrames, gc.ticks-1, gc.lc, gc.roundScope, job.sendFullFrame, job.newlySeenObjectIds, gc.agentTileCache, 
+				binary ? gc.agentBinaryTileCache : null, 
+				job.clientSession.isCreatureDeltas() && !job.sendFullFrame ? ews.getCreaturesSentToPlayer() : null, job.sentCreatures);
 		
 //		clientPosX = jws.getClientViewPosX();
 //		clientPosY = jws.getClientViewPosY();
@@ -1485,43 +1678,85 @@ public final class GameEngine {
 		JsonFrameUpdate jfu = new JsonFrameUpdate();
 		jfu.setWorldState(jws);
 		jfu.setSelfState(jss);
-		jfu.setFull(sendFullFrame);
+		jfu.setFull(job.sendFullFrame);
 		jfu.setGameTicks(gc.ticks);
-		jfu.setFrame(client.getAndIncrementNextClientFrameNumber());
+		jfu.setFrame(job.frameNumber);
+		
+		job.jws = jws;
+		if(binary) {
+			job.binaryMsg = BinaryFrameUpdateCodec.encode(jfu);
+		} else {
+			job.msg = gc.om.writeValueAsString(jfu);
+		}
+	}
+	
+	/** Game thread, serial (in the same order as prepareFrameUpdate(...)): send the generated frame, and update the client's EngineWebsocketState. */
+	private static void sendFrameUpdate(FrameUpdateJob job, GameContext gc) throws JsonProcessingException {
 		
-		String msg = om.writeValueAsString(jfu);
+		if(job.error instanceof Error) {
+			// Rethrown as is, as it would have been had the frame been generated on this thread
+			throw (Error)job.error;
+		} else if(job.error != null) {
+			throw new RuntimeException("Unable to generate frame update", job.error);
+		}
 		
-		clientSession.writeToClientAsync( msg);
+		ObjectMapper om = gc.om;
+		ActiveWSClientSession clientSession = job.clientSession;
+		ActiveWSClient client = job.client;
+		EngineWebsocketState ews = job.ews;
+		JsonWorldState jws = job.jws;
 		
-		gc.mapClientToMostRecentSession.put(client, clientSession);
+		IMutableCreature playerCreature = ews.getPlayerCreature();
 		
-		Long lastMessageIdReceived = client.getAndResetLastActionMessageIdReceived();
-		if(lastMessageIdReceived != null && lastMessageIdReceived >= 0) {
-			
-			List<String> oldActionsToResend = ews.getActionMessagesWithIdsGreaterThan(lastMessageIdReceived);
-			for(String str : oldActionsToResend) {
-				clientSession.writeToClientAsync(str);
+		String msg = job.msg;
+		
+		// Send the frame, and any messages that follow it, in a single write 
+		clientSession.beginBatch();
+		try {
+			if(job.binaryMsg != null) {
+				clientSession.writeFrameUpdateAsync(job.binaryMsg);
+			} else {
+				clientSession.writeFrameUpdateAsync( msg);
 			}
+		
+			for(Long objectId : job.newlySeenObjectIds) {
+				ews.putObjectSeenByPlayer(objectId);
+			}
+			ews.setCreaturesSentToPlayer(job.sentCreatures);
+		
+			gc.mapClientToMostRecentSession.put(client, clientSession);
+		
+			Long lastMessageIdReceived = client.getAndResetLastActionMessageIdReceived();
+			if(lastMessageIdReceived != null && lastMessageIdReceived >= 0) {
 			
-		}
+				List<String> oldActionsToResend = ews.getActionMessagesWithIdsGreaterThan(lastMessageIdReceived);
+				for(String str : oldActionsToResend) {
+					clientSession.writeToClientAsync(str);
+				}
+			
+			}
 		
-		ews.setCurrClientWorldX(jws.getClientViewPosX());
-		ews.setCurrClientWorldY(jws.getClientViewPosY());
+			ews.setCurrClientWorldX(jws.getClientViewPosX());
+			ews.setCurrClientWorldY(jws.getClientViewPosY());
 
-		ews.setWidth(clientWidth);
-		ews.setHeight(clientHeight);
+			ews.setWidth(job.clientWidth);
+			ews.setHeight(job.clientHeight);
 
-		ews.setNextFrame(ews.getNextFrame()+1);
+			ews.setNextFrame(ews.getNextFrame()+1);
 		
-		CreatureEntry ce = gc.getOrCreateCreatureEntry(playerCreature);
+			CreatureEntry ce = gc.getOrCreateCreatureEntry(playerCreature);
 
-		if(ce != null && playerCreature.isDead()) {
-			JsonClientInterrupt jci = new JsonClientInterrupt();
-			jci.setInterruptNumber(ce.clientStats.getTimesDied());
-			jci.setRound(gc.roundScope.getRoundId());
+			if(ce != null && playerCreature.isDead()) {
+				JsonClientInterrupt jci = new JsonClientInterrupt();
+				jci.setInterruptNumber(ce.clientStats.getTimesDied());
+				jci.setRound(gc.roundScope.getRoundId());
 			
-			msg = om.writeValueAsString(jci);
-			clientSession.writeToClientAsync(msg);
+				msg = om.writeValueAsString(jci);
+				clientSession.writeToClientAsync(msg);
+			}
+		
+		} finally {
+			clientSession.endBatch();
 		}
 		
 	}
@@ -1616,6 +1851,7 @@ public final class GameEngine {
 							t.getGroundObjectForModification().add(go);
 							changedTiles.add(m.getPosition());
 							gc.groundObjects.put(go.getId(), go);
+							gc.groundObjectIndex.add(go, m.getPosition());
 						}						
 					} else {
 						log.severe("Inventory removal failed for one or more items.", gc.lc);
@@ -1649,6 +1885,7 @@ public final class GameEngine {
 				// If a creature has been dead for more than 300 turns, then remove it.
 				if(gc.ticks - gameTickOfDeath > 100) {
 					map.getTileForWrite(m.getPosition()).getCreaturesForModification().remove(m);
+					gc.creatureIndex.remove(m, m.getPosition());
 					changedTiles.add(m.getPosition());
 //					it.remove();
 					remove = true;
@@ -1714,7 +1951,7 @@ public final class GameEngine {
 
 	}
 	
-	private static IActionResponse doAction(IAction action, RCArrayMap map, IMutableCreature m, List<Position> changedTiles, GameContext gc) {
+	private static IActionResponse doAction(IAction action, RCChunkedMap map, IMutableCreature m, List<Position> changedTiles, GameContext gc) {
 		IActionResponse response = NullActionResponse.INSTANCE;
 
 		LogContext lc = gc.lc;
@@ -1786,6 +2023,7 @@ public final class GameEngine {
 					changedTiles.add(m.getPosition());
 					
 					Position destPos = stepAction.getDestPosition();
+					gc.creatureIndex.move(m, m.getPosition(), destPos);
 					m.setPosition(destPos);
 					destTile = map.getTileForWrite(destPos);
 					destTile.getCreaturesForModification().add(m);
@@ -1826,6 +2064,7 @@ public final class GameEngine {
 				log.interesting("Player creature "+m.getId()+" dropped item "+go, lc);
 				
 				gc.groundObjects.put(go.getId(), go);
+				gc.groundObjectIndex.add(go, go.getPosition());
 				
 				gc.eventsPreviousFrames.add( new MoveInventoryItemActionEvent(m, oo.getContainedObject(), true, gc.ticks, gc.generator.getNextUniqueId(IdType.EVENT)));
 				
@@ -1869,6 +2108,7 @@ public final class GameEngine {
 					log.severe("The object was not found at the expected position;", lc);
 					return new MoveInventoryItemActionResponse(puia.getObjectId(), false, puia.isDropItem());
 				}
+				gc.groundObjectIndex.remove(go, go.getPosition());
 				
 				log.interesting("Creature "+m.getId()+" added "+go.getId()+" to their inventory.", lc);
 				
@@ -2068,123 +2308,52 @@ public final class GameEngine {
 	private static IMutableCreature findMostInterestingCreature(GameContext gc, boolean includePlayers, boolean includeMonsters) {
 		if(!includePlayers && !includeMonsters) { return null; }
 
-		List<Map.Entry<Long, CreatureEntry>> me = gc.creatureEntryMap.entrySet().stream()
-				.filter( e -> {
-					IMutableCreature mc = e.getValue().getCreature();
-					if(mc == null) { return false; }
-					if(mc.isDead()) { return false; }					
-					if(!includePlayers && mc.isPlayerCreature()) { return false; }
-					if(!includeMonsters && !mc.isPlayerCreature()) { return false; }
-					
-					if(gc.previouslyWatched.get(mc.getId()) != null) { return false; }   
-					
-					return true; })
-				.collect(Collectors.toList());
-		
-		Collections.sort(me, (b, a) -> {  
-			
-			int bActionScore = b.getValue().getActionScore();
-			
-			int aActionScore = a.getValue().getActionScore(); 
-			
-			AIContext aiContext = gc.monsterToAIMap.get(b.getKey());
-			if(aiContext != null) {
-				MonsterClient mc = aiContext.getClient();
-				if(mc != null && mc instanceof WanderingAttackAllAI) {
-					WanderingAttackAllAI w = (WanderingAttackAllAI)mc;
-					if(w.getConstrainedArea() == null) {
-						bActionScore += 10;
-					}
-				}
-			}
+		// Rather than sorting every creature by score, this is a single pass: monsters that may wander the whole map score
+		// an extra 10, and we pick at random between the creatures that share the highest score.
+		int highestScore = Integer.MIN_VALUE;
+		int highestActionScore = 0;
+		int matches = 0;
+		IMutableCreature match = null;
+
+		for(CreatureEntry ce : gc.creatureEntryMap.values()) {
+			IMutableCreature mc = ce.getCreature();
+			if(mc == null) { continue; }
+			if(mc.isDead()) { continue; }
+			if(!includePlayers && mc.isPlayerCreature()) { continue; }
+			if(!includeMonsters && !mc.isPlayerCreature()) { continue; }
+
+			if(gc.previouslyWatched.get(mc.getId()) != null) { continue; }
+
+			int actionScore = ce.getActionScore();
+			int score = actionScore;
 
-			aiContext = gc.monsterToAIMap.get(a.getKey());
+			AIContext aiContext = gc.monsterToAIMap.get(mc.getId());
 			if(aiContext != null) {
-				MonsterClient mc = aiContext.getClient();
-				if(mc != null && mc instanceof WanderingAttackAllAI) {
-					WanderingAttackAllAI w = (WanderingAttackAllAI)mc;
+				MonsterClient client = aiContext.getClient();
+				if(client != null && client instanceof WanderingAttackAllAI) {
+					WanderingAttackAllAI w = (WanderingAttackAllAI)client;
 					if(w.getConstrainedArea() == null) {
-						aActionScore += 10;
+						score += 10;
 					}
 				}
 			}
-			
-			return bActionScore - aActionScore;
-		} );
-		
-//		if(includeMonsters) {
-//			System.out.println("-------------------");
-//			for(int x = 0; x < me.size() /*Math.min(5,me.size())*/; x++) {
-//				Entry<Long, CreatureEntry> e = me.get(x);
-//				
-//				WanderingAttackAllAI w = null;
-//				AIContext aiContext = gc.monsterToAIMap.get(e.getKey());
-//				if(aiContext != null) {
-//					MonsterClient mc = aiContext.getClient();
-//					if(mc instanceof WanderingAttackAllAI) {
-//						w = (WanderingAttackAllAI)mc;
-//					}
-//				}
-//				
-//				System.out.println((x+1)+")  "+e.getKey()+" score: "+e.getValue().getActionScore()+" area: "+(w != null ? w.getConstrainedArea() : ""));
-//			}
-//			System.out.println("-------------------");
-//		}
-		
-//		Entry<Long, CreatureEntry> me = gc.creatureEntryMap.entrySet().stream()
-//				.filter( e -> {
-//					IMutableCreature mc = e.getValue().getCreature();
-//					if(mc == null) { return false; }
-//					if(mc.isDead()) { return false; }					
-//					if(!includePlayers && mc.isPlayerCreature()) { return false; }
-//					if(!includeMonsters && !mc.isPlayerCreature()) { return false; }
-//					
-//					if(gc.previouslyWatched.get(mc.getId()) != null) { return false; }   
-//					
-//					return true; })
-//				.sorted( (a, b) -> { 
-//					return b.getValue().getActionScore() - a.getValue().getActionScore(); /** Sort descending by score*/  })
-//				.findFirst().orElse(null);
 
-		
-		Entry<Long, CreatureEntry> match = null;
-		if(me.size() == 1) {
-			// Fast path
-			match = me.get(0);
-		}
-		
-		if(me.size() > 1) {
-			int highestActionScore = me.get(0).getValue().getActionScore();
-			
-			// Find all entries that match the highest action score
-			List<Map.Entry<Long, CreatureEntry>> matches = new ArrayList<>();
-			for(Map.Entry<Long, CreatureEntry> e : me) {
-				if(e.getValue().getActionScore() == highestActionScore) {
-					matches.add(e);
-				} else {
-					break;
+			if(score > highestScore) {
+				highestScore = score;
+				highestActionScore = actionScore;
+				matches = 1;
+				match = mc;
+
+			} else if(score == highestScore && actionScore == highestActionScore) {
+				// Each of the matches so far is equally likely to be the one that is kept
+				matches++;
+				if(Math.random() * matches < 1) {
+					match = mc;
 				}
 			}
-			
-			// Pick one of the matches at random
-			match  = matches.get( (int)(matches.size() * Math.random() )); 
 		}
-		
-		if(match != null) {
-			IMutableCreature mc = gc.creatureEntryMap.get(match.getKey()).getCreature();
-			if(mc != null) {
-				return mc;
-			}
-		}
-		
-//		if(me != null) {
-//			IMutableCreature mc = gc.creatureEntryMap.get(me.getKey()).getCreature();
-//			if(mc != null) {
-//				return mc;
-//			}
-//		} 		
-		
-		return null;
+
+		return match;
 	}
 
 	private static void waitForActiveClient(RoundScope rs) {
@@ -2241,7 +2410,7 @@ public final class GameEngine {
 		
 		private boolean isRoundOver = false;
 		
-		private RCArrayMap map;
+		private RCChunkedMap map;
 		
 		private IMutableCreature monsterToFollow = null;
 		private long monsterToFollow_timeToFindNewMonster = 0;  
@@ -2271,6 +2440,18 @@ public final class GameEngine {
 		
 		private final List<Position> changedTiles = new ArrayList<>();
 		
+		/** The serialized form of each tile, shared by all agent views (JSON or binary) and all browser views (javax.json), respectively */
+		private TileSerializationCache<RawValue> agentTileCache;
+		private TileSerializationCache<byte[]> agentBinaryTileCache;
+		private TileSerializationCache<JsonArray> browserTileCache;
+		
+		/** Which parts of the map are reachable from each other; replaced (not modified) when the passability of a tile changes */
+		private NavigationGraph navigation;
+		
+		/** The positions of the creatures and ground objects on the map; these must be updated wherever one is added to, or removed from, a tile. */
+		private SpatialIndex<ICreature> creatureIndex;
+		private SpatialIndex<IGroundObject> groundObjectIndex;
+		
 		private final HashMap<Long /* obj id*/, IGroundObject> groundObjects = new HashMap<>();
 		
 		private final HashMap<Long /* creature id*/, AIContext> monsterToAIMap = new HashMap<>();
@@ -2281,12 +2462,19 @@ public final class GameEngine {
 		
 		private final HashMap<Long /* creature id*/, Boolean> previouslyWatched = new HashMap<>();
 		
+		/** The position and size of the spectator views that are served by the spectator relay, as of the last published tick (see SpectatorDeltaPublisher) */
+		private final EngineWebsocketState relayWorldView = new EngineWebsocketState();
+		private final EngineWebsocketState relayFollowView = new EngineWebsocketState();
+		
 		/** This class is responsible for distributing new map information to monsters after each tick, for running the threads that execute AI logic, and 
 		 * for returning monster actions back to the game loop.*/
 		private MonsterMachine monsterMachine;
 		
 		private final GameLoopPerf glPerf = new GameLoopPerf();
 		
+		/** Used to generate the frame updates of agent clients in parallel (see generateFrameUpdates(...)); shut down with the round. */
+		private final ForkJoinPool frameGenerationPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		
 		private final CreatureEntry getOrCreateCreatureEntry(IMutableCreature m) {
 			CreatureEntry ce = creatureEntryMap.get(m.getId());
 			if(ce == null) {
@@ -2304,11 +2492,14 @@ public final class GameEngine {
 		
 		private void dispose() {
 			map = null;
+			navigation = null;
+			creatureIndex = null;
+			groundObjectIndex = null;
 			scoreMap.clear();
 			playerCreatureToUserIdMap.clear();
 //			creatureMap.clear();
 			sharedMonsterEventLog.dispose();
-			eventsPreviousFrames.removeFramesOlderThanX(Long.MAX_VALUE);
+			eventsPreviousFrames.clear();
 			changedTiles.clear();
 			groundObjects.clear();
 			monsterToAIMap.clear();
@@ -2316,6 +2507,7 @@ public final class GameEngine {
 //			creatureIdToClientMap.clear();
 			creatureEntryMap.clear();
 			monsterMachine.dispose();
+			frameGenerationPool.shutdown();
 			
 		}
 		
@@ -2469,6 +2661,10 @@ public final class GameEngine {
 			DO_MONSTER_STUFF, REPLY_TO_PLAYER_ACTIONS, REPLY_TO_MONSTER_ACTIONS, APPLY_EFFECTS_AND_CLEANUP_DEAD};
 
 		private final long[] data = new long[Section.values().length];
+		
+		/** Browser frames generated, and browser frames reused from another client with the same view, see BrowserFrameKey */
+		private long browserFramesGenerated = 0;
+		private long browserFramesShared = 0;
 			
 		private final Deque<Long> stack = new ArrayDeque<>();
 		
@@ -2503,6 +2699,17 @@ public final class GameEngine {
 				System.out.println(curr[0] +" "+curr[1]);
 			}
 			
+			System.out.println("Browser frames generated: "+browserFramesGenerated+", shared: "+browserFramesShared);
+		}
+		
+		public void browserFrameGenerated() {
+			if(!ENABLED) { return; }
+			browserFramesGenerated++;
+		}
+		
+		public void browserFrameShared() {
+			if(!ENABLED) { return; }
+			browserFramesShared++;
 		}
 
 		public void endSection(Section s) {
@@ -2519,6 +2726,8 @@ public final class GameEngine {
 			for(int x = 0; x < data.length; x++) {
 				data[x] = 0l;
 			}
+			browserFramesGenerated = 0;
+			browserFramesShared = 0;
 			
 			stack.clear();
 		}
@@ -2526,46 +2735,249 @@ public final class GameEngine {
 		
 	}
 	
+	/** 
+	 * The inputs to BrowserWebSocketClientShared.generateBrowserJson(...) that vary between browser clients; on a given tick,
+	 * clients with equal keys are sent the same frame. A previous position of -1, -1 is a full frame.
+	 */
+	private final static class BrowserFrameKey {
+		final ViewType viewType;
+		final int width;
+		final int height;
+		final int prevX;
+		final int prevY;
+		final int newX;
+		final int newY;
+		
+		public BrowserFrameKey(ViewType viewType, int width, int height, int prevX, int prevY, int newX, int newY) {
+			this.viewType = viewType;
+			this.width = width;
+			this.height = height;
+			this.prevX = prevX;
+			this.prevY = prevY;
+			this.newX = newX;
+			this.newY = newY;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = viewType.hashCode();
+			result = 31 * result + width;
+			result = 31 * result + height;
+			result = 31 * result + prevX;
+			result = 31 * result + prevY;
+			result = 31 * result + newX;
+			result = 31 * result + newY;
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof BrowserFrameKey)) { return false; }
+			BrowserFrameKey other = (BrowserFrameKey)obj;
+			return viewType == other.viewType && width == other.width && height == other.height && prevX == other.prevX 
+					&& prevY == other.prevY && newX == other.newX && newY == other.newY;
+		}
+	}
+	
+	/** The state of a single agent client's frame update, as it passes through prepareFrameUpdate(...), generateFrameUpdate(...) and sendFrameUpdate(...) */
+	private final static class FrameUpdateJob {
+		final ActiveWSClientSession clientSession;
+		final ActiveWSClient client;
+		final EngineWebsocketState ews;
+		final int clientWidth;
+		final int clientHeight;
+		final boolean sendFullFrame;
+		final long frameNumber;
+		
+		// Written by generateFrameUpdate(...)
+		final List<Long> newlySeenObjectIds = new ArrayList<>();
+		final Map<Long, JsonVisibleCreature> sentCreatures = new HashMap<>();
+		JsonWorldState jws;
+		/** Either msg (JSON) or binaryMsg (BinaryFrameUpdateCodec) is set, depending on the encoding negotiated by the client */
+		String msg;
+		byte[] binaryMsg;
+		Throwable error;
+		
+		public FrameUpdateJob(ActiveWSClientSession clientSession, ActiveWSClient client, EngineWebsocketState ews, int clientWidth,
+				int clientHeight, boolean sendFullFrame, long frameNumber) {
+			this.clientSession = clientSession;
+			this.client = client;
+			this.ews = ews;
+			this.clientWidth = clientWidth;
+			this.clientHeight = clientHeight;
+			this.sendFullFrame = sendFullFrame;
+			this.frameNumber = frameNumber;
+		}
+	}
+	
 	/** Return value of processPlayerAction(...) method */
 	private final static class ProcessActionReturn {
 		IActionResponse response;
 		IAction action;	
 	}
 	
-	/** Container for all the events that occurred, per frame */
+	/** 
+	 * Container for all the events that occurred, per frame, for the most recent FRAMES_KEPT frames. Each frame is a slot in a 
+	 * fixed size ring, which is reused (and its lists cleared) by the first event of a frame FRAMES_KEPT frames later.
+	 * 
+	 * Within a frame, events are also bucketed by the location (getWorldLocation()) at which they occurred, in squares of 
+	 * BUCKET_SIZE tiles, so that getEventsInBox(...) only visits the buckets that overlap the view. 
+	 * 
+	 * Events are added by the game thread; the other methods may be called from other threads, so long as no events are 
+	 * being added at the same time (see generateFrameUpdates(...)).
+	 **/
 	final static class PreviousEvents {
 		
-		private final HashMap<Long /* frame id*/, List<IEvent>> eventMap = new HashMap<Long, List<IEvent>>();
+		/** The number of frames of events that are kept: the most recent frame, and the 100 before it */
+		static final int FRAMES_KEPT = 101;
+		
+		/** The width and height, in tiles, of each bucket */
+		private static final int BUCKET_SIZE = 16;
+		
+		private final FrameEvents[] frames = new FrameEvents[FRAMES_KEPT];
 		
 		public PreviousEvents() {
+			for(int x = 0; x < frames.length; x++) {
+				frames[x] = new FrameEvents();
+			}
 		}
 		
 		public void add(IMutableEvent e) {
-			getList(e.getFrame()).add(e);
+			FrameEvents fe = frames[slot(e.getFrame())];
+			if(fe.frame != e.getFrame()) {
+				fe.reset(e.getFrame());
+			}
+			fe.add(e);
 		}
 		
-		public void removeFramesOlderThanX(long gameTick) {
+		public void clear() {
+			for(FrameEvents fe : frames) {
+				fe.reset(-1);
+			}
+		}
+		
+		/** All the events of the given frame, in the order they were added; the list must not be modified. */
+		public List<IEvent> getList(long frameId) {
+			FrameEvents fe = frames[slot(frameId)];
+			return fe.frame == frameId ? fe.events : Collections.emptyList();
+		}
+		
+		/** 
+		 * The events of frames oldestFrameId to newestFrameId (inclusive, and no more than FRAMES_KEPT frames), that occurred 
+		 * within the given box; the events are in the order in which they were added.
+		 **/
+		public List<IEvent> getEventsInBox(long oldestFrameId, long newestFrameId, int x, int y, int width, int height) {
+			List<IEvent> result = new ArrayList<>();
+			
+			if(width <= 0 || height <= 0) { return result; }
+			
+			int bucketX1 = Math.floorDiv(x, BUCKET_SIZE);
+			int bucketY1 = Math.floorDiv(y, BUCKET_SIZE);
+			int bucketX2 = Math.floorDiv(x+width-1, BUCKET_SIZE);
+			int bucketY2 = Math.floorDiv(y+height-1, BUCKET_SIZE);
+			long numBuckets = (long)(bucketX2-bucketX1+1) * (bucketY2-bucketY1+1);
 			
-			for(Iterator<Entry<Long, List<IEvent>>> it = eventMap.entrySet().iterator(); it.hasNext();) {
-				Entry<Long, List<IEvent>> e = it.next();
-				if(e.getKey() < gameTick) {
-					it.remove();
+			List<LocatedEvent> matches = new ArrayList<>();
+			
+			for(long frameId = Math.max(oldestFrameId, newestFrameId-FRAMES_KEPT+1); frameId <= newestFrameId; frameId++) {
+				FrameEvents fe = frames[slot(frameId)];
+				if(fe.frame != frameId || fe.located.isEmpty()) { continue; }
+				
+				if(numBuckets >= fe.located.size()) {
+					// Fewer events than buckets (for example, a view of the whole world), so just check every event
+					for(LocatedEvent le : fe.located) {
+						if(Position.containedInBox(le.location, x, y, width, height)) {
+							result.add(le.event);
+						}
+					}
+					continue;
+				}
+				
+				matches.clear();
+				for(int by = bucketY1; by <= bucketY2; by++) {
+					for(int bx = bucketX1; bx <= bucketX2; bx++) {
+						List<LocatedEvent> bucket = fe.buckets.get(bucketKey(bx, by));
+						if(bucket == null) { continue; }
+						
+						for(LocatedEvent le : bucket) {
+							if(Position.containedInBox(le.location, x, y, width, height)) {
+								matches.add(le);
+							}
+						}
+					}
+				}
+				
+				if(numBuckets > 1) {
+					// Restore the order in which the events were added
+					matches.sort( (a, b) -> Integer.compare(a.index, b.index) );
+				}
+				
+				for(LocatedEvent le : matches) {
+					result.add(le.event);
 				}
 			}
+			
+			return result;
 		}
 		
-		public List<IEvent> getAll() {
-			return eventMap.entrySet().stream().flatMap(e -> e.getValue().stream()).collect(Collectors.toList());
+		private static int slot(long frameId) {
+			return (int)Math.floorMod(frameId, (long)FRAMES_KEPT);
 		}
 		
-		public List<IEvent> getList(long frameId) {
-			List<IEvent> result = eventMap.get(frameId);
-			if(result == null) {
-				result = new ArrayList<IEvent>();
-				eventMap.put(frameId, result);
+		private static long bucketKey(int bucketX, int bucketY) {
+			return ((long)bucketX << 32) | (bucketY & 0xFFFFFFFFL);
+		}
+		
+		/** The events of a single frame */
+		private static final class FrameEvents {
+			
+			private long frame = -1;
+			
+			private final List<IEvent> events = new ArrayList<>();
+			
+			/** The events that have a location, in the same order as 'events' */
+			private final List<LocatedEvent> located = new ArrayList<>();
+			
+			private final HashMap<Long /* bucket key */, List<LocatedEvent>> buckets = new HashMap<>();
+			
+			void add(IEvent e) {
+				events.add(e);
+				
+				Position location = e.getWorldLocation();
+				if(location == null) { return; }
+				
+				LocatedEvent le = new LocatedEvent(e, location, located.size());
+				located.add(le);
+				
+				long key = bucketKey(Math.floorDiv(location.getX(), BUCKET_SIZE), Math.floorDiv(location.getY(), BUCKET_SIZE));
+				List<LocatedEvent> bucket = buckets.get(key);
+				if(bucket == null) {
+					bucket = new ArrayList<>();
+					buckets.put(key, bucket);
+				}
+				bucket.add(le);
 			}
-			return result;
-		}		
+			
+			void reset(long frame) {
+				this.frame = frame;
+				events.clear();
+				located.clear();
+				buckets.clear();
+			}
+		}
+		
+		/** An event, and its location at the time it was added (the location of some events follows a creature, which may since have moved) */
+		private static final class LocatedEvent {
+			final IEvent event;
+			final Position location;
+			final int index;
+			
+			LocatedEvent(IEvent event, Position location, int index) {
+				this.event = event;
+				this.location = location;
+				this.index = index;
+			}
+		}
 	}
 	
 	/** Wraps the execution of the game in a new thread, to allow us to control the context 
@@ -42,6 +42,9 @@ import com.roguecloud.utils.RoomList.TilePair;
  * */
 public final class ServerInstance {
 	
+	/** There is only one server instance per JVM (see ServerInstanceList) */
+	public static final int ID = 0;
+	
 	private final Logger log = Logger.getInstance();
 
 	private final Object lock = new Object();
@@ -123,7 +126,7 @@ public final class ServerInstance {
 	}
 	
 	public int getId() {
-		return 0;
+		return ID;
 	}
 	
 	public ArmourList getArmourList() {
@@ -206,7 +206,7 @@ public class WorldGeneration {
 	}
 
 	
-	public static List<Monster> generatePairedItemsAndMonsters(ServerInstance parent, UniqueIdGenerator idGen, RCArrayMap map, 
+	public static List<Monster> generatePairedItemsAndMonsters(ServerInstance parent, UniqueIdGenerator idGen, IMutableMap map, 
 			List<GroundObject> goList, final int monstersToGenerate, final int itemsToGenerate, List<RoomSpawn> roomSpawnList,
 			List<AIContext> aiContextList) {
 		
@@ -268,7 +268,7 @@ public class WorldGeneration {
 	}
 	
 	
-	public static GroundObject generateItemAtPosition(ServerInstance parent, UniqueIdGenerator idGen, RCArrayMap map, Position newPos, List<GroundObject> goList) {
+	public static GroundObject generateItemAtPosition(ServerInstance parent, UniqueIdGenerator idGen, IMutableMap map, Position newPos, List<GroundObject> goList) {
 		IObject newObj = null;
 		
 		double randVal = Math.random();
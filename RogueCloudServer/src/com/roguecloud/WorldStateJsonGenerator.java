@@ -23,7 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import com.roguecloud.GameEngine.GameContext;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.roguecloud.creatures.ICreature;
 import com.roguecloud.creatures.PlayerCreature;
 import com.roguecloud.events.CombatActionEvent;
@@ -40,8 +40,11 @@ import com.roguecloud.items.IGroundObject;
 import com.roguecloud.items.IObject;
 import com.roguecloud.items.IObject.ObjectType;
 import com.roguecloud.items.Weapon;
+import com.roguecloud.json.BinaryFrameUpdateCodec;
 import com.roguecloud.json.JsonAbstractTypedMessage;
+import com.roguecloud.json.JsonCreatureDelta;
 import com.roguecloud.json.JsonDoorProperty;
+import com.roguecloud.json.JsonEffect;
 import com.roguecloud.json.JsonPosition;
 import com.roguecloud.json.JsonVisibleCreature;
 import com.roguecloud.json.JsonVisibleObject;
@@ -52,6 +55,7 @@ import com.roguecloud.map.IMap;
 import com.roguecloud.map.ITileProperty;
 import com.roguecloud.map.ITileProperty.TilePropertyType;
 import com.roguecloud.map.Tile;
+import com.roguecloud.map.TileSerializationCache;
 import com.roguecloud.map.TileType;
 import com.roguecloud.utils.LogContext;
 import com.roguecloud.utils.Logger;
@@ -60,10 +64,31 @@ public class WorldStateJsonGenerator {
 	
 	private static final Logger log = Logger.getInstance();
 	
+	/**
+	 * Generate the world state update for a single agent client. 
+	 * 
+	 * This method may be called concurrently for different clients (on threads other than the game thread), so it must 
+	 * not mutate shared state: the map should be a read-only clone, the events are shared between all clients, and the
+	 * only EngineWebsocketState methods called are reads. The IDs of objects that are sent to the player for the first time 
+	 * are added to 'newlySeenObjectIds', to be recorded in the EngineWebsocketState (via putObjectSeenByPlayer(...)) by 
+	 * the caller once the update is sent.
+	 * 
+	 * Likewise, every creature that is sent is added to 'sentCreatures', to be recorded by the caller (via 
+	 * setCreaturesSentToPlayer(...)) once the update is sent. 
+	 * 
+	 * @param previousEvents The events of the previous frame (previousFrame) that are within the view are sent, or, if 
+	 *    sendFullFrame is true, those of every previous frame that is kept.
+	 * @param tileCache Shared by all clients; tiles are encoded once and reused by every view that contains them.
+	 * @param binaryTileCache If non-null, the view frame tiles are encoded with BinaryFrameUpdateCodec.encodeTile(...) 
+	 *    (using this cache) rather than as JSON, for clients that negotiated the binary encoding.
+	 * @param previousCreatures If non-null, the creatures sent in the client's previous frame (as they were sent): creatures 
+	 *    that are in this map are sent as a JsonCreatureDelta of their changed fields (if any), and creatures that are no longer 
+	 *    visible are listed in removedCreatureIds. If null, every creature is sent in full.
+	 */
 	public static JsonWorldState generateJsonWorldState(int clientWidth, int clientHeight, EngineWebsocketState ews, IMap map, 
-			List<Position> changedTiles, GameContext gc, LogContext lc, RoundScope roundScope, boolean sendFullFrame) {
-		
-		RCRuntime.assertGameThread();
+			List<Position> changedTiles, GameEngine.PreviousEvents previousEvents, long previousFrame, LogContext lc, RoundScope roundScope, boolean sendFullFrame, 
+			List<Long> newlySeenObjectIds, TileSerializationCache<RawValue> tileCache, TileSerializationCache<byte[]> binaryTileCache, 
+			Map<Long, JsonVisibleCreature> previousCreatures, Map<Long, JsonVisibleCreature> sentCreatures) {
 		
 		ICreature creature = ews.getPlayerCreature();
 		
@@ -89,25 +114,14 @@ public class WorldStateJsonGenerator {
 		// This list may contain not only events from the current frame, but also events from (potentially many) previous frames as well.
 		List<IMutableEvent> eventsToSend = new ArrayList<>();
 		{
+			long oldestFrame = sendFullFrame ? previousFrame-GameEngine.PreviousEvents.FRAMES_KEPT+1 : previousFrame;
 			
-			List<IEvent> evList;
-			
-			if(!sendFullFrame) {
-				evList = gc.eventsPreviousFrames.getList(gc.getTicks()-1);
-			} else {
-				evList = gc.eventsPreviousFrames.getAll();
-			}
-			
-			for(IEvent e : evList) {
+			// Only the events that are visible to the creature
+			for(IEvent e : previousEvents.getEventsInBox(oldestFrame, previousFrame, jws.getClientViewPosX(), jws.getClientViewPosY(), 
+					jws.getClientViewWidth(), jws.getClientViewHeight())) {
 				
-				// Is the event visible to the creature?
-				if(Position.containedInBox(e.getWorldLocation(), 
-						jws.getClientViewPosX(), jws.getClientViewPosY(), 
-						jws.getClientViewWidth(), jws.getClientViewHeight())) {
-					
-					eventsToSend.add((IMutableEvent)e);
-				}
-			}	
+				eventsToSend.add((IMutableEvent)e);
+			}
 		}
 
 		// Send visible things
@@ -216,16 +230,38 @@ public class WorldStateJsonGenerator {
 				
 			}
 			
+			if(previousCreatures != null) {
+				jws.setCreatureDeltas(true);
+			}
+			
 			for(ICreature otherCreature : creaturesToSend.values()) {
 				JsonVisibleCreature jvc = convertCreatureToJson(otherCreature, weaponsToSend, armourToSend);
-				visibleCreatures.add(jvc);
+				sentCreatures.put(jvc.getCreatureId(), jvc);
+				
+				JsonVisibleCreature previous = previousCreatures != null ? previousCreatures.get(jvc.getCreatureId()) : null;
+				if(previous == null) {
+					visibleCreatures.add(jvc);
+				} else {
+					JsonCreatureDelta delta = convertCreatureToDelta(previous, jvc);
+					if(delta != null) {
+						jws.getChangedCreatures().add(delta);
+					}
+				}
+			}
+			
+			if(previousCreatures != null) {
+				for(Long creatureId : previousCreatures.keySet()) {
+					if(!creaturesToSend.containsKey(creatureId)) {
+						jws.getRemovedCreatureIds().add(creatureId);
+					}
+				}
 			}
 			
 			for(Weapon w : weaponsToSend) {
 				if(!ews.isObjectSeenByPlayer(w.getId()) && !objectsToSend.containsKey(w.getId())) {
 					jws.getWeapons().add(w.toJson());
 					objectsToSend.put(w.getId(), true);
-					ews.putObjectSeenByPlayer(w.getId());
+					newlySeenObjectIds.add(w.getId());
 				}
 			}
 			
@@ -233,7 +269,7 @@ public class WorldStateJsonGenerator {
 				if(!ews.isObjectSeenByPlayer(a.getId()) && !objectsToSend.containsKey(a.getId())) {
 					jws.getArmours().add(a.toJson());
 					objectsToSend.put(a.getId(), true);
-					ews.putObjectSeenByPlayer(a.getId());
+					newlySeenObjectIds.add(a.getId());
 				}
 			}
 			
@@ -241,7 +277,7 @@ public class WorldStateJsonGenerator {
 				if(!ews.isObjectSeenByPlayer(di.getId()) && !objectsToSend.containsKey(di.getId())) {
 					jws.getDrinkables().add(di.toJson());
 					objectsToSend.put(di.getId(), true);
-					ews.putObjectSeenByPlayer(di.getId());					
+					newlySeenObjectIds.add(di.getId());					
 				}
 			}
 		
@@ -276,7 +312,7 @@ public class WorldStateJsonGenerator {
 					for(int x = jws.getClientViewPosX(); x < jws.getClientViewPosX()+jws.getClientViewWidth(); x++) {
 						
 						Tile t = map.getTile(x, y);
-						jvf.getData().add(convertSingle(t));
+						jvf.getData().add(convertSingle(x, y, t, tileCache, binaryTileCache));
 						
 					}
 				}
@@ -299,7 +335,7 @@ public class WorldStateJsonGenerator {
 						for(int x = jws.getClientViewPosX()+jws.getClientViewWidth()-deltaX; x < jws.getClientViewPosX()+jws.getClientViewWidth(); x++) {
 							
 							Tile t = map.getTile(x, y);
-							jvf.getData().add(convertSingle(t));
+							jvf.getData().add(convertSingle(x, y, t, tileCache, binaryTileCache));
 							
 						}
 					}
@@ -319,7 +355,7 @@ public class WorldStateJsonGenerator {
 						for(int x = jws.getClientViewPosX(); x < jws.getClientViewPosX()+Math.abs(deltaX); x++) {
 							
 							Tile t = map.getTile(x, y);		
-							jvf.getData().add(convertSingle(t));
+							jvf.getData().add(convertSingle(x, y, t, tileCache, binaryTileCache));
 							
 						}
 					}
@@ -338,7 +374,7 @@ public class WorldStateJsonGenerator {
 						for(int x = jws.getClientViewPosX(); x < jws.getClientViewPosX()+jws.getClientViewWidth(); x++) {
 							
 							Tile t = map.getTile(x, y);
-							jvf.getData().add(convertSingle(t));
+							jvf.getData().add(convertSingle(x, y, t, tileCache, binaryTileCache));
 							
 						}
 					}
@@ -357,7 +393,7 @@ public class WorldStateJsonGenerator {
 						for(int x = jws.getClientViewPosX(); x < jws.getClientViewPosX()+jws.getClientViewWidth(); x++) {
 							
 							Tile t = map.getTile(x, y);		
-							jvf.getData().add(convertSingle(t));
+							jvf.getData().add(convertSingle(x, y, t, tileCache, binaryTileCache));
 							
 						}
 					}
@@ -383,7 +419,7 @@ public class WorldStateJsonGenerator {
 				jvf.setH(1);
 				
 				Tile t = map.getTile(p);
-				jvf.getData().add(convertSingle(t));
+				jvf.getData().add(convertSingle(p.getX(), p.getY(), t, tileCache, binaryTileCache));
 				
 				frameList.add(jvf);
 
@@ -409,45 +445,53 @@ public class WorldStateJsonGenerator {
 		}
 	}
 	
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private static ArrayList<Object> convertSingle(Tile t) {
+	/** Return the encoded tile at (x, y) from the cache, encoding and caching it if it is not already present: binary, if 
+	 * binaryTileCache is non-null, otherwise JSON. */
+	private static Object convertSingle(int x, int y, Tile t, TileSerializationCache<RawValue> tileCache, TileSerializationCache<byte[]> binaryTileCache) {
 		
-		TileType[] ttArr = t.getTileTypeLayers();
+		if(binaryTileCache != null) {
+			byte[] result = binaryTileCache.get(x, y, t, 0);
+			if(result == null) {
+				result = BinaryFrameUpdateCodec.encodeTile(t);
+				binaryTileCache.put(x, y, t, 0, result);
+			}
+			return result;
+		}
+		
+		RawValue result = tileCache.get(x, y, t, 0);
+		if(result == null) {
+			result = new RawValue(convertSingle(t));
+			tileCache.put(x, y, t, 0, result);
+		}
+		
+		return result;
+	}
+	
+	/** Encode the tile as JSON: [ passable, [ number, (rotation)], [ number, (rotation)], ... ], with one inner array per tile layer.  */
+	private static String convertSingle(Tile t) {
 		
-		ArrayList outer = new ArrayList();
-//		// [
-		boolean passable = t.isPresentlyPassable();
-//		if(!passable) {
-			outer.add(passable ? 1 : 0);
-//		}
+		TileType[] ttArr = t.getTileTypeLayers();
 		
+		StringBuilder sb = new StringBuilder(8+ttArr.length*12);
+		sb.append('[');
+		sb.append(t.isPresentlyPassable() ? 1 : 0);
 		
 		for(int c = 0; c < ttArr.length; c++) {			
-//			JsonArrayBuilder tileLayer = Json.createArrayBuilder();
-			// [
-			
 			// For each tile layer
 			TileType tt = ttArr[c];
 			
+			sb.append(",[");
+			sb.append(tt.getNumber());
 			if(tt.getRotation() != 0) {
 				// [ number, rotation], 
-				ArrayList al = new ArrayList();
-				al.add(tt.getNumber());
-				al.add(tt.getRotation());
-				outer.add(al);
-			} else{
-				// [ number],
-				ArrayList al = new ArrayList();
-				al.add(tt.getNumber());
-				outer.add(al);
+				sb.append(',');
+				sb.append(tt.getRotation());
 			}
-			
-			// ]
-//			outer = outer.add(tileLayer);
+			sb.append(']');
 		}
 		
-		// ]
-		return outer;
+		sb.append(']');
+		return sb.toString();
 		
 	}
 
@@ -481,6 +525,63 @@ public class WorldStateJsonGenerator {
 
 		return jvc;
 	}
+	
+	/** Return the fields of 'curr' that differ from 'previous' (the same creature, as it was last sent), or null if none differ. */
+	private static JsonCreatureDelta convertCreatureToDelta(JsonVisibleCreature previous, JsonVisibleCreature curr) {
+		JsonCreatureDelta delta = new JsonCreatureDelta(curr.getCreatureId());
+		boolean changed = false;
+		
+		if(previous.getPosition().getX() != curr.getPosition().getX() || previous.getPosition().getY() != curr.getPosition().getY()) {
+			delta.setPosition(curr.getPosition());
+			changed = true;
+		}
+		
+		if(previous.getCurrHp() != curr.getCurrHp()) {
+			delta.setCurrHp(curr.getCurrHp());
+			changed = true;
+		}
+		
+		if(previous.getMaxHp() != curr.getMaxHp()) {
+			delta.setMaxHp(curr.getMaxHp());
+			changed = true;
+		}
+		
+		if(previous.getLevel() != curr.getLevel()) {
+			delta.setLevel(curr.getLevel());
+			changed = true;
+		}
+		
+		if(previous.getWeaponId() != curr.getWeaponId()) {
+			delta.setWeaponId(curr.getWeaponId());
+			changed = true;
+		}
+		
+		if(!previous.getArmourIds().equals(curr.getArmourIds())) {
+			delta.setArmourIds(curr.getArmourIds());
+			changed = true;
+		}
+		
+		if(!effectsEqual(previous.getEffects(), curr.getEffects())) {
+			delta.setEffects(curr.getEffects());
+			changed = true;
+		}
+		
+		return changed ? delta : null;
+	}
+	
+	private static boolean effectsEqual(List<JsonEffect> one, List<JsonEffect> two) {
+		if(one.size() != two.size()) { return false; }
+		
+		for(int x = 0; x < one.size(); x++) {
+			JsonEffect a = one.get(x);
+			JsonEffect b = two.get(x);
+			if(!a.getType().equals(b.getType()) || a.getRemainingTurns() != b.getRemainingTurns() || a.getMagnitude() != b.getMagnitude()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
 
 
 }
@@ -32,8 +32,9 @@ import com.roguecloud.client.WorldState;
 import com.roguecloud.creatures.ICreature;
 import com.roguecloud.map.IMap;
 import com.roguecloud.utils.AIUtils;
-import com.roguecloud.utils.FastPathSearch;
+import com.roguecloud.utils.InterruptiblePathSearch;
 import com.roguecloud.utils.Logger;
+import com.roguecloud.utils.MonsterMachine;
 import com.roguecloud.utils.ServerUtil;
 
 /** 
@@ -59,6 +60,9 @@ public class StationaryGuardAndChaseAI extends MonsterClient {
 	
 	private ChasingData chasingData = null;
 	private MovingBackData movingBackData = null;
+	
+	/** Path search which is bounded by our MonsterMachine time slice, and resumed on the next tick if it does not complete. */
+	private final InterruptiblePathSearch pathSearch = new InterruptiblePathSearch();
 		
 	@Override
 	public void stateUpdate(SelfState selfState, WorldState worldState, IEventLog eventLog) {
@@ -94,7 +98,7 @@ public class StationaryGuardAndChaseAI extends MonsterClient {
 	private IAction findNextMove(SelfState selfState, WorldState worldState, IEventLog eventLog, boolean lastMoveFailed) {
 
 		if(current == State.GUARDING) {
-			AIUtils.findCreaturesInRange(10, worldState.getMap(), selfState.getPlayer().getPosition())
+			AIUtils.findCreaturesInRange(10, worldState, selfState.getPlayer().getPosition())
 				.stream()
 				.filter(e -> e.isPlayerCreature())
 				.findFirst().ifPresent( e -> {
@@ -143,7 +147,12 @@ public class StationaryGuardAndChaseAI extends MonsterClient {
 		// If we have no steps to follow, then try to find a path back to 'positionIAmGuarding'
 		if(movingBackData.nextSteps == null) {
 			
-			List<Position> p = FastPathSearch.doSearchWithAStar(selfState.getPlayer().getPosition(), positionIAmGuarding, ServerUtil.maxAStarSearch(worldState.getMap()), worldState.getMap());
+			List<Position> p = pathSearch.doSearch(selfState.getPlayer().getPosition(), positionIAmGuarding, ServerUtil.maxAStarSearch(worldState.getMap()), worldState, MonsterMachine.getSliceDeadlineInNanos());
+			if(p == null) {
+				// Out of time: continue the search on the next tick
+				return NullAction.INSTANCE;
+			}
+			
 			if(p.size() > 0) {
 				p.remove(0);
 				movingBackData.nextSteps = p;
@@ -198,8 +207,8 @@ public class StationaryGuardAndChaseAI extends MonsterClient {
 		
 		if(data.nextSteps == null) {
 			
-			List<Position> path = FastPathSearch.doSearchWithAStar(me.getPosition(), data.creatureToAttack.getPosition(), ServerUtil.maxAStarSearch(map), worldState.getMap());
-			if(path.size() > 1) {
+			List<Position> path = pathSearch.doSearch(me.getPosition(), data.creatureToAttack.getPosition(), ServerUtil.maxAStarSearch(map), worldState, MonsterMachine.getSliceDeadlineInNanos());
+			if(path != null && path.size() > 1) {
 				path.remove(0); // Always remove the first, as it is the player's current pos
 				
 				data.nextSteps = path;
@@ -35,8 +35,10 @@ import com.roguecloud.client.WorldState;
 import com.roguecloud.creatures.ICreature;
 import com.roguecloud.map.Tile;
 import com.roguecloud.utils.AIUtils;
-import com.roguecloud.utils.FastPathSearch;
+import com.roguecloud.utils.InterruptiblePathSearch;
 import com.roguecloud.utils.Logger;
+import com.roguecloud.utils.MonsterMachine;
+import com.roguecloud.utils.NavigationGraph;
 import com.roguecloud.utils.ServerUtil;
 
 /**
@@ -58,6 +60,12 @@ public class WanderingAttackAllAI extends MonsterClient {
 	private WanderingData wanderingData = null;
 	private AttackingData attackingData = null;
 
+	/** Path search which is bounded by our MonsterMachine time slice, and resumed on the next tick if it does not complete. */
+	private final InterruptiblePathSearch pathSearch = new InterruptiblePathSearch();
+	
+	/** Wander targets that are further away than this (in tiles) are found using the NavigationGraph's region graph */
+	private static final int REGION_GRAPH_MIN_DISTANCE = 32;
+	
 	
 	/** May be null */
 	private final Position wanderPointFixedTopLeft;
@@ -160,9 +168,13 @@ public class WanderingAttackAllAI extends MonsterClient {
 				if(data.nextSteps == null || data.nextSteps.size() == 0) {
 					data.nextSteps = null;
 					
-					List<Position> path = FastPathSearch.doSearchWithAStar(us.getPosition(), toAttacker.getPosition(), ServerUtil.maxAStarSearch(worldState.getMap()), worldState.getMap());
+					List<Position> path = pathSearch.doSearch(us.getPosition(), toAttacker.getPosition(), ServerUtil.maxAStarSearch(worldState.getMap()), worldState, MonsterMachine.getSliceDeadlineInNanos());
 					
-					if(path != null && path.size() > 0) {
+					if(path == null) {
+						// Out of time: continue the search on the next tick
+						return NullAction.INSTANCE;
+						
+					} else if(path.size() > 0) {
 						path.remove(0);
 						data.nextSteps = path;
 					} else {
@@ -183,7 +195,7 @@ public class WanderingAttackAllAI extends MonsterClient {
 				
 			} else {
 				
-				List<Position> path = FastPathSearch.doSearchWithAStar(us.getPosition(), toAttacker.getPosition(), ServerUtil.maxAStarSearch(worldState.getMap()), worldState.getMap());
+				List<Position> path = pathSearch.doSearch(us.getPosition(), toAttacker.getPosition(), ServerUtil.maxAStarSearch(worldState.getMap()), worldState, MonsterMachine.getSliceDeadlineInNanos());
 				if(path != null && path.size() > 1) {
 					path.remove(0);
 					return new StepAction(path.remove(0));
@@ -210,12 +222,13 @@ public class WanderingAttackAllAI extends MonsterClient {
 				if(Position.containedInBoxCoords(selfState.getPlayer().getPosition(), wanderPointFixedTopLeft.getX(), wanderPointFixedTopLeft.getY(), wanderPointFixedBottomRight.getX(), wanderPointFixedBottomRight.getY() )) {
 					// Only attack creatures in the wander box (this is useful for guarding monsters)
 					creatures = AIUtils.findCreaturesInRectangle(wanderPointFixedTopLeft.getX(), wanderPointFixedTopLeft.getY(), 
-							wanderPointFixedBottomRight.getX(), wanderPointFixedBottomRight.getY(), selfState.getPlayer().getPosition(), worldState.getMap());
+							wanderPointFixedBottomRight.getX(), wanderPointFixedBottomRight.getY(), selfState.getPlayer().getPosition(), worldState);
 				}
 				
 			} else {
-				// Attack any creature we can see
-				creatures = AIUtils.findCreaturesInRange(worldState.getViewWidth(), worldState.getViewHeight(), selfState.getPlayer().getPosition(), worldState.getMap());
+				// Attack the closest creature we can see
+				creatures = AIUtils.findClosestCreatures(worldState.getViewWidth(), worldState.getViewHeight(), selfState.getPlayer().getPosition(), 1, 
+						attackOtherMonsters ? null : e -> e.isPlayerCreature(), worldState);
 			}
 			
 			if(!attackOtherMonsters) {
@@ -268,16 +281,32 @@ public class WanderingAttackAllAI extends MonsterClient {
 
 			Position targetPos = new Position(x, y);
 			
+			if(pathSearch.isSearchInProgress()) {
+				// Continue towards the target of the search that was interrupted on a previous tick
+				targetPos = pathSearch.getInProgressGoal();
+			}
+			
+			Position ourPos = selfState.getPlayer().getPosition();
+			NavigationGraph navigation = worldState.getNavigationGraph();
+			
 			Tile t = worldState.getMap().getTile(targetPos);
 			if(t != null && t.isPresentlyPassable()) {
 		
-				List<Position> l = FastPathSearch.doSearchWithAStar(selfState.getPlayer().getPosition(), targetPos, worldState.getMap());
+				List<Position> l;
+				if(navigation != null && !pathSearch.isSearchInProgress() && ourPos.manhattanDistanceBetween(targetPos) > REGION_GRAPH_MIN_DISTANCE) {
+					// Distant targets are found using the region graph, rather than an A* search of every tile in between
+					l = navigation.findPath(ourPos, targetPos, worldState.getMap());
+				} else {
+					l = pathSearch.doSearch(ourPos, targetPos, Long.MAX_VALUE, worldState.getMap(), navigation, MonsterMachine.getSliceDeadlineInNanos());
+				}
 				if(l != null && l.size() > 0) {
 					// Remove the first element, which is the current square
 					l.remove(0);
 					data.nextSteps = l;
 				}
 				
+			} else {
+				pathSearch.abandon();
 			}
 			
 		}
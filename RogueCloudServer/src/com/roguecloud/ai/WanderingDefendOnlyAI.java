@@ -37,7 +37,9 @@ import com.roguecloud.events.IEvent.EventType;
 import com.roguecloud.map.Tile;
 import com.roguecloud.utils.AIUtils;
 import com.roguecloud.utils.FastPathSearch;
+import com.roguecloud.utils.InterruptiblePathSearch;
 import com.roguecloud.utils.Logger;
+import com.roguecloud.utils.MonsterMachine;
 import com.roguecloud.utils.ServerUtil;
 
 /** 
@@ -62,6 +64,9 @@ public class WanderingDefendOnlyAI extends MonsterClient {
 	private WanderingData wanderingData = null;
 	private AttackingData attackingData = null;
 	
+	/** Path search which is bounded by our MonsterMachine time slice, and resumed on the next tick if it does not complete. */
+	private final InterruptiblePathSearch pathSearch = new InterruptiblePathSearch();
+	
 	/** May be null */
 	private final Position fixedPoint;
 	
@@ -147,8 +152,12 @@ public class WanderingDefendOnlyAI extends MonsterClient {
 				if(data.nextSteps == null || data.nextSteps.size() == 0) {
 					data.nextSteps = null;
 					
-					List<Position> path = FastPathSearch.doSearchWithAStar(us.getPosition(), toAttacker.getPosition(), ServerUtil.maxAStarSearch(worldState.getMap()), worldState.getMap());
-					if(path != null && path.size() > 0) {
+					List<Position> path = pathSearch.doSearch(us.getPosition(), toAttacker.getPosition(), ServerUtil.maxAStarSearch(worldState.getMap()), worldState, MonsterMachine.getSliceDeadlineInNanos());
+					if(path == null) {
+						// Out of time: continue the search on the next tick
+						return NullAction.INSTANCE;
+					}
+					if(path.size() > 0) {
 						path.remove(0);
 						data.nextSteps = path;
 					}					
@@ -162,7 +171,7 @@ public class WanderingDefendOnlyAI extends MonsterClient {
 				
 			} else {
 				
-				List<Position> path = FastPathSearch.doSearchWithAStar(us.getPosition(), toAttacker.getPosition(), ServerUtil.maxAStarSearch(worldState.getMap()), worldState.getMap());
+				List<Position> path = pathSearch.doSearch(us.getPosition(), toAttacker.getPosition(), ServerUtil.maxAStarSearch(worldState.getMap()), worldState, MonsterMachine.getSliceDeadlineInNanos());
 				if(path != null && path.size() > 1) {
 					path.remove(0);
 					return new StepAction(path.remove(0));
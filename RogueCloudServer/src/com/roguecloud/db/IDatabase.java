@@ -49,12 +49,24 @@ public interface IDatabase {
 	
 	public void createOrUpdateDbLeaderboardEntry(DbLeaderboardEntry le);
 	
+	/** Equivalent to calling createOrUpdateDbLeaderboardEntry(...) on each entry, but the entries are applied together. */
+	public void createOrUpdateDbLeaderboardEntries(List<DbLeaderboardEntry> entries);
+	
+	/** Returns the entries of the round, sorted descending by score. */
 	public List<DbLeaderboardEntry> getLeaderboardEntriesForARound(long roundId);
 	
+	/** Returns all entries, sorted descending by score. */
 	public List<DbLeaderboardEntry> getBestOverallLeaderboardEntries();
 	
+	/** Returns the first 'maxEntries' entries of getBestOverallLeaderboardEntries(). */
+	public List<DbLeaderboardEntry> getBestOverallLeaderboardEntries(int maxEntries);
+	
+	/** Returns the entries of the most recent 'numPreviousRounds' rounds, sorted descending by score. */
 	public List<DbLeaderboardEntry> getBestPreviousXRoundsOfLeaderboardEntries(long numPreviousRounds);
 	
+	/** Returns the first 'maxEntries' entries of getBestPreviousXRoundsOfLeaderboardEntries(numPreviousRounds). */
+	public List<DbLeaderboardEntry> getBestPreviousXRoundsOfLeaderboardEntries(long numPreviousRounds, int maxEntries);
+	
 	public List<DbLeaderboardEntry> getAllLeaderboardEntriesForUser(long id);
 	
 	public List<DbLeaderboardEntry> getAllLeaderboardEntriesForUserAndRound(long id, long roundId);
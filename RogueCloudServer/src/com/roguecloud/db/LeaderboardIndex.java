@@ -0,0 +1,368 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.db;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * The leaderboard entries of MemoryDatabase, indexed so that leaderboard queries do not need to scan or sort every entry.
+ * Entries are held in three order-statistic trees (treaps, where each node also stores the size of its subtree):
+ *
+ * - All entries, sorted descending by score: the top N entries are read in order, and the rank of an entry is found in O(log n).
+ * - Sorted by round, then descending by score: the entries of a round (or a range of rounds) are read in order.
+ * - Sorted by user, then descending by score: the entries of a user are read in order, the first being their best.
+ *
+ * Entries are sorted descending by score, then ascending by round id, then by user id, so that every entry (which is unique by
+ * user id and round id) has a single position. Entries must not be modified while they are in the index.
+ *
+ * Instances are immutable: add(...) and remove(...) return a new index, which shares all but O(log n) nodes of each tree with
+ * this one. This allows MemoryDatabase to publish each version of the index to readers, who may then read it without locking.
+ */
+final class LeaderboardIndex {
+
+	static final Comparator<DbLeaderboardEntry> DESCENDING_BY_SCORE = (a, b) -> {
+		if(a.getScore() != b.getScore()) {
+			return a.getScore() > b.getScore() ? -1 : 1;
+		}
+		if(a.getRoundId() != b.getRoundId()) {
+			return a.getRoundId() < b.getRoundId() ? -1 : 1;
+		}
+		return Long.compare(a.getUserId(), b.getUserId());
+	};
+
+	private static final Comparator<DbLeaderboardEntry> BY_ROUND = (a, b) -> {
+		if(a.getRoundId() != b.getRoundId()) {
+			return a.getRoundId() < b.getRoundId() ? -1 : 1;
+		}
+		return DESCENDING_BY_SCORE.compare(a, b);
+	};
+
+	private static final Comparator<DbLeaderboardEntry> BY_USER = (a, b) -> {
+		if(a.getUserId() != b.getUserId()) {
+			return a.getUserId() < b.getUserId() ? -1 : 1;
+		}
+		return DESCENDING_BY_SCORE.compare(a, b);
+	};
+
+	static final LeaderboardIndex EMPTY = new LeaderboardIndex(null, null, null);
+
+	private final Node byScore;
+	private final Node byRound;
+	private final Node byUser;
+
+	private LeaderboardIndex(Node byScore, Node byRound, Node byUser) {
+		this.byScore = byScore;
+		this.byRound = byRound;
+		this.byUser = byUser;
+	}
+
+	/** Return a new index that also contains the entry; the index must not already contain an entry with the same user id and round id. */
+	public LeaderboardIndex add(DbLeaderboardEntry e) {
+		int priority = priority(e);
+		return new LeaderboardIndex(insert(byScore, e, priority, DESCENDING_BY_SCORE), insert(byRound, e, priority, BY_ROUND),
+				insert(byUser, e, priority, BY_USER));
+	}
+
+	/** Return a new index without the entry (compared by identity), or this index if the entry was not found. */
+	public LeaderboardIndex remove(DbLeaderboardEntry e) {
+		if(get(e.getUserId(), e.getRoundId()) != e) {
+			return this;
+		}
+		return new LeaderboardIndex(delete(byScore, e, DESCENDING_BY_SCORE), delete(byRound, e, BY_ROUND), delete(byUser, e, BY_USER));
+	}
+
+	/** Return the entry for the given user and round, or null if not found. */
+	public DbLeaderboardEntry get(long userId, long roundId) {
+		DbLeaderboardEntry[] result = new DbLeaderboardEntry[1];
+		forEachFrom(byUser, firstOfUser(userId), BY_USER, e -> {
+			if(e.getUserId() != userId) {
+				return false;
+			}
+			if(e.getRoundId() == roundId) {
+				result[0] = e;
+				return false;
+			}
+			return true;
+		});
+		return result[0];
+	}
+
+	/** The entry with the highest score of the given user, or null if the user has no entries. */
+	public DbLeaderboardEntry getBestOfUser(long userId) {
+		DbLeaderboardEntry[] result = new DbLeaderboardEntry[1];
+		forEachFrom(byUser, firstOfUser(userId), BY_USER, e -> {
+			if(e.getUserId() == userId) {
+				result[0] = e;
+			}
+			return false;
+		});
+		return result[0];
+	}
+
+	/** The position (starting at 1) of the entry in the list of all entries, sorted by DESCENDING_BY_SCORE. */
+	public long getRank(DbLeaderboardEntry e) {
+		long before = 0;
+		Node n = byScore;
+		while(n != null) {
+			if(DESCENDING_BY_SCORE.compare(e, n.entry) <= 0) {
+				n = n.left;
+			} else {
+				before += size(n.left) + 1;
+				n = n.right;
+			}
+		}
+		return before + 1;
+	}
+
+	/** The first 'maxEntries' entries, sorted by DESCENDING_BY_SCORE. */
+	public List<DbLeaderboardEntry> getBest(int maxEntries) {
+		List<DbLeaderboardEntry> result = new ArrayList<>(Math.min(maxEntries, size(byScore)));
+		forEachFrom(byScore, null, DESCENDING_BY_SCORE, e -> {
+			result.add(e);
+			return result.size() < maxEntries;
+		});
+		return result;
+	}
+
+	/** The first 'maxEntries' entries of the rounds between firstRoundId and lastRoundId inclusive, sorted by DESCENDING_BY_SCORE. */
+	public List<DbLeaderboardEntry> getBestOfRounds(long firstRoundId, long lastRoundId, int maxEntries) {
+		List<DbLeaderboardEntry> result = new ArrayList<>();
+		if(firstRoundId > lastRoundId) {
+			return result;
+		}
+
+		// Split the range into the (already sorted) entries of each round...
+		List<List<DbLeaderboardEntry>> rounds = new ArrayList<>();
+		forEachFrom(byRound, firstOfRound(firstRoundId), BY_ROUND, e -> {
+			if(e.getRoundId() > lastRoundId) {
+				return false;
+			}
+			if(rounds.isEmpty() || rounds.get(rounds.size()-1).get(0).getRoundId() != e.getRoundId()) {
+				rounds.add(new ArrayList<>());
+			}
+			rounds.get(rounds.size()-1).add(e);
+			return true;
+		});
+
+		// ... then merge them
+		PriorityQueue<RoundCursor> queue = new PriorityQueue<>((a, b) -> DESCENDING_BY_SCORE.compare(a.current(), b.current()));
+		for(List<DbLeaderboardEntry> round : rounds) {
+			queue.offer(new RoundCursor(round));
+		}
+
+		while(!queue.isEmpty() && result.size() < maxEntries) {
+			RoundCursor cursor = queue.poll();
+			result.add(cursor.current());
+			cursor.index++;
+			if(cursor.index < cursor.round.size()) {
+				queue.offer(cursor);
+			}
+		}
+
+		return result;
+	}
+
+	/** The entries of the given round, sorted by DESCENDING_BY_SCORE. */
+	public List<DbLeaderboardEntry> getRound(long roundId) {
+		List<DbLeaderboardEntry> result = new ArrayList<>();
+		forEachFrom(byRound, firstOfRound(roundId), BY_ROUND, e -> {
+			if(e.getRoundId() != roundId) {
+				return false;
+			}
+			result.add(e);
+			return true;
+		});
+		return result;
+	}
+
+	/** The entries of the given user, sorted by DESCENDING_BY_SCORE. */
+	public List<DbLeaderboardEntry> getUser(long userId) {
+		List<DbLeaderboardEntry> result = new ArrayList<>();
+		forEachFrom(byUser, firstOfUser(userId), BY_USER, e -> {
+			if(e.getUserId() != userId) {
+				return false;
+			}
+			result.add(e);
+			return true;
+		});
+		return result;
+	}
+
+	/** The highest round id of any entry, or -1 if there are no entries. */
+	public long getMostRecentRoundId() {
+		Node n = byRound;
+		if(n == null) {
+			return -1;
+		}
+		while(n.right != null) {
+			n = n.right;
+		}
+		return n.entry.getRoundId();
+	}
+
+	public int size() {
+		return size(byScore);
+	}
+
+	/** An entry that sorts before every real entry of the round, in BY_ROUND */
+	private static DbLeaderboardEntry firstOfRound(long roundId) {
+		return new DbLeaderboardEntry(Long.MIN_VALUE, Long.MAX_VALUE, roundId, 0);
+	}
+
+	/** An entry that sorts before every real entry of the user, in BY_USER */
+	private static DbLeaderboardEntry firstOfUser(long userId) {
+		return new DbLeaderboardEntry(userId, Long.MAX_VALUE, Long.MIN_VALUE, 0);
+	}
+
+	/** A pseudo-random priority, derived from the primary key of the entry, so that the same entry has the same priority in each tree. */
+	private static int priority(DbLeaderboardEntry e) {
+		long z = e.getUserId() * 0x9E3779B97F4A7C15L + e.getRoundId();
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return (int)(z ^ (z >>> 31));
+	}
+
+	/** Visit the entries of the tree in order, starting with the first that is not before 'from' (or the first, if null), until the visitor returns false. */
+	private static void forEachFrom(Node root, DbLeaderboardEntry from, Comparator<DbLeaderboardEntry> order, Predicate<DbLeaderboardEntry> visitor) {
+		Deque<Node> stack = new ArrayDeque<>();
+
+		// The path to the first node, with each ancestor that follows it in order
+		Node n = root;
+		while(n != null) {
+			if(from == null || order.compare(n.entry, from) >= 0) {
+				stack.push(n);
+				n = n.left;
+			} else {
+				n = n.right;
+			}
+		}
+
+		while(!stack.isEmpty()) {
+			n = stack.pop();
+			if(!visitor.test(n.entry)) {
+				return;
+			}
+			n = n.right;
+			while(n != null) {
+				stack.push(n);
+				n = n.left;
+			}
+		}
+	}
+
+	private static Node insert(Node root, DbLeaderboardEntry e, int priority, Comparator<DbLeaderboardEntry> order) {
+		Node[] split = split(root, e, order);
+		return merge(merge(split[0], new Node(e, priority, null, null)), split[1]);
+	}
+
+	private static Node delete(Node root, DbLeaderboardEntry e, Comparator<DbLeaderboardEntry> order) {
+		// The entry is the first entry of the right-hand side of the split
+		Node[] split = split(root, e, order);
+		Node[] first = splitBySize(split[1], 1);
+		return merge(split[0], first[1]);
+	}
+
+	/** Split the tree into the nodes that are before 'e' (result[0]), and those that are not (result[1]). Copies the nodes on the path to 'e'. */
+	private static Node[] split(Node n, DbLeaderboardEntry e, Comparator<DbLeaderboardEntry> order) {
+		if(n == null) {
+			return new Node[] { null, null };
+		}
+		if(order.compare(n.entry, e) < 0) {
+			Node[] split = split(n.right, e, order);
+			return new Node[] { n.with(n.left, split[0]), split[1] };
+		} else {
+			Node[] split = split(n.left, e, order);
+			return new Node[] { split[0], n.with(split[1], n.right) };
+		}
+	}
+
+	/** Split the tree into the first 'count' nodes (result[0]), and the rest (result[1]). */
+	private static Node[] splitBySize(Node n, int count) {
+		if(n == null) {
+			return new Node[] { null, null };
+		}
+		if(size(n.left) < count) {
+			Node[] split = splitBySize(n.right, count - size(n.left) - 1);
+			return new Node[] { n.with(n.left, split[0]), split[1] };
+		} else {
+			Node[] split = splitBySize(n.left, count);
+			return new Node[] { split[0], n.with(split[1], n.right) };
+		}
+	}
+
+	/** Merge two trees, where every node of 'a' is before every node of 'b'. */
+	private static Node merge(Node a, Node b) {
+		if(a == null) { return b; }
+		if(b == null) { return a; }
+
+		if(a.priority > b.priority) {
+			return a.with(a.left, merge(a.right, b));
+		} else {
+			return b.with(merge(a, b.left), b.right);
+		}
+	}
+
+	private static int size(Node n) {
+		return n != null ? n.size : 0;
+	}
+
+	/** An immutable node of a treap: ordered by entry, and heap-ordered by (pseudo-random) priority, which keeps the tree balanced. */
+	private static final class Node {
+		private final DbLeaderboardEntry entry;
+		private final int priority;
+
+		private final Node left;
+		private final Node right;
+		private final int size;
+
+		Node(DbLeaderboardEntry entry, int priority, Node left, Node right) {
+			this.entry = entry;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+			this.size = size(left) + size(right) + 1;
+		}
+
+		/** A copy of this node with the given children */
+		Node with(Node newLeft, Node newRight) {
+			if(newLeft == left && newRight == right) {
+				return this;
+			}
+			return new Node(entry, priority, newLeft, newRight);
+		}
+	}
+
+	/** The next unmerged entry of a round; see getBestOfRounds(...) */
+	private static final class RoundCursor {
+		private final List<DbLeaderboardEntry> round;
+		private int index = 0;
+
+		RoundCursor(List<DbLeaderboardEntry> round) {
+			this.round = round;
+		}
+
+		DbLeaderboardEntry current() {
+			return round.get(index);
+		}
+	}
+}
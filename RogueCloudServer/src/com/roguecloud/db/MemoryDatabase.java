@@ -20,13 +20,14 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.roguecloud.db.cloudant.CloudantDbBackend;
-import com.roguecloud.db.file.FileDbBackend;
 import com.roguecloud.db.file.IDBBackend;
+import com.roguecloud.db.file.LogDbBackend;
 import com.roguecloud.utils.Logger;
 import com.roguecloud.utils.ServerUtil;
 
@@ -38,13 +39,21 @@ import com.roguecloud.utils.ServerUtil;
  * first use, and from there individual or bulk writes may be performed.
  * 
  * All writes to the database occur on a separate thread, MemoryDatabaseWriteThread. Only a single instance of this 
- * thread exists per database. Database objects added to the objectsToWrite list will be periodically extracted by the thread
- * and written to the backend database.
+ * thread exists per database. Created/updated database objects are queued (write-behind), with repeated writes to the same 
+ * object (same user id, or same user id and round id) coalesced into a single write, and the thread writes them to the 
+ * backend database in batches: once FLUSH_BATCH_SIZE objects are queued, or once the oldest queued object has waited 
+ * FLUSH_DELAY_IN_MSECS. Each batch is a single call to the backend for each object type (which LogDbBackend makes durable
+ * with a single force of the log, and CloudantDbBackend writes with _bulk_docs requests). Flush latency and batch sizes
+ * are available from getWriteMetrics().
  * 
  * Since (after initial load) the full contents of the database is contained in local memory, the get* methods of this class
  * will return quickly and will not block on network IO. Likewise, since database writes are performing asynchronolously on
  * a separate thread, they will not block the calling method.
  * 
+ * Reads do not lock: the contents of the database are held in an immutable Snapshot, and each create/update method (which
+ * are serialized by 'lock') publishes a new snapshot that replaces the previous one. Readers use whichever snapshot was most 
+ * recently published, and so never wait for writers (or the write thread), or for each other.
+ * 
  **/
 public class MemoryDatabase implements IDatabase {
 	
@@ -52,44 +61,64 @@ public class MemoryDatabase implements IDatabase {
 	
 	private final Object lock = new Object();
 	
-	private List<DbUser> users_synch_lock = new ArrayList<>();
-
-	private List<DbLeaderboardEntry> leaderboard_synch_lock = new ArrayList<>();
+	/** The current contents of the database; only replaced while holding 'lock', but may be read at any time. */
+	private volatile Snapshot snapshot;
+	
+	/** A batch is flushed once this many objects are queued... */
+	private static final int FLUSH_BATCH_SIZE = 256;
+	
+	/** ...or once the oldest queued object has waited this long. */
+	private static final long FLUSH_DELAY_IN_MSECS = 1000;
+	
+	/** Users waiting to be written to the backend, by user id; a later write of the same user replaces the queued one. */
+	private final Map<Long, DbUser> usersToWrite_synch_lock = new LinkedHashMap<>();
+	
+	/** Leaderboard entries waiting to be written to the backend; a later write of the same entry replaces the queued one. */
+	private final Map<LeaderboardPrimaryKey, DbLeaderboardEntry> leaderboardEntriesToWrite_synch_lock = new LinkedHashMap<>();
 	
-	private List<IDBObject> objectsToWrite_synch_lock = new ArrayList<>();
+	/** When the oldest queued object was queued, or -1 if the queue is empty. */
+	private long oldestQueuedTimeInNanos_synch_lock = -1;
+	
+	private long writesQueued_synch_lock = 0;
+	private long writesCoalesced_synch_lock = 0;
+	private long flushes_synch_lock = 0;
+	private long flushErrors_synch_lock = 0;
+	private long objectsFlushed_synch_lock = 0;
+	private int lastBatchSize_synch_lock = 0;
+	private int maxBatchSize_synch_lock = 0;
+	private long lastFlushTimeInNanos_synch_lock = 0;
+	private long maxFlushTimeInNanos_synch_lock = 0;
+	private long totalFlushTimeInNanos_synch_lock = 0;
 
 	private final IDBBackend backend;
 	
 	private final MemoryDatabaseWriteThread thread;
 	
 	public MemoryDatabase() {
+		this(createDefaultBackend());
+	}
 	
-		if(CloudantDbBackend.isCloudAntDbConfigured()) {
-			System.out.println("* Using Cloudant persistence backend.");
-			backend = new CloudantDbBackend();
-		} else {
-			System.out.println("* Using local file system persistence backend.");
-			String dirPath = "";
-
-			if (System.getenv("roguecloud")!=null && !System.getenv("roguecloud").equals("") ) {
-				dirPath = System.getenv("roguecloud");
-			}
-			else {
-				dirPath = new File(System.getProperty("user.home"), ".roguecloud").getPath();
-			}
-			File dir = new File(dirPath);
-			if(!dir.exists() && !dir.mkdirs()) {
-				String msg = "Unable to create directory: "+dir.getPath();
-				log.severe(msg, null);
-				throw new RuntimeException(msg);
+	public MemoryDatabase(IDBBackend backend) {
+		this.backend = backend;
+		
+		Map<Long, DbUser> usersById = new HashMap<>();
+		Map<String, DbUser> usersByUsername = new HashMap<>();
+		backend.getAllUsers().forEach( e -> {
+			usersById.put(e.getUserId(), e);
+			usersByUsername.put(e.getUsername().toLowerCase(), e);
+		});
+		
+		LeaderboardIndex leaderboard = LeaderboardIndex.EMPTY;
+		for(DbLeaderboardEntry e : backend.getAllLeaderboardEntries()) {
+			// There should only be one entry per user per round; if not, the last one wins, as with createOrUpdateDbLeaderboardEntry(...)
+			DbLeaderboardEntry match = leaderboard.get(e.getUserId(), e.getRoundId());
+			if(match != null) {
+				leaderboard = leaderboard.remove(match);
 			}
-			
-			backend = new FileDbBackend(dir);
-			
+			leaderboard = leaderboard.add(e);
 		}
-
-		users_synch_lock.addAll(backend.getAllUsers());
-		leaderboard_synch_lock.addAll(backend.getAllLeaderboardEntries());
+		
+		snapshot = new Snapshot(usersById, usersByUsername, leaderboard);
 		
 		thread = new MemoryDatabaseWriteThread();
 		thread.start();
@@ -113,6 +142,32 @@ public class MemoryDatabase implements IDatabase {
 //		}
 	}
 	
+	private static IDBBackend createDefaultBackend() {
+		if(CloudantDbBackend.isCloudAntDbConfigured()) {
+			System.out.println("* Using Cloudant persistence backend.");
+			return new CloudantDbBackend();
+		} else {
+			System.out.println("* Using local file system persistence backend.");
+			String dirPath = "";
+
+			if (System.getenv("roguecloud")!=null && !System.getenv("roguecloud").equals("") ) {
+				dirPath = System.getenv("roguecloud");
+			}
+			else {
+				dirPath = new File(System.getProperty("user.home"), ".roguecloud").getPath();
+			}
+			File dir = new File(dirPath);
+			if(!dir.exists() && !dir.mkdirs()) {
+				String msg = "Unable to create directory: "+dir.getPath();
+				log.severe(msg, null);
+				throw new RuntimeException(msg);
+			}
+			
+			return new LogDbBackend(dir);
+			
+		}
+	}
+	
 	/**
 	 *  User name and password are case insensitive!!!!!
 	 *
@@ -127,27 +182,32 @@ public class MemoryDatabase implements IDatabase {
 				throw new RuntimeException("Invalid user name/password: "+isValidUserName);
 			}
 			
-			if(users_synch_lock.stream().anyMatch(e -> e.getUsername().equalsIgnoreCase(u.username))) {
+			Snapshot current = snapshot;
+			
+			if(current.usersByUsername.containsKey(u.username.toLowerCase())) {
 				log.err("Unable to find matching username in database:" +u.username, null);
 				return -1;
 			}
 			
 			// The first user is user 1
 			long nextId = 1;
-			for(DbUser e : users_synch_lock) {
-				if(e.getUserId() >= nextId) {
-					nextId = e.getUserId()+1;
+			for(Long userId : current.usersById.keySet()) {
+				if(userId >= nextId) {
+					nextId = userId+1;
 				}
 			}
 			
 			// Here we assume that DBUser.getPassword() is already in Base64 SHA-256 form
 			DbUser entry = new DbUser(nextId, u.getUsername().toLowerCase(), u.getPassword());
 			
-			users_synch_lock.add(entry);
-			objectsToWrite_synch_lock.add(entry);
-			synchronized(objectsToWrite_synch_lock) {
-				objectsToWrite_synch_lock.notify();
-			}
+			// Copy-on-write: users are rarely created, relative to how often they are read
+			Map<Long, DbUser> usersById = new HashMap<>(current.usersById);
+			Map<String, DbUser> usersByUsername = new HashMap<>(current.usersByUsername);
+			usersById.put(entry.getUserId(), entry);
+			usersByUsername.put(entry.getUsername(), entry);
+			snapshot = new Snapshot(usersById, usersByUsername, current.leaderboard);
+			
+			queueWrite_synch_lock(usersToWrite_synch_lock.put(entry.getUserId(), entry));
 			
 			return entry.getUserId();
 			
@@ -158,174 +218,151 @@ public class MemoryDatabase implements IDatabase {
 	public DbUser getUserByUsername(String nameParam) {
 		final String name = nameParam.trim().toLowerCase();
 		
-		synchronized(lock) {
-			DbUser result = users_synch_lock.stream().filter(e -> e.getUsername().equalsIgnoreCase(name)).findFirst().orElse(null);
-			
-			if(result != null) {
-				result = result.fullClone();
-			}
-			
-			return result;
-			
+		DbUser result = snapshot.usersByUsername.get(name);
+		
+		if(result != null) {
+			result = result.fullClone();
 		}
+		
+		return result;
 	}
 
 	@Override
 	public DbUser getUserById(long id) {
-		synchronized(lock) {
-			DbUser result = users_synch_lock.stream().filter(e -> e.getUserId() == id).findFirst().orElse(null);
-			if(result != null) {
-				result = result.fullClone();
-			}
-			
-			return result;
+		DbUser result = snapshot.usersById.get(id);
+		if(result != null) {
+			result = result.fullClone();
 		}
+		
+		return result;
 	}
 
 	@Override
 	public void createOrUpdateDbLeaderboardEntry(DbLeaderboardEntry le) {
-		if(!DbLeaderboardEntry.isValid(le)) {
-			log.severe("Invalid leaderboard entry passed to create: "+le, null);
-			return;
-		}
+		createOrUpdateDbLeaderboardEntries(Collections.singletonList(le));
+	}
+	
+	@Override
+	public void createOrUpdateDbLeaderboardEntries(List<DbLeaderboardEntry> entries) {
 		
 		synchronized(lock) {
 			
-			DbLeaderboardEntry match = leaderboard_synch_lock.stream()
-				.filter( e -> e.getRoundId() == le.getRoundId() && e.getUserId() == le.getUserId())
-				.findFirst()
-				.orElse(null);
+			Snapshot current = snapshot;
+			LeaderboardIndex leaderboard = current.leaderboard;
 			
-			if(match == null) {
-				leaderboard_synch_lock.add(le);
-				objectsToWrite_synch_lock.add(le);
-				synchronized(objectsToWrite_synch_lock) {
-					objectsToWrite_synch_lock.notify();
-				}
-
-			} else {
-				boolean result = leaderboard_synch_lock.remove(match);
-				if(!result) {
-					log.severe("Unable to find match in ldbd list, so couldn't replace.", null);
-					return;
+			for(DbLeaderboardEntry le : entries) {
+				if(!DbLeaderboardEntry.isValid(le)) {
+					log.severe("Invalid leaderboard entry passed to create: "+le, null);
+					continue;
 				}
 				
-				leaderboard_synch_lock.add(le);
-				objectsToWrite_synch_lock.add(le);
-				synchronized(objectsToWrite_synch_lock) {
-					objectsToWrite_synch_lock.notify();
+				DbLeaderboardEntry match = leaderboard.get(le.getUserId(), le.getRoundId());
+				if(match != null) {
+					LeaderboardIndex withoutMatch = leaderboard.remove(match);
+					if(withoutMatch == leaderboard) {
+						log.severe("Unable to find match in ldbd list, so couldn't replace.", null);
+						continue;
+					}
+					leaderboard = withoutMatch;
 				}
-
+				
+				leaderboard = leaderboard.add(le);
+				queueWrite_synch_lock(leaderboardEntriesToWrite_synch_lock.put(new LeaderboardPrimaryKey(le), le));
 			}
 			
+			// A single new snapshot for all of the entries
+			if(leaderboard != current.leaderboard) {
+				snapshot = new Snapshot(current.usersById, current.usersByUsername, leaderboard);
+			}
 		}
 
 	}
 
+	/** Called after an object is added to one of the write queues, with the queued object that it replaced (if any). */
+	private void queueWrite_synch_lock(IDBObject replaced) {
+		writesQueued_synch_lock++;
+		if(replaced != null) {
+			writesCoalesced_synch_lock++;
+		}
+		
+		if(oldestQueuedTimeInNanos_synch_lock == -1) {
+			oldestQueuedTimeInNanos_synch_lock = System.nanoTime();
+			lock.notify();
+		} else if(usersToWrite_synch_lock.size() + leaderboardEntriesToWrite_synch_lock.size() >= FLUSH_BATCH_SIZE) {
+			lock.notify();
+		}
+	}
 	
-	@Override
-	public List<DbLeaderboardEntry> getLeaderboardEntriesForARound(long roundId) {
+	/** Returns a point-in-time copy of the write-behind queue statistics. */
+	public WriteMetrics getWriteMetrics() {
 		synchronized(lock) {
-			final List<DbLeaderboardEntry> results = new ArrayList<>();
-			
-			leaderboard_synch_lock.stream()
-				.filter( e-> e.getRoundId() == roundId)
-				.forEach( e -> {
-					results.add(e.fullClone());
-				});
-			
-			return results;
+			return new WriteMetrics(usersToWrite_synch_lock.size() + leaderboardEntriesToWrite_synch_lock.size(), writesQueued_synch_lock,
+					writesCoalesced_synch_lock, flushes_synch_lock, flushErrors_synch_lock, objectsFlushed_synch_lock, lastBatchSize_synch_lock,
+					maxBatchSize_synch_lock, lastFlushTimeInNanos_synch_lock, maxFlushTimeInNanos_synch_lock, totalFlushTimeInNanos_synch_lock);
 		}
 	}
 	
+	@Override
+	public List<DbLeaderboardEntry> getLeaderboardEntriesForARound(long roundId) {
+		return fullClone(snapshot.leaderboard.getRound(roundId));
+	}
+	
 	@Override
 	public Long[] getUserBestScoreAndRank(long id) {
+		LeaderboardIndex leaderboard = snapshot.leaderboard;
 		
-		List<DbLeaderboardEntry> l = getBestOverallLeaderboardEntries();
-
-		int rank = 1;
-		for(DbLeaderboardEntry dle : l) {
-			if(dle.getUserId() == id) {
-				
-				return new Long[] { dle.getScore(), (long)rank};
-			}
-			
-			rank++;
+		DbLeaderboardEntry best = leaderboard.getBestOfUser(id);
+		if(best == null) {
+			return null;
 		}
-			
-		return null;
+		
+		// The rank is the position of the user's best entry in getBestOverallLeaderboardEntries()
+		return new Long[] { best.getScore(), leaderboard.getRank(best) };
 	}
 
 
 	@Override
 	public List<DbLeaderboardEntry> getBestPreviousXRoundsOfLeaderboardEntries(long numPreviousRounds) {
-		synchronized(lock) {
-			
-			long mostRecentRound = -1;
-			
-			for(DbLeaderboardEntry dle : leaderboard_synch_lock) {
-				mostRecentRound = Math.max(mostRecentRound, dle.getRoundId() );
-			}
-			
-			if(mostRecentRound == -1) {
-				return Collections.emptyList();
-			}
-			
-			long firstRoundToAcquire = Math.max(0, mostRecentRound-numPreviousRounds+1);
-			
-			
-			// Acquire range of [firstRoundToAcquire, mostRecentRound]
-			
-			final List<DbLeaderboardEntry> results = new ArrayList<>();
-			final long finalMostRecentRound = mostRecentRound;
-			leaderboard_synch_lock.stream()
-				.filter( e -> e.getRoundId() >= firstRoundToAcquire && e.getRoundId() <= finalMostRecentRound )
-				.sorted( (a,b) -> {
-					long val = b.getScore() - a.getScore();
-					if(val > 0) { return 1;}
-					else if(val == 0)  { return 0; }
-					else { return -1; }})
-				.forEach( e -> {
-					results.add(e.fullClone());
-				}
-			);
-			
-			return results;
+		return getBestPreviousXRoundsOfLeaderboardEntries(numPreviousRounds, Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public List<DbLeaderboardEntry> getBestPreviousXRoundsOfLeaderboardEntries(long numPreviousRounds, int maxEntries) {
+		LeaderboardIndex leaderboard = snapshot.leaderboard;
+		
+		long mostRecentRound = leaderboard.getMostRecentRoundId();
+		
+		if(mostRecentRound == -1) {
+			return Collections.emptyList();
 		}
+		
+		long firstRoundToAcquire = Math.max(0, mostRecentRound-numPreviousRounds+1);
+		
+		// Acquire range of [firstRoundToAcquire, mostRecentRound]
+		return fullClone(leaderboard.getBestOfRounds(firstRoundToAcquire, mostRecentRound, maxEntries));
 	}
 
 	@Override
 	public List<DbLeaderboardEntry> getBestOverallLeaderboardEntries() {
-		synchronized(lock) {
-			final List<DbLeaderboardEntry> results = new ArrayList<>();
-
-			leaderboard_synch_lock.stream()
-				.sorted( (a,b) -> {
-					long val = b.getScore() - a.getScore();
-					if(val > 0) { return 1;}
-					else if(val == 0)  { return 0; }
-					else { return -1; }})
-				.forEach( e -> {
-					results.add(e.fullClone());
-				}
-			);
-			
-			return results;
-		}
+		return getBestOverallLeaderboardEntries(Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public List<DbLeaderboardEntry> getBestOverallLeaderboardEntries(int maxEntries) {
+		return fullClone(snapshot.leaderboard.getBest(maxEntries));
 	}
 
 	@Override
 	public List<DbLeaderboardEntry> getAllLeaderboardEntriesForUser(long id) {
-		synchronized(lock) {
-			final List<DbLeaderboardEntry> results = new ArrayList<>();
-			leaderboard_synch_lock.stream()
-				.filter(e -> e.getUserId() == id)
-				.forEach(e -> {
-					results.add(e.fullClone());
-			});
-			
-			return results;
+		return fullClone(snapshot.leaderboard.getUser(id));
+	}
+	
+	private static List<DbLeaderboardEntry> fullClone(List<DbLeaderboardEntry> entries) {
+		final List<DbLeaderboardEntry> results = new ArrayList<>(entries.size());
+		for(DbLeaderboardEntry e : entries) {
+			results.add(e.fullClone());
 		}
+		return results;
 	}
 
 	@Override
@@ -343,8 +380,8 @@ public class MemoryDatabase implements IDatabase {
 	
 	/**
 	 * All writes to the database occur on a separate thread, MemoryDatabaseWriteThread. Only a single instance of this 
-	 * thread exists per database. Database objects added to the objectsToWrite list will be periodically extracted by the thread
-	 * and written to the backend database.
+	 * thread exists per database. The thread waits for an object to be queued, then for the batch to fill (FLUSH_BATCH_SIZE) 
+	 * or for FLUSH_DELAY_IN_MSECS to pass, then writes the queued objects to the backend database.
 	 */
 	public  class MemoryDatabaseWriteThread extends Thread {
 		
@@ -356,91 +393,85 @@ public class MemoryDatabase implements IDatabase {
 		// TODO: LOW - Simulate slow writes to the backend database, to verify this works as expected.
 
 		public void run() {
-			List<IDBObject> localObjectsToWrite = new ArrayList<>();
 			List<DbUser> usersToWrite = new ArrayList<>();
 			List<DbLeaderboardEntry> leaderboardEntriesToWrite = new ArrayList<>();
 
 			while(true) {
 
-				localObjectsToWrite.clear();
 				usersToWrite.clear();
 				leaderboardEntriesToWrite.clear();
-
 				
-				synchronized(objectsToWrite_synch_lock) {
+				synchronized(lock) {
 					try {
-						objectsToWrite_synch_lock.wait(1000);
+						while(oldestQueuedTimeInNanos_synch_lock == -1) {
+							lock.wait();
+						}
+						
+						long flushTimeInNanos = oldestQueuedTimeInNanos_synch_lock + TimeUnit.NANOSECONDS.convert(FLUSH_DELAY_IN_MSECS, TimeUnit.MILLISECONDS);
+						while(usersToWrite_synch_lock.size() + leaderboardEntriesToWrite_synch_lock.size() < FLUSH_BATCH_SIZE) {
+							long remainingInNanos = flushTimeInNanos - System.nanoTime();
+							if(remainingInNanos <= 0) {
+								break;
+							}
+							lock.wait(Math.max(1, TimeUnit.MILLISECONDS.convert(remainingInNanos, TimeUnit.NANOSECONDS)));
+						}
+						
 					} catch (InterruptedException e) {
 						log.severe("Unexpected thread interruption", e,  null);
 						e.printStackTrace();
 					}
+					
+					usersToWrite.addAll(usersToWrite_synch_lock.values());
+					usersToWrite_synch_lock.clear();
+					
+					leaderboardEntriesToWrite.addAll(leaderboardEntriesToWrite_synch_lock.values());
+					leaderboardEntriesToWrite_synch_lock.clear();
+					
+					oldestQueuedTimeInNanos_synch_lock = -1;
 				}
 				
-				synchronized(lock) {
-					if(objectsToWrite_synch_lock.size() > 0) {
-						localObjectsToWrite.addAll(objectsToWrite_synch_lock);
-						objectsToWrite_synch_lock.clear();
-					}
+				int batchSize = usersToWrite.size() + leaderboardEntriesToWrite.size();
+				if(batchSize == 0) {
+					continue;
 				}
 				
-				for(IDBObject o : localObjectsToWrite) {
-					if(o instanceof DbLeaderboardEntry) {
-						leaderboardEntriesToWrite.add((DbLeaderboardEntry) o);
-					} else if(o instanceof DbUser) {
-						usersToWrite.add((DbUser) o);
-					} else {
-						log.severe("Unknown DB object type in memory database: "+o, null);
-					}					
-				}
-								
-				// Remove duplicate user writes, then write
+				long startTimeInNanos = System.nanoTime();
+				int errors = 0;
+				
 				try {
-					Map<Long, Boolean> userIdSeen = new HashMap<>();
-					
-					// Flip to descending chronological order (most recent entries are nearest to index 0)
-					Collections.reverse(usersToWrite);
-					
-					for(Iterator<DbUser> it = usersToWrite.iterator(); it.hasNext(); ) {
-						DbUser user = it.next();
-						if(userIdSeen.containsKey(user.getUserId())) {
-							it.remove();
-						} else {
-							userIdSeen.put(user.getUserId(), true);
-						}
-					}
-					
 					if(usersToWrite.size() > 0) {
 						backend.writeNewOrExistingUsers(usersToWrite);
 					}
 				} catch(Exception e) {
+					errors++;
 					e.printStackTrace();
 					log.severe("Unexpected rror occurred during db user write", e, null);
 				}
 				
-				// Remove duplicate leaderboard entries, then write
 				try {
-					Map<LeaderboardPrimaryKey, Boolean> leaderboardEntrySeen = new HashMap<>();
-					Collections.reverse(leaderboardEntriesToWrite);
-					
-					for(Iterator<DbLeaderboardEntry> it = leaderboardEntriesToWrite.iterator(); it.hasNext(); ) {
-						DbLeaderboardEntry dbe = it.next();
-						LeaderboardPrimaryKey key = new LeaderboardPrimaryKey(dbe); 
-						if(leaderboardEntrySeen.containsKey(key)) {
-							it.remove();
-						} else {
-							leaderboardEntrySeen.put(key, true);
-						}
-					}
-					
 					if(leaderboardEntriesToWrite.size() > 0) {
 						backend.writeNewOrExistingLeaderboardEntries(leaderboardEntriesToWrite);
 					}
 					
 				} catch(Exception e) {
+					errors++;
 					e.printStackTrace();
 					log.severe("Unexpected error occurred during db ldb write", e, null);					
 				}
 				
+				long flushTimeInNanos = System.nanoTime() - startTimeInNanos;
+				
+				synchronized(lock) {
+					flushes_synch_lock++;
+					flushErrors_synch_lock += errors;
+					objectsFlushed_synch_lock += batchSize;
+					lastBatchSize_synch_lock = batchSize;
+					maxBatchSize_synch_lock = Math.max(maxBatchSize_synch_lock, batchSize);
+					lastFlushTimeInNanos_synch_lock = flushTimeInNanos;
+					maxFlushTimeInNanos_synch_lock = Math.max(maxFlushTimeInNanos_synch_lock, flushTimeInNanos);
+					totalFlushTimeInNanos_synch_lock += flushTimeInNanos;
+				}
+				
 			}
 			
 		}
@@ -451,18 +482,105 @@ public class MemoryDatabase implements IDatabase {
 	public List<DbLeaderboardEntry> getAllLeaderboardEntriesForUserAndRound(long userId, long roundId) {
 		final List<DbLeaderboardEntry> result = new ArrayList<DbLeaderboardEntry>();
 		
-		synchronized(lock) {
-			leaderboard_synch_lock
-				.stream()
-				.filter( e -> e.getRoundId() == roundId && e.getUserId() == userId)
-				.forEach( e -> { result.add(e.fullClone()); }
-			);
+		DbLeaderboardEntry match = snapshot.leaderboard.get(userId, roundId);
+		if(match != null) {
+			result.add(match.fullClone());
 		}
 		
 		return result;
 	}
 
 	
+	/** An immutable copy of the contents of the database; see the class description. */
+	private static final class Snapshot {
+		private final Map<Long /* user id */, DbUser> usersById;
+		private final Map<String /* lower case username */, DbUser> usersByUsername;
+		private final LeaderboardIndex leaderboard;
+		
+		Snapshot(Map<Long, DbUser> usersById, Map<String, DbUser> usersByUsername, LeaderboardIndex leaderboard) {
+			this.usersById = usersById;
+			this.usersByUsername = usersByUsername;
+			this.leaderboard = leaderboard;
+		}
+	}
+	
+	/** A point-in-time copy of the write-behind queue statistics, see getWriteMetrics(). Times are in milliseconds. */
+	public static class WriteMetrics {
+		private final int queueDepth;
+		private final long writesQueued;
+		private final long writesCoalesced;
+		private final long flushes;
+		private final long flushErrors;
+		private final long objectsFlushed;
+		private final int lastBatchSize;
+		private final int maxBatchSize;
+		private final long lastFlushTimeInNanos;
+		private final long maxFlushTimeInNanos;
+		private final long totalFlushTimeInNanos;
+		
+		private WriteMetrics(int queueDepth, long writesQueued, long writesCoalesced, long flushes, long flushErrors, long objectsFlushed,
+				int lastBatchSize, int maxBatchSize, long lastFlushTimeInNanos, long maxFlushTimeInNanos, long totalFlushTimeInNanos) {
+			this.queueDepth = queueDepth;
+			this.writesQueued = writesQueued;
+			this.writesCoalesced = writesCoalesced;
+			this.flushes = flushes;
+			this.flushErrors = flushErrors;
+			this.objectsFlushed = objectsFlushed;
+			this.lastBatchSize = lastBatchSize;
+			this.maxBatchSize = maxBatchSize;
+			this.lastFlushTimeInNanos = lastFlushTimeInNanos;
+			this.maxFlushTimeInNanos = maxFlushTimeInNanos;
+			this.totalFlushTimeInNanos = totalFlushTimeInNanos;
+		}
+
+		/** The number of objects currently waiting to be written */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/** The number of creates/updates, including those that were coalesced */
+		public long getWritesQueued() {
+			return writesQueued;
+		}
+
+		/** The number of creates/updates that replaced a queued write of the same object */
+		public long getWritesCoalesced() {
+			return writesCoalesced;
+		}
+
+		public long getFlushes() {
+			return flushes;
+		}
+
+		public long getFlushErrors() {
+			return flushErrors;
+		}
+
+		public int getLastBatchSize() {
+			return lastBatchSize;
+		}
+
+		public int getMaxBatchSize() {
+			return maxBatchSize;
+		}
+
+		public double getAverageBatchSize() {
+			return flushes > 0 ? (double)objectsFlushed / flushes : 0;
+		}
+
+		public double getLastFlushTime() {
+			return lastFlushTimeInNanos / 1000000d;
+		}
+
+		public double getMaxFlushTime() {
+			return maxFlushTimeInNanos / 1000000d;
+		}
+
+		public double getAverageFlushTime() {
+			return flushes > 0 ? totalFlushTimeInNanos / 1000000d / flushes : 0;
+		}
+	}
+	
 	/** The leaderboard uses two fields as a primary key, unlike User which has a single primary key. */
 	private static class LeaderboardPrimaryKey {
 		final private long userId;
@@ -24,7 +24,9 @@ import java.net.URL;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -228,48 +230,97 @@ public class CloudantDbBackend implements IDBBackend {
 	private static final long INITIAL_TIME_TO_WAIT = 100;
 	private static final float UPDATE_FACTOR = 2f;
 
+	/** The maximum number of documents in a single _bulk_docs request. */
+	private static final int BULK_DOCS_MAX_SIZE = 500;
+
 	@Override
 	public void writeNewOrExistingLeaderboardEntries(List<DbLeaderboardEntry> dbe) {
 		
 		Database db = db();
+		
+		List<CloudantDbLeaderboardEntry> docs = new ArrayList<>();
 		for(DbLeaderboardEntry dle : dbe) {
 
 			if(!DbLeaderboardEntry.isValid(dle)) {
 				log.severe("Invalid leaderboard entry: "+dle, null);
-				return;
+				continue;
 			}
 			
-			final AtomicBoolean create = new AtomicBoolean(false);
-			
-			String id = LDB_ENTRY+dle.getRoundId()+"-"+dle.getUserId();
+			CloudantDbLeaderboardEntry cdble = new CloudantDbLeaderboardEntry();
+			cdble.copyFromParam(dle);
+			cdble.set_id(LDB_ENTRY+dle.getRoundId()+"-"+dle.getUserId());
+			docs.add(cdble);
+		}
+		
+		// Write the entries with one _bulk_docs request (per BULK_DOCS_MAX_SIZE entries), rather than a find and an update/save per entry.
+		for(int start = 0; start < docs.size(); start += BULK_DOCS_MAX_SIZE) {
+			List<CloudantDbLeaderboardEntry> batch = docs.subList(start, Math.min(docs.size(), start + BULK_DOCS_MAX_SIZE));
 			
+			// Existing documents may only be updated by specifying their current revision.
 			retryOnFail(MAX_TIME_IN_MSECS, INITIAL_TIME_TO_WAIT, UPDATE_FACTOR, () -> {
 				try {
-
-					CloudantDbLeaderboardEntry cdble = db.find(CloudantDbLeaderboardEntry.class, id);
-					if(cdble != null) {
-						// We found an existing entry in the database so update it
-						cdble.copyFromParam(dle);
-						db.update(cdble);
-						create.set(false);
-						out("Updating leaderboard in db: "+dle);
-					} else {
-						create.set(true);
-					}
-				} catch(NoDocumentException e) { create.set(true); } 
-				
+					String[] ids = batch.stream().map( e -> e.get_id()).toArray(String[]::new);
+					Map<String, String> revs = db.getAllDocsRequestBuilder().keys(ids).build().getResponse().getIdsAndRevs();
+					batch.forEach( e -> e.set_rev(revs.get(e.get_id())));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
 			});
+			
+			final List<Response> responses = new ArrayList<>();
+			retryOnFail(MAX_TIME_IN_MSECS, INITIAL_TIME_TO_WAIT, UPDATE_FACTOR, () -> {
+				responses.clear();
+				responses.addAll(db.bulk(batch));
+			});
+			
+			// Documents that could not be written (for example, due to a conflicting update) are written individually.
+			Map<String, CloudantDbLeaderboardEntry> idToEntry = new HashMap<>();
+			batch.forEach( e -> idToEntry.put(e.get_id(), e));
+			
+			for(Response r : responses) {
+				if(r.getError() == null) { continue; }
+				
+				CloudantDbLeaderboardEntry failed = idToEntry.get(r.getId());
+				if(failed != null) {
+					out("Bulk write of leaderboard entry failed ("+r.getError()+"), retrying individually: "+failed);
+					writeLeaderboardEntryIndividually(failed, db);
+				}
+			}
+			
+			out("Wrote "+batch.size()+" leaderboard entries to db.");
+		}
+	}
+	
+	private static void writeLeaderboardEntryIndividually(DbLeaderboardEntry dle, Database db) {
+		final AtomicBoolean create = new AtomicBoolean(false);
+		
+		String id = LDB_ENTRY+dle.getRoundId()+"-"+dle.getUserId();
+		
+		retryOnFail(MAX_TIME_IN_MSECS, INITIAL_TIME_TO_WAIT, UPDATE_FACTOR, () -> {
+			try {
 
-			if(create.get()) {
-				retryOnFail(MAX_TIME_IN_MSECS, INITIAL_TIME_TO_WAIT, UPDATE_FACTOR, () -> {
-					CloudantDbLeaderboardEntry cdble = new CloudantDbLeaderboardEntry();				
+				CloudantDbLeaderboardEntry cdble = db.find(CloudantDbLeaderboardEntry.class, id);
+				if(cdble != null) {
+					// We found an existing entry in the database so update it
 					cdble.copyFromParam(dle);
-					cdble.set_id(id);
-					db.save(cdble);
-					out("Creating leaderboard in db: "+dle);
-				});
-			}
+					db.update(cdble);
+					create.set(false);
+					out("Updating leaderboard in db: "+dle);
+				} else {
+					create.set(true);
+				}
+			} catch(NoDocumentException e) { create.set(true); } 
+			
+		});
 
+		if(create.get()) {
+			retryOnFail(MAX_TIME_IN_MSECS, INITIAL_TIME_TO_WAIT, UPDATE_FACTOR, () -> {
+				CloudantDbLeaderboardEntry cdble = new CloudantDbLeaderboardEntry();				
+				cdble.copyFromParam(dle);
+				cdble.set_id(id);
+				db.save(cdble);
+				out("Creating leaderboard in db: "+dle);
+			});
 		}
 	}
 		
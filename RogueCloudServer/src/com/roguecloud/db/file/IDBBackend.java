@@ -28,7 +28,8 @@ import com.roguecloud.db.DbUser;
  * The design of MemoryDatabase and IDBBackend are such that the full database contents is retrieved on first use, and from there
  * individual or bulk writes may be performed.
  * 
- * Current backends are FileDbBackend (local storage) and CloudantDbBakcend (storage to Cloudant on IBM Cloud).
+ * Current backends are LogDbBackend (local storage, the default), FileDbBackend (local storage, as one text file per user/round),
+ * and CloudantDbBakcend (storage to Cloudant on IBM Cloud).
  **/
 public interface IDBBackend {
 
@@ -0,0 +1,674 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.db.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.roguecloud.db.DbLeaderboardEntry;
+import com.roguecloud.db.DbUser;
+import com.roguecloud.utils.Logger;
+
+/**
+ * This database backend writes database entries to the local file system, as an append-only log of binary records.
+ *
+ * The log is a sequence of segment files ((db-path)/log/segment-(number).log), each of which is preallocated to SEGMENT_SIZE
+ * and memory-mapped. Every write (a user, a leaderboard entry, or the next round id) is appended to the last segment as a
+ * record, which replaces any earlier record with the same key (user id, or user id + round id). An in-memory index maps each
+ * key to the location (segment and offset) of its most recent record, and the get* methods decode the records from there.
+ *
+ * Each record is: the length of the record body (int), the CRC32 of the body (int), then the body: the record type (byte)
+ * and the record fields. On startup the segments are scanned in order to rebuild the index; this reads only the mapped
+ * records (no JSON, and no directory of files per user/round). If the server stopped during a write, the scan will reach
+ * a record that is incomplete (its length is zero or runs past the end of the segment, or its checksum does not match): the
+ * records before it are kept, the rest of the segment is zeroed, and the log continues from that point. This replaces the END
+ * markers of SafeKeyValueStore.
+ *
+ * Once superseded records are more than half of the log (and at least COMPACTION_MIN_DEAD_BYTES), the log is compacted:
+ * the live records are copied into new segments, and the old segments are deleted. Since the copies are in higher-numbered
+ * segments, and records are replayed in segment order, a compaction that is interrupted leaves a log that is still correct.
+ *
+ * On first use, if the database directory contains FileDbBackend data (and no log), that data is imported into the log. The
+ * import is bracketed by an IMPORT_MARKER file in the log directory: if the marker is present on startup, the import was
+ * interrupted, so the partial log is deleted and the import is run again.
+ */
+public class LogDbBackend implements IDBBackend {
+
+	private static final Logger log = Logger.getInstance();
+
+	/** Each segment file begins with SEGMENT_MAGIC and SEGMENT_VERSION (both ints) */
+	private static final int SEGMENT_MAGIC = 0x52434C47; // "RCLG"
+	private static final int SEGMENT_VERSION = 1;
+	private static final int SEGMENT_HEADER_SIZE = 8;
+
+	/** Segments are preallocated and mapped at this size; a new segment is started when the last one is full. */
+	private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	/** The length of the record body, and the CRC32 of the body (both ints) */
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private static final byte TYPE_USER = 1;
+	private static final byte TYPE_LEADERBOARD_ENTRY = 2;
+	private static final byte TYPE_NEXT_ROUND_ID = 3;
+
+	/** The log is compacted once this many bytes are superseded records, and they outnumber the bytes of live records. */
+	private static final long COMPACTION_MIN_DEAD_BYTES = SEGMENT_SIZE / 2;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	/** Present in the log directory while FileDbBackend data is being imported into the log */
+	private static final String IMPORT_MARKER = "import-in-progress";
+
+	private final File dbRoot;
+
+	private final File logDir;
+
+	/** Synchronized on me when reading and writing */
+	private final Object lock = new Object();
+
+	/** Segments in ascending order; records are appended to the last one. */
+	private final TreeMap<Integer, Segment> segments_synch_lock = new TreeMap<>();
+
+	/**
+	 * The location of the most recent record for each user. A location is the segment number (upper 32 bits) and the
+	 * offset of the record in the segment (lower 32 bits).
+	 */
+	private final HashMap<Long /* user id*/, Long /* location */> userLocations_synch_lock = new HashMap<>();
+
+	/** The location of the most recent record for each leaderboard entry. */
+	private final HashMap<LeaderboardKey, Long /* location */> leaderboardLocations_synch_lock = new HashMap<>();
+
+	/** The location of the most recent next round id record, or -1 if none. */
+	private long nextRoundIdLocation_synch_lock = -1;
+
+	private long nextRoundId_synch_lock = 1;
+
+	/** The size of every record in the log, and of those records that are the most recent for their key. */
+	private long totalBytes_synch_lock = 0;
+	private long liveBytes_synch_lock = 0;
+
+	/** Old segments which could not be deleted after compaction (for example, on Windows, while still mapped); retried on the next compaction. */
+	private final List<File> undeletedFiles_synch_lock = new ArrayList<>();
+
+	private final CRC32 crc_synch_lock = new CRC32();
+
+	public LogDbBackend(File dbRoot) {
+		this.dbRoot = dbRoot;
+		this.logDir = new File(dbRoot, "log");
+
+		if(!logDir.exists() && !logDir.mkdirs()) {
+			String msg = "Unable to create directory: "+logDir.getPath();
+			log.severe(msg, null);
+			throw new RuntimeException(msg);
+		}
+
+		synchronized(lock) {
+			long startTimeInNanos = System.nanoTime();
+
+			try {
+				File importMarker = new File(logDir, IMPORT_MARKER);
+				if(importMarker.exists()) {
+					log.info("A previous import of the file database into the database log was interrupted, restarting it.", null);
+					deleteSegmentFiles();
+				}
+
+				if(!recover()) {
+					boolean importNeeded = hasFileDbBackendData();
+					if(importNeeded && !importMarker.exists() && !importMarker.createNewFile()) {
+						throw new IOException("Unable to create file: "+importMarker.getPath());
+					}
+
+					startNewSegment(1);
+
+					if(importNeeded) {
+						importFromFileDbBackend();
+						if(!importMarker.delete()) {
+							throw new IOException("Unable to delete file: "+importMarker.getPath());
+						}
+					}
+				}
+			} catch(IOException e) {
+				log.severe("Unable to open database log: "+logDir.getPath(), e, null);
+				throw new RuntimeException(e);
+			}
+
+			log.info("Database log opened in "+TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTimeInNanos, TimeUnit.NANOSECONDS)
+				+" msecs: "+userLocations_synch_lock.size()+" users, "+leaderboardLocations_synch_lock.size()+" leaderboard entries, "
+				+segments_synch_lock.size()+" segment(s)", null);
+		}
+	}
+
+	@Override
+	public long getAndIncrementNextRoundId() {
+		synchronized(lock) {
+			long nextId = nextRoundId_synch_lock;
+
+			appendNextRoundId(nextId+1);
+			forceLastSegment();
+
+			return nextId;
+		}
+	}
+
+	@Override
+	public List<DbUser> getAllUsers() {
+		synchronized(lock) {
+			List<DbUser> result = new ArrayList<>(userLocations_synch_lock.size());
+			for(long location : userLocations_synch_lock.values()) {
+				ByteBuffer body = readBody(location);
+
+				long userId = body.getLong();
+				String username = getString(body);
+				String password = getString(body);
+
+				result.add(new DbUser(userId, username, password));
+			}
+			return result;
+		}
+	}
+
+	@Override
+	public List<DbLeaderboardEntry> getAllLeaderboardEntries() {
+		synchronized(lock) {
+			List<DbLeaderboardEntry> result = new ArrayList<>(leaderboardLocations_synch_lock.size());
+			for(long location : leaderboardLocations_synch_lock.values()) {
+				ByteBuffer body = readBody(location);
+
+				long userId = body.getLong();
+				long roundId = body.getLong();
+				long score = body.getLong();
+				long dateTime = body.getLong();
+
+				result.add(new DbLeaderboardEntry(userId, score, roundId, dateTime));
+			}
+			return result;
+		}
+	}
+
+	@Override
+	public void writeNewOrExistingUsers(List<DbUser> users) {
+		synchronized(lock) {
+			for(DbUser dbu : users) {
+				String userValidationStr = DbUser.isValid(dbu, true);
+				if( userValidationStr != null) {
+					log.severe("Invalid db user provided to writeNewOrExistingUsers: "+dbu+" - "+userValidationStr, null);
+					continue;
+				}
+
+				byte[] username = dbu.getUsername().getBytes(StandardCharsets.UTF_8);
+				byte[] password = dbu.getPassword().getBytes(StandardCharsets.UTF_8);
+
+				ByteBuffer body = ByteBuffer.allocate(1 + 8 + 2 + username.length + 2 + password.length);
+				body.put(TYPE_USER);
+				body.putLong(dbu.getUserId());
+				putString(body, username);
+				putString(body, password);
+				body.flip();
+
+				append(body);
+			}
+
+			forceLastSegment();
+			compactIfNeeded();
+		}
+	}
+
+	@Override
+	public void writeNewOrExistingLeaderboardEntries(List<DbLeaderboardEntry> dbe) {
+		synchronized(lock) {
+			ByteBuffer body = ByteBuffer.allocate(1 + 8 * 4);
+
+			for(DbLeaderboardEntry dle : dbe) {
+				if(!DbLeaderboardEntry.isValid(dle)) {
+					log.severe("Invalid leaderboard entry in update map: "+dle, null);
+					continue;
+				}
+
+				body.clear();
+				body.put(TYPE_LEADERBOARD_ENTRY);
+				body.putLong(dle.getUserId());
+				body.putLong(dle.getRoundId());
+				body.putLong(dle.getScore());
+				body.putLong(dle.getDateTime());
+				body.flip();
+
+				append(body);
+			}
+
+			forceLastSegment();
+			compactIfNeeded();
+		}
+	}
+
+	/** Open the existing segments in order, and replay their records into the index; returns false if there are no segments. */
+	private boolean recover() throws IOException {
+		List<Integer> numbers = new ArrayList<>();
+
+		File[] files = logDir.listFiles();
+		if(files != null) {
+			for(File f : files) {
+				String name = f.getName();
+				if(name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+					try {
+						numbers.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+					} catch(NumberFormatException e) {
+						log.severe("Ignoring unrecognized file in database log directory: "+f.getPath(), null);
+					}
+				}
+			}
+		}
+
+		Collections.sort(numbers);
+
+		for(int x = 0; x < numbers.size(); x++) {
+			int number = numbers.get(x);
+			boolean last = x == numbers.size()-1;
+
+			File f = segmentFile(number);
+			Segment s = new Segment(number, map(f, last));
+
+			if(!isValidSegmentHeader(s.buffer)) {
+				if(last && s.buffer.getInt(0) == 0) {
+					// The server stopped after the segment was created, but before its header was written.
+					writeSegmentHeader(s.buffer);
+				} else {
+					log.severe("Ignoring database log segment with an invalid header: "+f.getPath(), null);
+					continue;
+				}
+			}
+
+			segments_synch_lock.put(number, s);
+
+			scan(s, last);
+		}
+
+		if(numbers.isEmpty()) {
+			return false;
+		}
+
+		int lastNumber = numbers.get(numbers.size()-1);
+		if(segments_synch_lock.isEmpty() || segments_synch_lock.lastKey() != lastNumber) {
+			// The last segment was not usable, so append to a new one after it.
+			startNewSegment(lastNumber+1);
+		}
+
+		return true;
+	}
+
+	/** Replay the records of the segment, up to the unwritten remainder of the segment, or the first incomplete record. */
+	private void scan(Segment s, boolean last) {
+		ByteBuffer b = s.buffer;
+		int pos = SEGMENT_HEADER_SIZE;
+
+		while(pos + RECORD_HEADER_SIZE <= b.limit()) {
+			int length = b.getInt(pos);
+			if(length == 0) {
+				// The unwritten remainder of the segment. If the OS stopped before all of the pages of the last write were
+				// written, there may be complete records after the lost one: these must not be replayed once new records
+				// have been appended here (they would replace the new records), so they are discarded as below.
+				if(last && !isZeroFrom(b, pos)) {
+					log.info("Discarding database log records after the unwritten record at offset "+pos+" of "+segmentFile(s.number).getPath(), null);
+					zeroFrom(b, pos);
+				}
+				break;
+			}
+
+			boolean valid = length > 0 && length <= b.limit() - pos - RECORD_HEADER_SIZE
+					&& b.getInt(pos + 4) == checksum(b, pos + RECORD_HEADER_SIZE, length);
+
+			if(!valid) {
+				if(last) {
+					// The server stopped during a write: discard the incomplete record, and any data after it, and continue from here.
+					log.info("Discarding incomplete database log record at offset "+pos+" of "+segmentFile(s.number).getPath(), null);
+					zeroFrom(b, pos);
+				} else {
+					log.severe("Database log segment is corrupt at offset "+pos+", later records in the segment are ignored: "+segmentFile(s.number).getPath(), null);
+				}
+				break;
+			}
+
+			index(s.number, pos, length);
+			pos += RECORD_HEADER_SIZE + length;
+		}
+
+		s.writePosition = pos;
+	}
+
+	private static boolean isZeroFrom(ByteBuffer b, int pos) {
+		for(int x = pos; x < b.limit(); x++) {
+			if(b.get(x) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Zero the segment from 'pos' to its end, so that the next record is appended at 'pos' and nothing after it is replayed. */
+	private static void zeroFrom(ByteBuffer b, int pos) {
+		for(int x = pos; x < b.limit(); x++) {
+			b.put(x, (byte)0);
+		}
+		((MappedByteBuffer)b).force();
+	}
+
+	/** Append a record (with the given body) to the last segment, and add it to the index. */
+	private void append(ByteBuffer body) {
+		int length = body.remaining();
+		if(length + RECORD_HEADER_SIZE > SEGMENT_SIZE - SEGMENT_HEADER_SIZE) {
+			throw new IllegalArgumentException("Database record is too large: "+length);
+		}
+
+		Segment s = segments_synch_lock.lastEntry().getValue();
+		if(s.writePosition + RECORD_HEADER_SIZE + length > s.buffer.limit()) {
+			s.buffer.force();
+			s = startNewSegment(s.number+1);
+		}
+
+		int pos = s.writePosition;
+
+		crc_synch_lock.reset();
+		crc_synch_lock.update(body.duplicate());
+
+		ByteBuffer b = s.buffer;
+		b.position(pos + RECORD_HEADER_SIZE);
+		b.put(body);
+		b.putInt(pos + 4, (int)crc_synch_lock.getValue());
+		b.putInt(pos, length);
+
+		s.writePosition = pos + RECORD_HEADER_SIZE + length;
+
+		index(s.number, pos, length);
+	}
+
+	private void appendNextRoundId(long nextRoundId) {
+		ByteBuffer body = ByteBuffer.allocate(1 + 8);
+		body.put(TYPE_NEXT_ROUND_ID);
+		body.putLong(nextRoundId);
+		body.flip();
+
+		append(body);
+	}
+
+	/** Point the index at the given record, replacing the previous record (if any) with the same key. */
+	private void index(int segmentNumber, int pos, int length) {
+		ByteBuffer b = segments_synch_lock.get(segmentNumber).buffer;
+
+		int size = RECORD_HEADER_SIZE + length;
+		totalBytes_synch_lock += size;
+
+		long location = ((long)segmentNumber << 32) | pos;
+		int body = pos + RECORD_HEADER_SIZE;
+
+		Long previous;
+		byte type = b.get(body);
+		if(type == TYPE_USER) {
+			previous = userLocations_synch_lock.put(b.getLong(body + 1), location);
+
+		} else if(type == TYPE_LEADERBOARD_ENTRY) {
+			previous = leaderboardLocations_synch_lock.put(new LeaderboardKey(b.getLong(body + 1), b.getLong(body + 9)), location);
+
+		} else if(type == TYPE_NEXT_ROUND_ID) {
+			previous = nextRoundIdLocation_synch_lock != -1 ? nextRoundIdLocation_synch_lock : null;
+			nextRoundIdLocation_synch_lock = location;
+			nextRoundId_synch_lock = b.getLong(body + 1);
+
+		} else {
+			log.severe("Ignoring database log record of unknown type "+type+" at offset "+pos+" of "+segmentFile(segmentNumber).getPath(), null);
+			return;
+		}
+
+		liveBytes_synch_lock += size;
+		if(previous != null) {
+			liveBytes_synch_lock -= recordSize(previous);
+		}
+	}
+
+	private void compactIfNeeded() {
+		long deadBytes = totalBytes_synch_lock - liveBytes_synch_lock;
+		if(deadBytes >= COMPACTION_MIN_DEAD_BYTES && deadBytes > liveBytes_synch_lock) {
+			compact();
+		}
+	}
+
+	/** Copy the live records into new segments, then delete the old segments. */
+	private void compact() {
+		long startTimeInNanos = System.nanoTime();
+		long oldTotalBytes = totalBytes_synch_lock;
+
+		List<Segment> oldSegments = new ArrayList<>(segments_synch_lock.values());
+
+		Segment last = oldSegments.get(oldSegments.size()-1);
+		last.buffer.force();
+
+		// Copy in the order the records were written, which reads each old segment sequentially.
+		List<Long> locations = new ArrayList<>(userLocations_synch_lock.size() + leaderboardLocations_synch_lock.size() + 1);
+		locations.addAll(userLocations_synch_lock.values());
+		locations.addAll(leaderboardLocations_synch_lock.values());
+		if(nextRoundIdLocation_synch_lock != -1) {
+			locations.add(nextRoundIdLocation_synch_lock);
+		}
+		Collections.sort(locations);
+
+		userLocations_synch_lock.clear();
+		leaderboardLocations_synch_lock.clear();
+		nextRoundIdLocation_synch_lock = -1;
+		totalBytes_synch_lock = 0;
+		liveBytes_synch_lock = 0;
+
+		startNewSegment(last.number+1);
+
+		for(long location : locations) {
+			Segment s = segments_synch_lock.get((int)(location >>> 32));
+			int pos = (int)location;
+
+			ByteBuffer body = s.buffer.duplicate();
+			body.limit(pos + RECORD_HEADER_SIZE + s.buffer.getInt(pos));
+			body.position(pos + RECORD_HEADER_SIZE);
+
+			append(body);
+		}
+
+		forceLastSegment();
+
+		// Every live record is now in the new segments, so the old segments may be deleted.
+		for(Segment s : oldSegments) {
+			segments_synch_lock.remove(s.number);
+			undeletedFiles_synch_lock.add(segmentFile(s.number));
+		}
+
+		for(Iterator<File> it = undeletedFiles_synch_lock.iterator(); it.hasNext();) {
+			File f = it.next();
+			if(f.delete() || !f.exists()) {
+				it.remove();
+			}
+		}
+
+		if(undeletedFiles_synch_lock.size() > 0) {
+			log.err("Unable to delete compacted database log segments (will retry on next compaction): "+undeletedFiles_synch_lock, null);
+		}
+
+		log.info("Database log compacted from "+oldTotalBytes+" bytes to "+totalBytes_synch_lock+" bytes in "
+				+TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTimeInNanos, TimeUnit.NANOSECONDS)+" msecs", null);
+	}
+
+	/** If there is no log, but there is data from FileDbBackend in the same directory, then copy it into the log. */
+	private boolean hasFileDbBackendData() {
+		return new File(dbRoot, "users").exists() || new File(dbRoot, "rounds").exists() || new File(dbRoot, "key-store").exists();
+	}
+
+	private void importFromFileDbBackend() {
+		FileDbBackend fdb = new FileDbBackend(dbRoot);
+
+		List<DbUser> users = fdb.getAllUsers();
+		List<DbLeaderboardEntry> entries = fdb.getAllLeaderboardEntries();
+
+		writeNewOrExistingUsers(users);
+		writeNewOrExistingLeaderboardEntries(entries);
+		appendNextRoundId(fdb.internalGetNextRoundId());
+		forceLastSegment();
+
+		log.interesting("Imported "+users.size()+" users and "+entries.size()+" leaderboard entries from file database into database log.", null);
+	}
+
+	/** Delete every segment of the log; only called before the log is opened (see the constructor). */
+	private void deleteSegmentFiles() throws IOException {
+		File[] files = logDir.listFiles();
+		if(files == null) { return; }
+
+		for(File f : files) {
+			String name = f.getName();
+			if(name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX) && !f.delete()) {
+				throw new IOException("Unable to delete database log segment: "+f.getPath());
+			}
+		}
+	}
+
+	private Segment startNewSegment(int number) {
+		try {
+			Segment s = new Segment(number, map(segmentFile(number), true));
+			writeSegmentHeader(s.buffer);
+			s.writePosition = SEGMENT_HEADER_SIZE;
+
+			segments_synch_lock.put(number, s);
+			return s;
+
+		} catch(IOException e) {
+			log.severe("Unable to create database log segment "+number, e, null);
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void forceLastSegment() {
+		segments_synch_lock.lastEntry().getValue().buffer.force();
+	}
+
+	/** Return the body of the record at the given location, positioned after the record type. */
+	private ByteBuffer readBody(long location) {
+		ByteBuffer b = segments_synch_lock.get((int)(location >>> 32)).buffer.duplicate();
+		int pos = (int)location;
+		b.position(pos + RECORD_HEADER_SIZE + 1);
+		return b;
+	}
+
+	private int recordSize(long location) {
+		return RECORD_HEADER_SIZE + segments_synch_lock.get((int)(location >>> 32)).buffer.getInt((int)location);
+	}
+
+	private int checksum(ByteBuffer b, int pos, int length) {
+		ByteBuffer body = b.duplicate();
+		body.limit(pos + length);
+		body.position(pos);
+
+		crc_synch_lock.reset();
+		crc_synch_lock.update(body);
+		return (int)crc_synch_lock.getValue();
+	}
+
+	private File segmentFile(int number) {
+		return new File(logDir, SEGMENT_PREFIX+String.format("%010d", number)+SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * Map the file: the last segment is mapped read-write (and extended to at least SEGMENT_SIZE), and the others read-only.
+	 * The mapping remains valid after the file is closed.
+	 */
+	private static MappedByteBuffer map(File f, boolean writable) throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(f, writable ? "rw" : "r")) {
+			FileChannel fc = raf.getChannel();
+			if(writable) {
+				return fc.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(SEGMENT_SIZE, fc.size()));
+			} else {
+				return fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+			}
+		}
+	}
+
+	private static boolean isValidSegmentHeader(ByteBuffer b) {
+		return b.limit() >= SEGMENT_HEADER_SIZE && b.getInt(0) == SEGMENT_MAGIC && b.getInt(4) == SEGMENT_VERSION;
+	}
+
+	private static void writeSegmentHeader(MappedByteBuffer b) {
+		b.putInt(0, SEGMENT_MAGIC);
+		b.putInt(4, SEGMENT_VERSION);
+		b.force();
+	}
+
+	private static void putString(ByteBuffer b, byte[] str) {
+		b.putShort((short)str.length);
+		b.put(str);
+	}
+
+	private static String getString(ByteBuffer b) {
+		byte[] str = new byte[b.getShort() & 0xffff];
+		b.get(str);
+		return new String(str, StandardCharsets.UTF_8);
+	}
+
+	/** A segment file, and its mapping. */
+	private static class Segment {
+		final int number;
+		final MappedByteBuffer buffer;
+
+		/** The offset after the last record; only meaningful for the last segment. */
+		int writePosition;
+
+		Segment(int number, MappedByteBuffer buffer) {
+			this.number = number;
+			this.buffer = buffer;
+		}
+	}
+
+	/** The key of a leaderboard entry: there is at most one entry per user per round. */
+	private static class LeaderboardKey {
+		final long userId;
+		final long roundId;
+
+		LeaderboardKey(long userId, long roundId) {
+			this.userId = userId;
+			this.roundId = roundId;
+		}
+
+		@Override
+		public int hashCode() {
+			// (userId * 31 + roundId would collide heavily, as user ids and round ids are both small and dense)
+			return Long.hashCode(userId * 0x9E3779B97F4A7C15L + roundId);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof LeaderboardKey)) {
+				return false;
+			}
+			LeaderboardKey other = (LeaderboardKey)obj;
+			return other.userId == userId && other.roundId == roundId;
+		}
+	}
+}
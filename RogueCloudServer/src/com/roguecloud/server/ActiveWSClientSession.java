@@ -17,27 +17,50 @@
 package com.roguecloud.server;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import javax.websocket.RemoteEndpoint.Basic;
+import javax.websocket.RemoteEndpoint.Async;
+import javax.websocket.SendHandler;
 import javax.websocket.Session;
 
 import com.roguecloud.RCRuntime;
 import com.roguecloud.NG;
 import com.roguecloud.RoundScope;
 import com.roguecloud.server.ActiveWSClient.ViewType;
+import com.roguecloud.utils.CompressionContext;
 import com.roguecloud.utils.CompressionUtils;
 import com.roguecloud.utils.LogContext;
 import com.roguecloud.utils.Logger;
+import com.roguecloud.utils.MessageEnvelope;
 import com.roguecloud.utils.ServerUtil;
 
 /** 
  * Container object for the WebSocket API's Session object. This class has the same lifecycle as the Session it contains. 
  * The parent class of this class is ActiveWSClient. 
  * 
- * To write asynchronously write an outbound message to the session contained in this object, call the writeToClientAsynch(...) method.
- * The message will be added to the outbound message queue, and written by the AWSClientSessionSender thread. 
+ * To write asynchronously write an outbound message to the session contained in this object, call the writeToClientAsync(...) 
+ * (or writeFrameUpdateAsync(...)) method. The message will be added to the session's outbound queue, and written by a thread 
+ * of the shared writerPool. Only one write is outstanding per session at a time: the messages that are queued while a write 
+ * is in progress (or while a batch is open, see beginBatch()) are written together by the next write. For agent clients that 
+ * support it, those messages are sent as a single compressed MessageEnvelope; otherwise they are sent one after the other.
+ * 
+ * Slow clients: the bytes that are outstanding to the session (queued, or written but not yet acknowledged by the WebSocket
+ * container) are tracked. Once they exceed the configured high-water mark (see ServerUtil.getSessionHighWaterMarkInBytes()), 
+ * the game engine stops generating frame updates for the session (see isAboveHighWaterMark() and coalesceFrameUpdate()), 
+ * and older frame updates that are still queued are dropped as new ones arrive. In either case, the next frame sent to the 
+ * client will be a full frame (see getAndResetFullFrameNeeded()), which supersedes all the frames it missed. 
+ * 
+ * The outbound queue is also bounded by message count: past MAX_QUEUED_MESSAGES the oldest queued frame update is dropped, 
+ * and if the queue still grows past MAX_QUEUED_MESSAGES_BEFORE_CLOSE, the session is closed.
+ * 
+ * The per-session counters are available from getMetrics(). 
  **/
 public class ActiveWSClientSession {
 	
@@ -45,6 +68,23 @@ public class ActiveWSClientSession {
 	
 	public static enum Type { BROWSER, CLIENT };
 
+	/** Once this many messages are queued for a session, the oldest queued frame update is dropped for each new message. */
+	private static final int MAX_QUEUED_MESSAGES = 32;
+	
+	/** A session whose queue reaches this size (which can only occur if it contains no frame updates to drop) is closed. */
+	private static final int MAX_QUEUED_MESSAGES_BEFORE_CLOSE = MAX_QUEUED_MESSAGES * 4;
+	
+	/** The number of outstanding bytes above which a session is considered to be lagging */
+	private static final int HIGH_WATER_MARK_IN_BYTES = ServerUtil.getSessionHighWaterMarkInBytes();
+	
+	/** The threads that compress and write the queued messages of all sessions; writes are asynchronous, so a slow client does not hold a thread. */
+	private static final ExecutorService writerPool = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()/2), r -> {
+		Thread t = new Thread(r);
+		t.setName(ActiveWSClientSession.class.getName()+" writer");
+		t.setDaemon(true);
+		return t;
+	});
+
 	/** The contained WebSocket Session */
 	private final Session session_synch;
 	
@@ -53,7 +93,7 @@ public class ActiveWSClientSession {
 
 	private final LogContext logContext;
 	
-	/** Will this session be used for the browser API or the agent AI API */
+	/** Will this session be used for the browser API or the agent API */
 	private final Type type;
 
 	/** Specifies what the WebSoocket will be used for. See the javadoc comment on ViewType for specifics.  */
@@ -61,15 +101,39 @@ public class ActiveWSClientSession {
 	
 	private final String uuid;
 	
-	/** A buffer of Strings (usually JSON) that the AWSClientSessionSender thread will write to the WebSocket at
-	 * the next opportunity. */
-	private final List<String> stringsToSend_synch = new ArrayList<>();
+	/** Messages that have been queued but not yet written, in the order they were queued. */
+	private final ArrayDeque<OutboundMessage> messagesToSend_synch = new ArrayDeque<>();
 	
-	/** The round that the session was created in */
-	private final RoundScope roundScope;
+	/** Whether a write of this session's messages is scheduled on (or in progress on) the writerPool */
+	private boolean writeActive_synch_messagesToSend = false;
+	
+	/** The number of open batches; see beginBatch() */
+	private int openBatches_synch_messagesToSend = 0;
+	
+	/** Whether a frame update has been dropped or coalesced since the last call to getAndResetFullFrameNeeded() */
+	private boolean fullFrameNeeded_synch_messagesToSend = false;
+	
+	/** The total size of the messages in messagesToSend_synch */
+	private long queuedBytes_synch_messagesToSend = 0;
 	
-	/** This is the thread responsible for writing to the WebSocket session */
-	private final AWSClientSessionSender senderThread;
+	/** The total size of the writes that have been started, but have not yet completed */
+	private long inFlightBytes_synch_messagesToSend = 0;
+	
+	/** Frame updates that were queued, but were then removed from the queue before they were written */
+	private long framesDropped_synch_messagesToSend = 0;
+
+	/** Frame updates that were not generated, as the session was above the high-water mark */
+	private long framesCoalesced_synch_messagesToSend = 0;
+	
+	private int maxQueueDepth_synch_messagesToSend = 0;
+	
+	/** Whether the session is above the high-water mark, and frame updates are being coalesced */
+	private boolean lagging_synch_messagesToSend = false;
+	
+	private boolean closed_synch_messagesToSend = false;
+	
+	/** The round that the session was created in; null for sessions of the spectator relay, which closes them itself (see SpectatorRelay) */
+	private final RoundScope roundScope;
 	
 	private final Object lock = new Object();
 
@@ -91,10 +155,26 @@ public class ActiveWSClientSession {
 	/** ID from Session.getId() */
 	private final String sessionId;
 	
-	/** Browser only field - whether or not the browser needs to have the full frame sent to it (as it is the first time connecting.) */
-	private boolean browserFirstConnect = true;
+	/** Browser only field - whether or not the browser needs to have the full frame sent to it (as it is the first time connecting, 
+	 * or a frame update was dropped.) */
+	private volatile boolean browserFirstConnect = true;
+	
+	/** Client only field - whether frame updates should be sent using BinaryFrameUpdateCodec, as negotiated in JsonClientConnect. */
+	private final boolean binaryFrameUpdates;
+	
+	/** Client only field - if the client supports streaming compression, the context used to compress all messages written to 
+	 * this session (only used by one writerPool thread at a time); otherwise null, and each message is compressed on its own. */
+	private final CompressionContext compressionContext;
 	
-	public ActiveWSClientSession(Type type, ViewType viewType, String uuid, Session s, RoundScope roundScope, Long connectTimeInNanos, boolean isFullClientReset, LogContext logContext) {
+	/** Client only field - whether multiple queued messages may be written as a single MessageEnvelope, as negotiated in JsonClientConnect. */
+	private final boolean messageBatching;
+	
+	/** Client only field - whether frame updates may send creatures as changes against the previous frame, as negotiated in JsonClientConnect. */
+	private final boolean creatureDeltas;
+	
+	public ActiveWSClientSession(Type type, ViewType viewType, String uuid, Session s, RoundScope roundScope, Long connectTimeInNanos, 
+			boolean isFullClientReset, boolean binaryFrameUpdates, boolean streamingCompression, boolean messageBatching, 
+			boolean creatureDeltas, LogContext logContext) {
 		this.type = type;
 		this.session_synch = s;
 		this.logContext = logContext;
@@ -106,9 +186,10 @@ public class ActiveWSClientSession {
 		this.sessionId = session_synch.getId();
 		
 		this.isFullClientReset_synch_lock = isFullClientReset;
-		
-		senderThread = new AWSClientSessionSender();
-		senderThread.start();
+		this.binaryFrameUpdates = binaryFrameUpdates;
+		this.compressionContext = streamingCompression ? new CompressionContext() : null;
+		this.messageBatching = messageBatching;
+		this.creatureDeltas = creatureDeltas;
 	}
 	
 	public ViewType getViewType() {
@@ -122,6 +203,14 @@ public class ActiveWSClientSession {
 	public void setBrowserFirstConnect(boolean browserFirstConnect) {
 		this.browserFirstConnect = browserFirstConnect;
 	}
+	
+	public boolean isBinaryFrameUpdates() {
+		return binaryFrameUpdates;
+	}
+	
+	public boolean isCreatureDeltas() {
+		return creatureDeltas;
+	}
 
 	public boolean isSessionOpenUnsynchronized() {
 		// Intentionally unsynchronized
@@ -149,13 +238,304 @@ public class ActiveWSClientSession {
 	}
 	
 	public void writeToClientAsync(String msg) {
+		queueMessage(new OutboundMessage(msg, false));
+	}
+	
+	/** Write a frame update (JSON); unlike other messages, a frame update may be dropped if the client is not reading quickly enough. */
+	public void writeFrameUpdateAsync(String msg) {
+		queueMessage(new OutboundMessage(msg, true));
+	}
+
+	/** Write a frame update encoded by BinaryFrameUpdateCodec; only valid for CLIENT sessions. See writeFrameUpdateAsync(String). */
+	public void writeFrameUpdateAsync(byte[] msg) {
+		queueMessage(new OutboundMessage(msg, true));
+	}
+	
+	/** 
+	 * Hold the messages that are written to this session until the matching endBatch() call, so that they are all sent in 
+	 * the same write. Calls may be nested; endBatch() must always be called (in a finally block).
+	 */
+	public void beginBatch() {
+		synchronized (messagesToSend_synch) {
+			openBatches_synch_messagesToSend++;
+		}
+	}
+	
+	public void endBatch() {
+		synchronized (messagesToSend_synch) {
+			openBatches_synch_messagesToSend--;
+			scheduleWrite_synch_messagesToSend();
+		}
+	}
+	
+	/** Whether a frame update has been dropped or coalesced since this method was last called, in which case the client's 
+	 * view of the world is incomplete, and the next frame update must be a full frame. */
+	public boolean getAndResetFullFrameNeeded() {
+		synchronized (messagesToSend_synch) {
+			boolean result = fullFrameNeeded_synch_messagesToSend;
+			fullFrameNeeded_synch_messagesToSend = false;
+			return result;
+		}
+	}
+	
+	/** Whether more bytes are outstanding to this session than the high-water mark: if so, the caller should not generate 
+	 * a frame update for the session, and should instead call coalesceFrameUpdate(). */
+	public boolean isAboveHighWaterMark() {
+		synchronized (messagesToSend_synch) {
+			return queuedBytes_synch_messagesToSend + inFlightBytes_synch_messagesToSend > HIGH_WATER_MARK_IN_BYTES;
+		}
+	}
+	
+	/** A frame update was not sent to this session, as it was above the high-water mark; the frame will instead be part
+	 * of the next full frame. */
+	public void coalesceFrameUpdate() {
+		synchronized (messagesToSend_synch) {
+			framesCoalesced_synch_messagesToSend++;
+			markFullFrameNeeded_synch_messagesToSend();
+			
+			if(!lagging_synch_messagesToSend) {
+				lagging_synch_messagesToSend = true;
+				log.interesting("Session "+sessionId+" is lagging, with "
+						+(queuedBytes_synch_messagesToSend + inFlightBytes_synch_messagesToSend)+" bytes outstanding.", logContext);
+			}
+		}
+	}
+	
+	public Metrics getMetrics() {
+		synchronized (messagesToSend_synch) {
+			return new Metrics(messagesToSend_synch.size(), maxQueueDepth_synch_messagesToSend, queuedBytes_synch_messagesToSend, 
+					inFlightBytes_synch_messagesToSend, framesDropped_synch_messagesToSend, framesCoalesced_synch_messagesToSend, 
+					lagging_synch_messagesToSend);
+		}
+	}
+	
+	private void markFullFrameNeeded_synch_messagesToSend() {
+		fullFrameNeeded_synch_messagesToSend = true;
+		if(type == Type.BROWSER) {
+			browserFirstConnect = true;
+		}
+	}
+	
+	private void queueMessage(OutboundMessage msg) {
+		boolean close = false;
 		
-		synchronized (stringsToSend_synch) {
-			stringsToSend_synch.add(msg);
-			stringsToSend_synch.notify();
+		synchronized (messagesToSend_synch) {
+			if(closed_synch_messagesToSend) { return; }
+			
+			if(msg.frameUpdate && queuedBytes_synch_messagesToSend + inFlightBytes_synch_messagesToSend > HIGH_WATER_MARK_IN_BYTES) {
+				// Drop all the queued frame updates: they are superseded by this one (which will be followed by a full frame)
+				for(Iterator<OutboundMessage> it = messagesToSend_synch.iterator(); it.hasNext();) {
+					OutboundMessage queued = it.next();
+					if(queued.frameUpdate) {
+						it.remove();
+						dropFrameUpdate_synch_messagesToSend(queued);
+					}
+				}
+			}
+			
+			messagesToSend_synch.add(msg);
+			queuedBytes_synch_messagesToSend += msg.size;
+			
+			if(messagesToSend_synch.size() > MAX_QUEUED_MESSAGES) {
+				// Drop the oldest frame update: it has been superseded by the frames that were queued after it. 
+				for(Iterator<OutboundMessage> it = messagesToSend_synch.iterator(); it.hasNext();) {
+					OutboundMessage queued = it.next();
+					if(queued.frameUpdate) {
+						it.remove();
+						dropFrameUpdate_synch_messagesToSend(queued);
+						break;
+					}
+				}
+				
+				if(messagesToSend_synch.size() >= MAX_QUEUED_MESSAGES_BEFORE_CLOSE) {
+					close = true;
+				}
+			}
+			
+			maxQueueDepth_synch_messagesToSend = Math.max(maxQueueDepth_synch_messagesToSend, messagesToSend_synch.size());
+			
+			if(!close) {
+				scheduleWrite_synch_messagesToSend();
+			}
+		}
+		
+		if(close) {
+			log.severe("Closing session "+sessionId+" as the client is not reading its messages.", logContext);
+			closeSession();
 		}
 	}
 
+	private void dropFrameUpdate_synch_messagesToSend(OutboundMessage msg) {
+		queuedBytes_synch_messagesToSend -= msg.size;
+		framesDropped_synch_messagesToSend++;
+		markFullFrameNeeded_synch_messagesToSend();
+	}
+
+	private void scheduleWrite_synch_messagesToSend() {
+		if(!writeActive_synch_messagesToSend && openBatches_synch_messagesToSend == 0 && !messagesToSend_synch.isEmpty() && !closed_synch_messagesToSend) {
+			writeActive_synch_messagesToSend = true;
+			writerPool.execute(this::writeQueuedMessages);
+		}
+	}
+	
+	/** writerPool thread: encode and write all the messages that are currently queued. At most one thread runs this method 
+	 * (or has a write outstanding) for a session at a time. */
+	private void writeQueuedMessages() {
+		
+		List<OutboundMessage> localMessagesToSend;
+		synchronized (messagesToSend_synch) {
+			if(closed_synch_messagesToSend || openBatches_synch_messagesToSend > 0 || messagesToSend_synch.isEmpty()) {
+				writeActive_synch_messagesToSend = false;
+				return;
+			}
+			localMessagesToSend = new ArrayList<>(messagesToSend_synch);
+			messagesToSend_synch.clear();
+			// The bytes remain in queuedBytes until they have been encoded, below
+		}
+		
+		List<Object> writes = new ArrayList<>();
+		try {
+			if(!session_synch.isOpen()) { // intentional non-synch
+				closeSession();
+				return;
+			}
+			
+			if(type == Type.BROWSER) {
+				// The browser expects each JSON message in its own text message 
+				for(OutboundMessage msg : localMessagesToSend) {
+					logMessage(msg);
+					writes.add(msg.text);
+				}
+				
+			} else if(messageBatching && localMessagesToSend.size() > 1) {
+				List<byte[]> contents = new ArrayList<>();
+				for(OutboundMessage msg : localMessagesToSend) {
+					logMessage(msg);
+					contents.add(msg.binary != null ? msg.binary : msg.text.getBytes(StandardCharsets.UTF_8));
+				}
+				writes.add(compress(MessageEnvelope.encode(contents)));
+				
+			} else {
+				for(OutboundMessage msg : localMessagesToSend) {
+					logMessage(msg);
+					writes.add(msg.binary != null ? compress(msg.binary) : compress(msg.text));
+				}
+			}
+			
+		} catch(Throwable t) {
+			log.severe("Error occured on session writer", t, logContext);
+			closeSession();
+			return;
+		}
+		
+		synchronized (messagesToSend_synch) {
+			for(OutboundMessage msg : localMessagesToSend) {
+				queuedBytes_synch_messagesToSend -= msg.size;
+			}
+			for(Object write : writes) {
+				inFlightBytes_synch_messagesToSend += sizeOf(write);
+			}
+		}
+		
+		sendNext(writes, 0);
+	}
+	
+	/** Write writes[index], and then (from the completion handler) the remaining writes; once all are complete, check for newly queued messages. */
+	private void sendNext(List<Object> writes, int index) {
+		
+		if(index == writes.size()) {
+			if(roundScope != null && roundScope.isRoundComplete()) {
+				log.interesting("Closing session on round expiration.", logContext);
+				closeSession();
+				return;
+			}
+			writerPool.execute(this::writeQueuedMessages);
+			return;
+		}
+		
+		Object write = writes.get(index);
+		int size = sizeOf(write);
+		
+		SendHandler handler = result -> {
+			if(result.isOK()) {
+				writeComplete(size);
+				sendNext(writes, index+1);
+			} else {
+				log.severe("Error occured on session write", result.getException(), logContext);
+				closeSession();
+			}
+		};
+		
+		try {
+			Async remote = session_synch.getAsyncRemote();  // intentional non-synch
+			if(write instanceof ByteBuffer) {
+				remote.sendBinary((ByteBuffer)write, handler);
+			} else {
+				remote.sendText((String)write, handler);
+			}
+		} catch(Throwable t) {
+			log.severe("Error occured on session write", t, logContext);
+			closeSession();
+		}
+	}
+
+	private void writeComplete(int size) {
+		synchronized (messagesToSend_synch) {
+			inFlightBytes_synch_messagesToSend -= size;
+			
+			if(lagging_synch_messagesToSend && queuedBytes_synch_messagesToSend + inFlightBytes_synch_messagesToSend <= HIGH_WATER_MARK_IN_BYTES) {
+				lagging_synch_messagesToSend = false;
+				log.interesting("Session "+sessionId+" is no longer lagging; "+framesCoalesced_synch_messagesToSend+" frames coalesced and "
+						+framesDropped_synch_messagesToSend+" dropped so far.", logContext);
+			}
+		}
+	}
+	
+	/** The size of a write, in bytes (or characters, for text); only valid before the write is started. */
+	private static int sizeOf(Object write) {
+		return write instanceof ByteBuffer ? ((ByteBuffer)write).remaining() : ((String)write).length();
+	}
+
+	private void logMessage(OutboundMessage msg) {
+		if(msg.binary != null) {
+			log.info("Writing out ["+type.name()+" binary ("+msg.binary.length+")]", logContext);
+		} else {
+			if(NG.ENABLED) { NG.log(RCRuntime.GAME_TICKS.get(), "Writing to client in AWSClientSession: "+msg.text); }
+			log.info("Writing out ["+type.name()+" ("+msg.text.length()+")]: "+msg.text, logContext);
+		}
+	}
+	
+	private ByteBuffer compress(String str) {
+		return compressionContext != null ? compressionContext.compress(str) : CompressionUtils.compressToByteBuffer(str);
+	}
+	
+	private ByteBuffer compress(byte[] bytes) {
+		return compressionContext != null ? compressionContext.compress(bytes) : CompressionUtils.compressToByteBuffer(bytes);
+	}
+
+	/** Discard any queued messages, release the compression context, and close the session (in a separate thread, as close is blocking). */
+	private void closeSession() {
+		synchronized (messagesToSend_synch) {
+			if(closed_synch_messagesToSend) { return; }
+			closed_synch_messagesToSend = true;
+			writeActive_synch_messagesToSend = false;
+			messagesToSend_synch.clear();
+			queuedBytes_synch_messagesToSend = 0;
+		}
+		
+		if(compressionContext != null) {
+			compressionContext.dispose();
+		}
+		
+		ServerUtil.runInAnonymousThread( () -> {
+			try {
+				session_synch.close(); // intentional non-synch
+			} catch (IOException e) {
+				/* ignore*/
+			}
+		});
+	}
+
 	public Type getType() {
 		return type;
 	}
@@ -184,117 +564,90 @@ public class ActiveWSClientSession {
 //		}
 	}
 
-	/** This class is responsible for writing messages from the stringsToSend message queue to the 
-	 * WebSocket endpoint. The thread ends if an exception occurs, or if the session is closed. */
-	private class AWSClientSessionSender extends Thread{
+	public void dispose() {
+		RCRuntime.assertNotGameThread();
 		
-		public AWSClientSessionSender() {
-			setName(AWSClientSessionSender.class.getName()+" "+sessionId);
-			setDaemon(true);
+		closeSession();
+	}
+	
+	/** A queued outbound message: either a String (usually JSON), or a byte array (a frame update encoded by BinaryFrameUpdateCodec). */
+	private static class OutboundMessage {
+		final String text;
+		final byte[] binary;
+		
+		/** Whether this message is a frame update, and thus may be dropped if the client falls behind */
+		final boolean frameUpdate;
+		
+		/** The (uncompressed) size of the message, in bytes (or characters, for text) */
+		final int size;
+		
+		OutboundMessage(String text, boolean frameUpdate) {
+			this.text = text;
+			this.binary = null;
+			this.frameUpdate = frameUpdate;
+			this.size = text.length();
 		}
 		
-		@Override
-		public void run() {
-
-			log.info("ActiveWSClientSessionSender started for "+session_synch, logContext);
-			
-			try {
-				boolean continueLoop = true;
-				
-				Basic b;
-				synchronized(session_synch) {
-					b = session_synch.getBasicRemote();
-				}
-	
-				List<String> localStringsToSend = new ArrayList<String>();
-	
-				while(continueLoop) {
-					
-					if(roundScope.isRoundComplete()) {
-						log.interesting("Exiting loop on round expiration.", logContext);
-						continueLoop = false;
-					}
-					
-					synchronized(stringsToSend_synch) {
-						
-						stringsToSend_synch.wait(10000); // TODO: CURR - Uhh?
-						
-						localStringsToSend.addAll(stringsToSend_synch);
-						stringsToSend_synch.clear();
-						
-					}
+		OutboundMessage(byte[] binary, boolean frameUpdate) {
+			this.text = null;
+			this.binary = binary;
+			this.frameUpdate = frameUpdate;
+			this.size = binary.length;
+		}
+	}
 	
-					synchronized(session_synch) {
-						
-						if(session_synch.isOpen()) {
+	/** A point-in-time copy of the outbound queue statistics of a session, see getMetrics(). */
+	public static class Metrics {
+		private final int queueDepth;
+		private final int maxQueueDepth;
+		private final long queuedBytes;
+		private final long inFlightBytes;
+		private final long framesDropped;
+		private final long framesCoalesced;
+		private final boolean lagging;
+		
+		private Metrics(int queueDepth, int maxQueueDepth, long queuedBytes, long inFlightBytes, long framesDropped, 
+				long framesCoalesced, boolean lagging) {
+			this.queueDepth = queueDepth;
+			this.maxQueueDepth = maxQueueDepth;
+			this.queuedBytes = queuedBytes;
+			this.inFlightBytes = inFlightBytes;
+			this.framesDropped = framesDropped;
+			this.framesCoalesced = framesCoalesced;
+			this.lagging = lagging;
+		}
 
-							for(String str : localStringsToSend) {
-								if(NG.ENABLED) { NG.log(RCRuntime.GAME_TICKS.get(), "Writing to client in AWSClientSession: "+str); }
-								log.info("Writing out ["+type.name()+" ("+str.getBytes().length+")]: "+str, logContext);
-								if(type == Type.BROWSER) {
-									b.sendText(str);
-								} else {
-									b.sendBinary(CompressionUtils.compressToByteBuffer(str));	
-								}
-								
-							}
-							
-							localStringsToSend.clear();
-							
-						} else {
-							continueLoop = false;
-						}
-						
-					}
-					
-				}
-			} catch(InterruptedException ie) {
-				/* ignore*/
-			} catch(Throwable t) {
-				log.severe("Error occured on session sender", t, logContext);
-				t.printStackTrace();
-			
-			} finally {
-				log.info("ActiveWSClientSessionSender ended for "+session_synch, logContext);
-				
-				ServerUtil.runInAnonymousThread( () -> {
-					try {
-						session_synch.close(); // intentional non-synch
-					} catch (IOException e) {
-						/* ignore*/
-					}
-				});
+		/** The number of messages that are queued, but have not yet been written */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
 
-			}
-			
-		} // end run
-	}
+		/** The largest queue depth the session has had */
+		public int getMaxQueueDepth() {
+			return maxQueueDepth;
+		}
 
-	public void dispose() {
-		RCRuntime.assertNotGameThread();
-		
-		// Close the session in a separate thread.
-		Thread t = new Thread() {
-			public void run() {
-				try {
-					// This is blocking call.
-					session_synch.close(); // intentional non-synch
-				} catch(Exception e) {
-					/* ignore */
-				}
-			}
-		};
-		t.setName(ActiveWSClientSession.class.getName()+" - dispose() thread for "+sessionId);
-		t.setDaemon(true);
-		t.start();
-		
-		try {
-			senderThread.interrupt();
-		} catch(Exception e) { /* ignore*/ }
-		
-		synchronized (stringsToSend_synch) {
-			stringsToSend_synch.clear();
+		/** The uncompressed size of the queued messages */
+		public long getQueuedBytes() {
+			return queuedBytes;
+		}
+
+		/** The size of the writes that have been started, but not yet completed */
+		public long getInFlightBytes() {
+			return inFlightBytes;
+		}
+
+		public long getFramesDropped() {
+			return framesDropped;
 		}
-	};
+
+		public long getFramesCoalesced() {
+			return framesCoalesced;
+		}
+
+		public boolean isLagging() {
+			return lagging;
+		}
+	}
 
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.server;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roguecloud.db.DatabaseInstance;
+import com.roguecloud.db.MemoryDatabase;
+import com.roguecloud.utils.ServerUtil;
+
+/**
+ * Returns (as JSON) the write-behind statistics of the database (see MemoryDatabase.getWriteMetrics()): queue depth,
+ * the number of writes that were coalesced, and the size and latency (in milliseconds) of the batches flushed to the backend.
+ *
+ * As with SessionMetricsServlet, this may only be viewed by the administrator; the admin username and password are passed
+ * as query parameters.
+ */
+@WebServlet("/DatabaseMetrics")
+public class DatabaseMetricsServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	public DatabaseMetricsServlet() {
+		super();
+	}
+
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		String username = request.getParameter("username");
+		String password = request.getParameter("password");
+
+		if(!ServerUtil.isAdminAuthenticatedAndAuthorized(username, password)) {
+			response.getWriter().append("Invalid username / password");
+			response.setStatus(HttpURLConnection.HTTP_FORBIDDEN);
+			return;
+		}
+
+		MemoryDatabase.WriteMetrics m = DatabaseInstance.get().getWriteMetrics();
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("queueDepth", m.getQueueDepth());
+		result.put("writesQueued", m.getWritesQueued());
+		result.put("writesCoalesced", m.getWritesCoalesced());
+		result.put("flushes", m.getFlushes());
+		result.put("flushErrors", m.getFlushErrors());
+		result.put("lastBatchSize", m.getLastBatchSize());
+		result.put("maxBatchSize", m.getMaxBatchSize());
+		result.put("averageBatchSize", m.getAverageBatchSize());
+		result.put("lastFlushTime", m.getLastFlushTime());
+		result.put("maxFlushTime", m.getMaxFlushTime());
+		result.put("averageFlushTime", m.getAverageFlushTime());
+
+		response.setContentType("application/json");
+		response.getWriter().append(new ObjectMapper().writeValueAsString(result));
+	}
+
+}
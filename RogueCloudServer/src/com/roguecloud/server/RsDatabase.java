@@ -75,9 +75,7 @@ public class RsDatabase {
 		}
 		
 		// Previous 4 days worth of rounds
-		List<DbLeaderboardEntry> l = DatabaseInstance.get().getBestPreviousXRoundsOfLeaderboardEntries(960);
-		
-		DatabaseUtils.sortDescendingByScore(l);
+		List<DbLeaderboardEntry> l = DatabaseInstance.get().getBestPreviousXRoundsOfLeaderboardEntries(960, 200);
 				
 		DatabasePage dp = new DatabasePage("Top 200 scores for recent rounds", 4);
 		
@@ -126,9 +124,7 @@ public class RsDatabase {
 			return null;
 		}
 				
-		List<DbLeaderboardEntry> l = DatabaseInstance.get().getBestOverallLeaderboardEntries();
-		
-		DatabaseUtils.sortDescendingByScore(l);
+		List<DbLeaderboardEntry> l = DatabaseInstance.get().getBestOverallLeaderboardEntries(200);
 				
 		DatabasePage dp = new DatabasePage("Top 200 Scores for all rounds", 4);
 		
@@ -176,13 +172,9 @@ public class RsDatabase {
 		}
 
 		
+		// Already sorted descending by score
 		List<DbLeaderboardEntry> l = DatabaseInstance.get().getLeaderboardEntriesForARound(roundId);
 		
-		// Sort descending by score
-		l.sort ((a, b) -> {
-			return (int)(b.getScore() - a.getScore());
-		});
-		
 		DatabasePage dp = new DatabasePage("Round "+roundId, 4);
 		
 		dp.getEntries().add(new ArrayList<String>(Arrays.asList("Rank", "Name", "Score"))); 
@@ -295,7 +287,7 @@ public class RsDatabase {
 			
 			int placeMatch = -1;
 			
-			DatabaseUtils.sortDescendingByScore(roundResults);
+			// (roundResults is already sorted descending by score)
 			place_for: for(int place = 0; place < roundResults.size(); place++) {
 				DbLeaderboardEntry e = roundResults.get(place);
 				if(e.getUserId() == userId) {
@@ -17,18 +17,10 @@
 package com.roguecloud.server;
 
 import java.io.IOException;
-import java.util.Map;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.roguecloud.json.JsonAbstractTypedMessage;
 import com.roguecloud.json.JsonActionMessage;
-import com.roguecloud.json.JsonMessageMap;
-import com.roguecloud.json.actions.JsonCombatAction;
-import com.roguecloud.json.actions.JsonDrinkItemAction;
-import com.roguecloud.json.actions.JsonEquipAction;
-import com.roguecloud.json.actions.JsonMoveInventoryItemAction;
-import com.roguecloud.json.actions.JsonNullAction;
-import com.roguecloud.json.actions.JsonStepAction;
+import com.roguecloud.json.JsonMessageDecoder;
 import com.roguecloud.json.client.JsonHealthCheckResponse;
 import com.roguecloud.utils.LogContext;
 import com.roguecloud.utils.Logger;
@@ -37,7 +29,8 @@ import com.roguecloud.utils.Logger;
  * if latency simulation is enabled.)
  *
  * This class is responsible for determining the type of JSON object received (based on the 'type' field) and then 
- * passing it to the appropriate receive method.
+ * passing it to the appropriate receive method. Messages are decoded by JsonMessageDecoder, which also decodes the action
+ * of a JsonActionMessage into its action class.
  **/
 public final class ServerMessageReceiver {
 	
@@ -52,19 +45,13 @@ public final class ServerMessageReceiver {
 	public void receiveMessage(String str, ActiveWSClientSession session,  ActiveWSClient client) {
 		log.info("Received message: "+str , client.getLogContext());
 		
-		ObjectMapper om = new ObjectMapper();
-		String messageType;
 		try {
-			messageType = (String) om.readValue(str, Map.class).get("type");
-
-			Class<?> c = JsonMessageMap.getMap().get(messageType);
-
-			Object o = om.readValue(str, c);
+			JsonAbstractTypedMessage o = JsonMessageDecoder.getInstance().decode(str);
 			
-			if(messageType.equals(JsonActionMessage.TYPE)) {
+			if(o instanceof JsonActionMessage) {
 				receiveMessage((JsonActionMessage)o, session, client);
 				
-			} else if(messageType.equals(JsonHealthCheckResponse.TYPE)) {
+			} else if(o instanceof JsonHealthCheckResponse) {
 				receiveMessage((JsonHealthCheckResponse)o, session, client);
 				
 			} else {
@@ -73,6 +60,7 @@ public final class ServerMessageReceiver {
 			
 		} catch (IOException e) {
 			e.printStackTrace();
+			log.severe("Unable to decode message: "+str, e, logContext);
 		}
 	}
 	
@@ -80,45 +68,15 @@ public final class ServerMessageReceiver {
 		client.informReceivedHealthCheckResponse(o.getId());
 	}
 
-	@SuppressWarnings("rawtypes")
 	private void receiveMessage(JsonActionMessage jam, ActiveWSClientSession session, ActiveWSClient client) {
 		
-		Map map = (Map) jam.getAction();
-		
-		String type = (String) map.get("type");
-		
-		JsonAbstractTypedMessage action = null;
-		
-		if(type.equals(JsonCombatAction.TYPE)) {
-			
-			action = new JsonCombatAction(map);
-			
-		} else if(type.equals(JsonStepAction.TYPE)) {
-			
-			action = new JsonStepAction(map);
-			
-		} else if(type.equals(JsonNullAction.TYPE)) {
-			
-			action = new JsonNullAction();
-			
-		} else if(type.equals(JsonMoveInventoryItemAction.TYPE)) {
-			
-			action = new JsonMoveInventoryItemAction(map);
-			
-		} else if(type.equals(JsonEquipAction.TYPE)) {
-			
-			action = new JsonEquipAction(map);
-			
-		} else if(type.equals(JsonDrinkItemAction.TYPE)) {
-			action = new JsonDrinkItemAction(map);
-		} else {
+		// The action is decoded into its action class (JsonStepAction, JsonCombatAction, etc) along with the message
+		if(!(jam.getAction() instanceof JsonAbstractTypedMessage)) {
 			log.severe("Unrecognized Json message type", logContext);
-			action = null;
+			return;
 		}
 		
-		if(action != null) {
-			client.addAction(action, jam.getMessageId());
-		}
+		client.addAction((JsonAbstractTypedMessage)jam.getAction(), jam.getMessageId());
 		
 	}
 		
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.server;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roguecloud.RoundScope;
+import com.roguecloud.ServerInstance;
+import com.roguecloud.ServerInstanceList;
+import com.roguecloud.utils.ServerUtil;
+
+/**
+ * Returns (as JSON) the outbound queue statistics of each open WebSocket session in the current round: queue depth,
+ * outstanding bytes, and the number of dropped and coalesced frame updates (see ActiveWSClientSession.getMetrics()).
+ * Sessions are sorted by outstanding bytes, so the players that are lagging the most are listed first.
+ *
+ * As with WorldViewServlet, this may only be viewed by the administrator; the admin username and password are passed
+ * as query parameters.
+ */
+@WebServlet("/SessionMetrics")
+public class SessionMetricsServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	public SessionMetricsServlet() {
+		super();
+	}
+
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		String username = request.getParameter("username");
+		String password = request.getParameter("password");
+
+		if(!ServerUtil.isAdminAuthenticatedAndAuthorized(username, password)) {
+			response.getWriter().append("Invalid username / password");
+			response.setStatus(HttpURLConnection.HTTP_FORBIDDEN);
+			return;
+		}
+
+		List<Map<String, Object>> result = new ArrayList<>();
+
+		ServerInstance si = ServerInstanceList.getInstance().getServerInstance();
+		RoundScope round = si.getCurrentRound();
+		if(round != null) {
+			for(ActiveWSClient client : round.getActiveClients().getList()) {
+				for(ActiveWSClientSession session : client.getSessions()) {
+					if(!session.isSessionOpenUnsynchronized()) { continue; }
+
+					ActiveWSClientSession.Metrics m = session.getMetrics();
+
+					Map<String, Object> entry = new LinkedHashMap<>();
+					entry.put("username", client.getUsername());
+					entry.put("userId", client.getUserId());
+					entry.put("sessionId", session.getSessionId());
+					entry.put("type", session.getType().name());
+					entry.put("lagging", m.isLagging());
+					entry.put("queueDepth", m.getQueueDepth());
+					entry.put("maxQueueDepth", m.getMaxQueueDepth());
+					entry.put("outstandingBytes", m.getQueuedBytes() + m.getInFlightBytes());
+					entry.put("queuedBytes", m.getQueuedBytes());
+					entry.put("inFlightBytes", m.getInFlightBytes());
+					entry.put("framesDropped", m.getFramesDropped());
+					entry.put("framesCoalesced", m.getFramesCoalesced());
+					result.add(entry);
+				}
+			}
+		}
+
+		result.sort( (a, b) -> Long.compare((long)b.get("outstandingBytes"), (long)a.get("outstandingBytes")));
+
+		response.setContentType("application/json");
+		response.getWriter().append(new ObjectMapper().writeValueAsString(result));
+	}
+
+}
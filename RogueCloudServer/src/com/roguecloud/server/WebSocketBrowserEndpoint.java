@@ -16,7 +16,6 @@
 
 package com.roguecloud.server;
 
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import javax.websocket.OnClose;
@@ -26,14 +25,16 @@ import javax.websocket.OnOpen;
 import javax.websocket.Session;
 import javax.websocket.server.ServerEndpoint;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.roguecloud.RCSharedConstants;
 import com.roguecloud.ServerInstance;
 import com.roguecloud.ServerInstanceList;
 import com.roguecloud.db.DatabaseInstance;
+import com.roguecloud.json.JsonAbstractTypedMessage;
+import com.roguecloud.json.JsonMessageDecoder;
 import com.roguecloud.json.browser.JsonBrowserConnect;
 import com.roguecloud.server.ActiveWSClient.ViewType;
 import com.roguecloud.server.ActiveWSClientSession.Type;
+import com.roguecloud.server.relay.SpectatorRelay;
 import com.roguecloud.utils.LogContext;
 import com.roguecloud.utils.Logger;
 import com.roguecloud.utils.ResourceLifecycleUtil;
@@ -69,12 +70,11 @@ public class WebSocketBrowserEndpoint {
 	@OnMessage
 	public void handleMessage(String message, Session session) {
 		
-		ObjectMapper om = new ObjectMapper();
 		try {
-			String messageType = (String) om.readValue(message, Map.class).get("type");
+			JsonAbstractTypedMessage o = JsonMessageDecoder.getInstance().decode(message);
 
-			if(messageType.equals(JsonBrowserConnect.TYPE) ) {
-				JsonBrowserConnect jbc = (JsonBrowserConnect)om.readValue(message, JsonBrowserConnect.class);
+			if(o instanceof JsonBrowserConnect) {
+				JsonBrowserConnect jbc = (JsonBrowserConnect)o;
 
 				ViewType viewType = ViewType.valueOf(jbc.getViewType());
 				
@@ -83,10 +83,25 @@ public class WebSocketBrowserEndpoint {
 					return;
 				}
 
-				ServerInstance si = ServerInstanceList.getInstance().getServerInstance();
-
 				boolean isAdmin = ServerUtil.isAdminAuthenticatedAndAuthorized(jbc.getUsername(), jbc.getPassword());
 				
+				if(viewType.isAdminRequired() && !isAdmin)    {
+					log.severe("Attempt to use admin functions without admin login/password", null);
+					return;
+				}
+				
+				if(SpectatorRelay.isEnabled() && viewType.isAdminRequired()) {
+					// Spectator views (which require admin, checked above) are served by the relay, rather than by the game engine 
+					// (which, in REMOTE mode, is in another JVM, so ServerInstanceList is not used here)
+					log.info("Creating new relay AWSClientSession:"+jbc.getUuid(), null);
+					
+					ActiveWSClientSession acs = new ActiveWSClientSession(Type.BROWSER, viewType, jbc.getUuid(), session, null, System.nanoTime(), false, false, false, false, false, LogContext.serverInstance(ServerInstance.ID));
+					SpectatorRelay.getInstance().addSession(acs);
+					return;
+				}
+				
+				ServerInstance si = ServerInstanceList.getInstance().getServerInstance();
+				
 				Long userId = 0l;
 				String username;
 				{
@@ -100,19 +115,14 @@ public class WebSocketBrowserEndpoint {
 					
 				}
 				
-				if(viewType.isAdminRequired() && !isAdmin)    {
-					log.severe("Attempt to use admin functions without admin login/password", null);
-					return;
-				}
-				
 				log.info("Creating new AWSClientSession:"+jbc.getUuid(), null);
 								
-				ActiveWSClientSession acs = new ActiveWSClientSession(Type.BROWSER, viewType, jbc.getUuid(), session, si.getCurrentRound(), System.nanoTime(), false, LogContext.serverInstance(si.getId()));
+				ActiveWSClientSession acs = new ActiveWSClientSession(Type.BROWSER, viewType, jbc.getUuid(), session, si.getCurrentRound(), System.nanoTime(), false, false, false, false, false, LogContext.serverInstance(si.getId()));
 				
 				si.getCurrentRound().getActiveClients().addSession(username, userId, acs);
 				
 			} else {
-				log.severe("Unrecognized message type: "+messageType+" msg: "+message, null);
+				log.severe("Unrecognized message type: "+o.getType()+" msg: "+message, null);
 				return;
 			}
 			
@@ -36,11 +36,14 @@ import com.roguecloud.ServerInstance;
 import com.roguecloud.ServerInstanceList;
 import com.roguecloud.db.DatabaseInstance;
 import com.roguecloud.db.DbUser;
+import com.roguecloud.json.BinaryFrameUpdateCodec;
 import com.roguecloud.json.JsonClientConnect;
 import com.roguecloud.json.JsonClientConnectResponse;
 import com.roguecloud.json.JsonClientConnectResponse.ConnectResult;
+import com.roguecloud.json.JsonMessageDecoder;
 import com.roguecloud.server.ActiveWSClient.ViewType;
 import com.roguecloud.server.ActiveWSClientSession.Type;
+import com.roguecloud.utils.CompressionContext;
 import com.roguecloud.utils.CompressionUtils;
 import com.roguecloud.utils.LogContext;
 import com.roguecloud.utils.Logger;
@@ -55,6 +58,9 @@ public class WebSocketClientEndpoint {
 
 	private static final Logger log = Logger.getInstance();
 
+	/** Session user property key of the CompressionContext used to decompress streamed messages from the client */
+	private static final String INBOUND_COMPRESSION_CONTEXT = CompressionContext.class.getName();
+
 	private final RCServerUtilLatencySim latencySim;
 	
 	public WebSocketClientEndpoint() {
@@ -80,6 +86,11 @@ public class WebSocketClientEndpoint {
 	public void close(Session session) {
 		System.out.println("close.");
 		
+		CompressionContext inboundContext = (CompressionContext) session.getUserProperties().remove(INBOUND_COMPRESSION_CONTEXT);
+		if(inboundContext != null) {
+			inboundContext.dispose();
+		}
+		
 		// If the websocket was added as a managed resource, it can now be removed. 
 		ResourceLifecycleUtil.getInstance().removeSession(ServerWsClientUtil.convertSessionToManagedResource(session));
 	}
@@ -102,12 +113,30 @@ public class WebSocketClientEndpoint {
 	@OnMessage
 	public void handleMessage(byte[] message, Session session) {
 		try {
-			handleMessageInner(CompressionUtils.decompressToString(message), session);
+			String str;
+			if(CompressionContext.isStreamingMessage(message)) {
+				str = getInboundCompressionContext(session).decompressToString(message);
+			} else {
+				str = CompressionUtils.decompressToString(message);
+			}
+			handleMessageInner(str, session);
 		} catch (Exception e) {
 			log.severe("Unexpected error in handleMessage",  e,  null);
 		}
 	}
 
+	/** Messages received from a client that supports streaming compression are decompressed with a context that is 
+	 * specific to the session (and which is released on close). */
+	private static CompressionContext getInboundCompressionContext(Session session) {
+		// Messages for a session are delivered one at a time, so there is no race to create the context.
+		CompressionContext result = (CompressionContext) session.getUserProperties().get(INBOUND_COMPRESSION_CONTEXT);
+		if(result == null) {
+			result = new CompressionContext();
+			session.getUserProperties().put(INBOUND_COMPRESSION_CONTEXT, result);
+		}
+		return result;
+	}
+
 	private void handleMessageInner(String message, Session session) throws JsonParseException, JsonMappingException, IOException {
 
 		ServerInstance si = ServerInstanceList.getInstance().getServerInstance();
@@ -125,7 +154,7 @@ public class WebSocketClientEndpoint {
 			String username;
 			Long userId;
 			
-			JsonClientConnect jcc = om.readValue(message, JsonClientConnect.class);
+			JsonClientConnect jcc = JsonMessageDecoder.getInstance().decode(message, JsonClientConnect.class);
 		
 			// The client API version must match the server API version
 			if(jcc.getClientVersion() == null || !jcc.getClientVersion().trim().equals(RCSharedConstants.CLIENT_API_VERSION)) {
@@ -192,8 +221,23 @@ public class WebSocketClientEndpoint {
 				// User has not specified a round to enter, so they may enter the current round.
 			}
 			
+			// Use the binary frame update encoding if the client supports it; otherwise, JSON.
+			boolean binaryFrameUpdates = RCRuntime.ENABLE_BINARY_FRAME_UPDATES && jcc.getFrameUpdateEncodings() != null 
+					&& jcc.getFrameUpdateEncodings().contains(BinaryFrameUpdateCodec.ENCODING_NAME);
+			
+			// Likewise, use streaming compression for messages to the client, if the client supports it.
+			boolean streamingCompression = RCRuntime.ENABLE_STREAMING_COMPRESSION && RCRuntime.ENABLE_DEFLATE_COMPRESSION 
+					&& Boolean.TRUE.equals(jcc.getStreamingCompression());
+			
+			// Likewise, batch the messages queued for the client into a single MessageEnvelope, if the client supports it.
+			boolean messageBatching = RCRuntime.ENABLE_MESSAGE_BATCHING && Boolean.TRUE.equals(jcc.getMessageBatching());
+			
+			// Likewise, send only the changes to the creatures that the client has already seen, if the client supports it.
+			boolean creatureDeltas = RCRuntime.ENABLE_CREATURE_DELTAS && Boolean.TRUE.equals(jcc.getCreatureDeltas());
+			
 			ActiveWSClientSession acs = new ActiveWSClientSession(Type.CLIENT, ViewType.CLIENT_VIEW, jcc.getUuid(), session, 
-					si.getCurrentRound(), System.nanoTime(), jcc.isInitialConnect(), LogContext.serverInstance(si.getId()));
+					si.getCurrentRound(), System.nanoTime(), jcc.isInitialConnect(), binaryFrameUpdates, streamingCompression, messageBatching, creatureDeltas, 
+					LogContext.serverInstance(si.getId()));
 			
 			client = clients.addSession(username, userId, acs);
 			
@@ -204,6 +248,18 @@ public class WebSocketClientEndpoint {
 				}
 				
 				JsonClientConnectResponse response = new JsonClientConnectResponse(JsonClientConnectResponse.ConnectResult.SUCCESS.name(), scope.getRoundId());
+				if(binaryFrameUpdates) {
+					response.setFrameUpdateEncoding(BinaryFrameUpdateCodec.ENCODING_NAME);
+				}
+				if(streamingCompression) {
+					response.setStreamingCompression(true);
+				}
+				if(messageBatching) {
+					response.setMessageBatching(true);
+				}
+				if(creatureDeltas) {
+					response.setCreatureDeltas(true);
+				}
 				acs.writeToClientAsync(om.writeValueAsString(response));
 			} else {
 				// TODO: LOW - Dispose after some period of time, in the failing case.
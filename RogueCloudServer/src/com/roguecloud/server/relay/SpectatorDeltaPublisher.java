@@ -0,0 +1,238 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package com.roguecloud.server.relay;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import com.roguecloud.Position;
+import com.roguecloud.creatures.ICreature;
+import com.roguecloud.map.IMap;
+import com.roguecloud.map.SpatialIndex;
+import com.roguecloud.map.Tile;
+import com.roguecloud.map.TileType;
+import com.roguecloud.utils.Logger;
+import com.roguecloud.utils.ServerUtil;
+import com.roguecloud.utils.ServerUtil.SpectatorRelayMode;
+
+/**
+ * Publishes the changes to the world that spectators can see, once per game tick, as a SpectatorFrameDelta: to the relay of this
+ * JVM (if the spectator relay mode is LOCAL), and to the relays of other JVMs (if a relay port is configured, see 
+ * SpectatorDeltaServer). The relays, rather than the game engine, then generate and send the frames of every spectator browser view.
+ * 
+ * The delta is built on the game thread (see publishTick(...)), which only needs to look at the tiles that changed, and at the 
+ * position and health of each creature; everything else is done by the relays, on their own threads.
+ * 
+ * The first delta of each round is a keyframe, as is the first delta after a keyframe is requested (for example, because a new 
+ * remote relay has connected).
+ */
+public final class SpectatorDeltaPublisher {
+	
+	private static final Logger log = Logger.getInstance();
+	
+	private static final SpectatorDeltaPublisher instance = new SpectatorDeltaPublisher();
+	
+	private final SpectatorRelay localRelay;
+	
+	private final SpectatorDeltaServer server;
+	
+	private volatile boolean keyframeRequested = false;
+	
+	// Game thread only --------------------------
+	
+	private long roundId = -1;
+	
+	/** The most recently published state of each creature */
+	private final HashMap<Long /* creature id*/, PublishedCreature> creatures = new HashMap<>();
+	
+	// --------------------------------------------
+
+	private SpectatorDeltaPublisher() {
+		localRelay = ServerUtil.getSpectatorRelayMode() == SpectatorRelayMode.LOCAL ? SpectatorRelay.getInstance() : null;
+		
+		SpectatorDeltaServer localServer = null;
+		int port = ServerUtil.getSpectatorRelayPort();
+		if(port != -1 && ServerUtil.getSpectatorRelayMode() != SpectatorRelayMode.REMOTE) {
+			try {
+				localServer = new SpectatorDeltaServer(port, this::requestKeyframe);
+				localServer.start();
+			} catch(IOException e) {
+				log.severe("Unable to listen for spectator relays on port "+port, e, null);
+				localServer = null;
+			}
+		}
+		server = localServer;
+	}
+	
+	public static SpectatorDeltaPublisher getInstance() {
+		return instance;
+	}
+	
+	/** Whether any relay is configured; if not, there is no need to call publishTick(...) */
+	public boolean isActive() {
+		return localRelay != null || server != null;
+	}
+	
+	/** The next delta will be a keyframe. May be called from any thread. */
+	public void requestKeyframe() {
+		keyframeRequested = true;
+	}
+	
+	/** 
+	 * Game thread: publish the changes to the world since the previous tick. The follow view is at (followX, followY), and the 
+	 * UI messages of the world and follow views are null if there are none on this tick.
+	 */
+	public void publishTick(long newRoundId, long ticks, IMap map, List<Position> changedTiles, SpatialIndex<ICreature> creatureIndex,
+			int followX, int followY, int followWidth, int followHeight, String worldViewUi, String followViewUi) {
+		
+		boolean keyframe = keyframeRequested || newRoundId != roundId;
+		keyframeRequested = false;
+
+		if(keyframe) {
+			roundId = newRoundId;
+			creatures.clear();
+		}
+		
+		int worldWidth = map.getXSize();
+		
+		// Tiles
+		int[] tileIndices;
+		int[][] tileLayers;
+		if(keyframe) {
+			tileIndices = new int[map.getXSize() * map.getYSize()];
+			tileLayers = new int[tileIndices.length][];
+			for(int y = 0; y < map.getYSize(); y++) {
+				for(int x = 0; x < worldWidth; x++) {
+					int index = x + y * worldWidth;
+					tileIndices[index] = index;
+					tileLayers[index] = getLayers(map.getTile(x, y), ticks);
+				}
+			}
+			
+		} else {
+			tileIndices = new int[changedTiles.size()];
+			tileLayers = new int[changedTiles.size()][];
+			for(int x = 0; x < tileIndices.length; x++) {
+				Position p = changedTiles.get(x);
+				tileIndices[x] = p.getX() + p.getY() * worldWidth;
+				tileLayers[x] = getLayers(map.getTile(p), ticks);
+			}
+		}
+		
+		// Creatures that are new, or have changed
+		List<ICreature> changedCreatures = new ArrayList<>();
+		for(ICreature c : creatureIndex.getAll()) {
+			PublishedCreature pc = creatures.get(c.getId());
+			if(pc == null) {
+				pc = new PublishedCreature();
+				creatures.put(c.getId(), pc);
+				pc.update(c);
+				changedCreatures.add(c);
+			} else if(pc.update(c)) {
+				changedCreatures.add(c);
+			}
+			pc.lastSeenTick = ticks;
+		}
+		
+		long[] creatureIds = new long[changedCreatures.size()];
+		int[] creatureData = new int[creatureIds.length * 4];
+		String[] creatureUsernames = new String[creatureIds.length];
+		for(int x = 0; x < creatureIds.length; x++) {
+			ICreature c = changedCreatures.get(x);
+			creatureIds[x] = c.getId();
+			creatureData[x*4] = c.getPosition().getX();
+			creatureData[x*4+1] = c.getPosition().getY();
+			creatureData[x*4+2] = c.getHp();
+			creatureData[x*4+3] = c.getMaxHp();
+			creatureUsernames[x] = c.isPlayerCreature() ? c.getName() : null;
+		}
+		
+		// Creatures that are no longer on the map
+		List<Long> removed = new ArrayList<>();
+		for(Iterator<Entry<Long, PublishedCreature>> it = creatures.entrySet().iterator(); it.hasNext();) {
+			Entry<Long, PublishedCreature> e = it.next();
+			if(e.getValue().lastSeenTick != ticks) {
+				removed.add(e.getKey());
+				it.remove();
+			}
+		}
+		long[] removedCreatureIds = removed.stream().mapToLong(e -> e).toArray();
+		
+		SpectatorFrameDelta delta = new SpectatorFrameDelta(roundId, ticks, keyframe, worldWidth, map.getYSize(), followX, followY, 
+				followWidth, followHeight, tileIndices, tileLayers, creatureIds, creatureData, creatureUsernames, removedCreatureIds, 
+				worldViewUi, followViewUi);
+		
+		if(localRelay != null) {
+			localRelay.accept(delta);
+		}
+		
+		if(server != null) {
+			server.publish(delta);
+		}
+	}
+	
+	/** The presentation layers of a tile, as the number and then the rotation of each layer (see BrowserWebSocketClientShared.convertLayers(...)) */
+	private static int[] getLayers(Tile t, long ticks) {
+		if(t == null) {
+			return new int[0];
+		}
+		
+		// As in BrowserWebSocketClientShared, multiple creatures on the same tile alternate every 500 msecs.
+		TileType[] ttArr = t.getTileTypeLayersForBrowserPresentation((int)(ticks/5));
+		
+		int[] result = new int[ttArr.length * 2];
+		for(int x = 0; x < ttArr.length; x++) {
+			result[x*2] = ttArr[x].getNumber();
+			result[x*2+1] = ttArr[x].getRotation();
+		}
+		return result;
+	}
+	
+	/** The state of a creature, as of the last delta it was published in */
+	private static class PublishedCreature {
+		int x;
+		int y;
+		int hp;
+		int maxHp;
+		String username;
+		
+		long lastSeenTick;
+		
+		/** Returns true if the creature has changed since it was last published */
+		boolean update(ICreature c) {
+			String newUsername = c.isPlayerCreature() ? c.getName() : null;
+			Position p = c.getPosition();
+			
+			if(p.getX() == x && p.getY() == y && c.getHp() == hp && c.getMaxHp() == maxHp 
+					&& (newUsername == null ? username == null : newUsername.equals(username))) {
+				return false;
+			}
+			
+			x = p.getX();
+			y = p.getY();
+			hp = c.getHp();
+			maxHp = c.getMaxHp();
+			username = newUsername;
+			return true;
+		}
+	}
+}
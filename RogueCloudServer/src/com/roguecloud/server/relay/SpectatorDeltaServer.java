@@ -0,0 +1,190 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package com.roguecloud.server.relay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.roguecloud.utils.Logger;
+
+/**
+ * Listens on a port of the loopback interface for remote relays (see SpectatorRelayConnector), and sends each of them every 
+ * delta that is published by the game engine. 
+ * 
+ * Each relay has its own writer thread and queue of deltas, so a slow relay does not hold up the game thread, nor the other relays. 
+ * A newly connected relay is sent nothing until the next keyframe (which is requested when it connects). A relay that falls more 
+ * than MAX_QUEUED_DELTAS behind is disconnected; it will then reconnect, and start again from a new keyframe.
+ *
+ * The stream starts with MAGIC and VERSION, followed by each delta as its length and then its encoded form (see 
+ * SpectatorFrameDelta.getEncoded()).
+ */
+final class SpectatorDeltaServer {
+	
+	static final int MAGIC = 0x52435344;
+	
+	static final int VERSION = 1;
+	
+	private static final int MAX_QUEUED_DELTAS = 100;
+	
+	private static final Logger log = Logger.getInstance();
+	
+	private final ServerSocket serverSocket;
+	
+	private final Runnable keyframeRequester;
+	
+	private final Object lock = new Object();
+	
+	private final List<Subscriber> subscribers_synch_lock = new ArrayList<>();
+	
+	SpectatorDeltaServer(int port, Runnable keyframeRequester) throws IOException {
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.keyframeRequester = keyframeRequester;
+	}
+	
+	void start() {
+		Thread t = new Thread(this::acceptConnections, SpectatorDeltaServer.class.getName());
+		t.setDaemon(true);
+		t.start();
+		log.interesting("Listening for spectator relays on "+serverSocket.getLocalSocketAddress(), null);
+	}
+	
+	/** Game thread: queue the delta to be sent to every connected relay. */
+	void publish(SpectatorFrameDelta delta) {
+		List<Subscriber> behind = new ArrayList<>();
+		synchronized(lock) {
+			for(Subscriber s : subscribers_synch_lock) {
+				if(!s.offer(delta)) {
+					behind.add(s);
+				}
+			}
+		}
+		
+		// Closed outside the loop, as close() removes the subscriber from the list
+		for(Subscriber s : behind) {
+			s.close();
+		}
+	}
+	
+	private void acceptConnections() {
+		while(true) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				
+				Subscriber s = new Subscriber(socket);
+				synchronized(lock) {
+					subscribers_synch_lock.add(s);
+				}
+				s.start();
+				keyframeRequester.run();
+				
+				log.interesting("Spectator relay connected from "+socket.getRemoteSocketAddress(), null);
+				
+			} catch(IOException e) {
+				log.severe("Error on accepting spectator relay connection", e, null);
+				try { Thread.sleep(1000); } catch (InterruptedException e1) { return; }
+			}
+		}
+	}
+	
+	private void remove(Subscriber s) {
+		synchronized(lock) {
+			subscribers_synch_lock.remove(s);
+		}
+	}
+	
+	/** A connected relay, and the thread that writes to it */
+	private class Subscriber extends Thread {
+		
+		private final Socket socket;
+		
+		private final BlockingQueue<SpectatorFrameDelta> queue = new ArrayBlockingQueue<>(MAX_QUEUED_DELTAS);
+		
+		/** Whether a keyframe has been queued; until then, deltas are not queued */
+		private boolean keyframeSeen_synch_lock = false;
+		
+		private volatile boolean closed = false;
+		
+		Subscriber(Socket socket) {
+			this.socket = socket;
+			setDaemon(true);
+			setName(Subscriber.class.getName()+" "+socket.getRemoteSocketAddress());
+		}
+		
+		/** Called under the server lock; returns false if the relay is too far behind, in which case the caller should close it. */
+		boolean offer(SpectatorFrameDelta delta) {
+			if(closed) { return true; }
+			
+			if(!keyframeSeen_synch_lock) {
+				if(!delta.isKeyframe()) { return true; }
+				keyframeSeen_synch_lock = true;
+			}
+			
+			if(!queue.offer(delta)) {
+				log.err("Spectator relay "+socket.getRemoteSocketAddress()+" is more than "+MAX_QUEUED_DELTAS+" deltas behind; disconnecting.", null);
+				return false;
+			}
+			return true;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+				dos.writeInt(MAGIC);
+				dos.writeInt(VERSION);
+				dos.flush();
+				
+				while(!closed) {
+					SpectatorFrameDelta delta = queue.take();
+					
+					byte[] encoded = delta.getEncoded();
+					dos.writeInt(encoded.length);
+					dos.write(encoded);
+					
+					if(queue.isEmpty()) {
+						dos.flush();
+					}
+				}
+				
+			} catch(IOException | InterruptedException e) {
+				if(!closed) {
+					log.interesting("Spectator relay "+socket.getRemoteSocketAddress()+" disconnected: "+e.getMessage(), null);
+				}
+			} finally {
+				close();
+			}
+		}
+		
+		private void close() {
+			closed = true;
+			remove(this);
+			try { socket.close(); } catch (IOException e) { /* ignore */ }
+			// Wake the writer thread, if it is waiting for a delta
+			interrupt();
+		}
+	}
+}
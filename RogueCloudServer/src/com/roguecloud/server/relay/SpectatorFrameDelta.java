@@ -0,0 +1,322 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package com.roguecloud.server.relay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The changes to the world that spectators can see, for a single game tick: the presentation of each tile that changed, and each
+ * creature that appeared, moved, or changed health (or was removed), along with the position of the follow view and the 
+ * JsonUpdateBrowserUI message (if any) of each spectator view. Created by SpectatorDeltaPublisher on the game thread, and 
+ * immutable once created.
+ * 
+ * A keyframe contains every tile and creature of the world, rather than only those that changed; a relay that receives a 
+ * keyframe discards its previous copy of the world.
+ * 
+ * Deltas are sent to remote relays in the form returned by getEncoded(), see SpectatorDeltaServer. 
+ */
+public final class SpectatorFrameDelta {
+	
+	private final long roundId;
+	private final long ticks;
+	private final boolean keyframe;
+	
+	private final int worldWidth;
+	private final int worldHeight;
+	
+	private final int followX;
+	private final int followY;
+	private final int followWidth;
+	private final int followHeight;
+	
+	/** The position of each changed tile, as x + y * worldWidth */
+	private final int[] tileIndices;
+	/** The presentation layers of each changed tile: the number and then the rotation of each layer */
+	private final int[][] tileLayers;
+	
+	private final long[] creatureIds;
+	/** The x, y, hp and maxHp of each changed creature */
+	private final int[] creatureData;
+	/** The username of each changed creature, for player creatures only (null otherwise) */
+	private final String[] creatureUsernames;
+	
+	private final long[] removedCreatureIds;
+	
+	/** The JsonUpdateBrowserUI message of the SERVER_VIEW_WORLD and SERVER_VIEW_FOLLOW views, or null if there is none on this tick */
+	private final String worldViewUi;
+	private final String followViewUi;
+	
+	private final Object lock = new Object();
+	
+	/** The encoded form of this delta, once it has been sent to a remote relay; see getEncoded() */
+	private byte[] encoded_synch_lock;
+	
+	public SpectatorFrameDelta(long roundId, long ticks, boolean keyframe, int worldWidth, int worldHeight, int followX, int followY,
+			int followWidth, int followHeight, int[] tileIndices, int[][] tileLayers, long[] creatureIds, int[] creatureData, 
+			String[] creatureUsernames, long[] removedCreatureIds, String worldViewUi, String followViewUi) {
+		
+		if(tileIndices.length != tileLayers.length || creatureIds.length != creatureUsernames.length 
+				|| creatureIds.length * 4 != creatureData.length) {
+			throw new IllegalArgumentException();
+		}
+		
+		this.roundId = roundId;
+		this.ticks = ticks;
+		this.keyframe = keyframe;
+		this.worldWidth = worldWidth;
+		this.worldHeight = worldHeight;
+		this.followX = followX;
+		this.followY = followY;
+		this.followWidth = followWidth;
+		this.followHeight = followHeight;
+		this.tileIndices = tileIndices;
+		this.tileLayers = tileLayers;
+		this.creatureIds = creatureIds;
+		this.creatureData = creatureData;
+		this.creatureUsernames = creatureUsernames;
+		this.removedCreatureIds = removedCreatureIds;
+		this.worldViewUi = worldViewUi;
+		this.followViewUi = followViewUi;
+	}
+
+	public long getRoundId() {
+		return roundId;
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+
+	public boolean isKeyframe() {
+		return keyframe;
+	}
+
+	public int getWorldWidth() {
+		return worldWidth;
+	}
+
+	public int getWorldHeight() {
+		return worldHeight;
+	}
+
+	public int getFollowX() {
+		return followX;
+	}
+
+	public int getFollowY() {
+		return followY;
+	}
+
+	public int getFollowWidth() {
+		return followWidth;
+	}
+
+	public int getFollowHeight() {
+		return followHeight;
+	}
+	
+	public int getTileCount() {
+		return tileIndices.length;
+	}
+
+	public int getTileIndex(int tile) {
+		return tileIndices[tile];
+	}
+	
+	public int[] getTileLayers(int tile) {
+		return tileLayers[tile].clone();
+	}
+	
+	public int getCreatureCount() {
+		return creatureIds.length;
+	}
+	
+	public long getCreatureId(int creature) {
+		return creatureIds[creature];
+	}
+	
+	public int getCreatureX(int creature) {
+		return creatureData[creature*4];
+	}
+
+	public int getCreatureY(int creature) {
+		return creatureData[creature*4+1];
+	}
+	
+	public int getCreatureHp(int creature) {
+		return creatureData[creature*4+2];
+	}
+	
+	public int getCreatureMaxHp(int creature) {
+		return creatureData[creature*4+3];
+	}
+	
+	public String getCreatureUsername(int creature) {
+		return creatureUsernames[creature];
+	}
+	
+	public int getRemovedCreatureCount() {
+		return removedCreatureIds.length;
+	}
+	
+	public long getRemovedCreatureId(int creature) {
+		return removedCreatureIds[creature];
+	}
+
+	public String getWorldViewUi() {
+		return worldViewUi;
+	}
+
+	public String getFollowViewUi() {
+		return followViewUi;
+	}
+	
+	/** Returns the encoded form of this delta, which is read by decode(...); the delta is encoded at most once, however many 
+	 * remote relays it is sent to. */
+	public byte[] getEncoded() {
+		synchronized(lock) {
+			if(encoded_synch_lock == null) {
+				encoded_synch_lock = encode();
+			}
+			return encoded_synch_lock;
+		}
+	}
+	
+	private byte[] encode() {
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(256 + tileIndices.length * 32 + creatureIds.length * 28);
+			DataOutputStream dos = new DataOutputStream(baos);
+			
+			dos.writeLong(roundId);
+			dos.writeLong(ticks);
+			dos.writeBoolean(keyframe);
+			dos.writeInt(worldWidth);
+			dos.writeInt(worldHeight);
+			dos.writeInt(followX);
+			dos.writeInt(followY);
+			dos.writeInt(followWidth);
+			dos.writeInt(followHeight);
+			
+			dos.writeInt(tileIndices.length);
+			for(int x = 0; x < tileIndices.length; x++) {
+				dos.writeInt(tileIndices[x]);
+				int[] layers = tileLayers[x];
+				dos.writeByte(layers.length / 2);
+				for(int layer : layers) {
+					dos.writeInt(layer);
+				}
+			}
+			
+			dos.writeInt(creatureIds.length);
+			for(int x = 0; x < creatureIds.length; x++) {
+				dos.writeLong(creatureIds[x]);
+				for(int y = 0; y < 4; y++) {
+					dos.writeInt(creatureData[x*4+y]);
+				}
+				writeString(creatureUsernames[x], dos);
+			}
+			
+			dos.writeInt(removedCreatureIds.length);
+			for(long id : removedCreatureIds) {
+				dos.writeLong(id);
+			}
+			
+			writeString(worldViewUi, dos);
+			writeString(followViewUi, dos);
+			
+			dos.flush();
+			return baos.toByteArray();
+			
+		} catch(IOException e) {
+			// Not possible with a ByteArrayOutputStream
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/** Read a delta in the form written by encode() */
+	public static SpectatorFrameDelta decode(DataInputStream dis) throws IOException {
+		long roundId = dis.readLong();
+		long ticks = dis.readLong();
+		boolean keyframe = dis.readBoolean();
+		int worldWidth = dis.readInt();
+		int worldHeight = dis.readInt();
+		int followX = dis.readInt();
+		int followY = dis.readInt();
+		int followWidth = dis.readInt();
+		int followHeight = dis.readInt();
+		
+		int tiles = dis.readInt();
+		int[] tileIndices = new int[tiles];
+		int[][] tileLayers = new int[tiles][];
+		for(int x = 0; x < tiles; x++) {
+			tileIndices[x] = dis.readInt();
+			int[] layers = new int[dis.readUnsignedByte() * 2];
+			for(int y = 0; y < layers.length; y++) {
+				layers[y] = dis.readInt();
+			}
+			tileLayers[x] = layers;
+		}
+		
+		int creatures = dis.readInt();
+		long[] creatureIds = new long[creatures];
+		int[] creatureData = new int[creatures * 4];
+		String[] creatureUsernames = new String[creatures];
+		for(int x = 0; x < creatures; x++) {
+			creatureIds[x] = dis.readLong();
+			for(int y = 0; y < 4; y++) {
+				creatureData[x*4+y] = dis.readInt();
+			}
+			creatureUsernames[x] = readString(dis);
+		}
+		
+		long[] removedCreatureIds = new long[dis.readInt()];
+		for(int x = 0; x < removedCreatureIds.length; x++) {
+			removedCreatureIds[x] = dis.readLong();
+		}
+		
+		String worldViewUi = readString(dis);
+		String followViewUi = readString(dis);
+		
+		return new SpectatorFrameDelta(roundId, ticks, keyframe, worldWidth, worldHeight, followX, followY, followWidth, followHeight, 
+				tileIndices, tileLayers, creatureIds, creatureData, creatureUsernames, removedCreatureIds, worldViewUi, followViewUi);
+	}
+	
+	private static void writeString(String str, DataOutputStream dos) throws IOException {
+		if(str == null) {
+			dos.writeInt(-1);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		dos.writeInt(bytes.length);
+		dos.write(bytes);
+	}
+	
+	private static String readString(DataInputStream dis) throws IOException {
+		int length = dis.readInt();
+		if(length == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		dis.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package com.roguecloud.server.relay;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+
+import com.roguecloud.BrowserWebSocketClientShared;
+import com.roguecloud.BrowserWebSocketClientShared.BrowserViewSource;
+import com.roguecloud.Position;
+import com.roguecloud.server.ActiveWSClient.ViewType;
+import com.roguecloud.server.ActiveWSClientSession;
+import com.roguecloud.utils.Logger;
+import com.roguecloud.utils.ServerUtil;
+import com.roguecloud.utils.ServerUtil.SpectatorRelayMode;
+
+/**
+ * Serves the spectator browser views (SERVER_VIEW_WORLD and SERVER_VIEW_FOLLOW) from a copy of the world that is reconstructed 
+ * from the deltas published by the game engine (see SpectatorDeltaPublisher), either in this JVM (LOCAL mode), or in another JVM 
+ * (REMOTE mode, see SpectatorRelayConnector). The game thread does not generate frames for, or write to, the sessions of the relay.
+ * 
+ * The relay thread applies each delta to its copy of the world, and then generates a frame for each group of sessions with the same 
+ * view and previous position (as the game engine does for its own browser clients), and writes it to each session of the group. If 
+ * the relay falls behind, the deltas that are waiting are applied together, and a single frame is sent for all of them. 
+ * 
+ * Sessions are closed when a new round starts, as they are when they are served by the game engine.
+ */
+public final class SpectatorRelay {
+	
+	private static final Logger log = Logger.getInstance();
+	
+	/** If this many deltas are waiting to be applied, they are discarded, and a keyframe is requested instead. */
+	private static final int MAX_PENDING_DELTAS = 100;
+	
+	private static final Object instanceLock = new Object();
+	
+	private static SpectatorRelay instance_synch_instanceLock;
+	
+	private final Object lock = new Object();
+	
+	private final List<SpectatorFrameDelta> pendingDeltas_synch_lock = new ArrayList<>();
+	
+	private final List<ActiveWSClientSession> newSessions_synch_lock = new ArrayList<>();
+	
+	/** Whether the pending deltas were discarded, and thus the next delta to be applied must be a keyframe */
+	private boolean keyframeNeeded_synch_lock = false;
+	
+	private final Runnable keyframeRequester;
+	
+	// Relay thread only --------------------------
+	
+	private final JsonBuilderFactory factory = Json.createBuilderFactory(new HashMap<String, Object>());
+	
+	private final List<RelaySession> sessions = new ArrayList<>();
+	
+	private final RelayWorld world = new RelayWorld();
+	
+	// --------------------------------------------
+	
+	private SpectatorRelay(Runnable keyframeRequester) {
+		this.keyframeRequester = keyframeRequester;
+		
+		Thread t = new Thread(this::run, SpectatorRelay.class.getName());
+		t.setDaemon(true);
+		t.start();
+	}
+	
+	public static SpectatorRelay getInstance() {
+		synchronized(instanceLock) {
+			if(instance_synch_instanceLock == null) {
+				if(ServerUtil.getSpectatorRelayMode() == SpectatorRelayMode.REMOTE) {
+					SpectatorRelayConnector connector = new SpectatorRelayConnector(ServerUtil.getSpectatorRelayAddress());
+					instance_synch_instanceLock = new SpectatorRelay(connector::reconnect);
+					connector.start(instance_synch_instanceLock);
+					
+				} else {
+					instance_synch_instanceLock = new SpectatorRelay(() -> SpectatorDeltaPublisher.getInstance().requestKeyframe());
+				}
+			}
+			return instance_synch_instanceLock;
+		}
+	}
+
+	/** Whether browser spectator views should be served by the relay, rather than by the game engine */
+	public static boolean isEnabled() {
+		return ServerUtil.getSpectatorRelayMode() != SpectatorRelayMode.NONE;
+	}
+	
+	/** Add a browser session (of a spectator view); it will be sent a full frame with the next delta. */
+	public void addSession(ActiveWSClientSession session) {
+		synchronized(lock) {
+			newSessions_synch_lock.add(session);
+			lock.notify();
+		}
+	}
+	
+	/** Queue a delta to be applied by the relay thread. May be called from any thread, but deltas must be accepted in order. */
+	public void accept(SpectatorFrameDelta delta) {
+		boolean requestKeyframe = false;
+		synchronized(lock) {
+			if(keyframeNeeded_synch_lock) {
+				if(!delta.isKeyframe()) { return; }
+				keyframeNeeded_synch_lock = false;
+			}
+			
+			if(!delta.isKeyframe() && pendingDeltas_synch_lock.size() >= MAX_PENDING_DELTAS) {
+				log.err("Spectator relay is more than "+MAX_PENDING_DELTAS+" deltas behind; waiting for a keyframe.", null);
+				pendingDeltas_synch_lock.clear();
+				keyframeNeeded_synch_lock = true;
+				requestKeyframe = true;
+			} else {
+				if(delta.isKeyframe()) {
+					// The keyframe supersedes every delta before it
+					pendingDeltas_synch_lock.clear();
+				}
+				pendingDeltas_synch_lock.add(delta);
+				lock.notify();
+			}
+		}
+		
+		if(requestKeyframe) {
+			keyframeRequester.run();
+		}
+	}
+	
+	/** Called by the connector when the connection to the game node is lost: nothing is applied until the next keyframe. */
+	void disconnected() {
+		synchronized(lock) {
+			pendingDeltas_synch_lock.clear();
+			keyframeNeeded_synch_lock = true;
+		}
+	}
+	
+	private void run() {
+		while(true) {
+			List<SpectatorFrameDelta> deltas;
+			List<ActiveWSClientSession> newSessions;
+			
+			synchronized(lock) {
+				while(pendingDeltas_synch_lock.isEmpty()) {
+					try { lock.wait(); } catch (InterruptedException e) { return; }
+				}
+				deltas = new ArrayList<>(pendingDeltas_synch_lock);
+				pendingDeltas_synch_lock.clear();
+				newSessions = new ArrayList<>(newSessions_synch_lock);
+				newSessions_synch_lock.clear();
+			}
+			
+			try {
+				update(deltas, newSessions);
+			} catch(Exception e) {
+				// Prevent a problematic delta or session from stopping the relay.
+				log.severe("Error on updating spectator relay", e, null);
+			}
+		}
+	}
+	
+	/** Relay thread: apply the deltas to the world, add the new sessions, and send the resulting frame to each session. */
+	private void update(List<SpectatorFrameDelta> deltas, List<ActiveWSClientSession> newSessions) {
+		
+		Set<Integer> changedTileIndices = new LinkedHashSet<>();
+		Map<ViewType, List<String>> uiMessages = new HashMap<>();
+		boolean fullFrame = false;
+		
+		for(SpectatorFrameDelta delta : deltas) {
+			if(!delta.isKeyframe() && !world.isReady()) {
+				// Waiting for the first keyframe
+				continue;
+			}
+			
+			if(world.isReady() && delta.getRoundId() != world.roundId) {
+				log.interesting("Closing "+sessions.size()+" spectator relay sessions on start of round "+delta.getRoundId(), null);
+				sessions.forEach( e -> e.session.dispose());
+				sessions.clear();
+				changedTileIndices.clear();
+				uiMessages.clear();
+			}
+			
+			if(delta.isKeyframe()) {
+				fullFrame = true;
+				changedTileIndices.clear();
+			}
+			
+			world.apply(delta, changedTileIndices);
+			
+			if(delta.getWorldViewUi() != null) {
+				uiMessages.computeIfAbsent(ViewType.SERVER_VIEW_WORLD, e -> new ArrayList<>()).add(delta.getWorldViewUi());
+			}
+			if(delta.getFollowViewUi() != null) {
+				uiMessages.computeIfAbsent(ViewType.SERVER_VIEW_FOLLOW, e -> new ArrayList<>()).add(delta.getFollowViewUi());
+			}
+		}
+		
+		// New sessions are added after the deltas are applied, so that they are not closed if a delta starts a new round.
+		for(ActiveWSClientSession s : newSessions) {
+			sessions.add(new RelaySession(s));
+		}
+		
+		if(!world.isReady()) {
+			return;
+		}
+		
+		List<Position> changedTiles = new ArrayList<>(changedTileIndices.size());
+		for(int index : changedTileIndices) {
+			changedTiles.add(new Position(index % world.width, index / world.width));
+		}
+		
+		// Sessions with the same view and previous position are sent the same frame
+		Map<FrameKey, String> frames = new HashMap<>();
+		
+		for(Iterator<RelaySession> it = sessions.iterator(); it.hasNext();) {
+			RelaySession rs = it.next();
+			ActiveWSClientSession session = rs.session;
+			try {
+				if(!session.isSessionOpenUnsynchronized()) {
+					it.remove();
+					continue;
+				}
+				
+				List<String> ui = uiMessages.get(session.getViewType());
+				if(ui != null) {
+					ui.forEach( e -> session.writeToClientAsync(e));
+				}
+				
+				if(session.isAboveHighWaterMark()) {
+					session.coalesceFrameUpdate();
+					continue;
+				}
+				
+				if(fullFrame || session.getAndResetFullFrameNeeded()) {
+					rs.currX = -1;
+					rs.currY = -1;
+				}
+				
+				int newX, newY, newWidth, newHeight;
+				if(session.getViewType() == ViewType.SERVER_VIEW_FOLLOW) {
+					newX = world.followX;
+					newY = world.followY;
+					newWidth = world.followWidth;
+					newHeight = world.followHeight;
+				} else {
+					newX = 0;
+					newY = 0;
+					newWidth = world.width;
+					newHeight = world.height;
+				}
+				
+				FrameKey key = new FrameKey(session.getViewType(), rs.currX, rs.currY);
+				String frame = frames.get(key);
+				if(frame == null) {
+					frame = BrowserWebSocketClientShared.generateBrowserJson(rs.currX, rs.currY, newX, newY, newWidth, newHeight, changedTiles, 
+							world.ticks, factory, world);
+					frames.put(key, frame);
+				}
+				
+				session.setBrowserFirstConnect(false);
+				session.writeFrameUpdateAsync(frame);
+				
+				rs.currX = newX;
+				rs.currY = newY;
+				
+			} catch(Exception e) {
+				// Prevent a problematic session from impacting the rest.
+				log.err("Error sending state to spectator relay session", e, null);
+			}
+		}
+	}
+	
+	/** A browser session of the relay, and the position of the view that was last sent to it (-1, -1 if none) */
+	private static class RelaySession {
+		final ActiveWSClientSession session;
+		int currX = -1;
+		int currY = -1;
+		
+		RelaySession(ActiveWSClientSession session) {
+			this.session = session;
+		}
+	}
+	
+	/** On a given update, sessions with equal keys are sent the same frame */
+	private static class FrameKey {
+		final ViewType viewType;
+		final int prevX;
+		final int prevY;
+		
+		FrameKey(ViewType viewType, int prevX, int prevY) {
+			this.viewType = viewType;
+			this.prevX = prevX;
+			this.prevY = prevY;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(viewType, prevX, prevY);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof FrameKey)) { return false; }
+			FrameKey other = (FrameKey)obj;
+			return viewType == other.viewType && prevX == other.prevX && prevY == other.prevY;
+		}
+	}
+	
+	/** The relay's copy of the world: the presentation of each tile, and the creatures. Relay thread only. */
+	private class RelayWorld implements BrowserViewSource {
+		long roundId = -1;
+		long ticks;
+		
+		int width;
+		int height;
+		
+		int followX;
+		int followY;
+		int followWidth;
+		int followHeight;
+		
+		/** The presentation layers of each tile (see SpectatorFrameDelta), by x + y * width */
+		int[][] tileLayers;
+		/** The converted form of each tile, or null if it has not been converted since it last changed */
+		JsonArray[] tileJson;
+		
+		final HashMap<Long /* creature id */, RelayCreature> creatures = new HashMap<>();
+		
+		boolean isReady() {
+			return tileLayers != null;
+		}
+		
+		void apply(SpectatorFrameDelta delta, Set<Integer> changedTileIndices) {
+			if(delta.isKeyframe()) {
+				width = delta.getWorldWidth();
+				height = delta.getWorldHeight();
+				tileLayers = new int[width * height][];
+				tileJson = new JsonArray[width * height];
+				creatures.clear();
+			}
+			
+			roundId = delta.getRoundId();
+			ticks = delta.getTicks();
+			followX = delta.getFollowX();
+			followY = delta.getFollowY();
+			followWidth = delta.getFollowWidth();
+			followHeight = delta.getFollowHeight();
+			
+			for(int x = 0; x < delta.getTileCount(); x++) {
+				int index = delta.getTileIndex(x);
+				tileLayers[index] = delta.getTileLayers(x);
+				tileJson[index] = null;
+				if(!delta.isKeyframe()) {
+					changedTileIndices.add(index);
+				}
+			}
+			
+			for(int x = 0; x < delta.getCreatureCount(); x++) {
+				creatures.put(delta.getCreatureId(x), new RelayCreature(delta.getCreatureId(x), delta.getCreatureX(x), delta.getCreatureY(x),
+						delta.getCreatureHp(x), delta.getCreatureMaxHp(x), delta.getCreatureUsername(x)));
+			}
+			
+			for(int x = 0; x < delta.getRemovedCreatureCount(); x++) {
+				creatures.remove(delta.getRemovedCreatureId(x));
+			}
+		}
+
+		@Override
+		public JsonArray getTile(int x, int y) {
+			if(x < 0 || y < 0 || x >= width || y >= height) {
+				return factory.createArrayBuilder().build();
+			}
+			
+			int index = x + y * width;
+			JsonArray result = tileJson[index];
+			if(result == null) {
+				int[] layers = tileLayers[index];
+				result = BrowserWebSocketClientShared.convertLayers(layers != null ? layers : new int[0], factory).build();
+				tileJson[index] = result;
+			}
+			return result;
+		}
+
+		@Override
+		public void addCreatures(int x, int y, int w, int h, JsonArrayBuilder creatureArray) {
+			for(RelayCreature c : creatures.values()) {
+				if(c.x >= x && c.y >= y && c.x < x + w && c.y < y + h) {
+					creatureArray.add(BrowserWebSocketClientShared.convertCreature(c.id, c.x, c.y, c.hp, c.maxHp, c.username, factory));
+				}
+			}
+		}
+	}
+	
+	/** A creature of the relay's copy of the world */
+	private static class RelayCreature {
+		final long id;
+		final int x;
+		final int y;
+		final int hp;
+		final int maxHp;
+		final String username;
+		
+		RelayCreature(long id, int x, int y, int hp, int maxHp, String username) {
+			this.id = id;
+			this.x = x;
+			this.y = y;
+			this.hp = hp;
+			this.maxHp = maxHp;
+			this.username = username;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package com.roguecloud.server.relay;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import com.roguecloud.utils.Logger;
+
+/**
+ * For a relay in REMOTE mode: connects to the game node (see SpectatorDeltaServer), and passes each delta it receives to the 
+ * relay. If the connection is lost (or the relay falls behind, see reconnect()), it reconnects after RECONNECT_DELAY_IN_MSECS, and 
+ * the game node starts again from a new keyframe.
+ */
+final class SpectatorRelayConnector {
+
+	private static final Logger log = Logger.getInstance();
+	
+	private static final long RECONNECT_DELAY_IN_MSECS = 1000;
+	
+	private final String address;
+	
+	/** The host and port of 'address'; host is null if the address is missing or invalid. */
+	private final String host;
+	private final int port;
+	
+	private final Object lock = new Object();
+	
+	private Socket socket_synch_lock;
+	
+	SpectatorRelayConnector(String address) {
+		this.address = address;
+		
+		String parsedHost = null;
+		int parsedPort = -1;
+		if(address != null) {
+			int index = address.lastIndexOf(':');
+			if(index > 0) {
+				try {
+					parsedPort = Integer.parseInt(address.substring(index+1));
+					if(parsedPort > 0 && parsedPort <= 65535) {
+						parsedHost = address.substring(0, index);
+					}
+				} catch(NumberFormatException e) { /* handled below */ }
+			}
+		}
+		this.host = parsedHost;
+		this.port = parsedPort;
+	}
+	
+	void start(SpectatorRelay relay) {
+		Thread t = new Thread(() -> { run(relay); }, SpectatorRelayConnector.class.getName());
+		t.setDaemon(true);
+		t.start();
+	}
+	
+	/** Drop the current connection (if any), so that a new one is made, starting with a keyframe. May be called from any thread. */
+	void reconnect() {
+		synchronized(lock) {
+			if(socket_synch_lock != null) {
+				try { socket_synch_lock.close(); } catch (IOException e) { /* ignore */ }
+			}
+		}
+	}
+	
+	private void run(SpectatorRelay relay) {
+		if(address == null) {
+			log.severe("No game node address is configured for the spectator relay", null);
+			return;
+		}
+		
+		if(host == null) {
+			log.severe("Invalid game node address for the spectator relay, expected host:port: "+address, null);
+			return;
+		}
+		
+		while(true) {
+			Socket socket = new Socket();
+			try {
+				synchronized(lock) {
+					socket_synch_lock = socket;
+				}
+				socket.connect(new InetSocketAddress(host, port));
+				
+				DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+				if(dis.readInt() != SpectatorDeltaServer.MAGIC || dis.readInt() != SpectatorDeltaServer.VERSION) {
+					throw new IOException("Unrecognized spectator relay stream from "+address);
+				}
+				
+				log.interesting("Spectator relay connected to "+address, null);
+				
+				while(true) {
+					int length = dis.readInt();
+					byte[] bytes = new byte[length];
+					dis.readFully(bytes);
+					
+					relay.accept(SpectatorFrameDelta.decode(new DataInputStream(new ByteArrayInputStream(bytes))));
+				}
+				
+			} catch(EOFException e) {
+				log.interesting("Spectator relay connection to "+address+" was closed", null);
+			} catch(IOException e) {
+				log.interesting("Spectator relay connection to "+address+" failed: "+e.getMessage(), null);
+			} catch(RuntimeException e) {
+				// Unexpected, but the connection is dropped and remade (with a new keyframe) rather than ending the thread
+				log.severe("Unexpected error on spectator relay connection to "+address, e, null);
+			} finally {
+				try { socket.close(); } catch (IOException e) { /* ignore */ }
+			}
+			
+			relay.disconnected();
+			
+			try { Thread.sleep(RECONNECT_DELAY_IN_MSECS); } catch (InterruptedException e) { return; }
+		}
+	}
+}
@@ -16,14 +16,16 @@
 
 package com.roguecloud.utils;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import com.roguecloud.AIContext;
+import com.roguecloud.RCConstants;
 import com.roguecloud.RoundScope;
 import com.roguecloud.client.EventLog;
 import com.roguecloud.client.SelfState;
@@ -38,6 +40,18 @@ import com.roguecloud.utils.Logger;
  * This class is designed to prevent monster AIs that have intensive CPU requirements (ie they lots of pathfinding per tick) from 
  * starving out monsters that use minimal CPU per game tick.
  * 
+ * Creatures are partitioned by ID across a number of shards (one per core), each with its own work queue and its own threads. A 
+ * thread takes work from its own shard first, and when that is empty, steals from the other shards. Each creature has a single 
+ * work slot (CreatureSlot): informMonster(...) replaces the contents of the slot (the latest world state wins, older unprocessed 
+ * states are dropped), and the slot is placed on a queue only if it is not already queued or running. This ensures that a 
+ * monster's AI logic is only ever called by one thread at a time, without any lock shared by all threads.
+ * 
+ * In deadline-aware mode (DEADLINE_AWARE), each tick's work must be started before the tick's actions are harvested 
+ * (NS_PER_FRAME after beginTick(...)), otherwise it is skipped. Each monster is given a time slice for its update, 
+ * derived from NS_PER_FRAME and the number of monsters; AI code may call getSliceDeadlineInNanos() to bound its own work
+ * (for example, with InterruptiblePathSearch). Monsters that overran their slice on their last update are queued behind 
+ * all other monsters on the next tick. 
+ * 
  * Only one instance of this class will exist per round; that instance is destroyed at 
  * the end of every round (as well as all the child threads), and a new instance is created.
  **/
@@ -45,43 +59,91 @@ public final class MonsterMachine {
 	
 	private final Logger log = Logger.getInstance();
 
-	private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors() * 10;
+	private static final int NUM_SHARDS = Runtime.getRuntime().availableProcessors();
+	
+	/** More than one thread per shard, so that a single long-running AI does not stall the rest of its shard's queue until stolen from. */
+	private static final int THREADS_PER_SHARD = 2;
+	
+	/** Whether to enforce per-tick deadlines and per-monster time slices, as described above. */
+	public static final boolean DEADLINE_AWARE = true;
+	
+	/** Bounds on the per-monster time slice; the slice is otherwise an even share of the available CPU time in a tick. */
+	private static final long MIN_SLICE_IN_NANOS = TimeUnit.NANOSECONDS.convert(1, TimeUnit.MILLISECONDS);
+	private static final long MAX_SLICE_IN_NANOS = RCConstants.NS_PER_FRAME / 4;
+	
+	/** The slice deadline of the monster currently running on this thread; Long.MAX_VALUE if none. */
+	private static final ThreadLocal<long[]> sliceDeadlineInNanos = ThreadLocal.withInitial( () -> new long[] { Long.MAX_VALUE });
+	
+	/** How long an idle thread will wait before rechecking whether the round is complete */
+	private static final long IDLE_PARK_IN_NANOS = TimeUnit.NANOSECONDS.convert(1, TimeUnit.SECONDS);
 	
 	private final RoundScope round;
 	
-	private final Object lock = new Object();
+	/** The work slot of each creature that has been informed this round. Only added to by the game thread. */
+	private final ConcurrentHashMap<Long /*creature id*/, CreatureSlot> slots = new ConcurrentHashMap<>();
 	
-	/*** The next world/self state update (as a unit of work) that is available for a creature */
-	private final Map<Long /*creature id*/, WorkEntry> mapWork_synch_lock = new HashMap<>();
-
-	/** Each time informMonster(...) is called, the creature ID is */
-	private final Queue<Long /* creature id*/> workListNew_synch_lock = new ArrayDeque<>();
-
-	/** Whether or not the specific creature has work already running on another thread (a monster's AI logic must only ever 
-	 * be called by one thread at a time) */
-	private final Map<Long /* creature id*/, Boolean /*is thread active*/> hasActiveThread_synch_lock = new HashMap<>();
-	// TODO: CURR - The thread contention on the hasActiveThread_synch_lock map could be easily improved.
+	/** Queue of slots with pending work, per shard; a creature is always queued on the shard given by shardOf(...) */
+	private final Shard[] shards;
 	
-	private final LogContext lc;
+	/** All threads created by this class; threads[x] belongs to shard x / THREADS_PER_SHARD */
+	private final MonsterMachineThread[] threads;
 	
-	/** References to all the active threads created by this class */
-	private final List<MonsterMachineThread> threads_synch_lock = new ArrayList<>();
+	private final LogContext lc;
 	
 	private final MonsterRuntimeStats runtimeStats;
 	
+	/** The time slice and harvest deadline for work informed in the current tick; only written by the game thread, in beginTick(...) */
+	private long currentSliceInNanos = MAX_SLICE_IN_NANOS;
+	private long currentTickDeadlineInNanos = Long.MAX_VALUE;
+	
+	// Counters for the current tick
+	private final AtomicInteger informedThisTick = new AtomicInteger();
+	private final AtomicInteger deferredThisTick = new AtomicInteger();
+	private final AtomicInteger skippedThisTick = new AtomicInteger();
+	private final AtomicInteger overranThisTick = new AtomicInteger();
+	
+	private volatile TickCounters lastTickCounters = new TickCounters(-1, 0, 0, 0, 0);
+	
 	public MonsterMachine(RoundScope round, MonsterRuntimeStats runtimeStats, LogContext lc) {
 		this.round = round;
 		this.lc = lc;
 		this.runtimeStats = runtimeStats;
 		
-		for(int x = 0; x < NUM_THREADS; x++) {
-			
-			MonsterMachineThread t = new MonsterMachineThread();
+		shards = new Shard[NUM_SHARDS];
+		for(int x = 0; x < shards.length; x++) {
+			shards[x] = new Shard();
+		}
+		
+		threads = new MonsterMachineThread[NUM_SHARDS * THREADS_PER_SHARD];
+		for(int x = 0; x < threads.length; x++) {
+			threads[x] = new MonsterMachineThread(x / THREADS_PER_SHARD, x % THREADS_PER_SHARD);
+		}
+		
+		for(MonsterMachineThread t : threads) {
 			t.start();
-			threads_synch_lock.add(t);
 		}
 	}
 	
+	/** 
+	 * Called by the game thread once per tick, before informMonster(...) is called for that tick's monsters. Completes the
+	 * counters of the previous tick, and computes the time slice and deadline of the new tick.
+	 **/
+	public final void beginTick(long ticks, int monstersToInform) {
+		
+		lastTickCounters = new TickCounters(ticks-1, informedThisTick.getAndSet(0), deferredThisTick.getAndSet(0), 
+				skippedThisTick.getAndSet(0), overranThisTick.getAndSet(0));
+		
+		if(!DEADLINE_AWARE) {
+			return;
+		}
+		
+		// An even share of the CPU time available in a frame 
+		long slice = (RCConstants.NS_PER_FRAME * NUM_SHARDS) / Math.max(1, monstersToInform);
+		currentSliceInNanos = Math.max(MIN_SLICE_IN_NANOS, Math.min(MAX_SLICE_IN_NANOS, slice));
+		
+		currentTickDeadlineInNanos = System.nanoTime() + RCConstants.NS_PER_FRAME;
+	}
+	
 	/** This method is called for each living monster, per game tick. */
 	public final void informMonster(long ticks, SelfState selfState, WorldState worldState, AIContext aicontext, EventLog eventLog) {
 
@@ -90,122 +152,197 @@ public final class MonsterMachine {
 		}
 		
 		WorkEntry we = new WorkEntry(ticks, selfState, worldState, aicontext, eventLog);
+		if(DEADLINE_AWARE) {
+			we.sliceInNanos = currentSliceInNanos;
+			we.deadlineInNanos = currentTickDeadlineInNanos;
+		}
 		
 		long creatureId = selfState.getPlayer().getId();
 		
-		synchronized(lock) {
-			mapWork_synch_lock.put(creatureId, we);
-			workListNew_synch_lock.offer(creatureId);
-			lock.notify();
-		}
+		CreatureSlot slot = slots.computeIfAbsent(creatureId, id -> new CreatureSlot(id) );
 		
+		informedThisTick.incrementAndGet();
 		
-//		synchronized(workList_synch) {
-//			workList_synch.offer(we);
-//			workList_synch.notify();
-//		}
+		// Replace any older work that has not yet been started 
+		if(slot.pending.getAndSet(we) != null) {
+			skippedThisTick.incrementAndGet();
+		}
 		
+		if(scheduleIfIdle(slot) && slot.deferred) {
+			deferredThisTick.incrementAndGet();
+		}
+	}
+	
+	/** 
+	 * The time (as per System.nanoTime()) by which the AI logic running on the calling thread should complete; AI code may 
+	 * use this to bound expensive operations such as pathfinding. Returns Long.MAX_VALUE if not called from a MonsterMachine thread.
+	 **/
+	public static long getSliceDeadlineInNanos() {
+		return sliceDeadlineInNanos.get()[0];
+	}
+	
+	/** The counters of the most recently completed tick (see beginTick(...)) */
+	public TickCounters getLastTickCounters() {
+		return lastTickCounters;
 	}
 	
 	public void dispose() {
-		synchronized(lock) {
-			threads_synch_lock.forEach( e -> {
-				e.interrupt();
-			});
-			threads_synch_lock.clear();
+		for(MonsterMachineThread t : threads) {
+			t.interrupt();
 		}
+		slots.clear();
 	}
 
 	/** 
-	 * Many instances of this class will run as threads, per round (see NUM_THREADS). The purpose of 
-	 * this thread is to extract a piece of work to perform (WorkEntry), and to call 
-	 * receiveStatusUpdate(...) on the monster specified by the work entry.  
+	 * Queue the slot on its shard, unless it is already queued or running (in which case the thread running it will requeue it). 
+	 * Returns true if the slot was queued.  
+	 **/
+	private boolean scheduleIfIdle(CreatureSlot slot) {
+		if(!slot.scheduled.compareAndSet(false, true)) {
+			return false;
+		}
+		
+		// Monsters that overran their slice last time go to the back of the line
+		slot.deferred = DEADLINE_AWARE && runtimeStats.hasOverranLastUpdate(slot.creatureId);
+		
+		int shard = shardOf(slot.creatureId);
+		if(slot.deferred) {
+			shards[shard].deferredQueue.offer(slot);
+		} else {
+			shards[shard].queue.offer(slot);
+		}
+		wakeIdleThread(shard);
+		return true;
+	}
+	
+	/** Wake a waiting thread, preferring one that belongs to the given shard. */
+	private void wakeIdleThread(int shard) {
+		int start = shard * THREADS_PER_SHARD;
+		for(int x = 0; x < threads.length; x++) {
+			MonsterMachineThread t = threads[(start + x) % threads.length];
+			if(t.idle.compareAndSet(true, false)) {
+				LockSupport.unpark(t);
+				return;
+			}
+		}
+	}
+	
+	private static int shardOf(long creatureId) {
+		return (int)Math.floorMod(creatureId, (long)NUM_SHARDS);
+	}
+	
+	/** 
+	 * Return the next slot with work from the given shard, or failing that, from any other shard; null if there is none. Deferred
+	 * slots are only returned once there are no other slots in any shard.
+	 **/
+	private CreatureSlot findWork(int ownShard) {
+		CreatureSlot slot = findWork(ownShard, false);
+		if(slot == null) {
+			slot = findWork(ownShard, true);
+		}
+		return slot;
+	}
+	
+	private CreatureSlot findWork(int ownShard, boolean deferred) {
+		CreatureSlot slot = shards[ownShard].getQueue(deferred).pollFirst();
+		if(slot != null) {
+			return slot;
+		}
+		
+		// Steal from the tail of the other shards' queues
+		for(int x = 1; x < shards.length; x++) {
+			slot = shards[(ownShard + x) % shards.length].getQueue(deferred).pollLast();
+			if(slot != null) {
+				return slot;
+			}
+		}
+		
+		return null;
+	}
+	
+	/** Run the most recent work in the slot (if any), then release the slot. */
+	private void runSlot(CreatureSlot slot) {
+		
+		WorkEntry we = slot.pending.getAndSet(null);
+		
+		long startTimeInNanos = System.nanoTime();
+		
+		if(we != null && startTimeInNanos > we.deadlineInNanos) {
+			// The tick's actions have already been harvested, so there is no point in starting; a newer update will follow.
+			skippedThisTick.incrementAndGet();
+			we = null;
+		}
+		
+		if(we != null) {
+			long[] threadDeadline = sliceDeadlineInNanos.get();
+			try {
+				threadDeadline[0] = Math.min(we.deadlineInNanos, startTimeInNanos + we.sliceInNanos);
+				we.aicontext.getClient().receiveStateUpdate(we.selfState, we.worldState, we.eventLog);
+				
+				long elapsedInNanos = System.nanoTime() - startTimeInNanos;
+				runtimeStats.addThreadTimeUsed(we.selfState.getPlayer(), elapsedInNanos);
+				if(DEADLINE_AWARE && runtimeStats.recordTimeSliceUsed(we.selfState.getPlayer(), elapsedInNanos, we.sliceInNanos)) {
+					overranThisTick.incrementAndGet();
+				}
+			} catch(Exception e) {
+				// Prevent bad monster implementations from interfering with others in the list
+				log.severe("Exception thrown from monster logic", e, lc);
+				e.printStackTrace();							
+			} finally {
+				threadDeadline[0] = Long.MAX_VALUE;
+			}
+		}
+		
+		slot.scheduled.set(false);
+		
+		// If new work arrived while the monster was running, informMonster(...) will have seen the slot as scheduled,
+		// and so it is our responsibility to queue it again.
+		if(slot.pending.get() != null) {
+			scheduleIfIdle(slot);
+		}
+	}
+	
+	/** 
+	 * A number of instances of this class will run as threads for each shard, per round (see THREADS_PER_SHARD). The purpose of 
+	 * this thread is to extract a creature with pending work from its shard (or steal one from another shard), and to call 
+	 * receiveStatusUpdate(...) on the monster with the latest work entry.  
 	 * */
 	private class MonsterMachineThread extends Thread {
 		
-		public MonsterMachineThread() {
+		private final int shard;
+		
+		/** True while this thread is (about to be) parked waiting for work; cleared by whichever thread wakes it. */
+		private final AtomicBoolean idle = new AtomicBoolean(false);
+		
+		public MonsterMachineThread(int shard, int threadInShard) {
+			this.shard = shard;
 			setDaemon(true);
 			setPriority(Thread.NORM_PRIORITY-2);
-			setName(MonsterMachineThread.class.getName());
+			setName(MonsterMachineThread.class.getName()+"-"+shard+"-"+threadInShard);
 		}
 		
 		@Override
 		public void run() {
 			
-			List<WorkEntry> weList = new ArrayList<>();
-			
-			while(!round.isRoundCompleteUnsynchronized()) {
+			while(!round.isRoundCompleteUnsynchronized() && !isInterrupted()) {
 				
 				try {
+					CreatureSlot slot = findWork(shard);
 					
-					weList.clear();
-					
-					synchronized(lock) {
-						
-						// If no work, wait for work.
-						if(mapWork_synch_lock.size() == 0) {
-							lock.wait(1000);
+					if(slot == null) {
+						// Advertise that we are idle before checking once more, so that work queued concurrently is not missed.
+						idle.set(true);
+						slot = findWork(shard);
+						if(slot == null) {
+							LockSupport.parkNanos(this, IDLE_PARK_IN_NANOS);
 						}
-						
-						// If there IS WORK...
-						if(mapWork_synch_lock.size() > 0) {
-							
-							int eventsToPull = 1;
-							
-//							int eventsToPull = Math.min(12, Math.max(1, mapWork_synch_lock.size()/NUM_THREADS));
-							
-							while(weList.size() < eventsToPull && mapWork_synch_lock.size() > 0 ) {
-								
-								Long nextCreatureId = workListNew_synch_lock.poll();
-								WorkEntry we = mapWork_synch_lock.remove(nextCreatureId);
-								boolean hasActiveThreadAlready = hasActiveThread_synch_lock.getOrDefault(nextCreatureId, false);
-								if(we != null && !hasActiveThreadAlready) {
-									weList.add(we);
-									hasActiveThread_synch_lock.put(nextCreatureId, true);
-								}
-							}
-							
-						} 
-
+						idle.set(false);
 					}
 					
-					
-//					synchronized(workList_synch) {
-//						
-//						if(workList_synch.size() == 0) {
-//							workList_synch.wait(1000);
-//						}
-//						
-//						if(workList_synch.size() > 0) {
-//							int eventsToPull = Math.max(1, weList.size()/NUM_PROCESSORS); 
-//							for(int x = 0; x < eventsToPull; x++) {
-//								weList.add(workList_synch.poll());
-//							}
-//							
-//						} 
-//						
-//					}
-					
-					for(WorkEntry we : weList) {
-						try {
-							long startTimeInNanos = System.nanoTime();
-							we.aicontext.getClient().receiveStateUpdate(we.selfState, we.worldState, we.eventLog);
-							runtimeStats.addThreadTimeUsed(we.selfState.getPlayer(), System.nanoTime() - startTimeInNanos);
-						} catch(Exception e) {
-							// Prevent bad monster implementations from interfering with others in the list
-							log.severe("Exception thrown from monster logic", e, lc);
-							e.printStackTrace();							
-						}
-						
-//						monstersProcessed++;
-					}
-					synchronized(lock) {
-						for(WorkEntry we : weList) {
-							hasActiveThread_synch_lock.remove(we.selfState.getPlayer().getId());
-						}
+					if(slot != null) {
+						runSlot(slot);
 					}
-				} catch(InterruptedException e) {
-					break;
+					
 				} catch(Exception e) {
 					// Nothing should kill the thread.
 					log.severe("Exception thrown from outer monster logic", e, lc);
@@ -217,6 +354,36 @@ public final class MonsterMachine {
 		
 	}
 	
+	/** The work queues of a single shard. */
+	private static final class Shard {
+		final ConcurrentLinkedDeque<CreatureSlot> queue = new ConcurrentLinkedDeque<>();
+		
+		/** Slots of monsters that overran their time slice on their last update */
+		final ConcurrentLinkedDeque<CreatureSlot> deferredQueue = new ConcurrentLinkedDeque<>();
+		
+		ConcurrentLinkedDeque<CreatureSlot> getQueue(boolean deferred) {
+			return deferred ? deferredQueue : queue;
+		}
+	}
+	
+	/** The latest pending work for a single creature, and whether the creature is currently queued or running. */
+	private static final class CreatureSlot {
+		final long creatureId;
+		
+		/** The most recent work that has not yet been started; replaced by each call to informMonster(...). */
+		final AtomicReference<WorkEntry> pending = new AtomicReference<>();
+		
+		/** True from when the slot is queued, until the thread running it has finished; at most one queue entry/thread per slot. */
+		final AtomicBoolean scheduled = new AtomicBoolean(false);
+		
+		/** Whether the slot was last queued on the deferred queue; only written while 'scheduled' is being set to true. */
+		volatile boolean deferred = false;
+		
+		CreatureSlot(long creatureId) {
+			this.creatureId = creatureId;
+		}
+	}
+	
 	/** Work to be performed by the MonsterMachineThread. An instance of this class will exist for each monster, per game tick. This class corresponds
 	 * to a single call of the receiveStateUpdate(...) method of the MonsterClient. 
 	 * 
@@ -229,6 +396,10 @@ public final class MonsterMachine {
 		final AIContext aicontext;
 		final EventLog eventLog;
 		
+		/** Time slice and (absolute) tick deadline, in deadline-aware mode */
+		long sliceInNanos = Long.MAX_VALUE;
+		long deadlineInNanos = Long.MAX_VALUE;
+		
 		public WorkEntry(long ticks, SelfState selfState, WorldState worldState, AIContext aicontext, EventLog eventLog) {
 			this.ticks = ticks;
 			this.selfState = selfState;
@@ -238,5 +409,51 @@ public final class MonsterMachine {
 		}
 		
 	}
+	
+	/** Per-tick monster scheduling counters; see getLastTickCounters(). */
+	public static final class TickCounters {
+		private final long tick;
+		private final int informed;
+		private final int deferred;
+		private final int skipped;
+		private final int overran;
+		
+		public TickCounters(long tick, int informed, int deferred, int skipped, int overran) {
+			this.tick = tick;
+			this.informed = informed;
+			this.deferred = deferred;
+			this.skipped = skipped;
+			this.overran = overran;
+		}
+		
+		public long getTick() {
+			return tick;
+		}
+
+		/** Number of monsters that were passed to informMonster(...) */
+		public int getInformed() {
+			return informed;
+		}
+
+		/** Number of monsters that were queued behind the others, due to overrunning their time slice on their previous update */
+		public int getDeferred() {
+			return deferred;
+		}
+
+		/** Number of updates that were never run: either replaced by a newer update, or not started before the tick deadline */
+		public int getSkipped() {
+			return skipped;
+		}
+
+		/** Number of updates that ran longer than their time slice */
+		public int getOverran() {
+			return overran;
+		}
+		
+		@Override
+		public String toString() {
+			return "tick: "+tick+" informed: "+informed+" deferred: "+deferred+" skipped: "+skipped+" overran: "+overran;
+		}
+	}
 
 }
@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.roguecloud.RCRuntime;
 import com.roguecloud.creatures.ICreature;
@@ -32,6 +34,9 @@ import com.roguecloud.creatures.ICreature;
  * Generally speaking, most of the time spent in AI logic will be in the path-finding code (AStarSearch and, 
  * to a lesser extent, FastPathSearch).
  * 
+ * Independent of the above (which is only enabled for debugging), this class also tracks which monsters overran their 
+ * MonsterMachine time slice on their most recent update, so that they may be deprioritised on the next tick.
+ * 
  **/
 public class MonsterRuntimeStats {
 
@@ -46,6 +51,24 @@ public class MonsterRuntimeStats {
 	}
 	
 	private final ArrayList<HashMap<Long /* creatue id*/, MonsterRuntimeEntry>> arrayOfMaps;
+	
+	/** Creatures whose most recent AI update took longer than the time slice they were given; always enabled. */
+	private final Set<Long /* creature id*/> overranLastUpdate = ConcurrentHashMap.newKeySet();
+	
+	/** Record whether or not the creature's AI update exceeded its time slice. Returns true if it did. */
+	public boolean recordTimeSliceUsed(ICreature c, long usedInNanos, long sliceInNanos) {
+		boolean overran = usedInNanos > sliceInNanos;
+		if(overran) {
+			overranLastUpdate.add(c.getId());
+		} else {
+			overranLastUpdate.remove(c.getId());
+		}
+		return overran;
+	}
+	
+	public boolean hasOverranLastUpdate(long creatureId) {
+		return overranLastUpdate.contains(creatureId);
+	}
 			
 	public void addThreadTimeUsed(ICreature c, long deltaInNanos) {
 		if(!ENABLED) { return; }
@@ -64,10 +87,12 @@ public class MonsterRuntimeStats {
 	}
 	
 	public void removeEntry(ICreature c) {
-		if(!ENABLED) { return; }
-		
 		long id = c.getId();
 		
+		overranLastUpdate.remove(id);
+		
+		if(!ENABLED) { return; }
+		
 		HashMap<Long, MonsterRuntimeEntry> map = arrayOfMaps.get((int)( id % arrayOfMaps.size()));
 		synchronized(map) {
 			map.remove((Long)id);
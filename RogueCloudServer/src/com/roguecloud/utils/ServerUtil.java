@@ -37,8 +37,26 @@ import com.roguecloud.map.IMap;
 /** Various standalone utility methods used only by server-side code. */
 public class ServerUtil {
 
+	private static final Logger log = Logger.getInstance();
+
 	public static final String RC_ADMIN_USER = "rc_admin_user";
 	public static final String RC_ADMIN_PASSWORD = "rc_admin_password";
+	
+	/** The number of bytes that may be outstanding (queued or being written) to a single WebSocket session before the
+	 * server stops sending it frame updates; see ActiveWSClientSession. */
+	public static final String RC_SESSION_HIGH_WATER_MARK = "rc_session_high_water_mark";
+	
+	private static final int DEFAULT_SESSION_HIGH_WATER_MARK = 256 * 1024;
+	
+	/** How browser spectator views (SERVER_VIEW_WORLD and SERVER_VIEW_FOLLOW) are served, see SpectatorRelayMode; by default they are 
+	 * served by the game engine. */
+	public static final String RC_SPECTATOR_RELAY = "rc_spectator_relay";
+	
+	/** If set, the port on which the game engine publishes its world deltas to relays in other JVMs (on the local host only). */
+	public static final String RC_SPECTATOR_RELAY_PORT = "rc_spectator_relay_port";
+	
+	/** For a remote relay, the host:port of the game node to connect to (defaults to localhost and RC_SPECTATOR_RELAY_PORT). */
+	public static final String RC_SPECTATOR_RELAY_ADDRESS = "rc_spectator_relay_address";
 
 	public static final String SHA_256_FIELD = "{sha256}";
 	
@@ -109,7 +127,66 @@ public class ServerUtil {
 	public static String getAdminPassword() {
 		return getConfigValue(RC_ADMIN_PASSWORD);
 	}
+	
+	public static int getSessionHighWaterMarkInBytes() {
+		String val = getConfigValue(RC_SESSION_HIGH_WATER_MARK);
+		if(val != null && !val.trim().isEmpty()) {
+			try {
+				return Integer.parseInt(val.trim());
+			} catch(NumberFormatException e) {
+				log.severe("Invalid value for "+RC_SESSION_HIGH_WATER_MARK+": "+val, null);
+			}
+		}
+		return DEFAULT_SESSION_HIGH_WATER_MARK;
+	}
+
+	
+	public static SpectatorRelayMode getSpectatorRelayMode() {
+		String val = getConfigValue(RC_SPECTATOR_RELAY);
+		if(val != null && !val.trim().isEmpty()) {
+			try {
+				return SpectatorRelayMode.valueOf(val.trim().toUpperCase());
+			} catch(IllegalArgumentException e) {
+				log.severe("Invalid value for "+RC_SPECTATOR_RELAY+": "+val, null);
+			}
+		}
+		return SpectatorRelayMode.NONE;
+	}
+	
+	/** Returns the port on which the game engine should publish world deltas to remote relays, or -1 if it should not. */
+	public static int getSpectatorRelayPort() {
+		String val = getConfigValue(RC_SPECTATOR_RELAY_PORT);
+		if(val != null && !val.trim().isEmpty()) {
+			try {
+				return Integer.parseInt(val.trim());
+			} catch(NumberFormatException e) {
+				log.severe("Invalid value for "+RC_SPECTATOR_RELAY_PORT+": "+val, null);
+			}
+		}
+		return -1;
+	}
+	
+	/** Returns the host:port of the game node that a remote relay should connect to, or null if none is configured. */
+	public static String getSpectatorRelayAddress() {
+		String val = getConfigValue(RC_SPECTATOR_RELAY_ADDRESS);
+		if(val != null && !val.trim().isEmpty()) {
+			return val.trim();
+		}
+		
+		int port = getSpectatorRelayPort();
+		return port != -1 ? "localhost:"+port : null;
+	}
 
+	/** How browser spectator views are served */
+	public static enum SpectatorRelayMode {
+		/** By the game engine, on the game thread (the default) */
+		NONE, 
+		/** By a relay in this JVM, which reconstructs the views from the world deltas published by the game engine, on its own thread */
+		LOCAL, 
+		/** By a relay in this JVM, which receives the world deltas from the game engine of another JVM, over a local socket (see 
+		 * RC_SPECTATOR_RELAY_ADDRESS); this JVM does not run a game of its own for spectators. */
+		REMOTE
+	}
 	
 	/** Look for a pre-defined configuration value: first in server.xml, then -D properties, then system env vars. */
 	public static String getConfigValue(String field) {
@@ -20,13 +20,16 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonBuilderFactory;
 import javax.json.JsonObjectBuilder;
 
 import com.roguecloud.creatures.ICreature;
 import com.roguecloud.map.IMap;
+import com.roguecloud.map.SpatialIndex;
 import com.roguecloud.map.Tile;
+import com.roguecloud.map.TileSerializationCache;
 import com.roguecloud.map.TileType;
 import com.roguecloud.utils.Logger;
 
@@ -44,6 +47,41 @@ public class BrowserWebSocketClientShared {
 	
 	public static String generateBrowserJson(/*EngineWebsocketState ews, */ int currClientWorldX, int currClientWorldY, int newWorldPosX, int newWorldPosY,
 			int newWidth, int newHeight, IMap map, List<Position> changedTiles, List<ICreature> creatures, long ticks, JsonBuilderFactory factory) {
+		
+		return generateBrowserJson(currClientWorldX, currClientWorldY, newWorldPosX, newWorldPosY, newWidth, newHeight, map, changedTiles, 
+				creatures, ticks, factory, null);
+	}
+	
+	/** As above, but the converted tiles are shared with other browser clients via 'tileCache' (which may be null).  */
+	public static String generateBrowserJson(/*EngineWebsocketState ews, */ int currClientWorldX, int currClientWorldY, int newWorldPosX, int newWorldPosY,
+			int newWidth, int newHeight, IMap map, List<Position> changedTiles, List<ICreature> creatures, long ticks, JsonBuilderFactory factory,
+			TileSerializationCache<JsonArray> tileCache) {
+		
+		return generateBrowserJson(currClientWorldX, currClientWorldY, newWorldPosX, newWorldPosY, newWidth, newHeight, map, changedTiles, 
+				creatures, null, ticks, factory, tileCache);
+	}
+	
+	/** As above, but the creatures in the view are looked up in 'creatureIndex' (server only, see SpatialIndex), rather than filtered from a list of every creature. */
+	public static String generateBrowserJson(/*EngineWebsocketState ews, */ int currClientWorldX, int currClientWorldY, int newWorldPosX, int newWorldPosY,
+			int newWidth, int newHeight, IMap map, List<Position> changedTiles, SpatialIndex<ICreature> creatureIndex, long ticks, JsonBuilderFactory factory,
+			TileSerializationCache<JsonArray> tileCache) {
+		
+		return generateBrowserJson(currClientWorldX, currClientWorldY, newWorldPosX, newWorldPosY, newWidth, newHeight, map, changedTiles, 
+				null, creatureIndex, ticks, factory, tileCache);
+	}
+
+	private static String generateBrowserJson(/*EngineWebsocketState ews, */ int currClientWorldX, int currClientWorldY, int newWorldPosX, int newWorldPosY,
+			int newWidth, int newHeight, IMap map, List<Position> changedTiles, List<ICreature> creatures, SpatialIndex<ICreature> creatureIndex, 
+			long ticks, JsonBuilderFactory factory, TileSerializationCache<JsonArray> tileCache) {
+		
+		return generateBrowserJson(currClientWorldX, currClientWorldY, newWorldPosX, newWorldPosY, newWidth, newHeight, changedTiles, ticks, 
+				factory, new MapViewSource(map, creatures, creatureIndex, ticks, factory, tileCache));
+	}
+	
+	/** As above, but the tiles and creatures are read from 'source', rather than from a map (for example, by the spectator relay, which 
+	 * does not have one). */
+	public static String generateBrowserJson(/*EngineWebsocketState ews, */ int currClientWorldX, int currClientWorldY, int newWorldPosX, int newWorldPosY,
+			int newWidth, int newHeight, List<Position> changedTiles, long ticks, JsonBuilderFactory factory, BrowserViewSource source) {
 
 		JsonArrayBuilder frameData = factory.createArrayBuilder();
 		
@@ -57,32 +95,6 @@ public class BrowserWebSocketClientShared {
 		
 		boolean fullThingSent = false;
 		
-		Map<Long, ICreature> creaturesSeen = new HashMap<Long, ICreature>();
-		
-		// Add all creatures in the view 
-
-		if(creatures != null) {
-			creatures.forEach( e -> {
-				
-				if(Position.containedInBox(e.getPosition(), newWorldPosX, newWorldPosY, newWidth, newHeight)) {
-					creaturesSeen.put(e.getId(), e);
-				}
-			
-			});
-		} else {
-			for(int y = newWorldPosY; y < newWorldPosY+newHeight; y++) {
-				for(int x = newWorldPosX; x < newWorldPosX+newWidth; x++) {
-					Tile t = map.getTile(x, y);
-					
-					if(t == null) { log.severe("Missing tile at "+x+" "+y, null); continue; }
-					
-					t.getCreatures().forEach( e -> {
-						creaturesSeen.put(e.getId(), e);
-					});
-				}
-			}			
-		}
-		
 		if(newWorldPosX != currClientWorldX || newWorldPosY != currClientWorldY/* || newWidth != ssd.getCurrWidth() || newHeight != ssd.getCurrHeight()*/) {
 		
 			final int deltaX = newWorldPosX-currClientWorldX; // > 0 if the view has shifted right
@@ -103,7 +115,7 @@ public class BrowserWebSocketClientShared {
 					for(int y = newWorldPosY; y < newWorldPosY+newHeight; y++) {
 						for(int x = newWorldPosX; x < newWorldPosX+newWidth; x++) {
 							
-							data = getAndConvertTile(x, y, map, data, factory, ticks);
+							data = data.add(source.getTile(x, y));
 //							Tile t = map.getTile(x, y);					
 //							data = data.add(convertSingle(t));
 							
@@ -133,7 +145,7 @@ public class BrowserWebSocketClientShared {
 						for(int y = newWorldPosY; y < newWorldPosY+newHeight; y++) {
 							for(int x = newWorldPosX+newWidth-deltaX; x < newWorldPosX+newWidth; x++) {
 
-								data = getAndConvertTile(x, y, map, data, factory, ticks);
+								data = data.add(source.getTile(x, y));
 //								Tile t = map.getTile(x, y);		
 //								data = data.add(convertSingle(t));
 								
@@ -158,7 +170,7 @@ public class BrowserWebSocketClientShared {
 						for(int y = newWorldPosY; y < newWorldPosY+newHeight; y++) {
 							for(int x = newWorldPosX; x < newWorldPosX+Math.abs(deltaX); x++) {
 								
-								data = getAndConvertTile(x, y, map, data, factory, ticks);
+								data = data.add(source.getTile(x, y));
 //								Tile t = map.getTile(x, y);		
 //								data = data.add(convertSingle(t));
 								
@@ -183,7 +195,7 @@ public class BrowserWebSocketClientShared {
 						for(int y = newWorldPosY+newHeight-deltaY; y < newWorldPosY+newHeight; y++) {
 							for(int x = newWorldPosX; x < newWorldPosX+newWidth; x++) {
 								
-								data = getAndConvertTile(x, y, map, data, factory, ticks);
+								data = data.add(source.getTile(x, y));
 //								Tile t = map.getTile(x, y);		
 //								data = data.add(convertSingle(t));
 								
@@ -207,7 +219,7 @@ public class BrowserWebSocketClientShared {
 						for(int y = newWorldPosY; y < newWorldPosY+Math.abs(deltaY); y++) {
 							for(int x = newWorldPosX; x < newWorldPosX+newWidth; x++) {
 
-								data = getAndConvertTile(x, y, map, data, factory, ticks);
+								data = data.add(source.getTile(x, y));
 								
 //								Tile t = map.getTile(x, y);		
 //								data = data.add(convertSingle(t));
@@ -247,7 +259,7 @@ public class BrowserWebSocketClientShared {
 				
 //				Tile t = map.getTile(p);
 //				data = data.add(convertSingle(t));
-				data = getAndConvertTile(p.getX(), p.getY(), map, data, factory, ticks);
+				data = data.add(source.getTile(p.getX(), p.getY()));
 				
 				frame = frame.add("data", data);
 				
@@ -263,20 +275,9 @@ public class BrowserWebSocketClientShared {
 		
 		outer = outer.add("frameData", frameData);
 
+		// Add all creatures in the view 
 		final JsonArrayBuilder creatureArray = factory.createArrayBuilder();
-		creaturesSeen.values().forEach( e -> {
-			JsonObjectBuilder creature = factory.createObjectBuilder()
-				.add("id", e.getId())
-				.add("position", factory.createArrayBuilder().add(e.getPosition().getX()).add(e.getPosition().getY()))
-				.add("hp", e.getHp())
-				.add("maxHp",  e.getMaxHp());
-			
-			if(e.isPlayerCreature()) {
-				creature = creature.add("username", e.getName());
-			}
-			
-			creatureArray.add(creature);
-		});
+		source.addCreatures(newWorldPosX, newWorldPosY, newWidth, newHeight, creatureArray);
 		
 		outer = outer.add("creatures", creatureArray);
 
@@ -288,19 +289,128 @@ public class BrowserWebSocketClientShared {
 		
 	}
 	
-	private static JsonArrayBuilder getAndConvertTile(int x, int y, IMap map, JsonArrayBuilder data, JsonBuilderFactory factory, long ticks) {
+	/** Returns a creature, in the form sent to the browser; 'username' is only set for player creatures, and is null otherwise. */
+	public static JsonObjectBuilder convertCreature(long id, int x, int y, int hp, int maxHp, String username, JsonBuilderFactory factory) {
+		JsonObjectBuilder creature = factory.createObjectBuilder()
+			.add("id", id)
+			.add("position", factory.createArrayBuilder().add(x).add(y))
+			.add("hp", hp)
+			.add("maxHp",  maxHp);
 		
-		Tile t = map.getTile(x, y);
+		if(username != null) {
+			creature = creature.add("username", username);
+		}
+		
+		return creature;
+	}
+	
+	/** Returns the presentation layers of a tile, in the form sent to the browser: 'layers' contains the number and then the rotation 
+	 * of each layer, see Tile.getTileTypeLayersForBrowserPresentation(...) */
+	public static JsonArrayBuilder convertLayers(int[] layers, JsonBuilderFactory factory) {
+		JsonArrayBuilder outer = factory.createArrayBuilder();
 		
-//		t.getCreatures().forEach( e -> {
-//			creaturesSeen.put(e.getId(), e);
-//		});
+		for(int c = 0; c+1 < layers.length; c += 2) {
+			if(layers[c+1] != 0) {
+				// [ number, rotation], 
+				outer = outer.add(factory.createArrayBuilder().add(layers[c]).add(layers[c+1]));
+			} else {
+				// [ number],
+				outer = outer.add(factory.createArrayBuilder().add(layers[c]));
+			}
+		}
 		
-		data = data.add(convertSingle(t, factory, ticks));
+		return outer;
+	}
 	
-		return data;
+	/** The tiles and creatures that a browser view is generated from. */
+	public static interface BrowserViewSource {
+		
+		/** The presentation layers of the tile at (x, y), in the form sent to the browser (see convertLayers(...)) */
+		JsonArray getTile(int x, int y);
+		
+		/** Add each creature in the given rectangle to 'creatures', in the form sent to the browser (see convertCreature(...)) */
+		void addCreatures(int x, int y, int width, int height, JsonArrayBuilder creatures);
 	}
 	
+	/** Reads the tiles and creatures of a map; creatures are looked up in the creature index if there is one, otherwise in the list of 
+	 * creatures if there is one, otherwise on the tiles of the map. */
+	private static class MapViewSource implements BrowserViewSource {
+		private final IMap map;
+		private final List<ICreature> creatures;
+		private final SpatialIndex<ICreature> creatureIndex;
+		private final long ticks;
+		private final JsonBuilderFactory factory;
+		private final TileSerializationCache<JsonArray> tileCache;
+		
+		public MapViewSource(IMap map, List<ICreature> creatures, SpatialIndex<ICreature> creatureIndex, long ticks,
+				JsonBuilderFactory factory, TileSerializationCache<JsonArray> tileCache) {
+			this.map = map;
+			this.creatures = creatures;
+			this.creatureIndex = creatureIndex;
+			this.ticks = ticks;
+			this.factory = factory;
+			this.tileCache = tileCache;
+		}
+
+		@Override
+		public JsonArray getTile(int x, int y) {
+			Tile t = map.getTile(x, y);
+			
+			if(tileCache == null) {
+				return convertSingle(t, factory, ticks).build();
+			}
+			
+			// The presentation of a tile only varies with the tick if there is more than one creature on it (see convertSingle(...))  
+			int creatureCount = t.getCreatures().size();
+			int variant = creatureCount > 1 ? (int)((ticks/5) % creatureCount) : 0;
+			
+			JsonArray converted = tileCache.get(x, y, t, variant);
+			if(converted == null) {
+				converted = convertSingle(t, factory, ticks).build();
+				tileCache.put(x, y, t, variant, converted);
+			}
+			
+			return converted;
+		}
+
+		@Override
+		public void addCreatures(int newWorldPosX, int newWorldPosY, int newWidth, int newHeight, JsonArrayBuilder creatureArray) {
+			
+			Map<Long, ICreature> creaturesSeen = new HashMap<Long, ICreature>();
+			
+			if(creatureIndex != null) {
+				creatureIndex.findInRectangle(newWorldPosX, newWorldPosY, newWorldPosX+newWidth-1, newWorldPosY+newHeight-1, null).forEach( e -> {
+					creaturesSeen.put(e.getId(), e);
+				});
+				
+			} else if(creatures != null) {
+				creatures.forEach( e -> {
+					
+					if(Position.containedInBox(e.getPosition(), newWorldPosX, newWorldPosY, newWidth, newHeight)) {
+						creaturesSeen.put(e.getId(), e);
+					}
+				
+				});
+			} else {
+				for(int y = newWorldPosY; y < newWorldPosY+newHeight; y++) {
+					for(int x = newWorldPosX; x < newWorldPosX+newWidth; x++) {
+						Tile t = map.getTile(x, y);
+						
+						if(t == null) { log.severe("Missing tile at "+x+" "+y, null); continue; }
+						
+						t.getCreatures().forEach( e -> {
+							creaturesSeen.put(e.getId(), e);
+						});
+					}
+				}			
+			}
+			
+			creaturesSeen.values().forEach( e -> {
+				creatureArray.add(convertCreature(e.getId(), e.getPosition().getX(), e.getPosition().getY(), e.getHp(), e.getMaxHp(), 
+						e.isPlayerCreature() ? e.getName() : null, factory));
+			});
+		}
+	}
 	
 	private static JsonArrayBuilder convertSingle(Tile t, JsonBuilderFactory factory, long ticks) {
 		JsonArrayBuilder outer = factory.createArrayBuilder();
@@ -55,6 +55,21 @@ public class RCRuntime {
 
 	/** This should always be true (unless you a Rogue Cloud developer writing a client that does not support deflate) */
 	public static final boolean ENABLE_DEFLATE_COMPRESSION = true;
+
+	/** Whether agent frame updates may be sent using BinaryFrameUpdateCodec (if both the client and server have this enabled), rather than JSON */
+	public static final boolean ENABLE_BINARY_FRAME_UPDATES = true;
+
+	/** Whether messages may be compressed with a per-session CompressionContext (if both the client and server have this enabled), 
+	 * rather than each message on its own. Has no effect if ENABLE_DEFLATE_COMPRESSION is false. */
+	public static final boolean ENABLE_STREAMING_COMPRESSION = true;
+
+	/** Whether the messages that are queued for an agent client during a tick may be sent together in a single MessageEnvelope 
+	 * (if both the client and server have this enabled), rather than as one WebSocket message each. */
+	public static final boolean ENABLE_MESSAGE_BATCHING = true;
+
+	/** Whether the creatures in agent frame updates may be sent as changes against the previous frame (if both the client and 
+	 * server have this enabled), rather than in full in every frame. */
+	public static final boolean ENABLE_CREATURE_DELTAS = true;
 	
 	public static long convertToLong(Object o) {
 		if(o instanceof Long) {
@@ -16,7 +16,12 @@
 
 package com.roguecloud.client;
 
+import com.roguecloud.creatures.ICreature;
+import com.roguecloud.items.IGroundObject;
 import com.roguecloud.map.IMap;
+import com.roguecloud.map.SpatialIndex;
+import com.roguecloud.utils.NavigationGraph;
+import com.roguecloud.utils.SharedPathCache;
 
 /** 
  * The current state of the world, as witnessed by the agent. 
@@ -47,6 +52,14 @@ public final class WorldState {
 
 	private int remainingSecondsInRound;
 	
+	private NavigationGraph navigationGraph;
+	
+	private SharedPathCache pathCache;
+	
+	private SpatialIndex<ICreature> creatureIndex;
+	
+	private SpatialIndex<IGroundObject> groundObjectIndex;
+	
 	public WorldState(IMap map) {
 		this.map = map;
 	}
@@ -99,6 +112,42 @@ public final class WorldState {
 	
 	// Internal methods only ---------------------------------------
 
+	/** Server-side only: the navigation graph of the map (see NavigationGraph); this is null for player agents. */
+	public NavigationGraph getNavigationGraph() {
+		return navigationGraph;
+	}
+
+	public void setNavigationGraph(NavigationGraph navigationGraph) {
+		this.navigationGraph = navigationGraph;
+	}
+
+	/** Server-side only: paths shared by all monsters on this tick (see SharedPathCache); this is null for player agents. */
+	public SharedPathCache getPathCache() {
+		return pathCache;
+	}
+
+	public void setPathCache(SharedPathCache pathCache) {
+		this.pathCache = pathCache;
+	}
+
+	/** Server-side only: the positions of the creatures on the map (see SpatialIndex); this is null for player agents. */
+	public SpatialIndex<ICreature> getCreatureIndex() {
+		return creatureIndex;
+	}
+
+	public void setCreatureIndex(SpatialIndex<ICreature> creatureIndex) {
+		this.creatureIndex = creatureIndex;
+	}
+
+	/** Server-side only: the positions of the ground objects on the map (see SpatialIndex); this is null for player agents. */
+	public SpatialIndex<IGroundObject> getGroundObjectIndex() {
+		return groundObjectIndex;
+	}
+
+	public void setGroundObjectIndex(SpatialIndex<IGroundObject> groundObjectIndex) {
+		this.groundObjectIndex = groundObjectIndex;
+	}
+
 	public void setWorldWidth(int worldWidth) {
 		this.worldWidth = worldWidth;
 	}
@@ -0,0 +1,655 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roguecloud.json.JsonWorldState.JsonViewFrame;
+import com.roguecloud.json.events.JsonCombatActionEvent;
+import com.roguecloud.json.events.JsonStepActionEvent;
+import com.roguecloud.map.Tile;
+import com.roguecloud.map.TileType;
+
+/**
+ * A compact binary encoding of JsonFrameUpdate, which may be used in place of JSON for the frame updates that the server
+ * sends to agent clients. The client requests the encoding in JsonClientConnect (getFrameUpdateEncodings()), and the server
+ * confirms it in JsonClientConnectResponse; if either side does not support it, JSON is used as before.
+ *
+ * The encoded message begins with a 0 byte (a JSON message always begins with '{'), followed by the version byte, and
+ * then the fields of the frame update, in order. Integers are written as variable length integers (7 bits per byte,
+ * with signed values zig-zag encoded), and strings as a length followed by UTF-8 bytes. View frame tiles, visible creatures,
+ * visible objects, door properties, and step/combat events (which together are nearly all of a typical frame) are
+ * encoded field by field. Items (which are only sent the first time a player sees them) and the less common events are
+ * embedded as length-prefixed JSON.
+ *
+ * If the frame contains creature deltas (JsonWorldState.getCreatureDeltas()), FLAG_CREATURE_DELTAS is set in the flags byte
+ * of the header, and the removed creature ids and changed creatures follow the events; each changed creature is written as its
+ * id, a bit mask of the fields that are present, and then those fields. This section is only written for clients that asked 
+ * for creature deltas, and is absent otherwise, so the message is unchanged for clients that did not.
+ *
+ * decode(...) produces the same object model that Jackson produces from the JSON form of the message: tile data, events
+ * and tile properties are decoded into the Lists and Maps that ClientWorldState expects.
+ *
+ * For internal use only.
+ */
+public final class BinaryFrameUpdateCodec {
+
+	/** The name of this encoding, as sent in JsonClientConnect and JsonClientConnectResponse */
+	public static final String ENCODING_NAME = "binary-v1";
+
+	private static final byte MAGIC = 0;
+
+	private static final byte VERSION = 1;
+
+	private static final int EVENT_JSON = 0;
+	private static final int EVENT_STEP = 1;
+	private static final int EVENT_COMBAT = 2;
+
+	/** The header flags byte, after the frame number */
+	private static final int FLAG_FULL = 1;
+	private static final int FLAG_CREATURE_DELTAS = 2;
+
+	private static final int TILE_PROPERTY_JSON = 0;
+	private static final int TILE_PROPERTY_DOOR = 1;
+
+	private static final int DELTA_POSITION = 1;
+	private static final int DELTA_CURR_HP = 2;
+	private static final int DELTA_MAX_HP = 4;
+	private static final int DELTA_LEVEL = 8;
+	private static final int DELTA_WEAPON = 16;
+	private static final int DELTA_ARMOUR = 32;
+	private static final int DELTA_EFFECTS = 64;
+
+	private static final ObjectMapper om = new ObjectMapper();
+
+	private BinaryFrameUpdateCodec() {
+	}
+
+	/** Whether the given (decompressed) message is a binary frame update, rather than a JSON message. */
+	public static boolean isBinaryFrameUpdate(byte[] message) {
+		return message.length > 1 && message[0] == MAGIC;
+	}
+
+	/**
+	 * Encode a single tile: the number of layers and passability, followed by each layer's tile number and (optional)
+	 * rotation. The result is self-delimiting, and is written as is into the data of a view frame; the frame data
+	 * passed to encode(...) should contain the byte[] returned by this method for each tile.
+	 **/
+	public static byte[] encodeTile(Tile t) {
+		TileType[] ttArr = t.getTileTypeLayers();
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(1+ttArr.length*4);
+		writeUnsigned(baos, (ttArr.length << 1) | (t.isPresentlyPassable() ? 1 : 0));
+
+		for(TileType tt : ttArr) {
+			int rotation = tt.getRotation();
+			writeUnsigned(baos, ((long)tt.getNumber() << 1) | (rotation != 0 ? 1 : 0));
+			if(rotation != 0) {
+				writeSigned(baos, rotation);
+			}
+		}
+
+		return baos.toByteArray();
+	}
+
+	public static byte[] encode(JsonFrameUpdate jfu) throws IOException {
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(2048);
+		baos.write(MAGIC);
+		baos.write(VERSION);
+
+		writeSigned(baos, jfu.getGameTicks());
+		writeSigned(baos, jfu.getFrame());
+
+		JsonWorldState jws = jfu.getWorldState();
+		boolean creatureDeltas = Boolean.TRUE.equals(jws.getCreatureDeltas());
+		baos.write((jfu.isFull() ? FLAG_FULL : 0) | (creatureDeltas ? FLAG_CREATURE_DELTAS : 0));
+
+		// Self state
+		JsonSelfState jss = jfu.getSelfState();
+		writeSigned(baos, jss.getPlayerId());
+		writeUnsigned(baos, jss.getInventory().size());
+		for(JsonOwnableObject joo : jss.getInventory()) {
+			writeSigned(baos, joo.getId());
+			writeSigned(baos, joo.getContainedObject());
+		}
+
+		// World state
+		writeSigned(baos, jws.getClientViewPosX());
+		writeSigned(baos, jws.getClientViewPosY());
+		writeSigned(baos, jws.getClientViewWidth());
+		writeSigned(baos, jws.getClientViewHeight());
+		writeSigned(baos, jws.getWorldWidth());
+		writeSigned(baos, jws.getWorldHeight());
+		writeSigned(baos, jws.getRoundSecsLeft());
+
+		writeJsonList(baos, jws.getDrinkables());
+		writeJsonList(baos, jws.getWeapons());
+		writeJsonList(baos, jws.getArmours());
+
+		writeUnsigned(baos, jws.getFrames().size());
+		for(JsonViewFrame jvf : jws.getFrames()) {
+			writeSigned(baos, jvf.getX());
+			writeSigned(baos, jvf.getY());
+			writeUnsigned(baos, jvf.getW());
+			writeUnsigned(baos, jvf.getH());
+
+			for(Object tile : jvf.getData()) {
+				if(!(tile instanceof byte[])) {
+					throw new IllegalArgumentException("Frame data must be encoded with encodeTile(...): "+tile);
+				}
+				baos.write((byte[])tile);
+			}
+		}
+
+		writeUnsigned(baos, jws.getVisibleCreatures().size());
+		for(JsonVisibleCreature jvc : jws.getVisibleCreatures()) {
+			writeSigned(baos, jvc.getCreatureId());
+			writePosition(baos, jvc.getPosition());
+			writeSigned(baos, jvc.getMaxHp());
+			writeSigned(baos, jvc.getCurrHp());
+			writeSigned(baos, jvc.getLevel());
+			writeSigned(baos, jvc.getWeaponId());
+			baos.write(jvc.isPlayer() ? 1 : 0);
+			writeSigned(baos, jvc.getTileTypeNumber());
+			writeString(baos, jvc.getName());
+
+			writeUnsigned(baos, jvc.getArmourIds().size());
+			for(Long armourId : jvc.getArmourIds()) {
+				writeSigned(baos, armourId);
+			}
+
+			writeEffects(baos, jvc.getEffects());
+		}
+
+		writeUnsigned(baos, jws.getVisibleObjects().size());
+		for(JsonVisibleObject jvo : jws.getVisibleObjects()) {
+			writeSigned(baos, jvo.getObjectId());
+			writeSigned(baos, jvo.getContainedObjectId());
+			writePosition(baos, jvo.getPosition());
+		}
+
+		List<Object> tileProperties = jws.getTileProperties() != null ? jws.getTileProperties() : new ArrayList<>();
+		writeUnsigned(baos, tileProperties.size());
+		for(Object o : tileProperties) {
+			if(o instanceof JsonDoorProperty) {
+				JsonDoorProperty jdp = (JsonDoorProperty)o;
+				baos.write(TILE_PROPERTY_DOOR);
+				writePosition(baos, jdp.getPosition());
+				baos.write(jdp.isOpen() ? 1 : 0);
+			} else {
+				baos.write(TILE_PROPERTY_JSON);
+				writeJson(baos, o);
+			}
+		}
+
+		writeUnsigned(baos, jws.getEvents().size());
+		for(Object o : jws.getEvents()) {
+			if(o instanceof JsonStepActionEvent) {
+				JsonStepActionEvent jsae = (JsonStepActionEvent)o;
+				baos.write(EVENT_STEP);
+				writeSigned(baos, jsae.getCreatureId());
+				writePosition(baos, jsae.getFrom());
+				writePosition(baos, jsae.getTo());
+				writeSigned(baos, jsae.getFrame());
+				writeSigned(baos, jsae.getEventId());
+
+			} else if(o instanceof JsonCombatActionEvent) {
+				JsonCombatActionEvent jcae = (JsonCombatActionEvent)o;
+				baos.write(EVENT_COMBAT);
+				writeSigned(baos, jcae.getAttackerId());
+				writeSigned(baos, jcae.getDefenderId());
+				baos.write(jcae.isHit() ? 1 : 0);
+				writeSigned(baos, jcae.getDamageDone());
+				writeSigned(baos, jcae.getFrame());
+				writeSigned(baos, jcae.getId());
+
+			} else {
+				baos.write(EVENT_JSON);
+				writeJson(baos, o);
+			}
+		}
+
+		if(creatureDeltas) {
+			writeUnsigned(baos, jws.getRemovedCreatureIds().size());
+			for(Long creatureId : jws.getRemovedCreatureIds()) {
+				writeSigned(baos, creatureId);
+			}
+
+			writeUnsigned(baos, jws.getChangedCreatures().size());
+			for(JsonCreatureDelta jcd : jws.getChangedCreatures()) {
+				writeCreatureDelta(baos, jcd);
+			}
+		}
+
+		return baos.toByteArray();
+	}
+
+	private static void writeCreatureDelta(ByteArrayOutputStream baos, JsonCreatureDelta jcd) throws IOException {
+		int fields = (jcd.getPosition() != null ? DELTA_POSITION : 0) | (jcd.getCurrHp() != null ? DELTA_CURR_HP : 0)
+				| (jcd.getMaxHp() != null ? DELTA_MAX_HP : 0) | (jcd.getLevel() != null ? DELTA_LEVEL : 0)
+				| (jcd.getWeaponId() != null ? DELTA_WEAPON : 0) | (jcd.getArmourIds() != null ? DELTA_ARMOUR : 0)
+				| (jcd.getEffects() != null ? DELTA_EFFECTS : 0);
+
+		writeSigned(baos, jcd.getCreatureId());
+		baos.write(fields);
+
+		if(jcd.getPosition() != null) {
+			writePosition(baos, jcd.getPosition());
+		}
+		if(jcd.getCurrHp() != null) {
+			writeSigned(baos, jcd.getCurrHp());
+		}
+		if(jcd.getMaxHp() != null) {
+			writeSigned(baos, jcd.getMaxHp());
+		}
+		if(jcd.getLevel() != null) {
+			writeSigned(baos, jcd.getLevel());
+		}
+		if(jcd.getWeaponId() != null) {
+			writeSigned(baos, jcd.getWeaponId());
+		}
+		if(jcd.getArmourIds() != null) {
+			writeUnsigned(baos, jcd.getArmourIds().size());
+			for(Long armourId : jcd.getArmourIds()) {
+				writeSigned(baos, armourId);
+			}
+		}
+		if(jcd.getEffects() != null) {
+			writeEffects(baos, jcd.getEffects());
+		}
+	}
+
+	private static void writeEffects(ByteArrayOutputStream baos, List<JsonEffect> effects) throws IOException {
+		writeUnsigned(baos, effects.size());
+		for(JsonEffect je : effects) {
+			writeString(baos, je.getType());
+			writeSigned(baos, je.getRemainingTurns());
+			writeSigned(baos, je.getMagnitude());
+		}
+	}
+
+	public static JsonFrameUpdate decode(byte[] message) throws IOException {
+
+		Reader r = new Reader(message);
+
+		if(r.readByte() != MAGIC) {
+			throw new IOException("Message is not a binary frame update.");
+		}
+
+		int version = r.readByte();
+		if(version != VERSION) {
+			throw new IOException("Unsupported binary frame update version: "+version);
+		}
+
+		JsonFrameUpdate jfu = new JsonFrameUpdate();
+		jfu.setGameTicks(r.readSigned());
+		jfu.setFrame(r.readSigned());
+		int flags = r.readByte();
+		jfu.setFull((flags & FLAG_FULL) != 0);
+
+		// Self state
+		JsonSelfState jss = new JsonSelfState();
+		jss.setPlayerId(r.readSigned());
+		int inventorySize = r.readUnsignedInt();
+		for(int x = 0; x < inventorySize; x++) {
+			JsonOwnableObject joo = new JsonOwnableObject();
+			joo.setId(r.readSigned());
+			joo.setContainedObject(r.readSigned());
+			jss.getInventory().add(joo);
+		}
+		jfu.setSelfState(jss);
+
+		// World state
+		JsonWorldState jws = new JsonWorldState();
+		jws.setClientViewPosX(r.readSignedInt());
+		jws.setClientViewPosY(r.readSignedInt());
+		jws.setClientViewWidth(r.readSignedInt());
+		jws.setClientViewHeight(r.readSignedInt());
+		jws.setWorldWidth(r.readSignedInt());
+		jws.setWorldHeight(r.readSignedInt());
+		jws.setRoundSecsLeft(r.readSignedInt());
+
+		jws.setDrinkables(r.readJsonList(new TypeReference<List<JsonDrinkableItem>>() {}));
+		jws.setWeapons(r.readJsonList(new TypeReference<List<JsonWeapon>>() {}));
+		jws.setArmours(r.readJsonList(new TypeReference<List<JsonArmour>>() {}));
+
+		int numFrames = r.readUnsignedInt();
+		for(int x = 0; x < numFrames; x++) {
+			JsonViewFrame jvf = new JsonViewFrame();
+			jvf.setX(r.readSignedInt());
+			jvf.setY(r.readSignedInt());
+			jvf.setW(r.readUnsignedInt());
+			jvf.setH(r.readUnsignedInt());
+
+			int numTiles = jvf.getW()*jvf.getH();
+			List<Object> data = new ArrayList<>(numTiles);
+			for(int y = 0; y < numTiles; y++) {
+				data.add(readTile(r));
+			}
+			jvf.setData(data);
+
+			jws.getFrames().add(jvf);
+		}
+
+		int numCreatures = r.readUnsignedInt();
+		for(int x = 0; x < numCreatures; x++) {
+			JsonVisibleCreature jvc = new JsonVisibleCreature();
+			jvc.setCreatureId(r.readSigned());
+			jvc.setPosition(r.readPosition());
+			jvc.setMaxHp(r.readSignedInt());
+			jvc.setCurrHp(r.readSignedInt());
+			jvc.setLevel(r.readSignedInt());
+			jvc.setWeaponId(r.readSigned());
+			jvc.setPlayer(r.readByte() == 1);
+			jvc.setTileTypeNumber(r.readSigned());
+			jvc.setName(r.readString());
+
+			int numArmours = r.readUnsignedInt();
+			for(int y = 0; y < numArmours; y++) {
+				jvc.getArmourIds().add(r.readSigned());
+			}
+
+			jvc.setEffects(readEffects(r));
+
+			jws.getVisibleCreatures().add(jvc);
+		}
+
+		int numObjects = r.readUnsignedInt();
+		for(int x = 0; x < numObjects; x++) {
+			JsonVisibleObject jvo = new JsonVisibleObject();
+			jvo.setObjectId(r.readSigned());
+			jvo.setContainedObjectId(r.readSigned());
+			jvo.setPosition(r.readPosition());
+			jws.getVisibleObjects().add(jvo);
+		}
+
+		int numTileProperties = r.readUnsignedInt();
+		for(int x = 0; x < numTileProperties; x++) {
+			int kind = r.readByte();
+			if(kind == TILE_PROPERTY_DOOR) {
+				Map<String, Object> m = new LinkedHashMap<>();
+				m.put("type", JsonDoorProperty.TYPE);
+				m.put("position", r.readPositionAsMap());
+				m.put("open", r.readByte() == 1);
+				jws.getTileProperties().add(m);
+			} else {
+				jws.getTileProperties().add(r.readJsonMap());
+			}
+		}
+
+		int numEvents = r.readUnsignedInt();
+		for(int x = 0; x < numEvents; x++) {
+			int kind = r.readByte();
+			Map<String, Object> m;
+			if(kind == EVENT_STEP) {
+				m = new LinkedHashMap<>();
+				m.put("type", JsonStepActionEvent.TYPE);
+				m.put("creatureId", r.readSigned());
+				m.put("from", r.readPositionAsMap());
+				m.put("to", r.readPositionAsMap());
+				m.put("frame", r.readSigned());
+				m.put("eventId", r.readSigned());
+
+			} else if(kind == EVENT_COMBAT) {
+				m = new LinkedHashMap<>();
+				m.put("type", JsonCombatActionEvent.TYPE);
+				m.put("attackerId", r.readSigned());
+				m.put("defenderId", r.readSigned());
+				m.put("hit", r.readByte() == 1);
+				m.put("damageDone", r.readSigned());
+				m.put("frame", r.readSigned());
+				m.put("id", r.readSigned());
+
+			} else {
+				m = r.readJsonMap();
+			}
+			jws.getEvents().add(m);
+		}
+
+		// Creature deltas are only present if the client asked for them (see encode(...))
+		if((flags & FLAG_CREATURE_DELTAS) != 0) {
+			jws.setCreatureDeltas(true);
+
+			int numRemoved = r.readUnsignedInt();
+			for(int x = 0; x < numRemoved; x++) {
+				jws.getRemovedCreatureIds().add(r.readSigned());
+			}
+
+			int numChanged = r.readUnsignedInt();
+			for(int x = 0; x < numChanged; x++) {
+				jws.getChangedCreatures().add(readCreatureDelta(r));
+			}
+		}
+
+		jfu.setWorldState(jws);
+
+		return jfu;
+	}
+
+	private static JsonCreatureDelta readCreatureDelta(Reader r) throws IOException {
+		JsonCreatureDelta jcd = new JsonCreatureDelta(r.readSigned());
+		int fields = r.readByte();
+
+		if((fields & DELTA_POSITION) != 0) {
+			jcd.setPosition(r.readPosition());
+		}
+		if((fields & DELTA_CURR_HP) != 0) {
+			jcd.setCurrHp(r.readSignedInt());
+		}
+		if((fields & DELTA_MAX_HP) != 0) {
+			jcd.setMaxHp(r.readSignedInt());
+		}
+		if((fields & DELTA_LEVEL) != 0) {
+			jcd.setLevel(r.readSignedInt());
+		}
+		if((fields & DELTA_WEAPON) != 0) {
+			jcd.setWeaponId(r.readSigned());
+		}
+		if((fields & DELTA_ARMOUR) != 0) {
+			int numArmours = r.readUnsignedInt();
+			List<Long> armourIds = new ArrayList<>(numArmours);
+			for(int x = 0; x < numArmours; x++) {
+				armourIds.add(r.readSigned());
+			}
+			jcd.setArmourIds(armourIds);
+		}
+		if((fields & DELTA_EFFECTS) != 0) {
+			jcd.setEffects(readEffects(r));
+		}
+
+		return jcd;
+	}
+
+	private static List<JsonEffect> readEffects(Reader r) throws IOException {
+		int numEffects = r.readUnsignedInt();
+		List<JsonEffect> result = new ArrayList<>(numEffects);
+		for(int x = 0; x < numEffects; x++) {
+			JsonEffect je = new JsonEffect();
+			je.setType(r.readString());
+			je.setRemainingTurns(r.readSignedInt());
+			je.setMagnitude(r.readSignedInt());
+			result.add(je);
+		}
+		return result;
+	}
+
+	/** Decode a tile written by encodeTile(...) into the JSON form: [ passable, [ number, (rotation)], ... ] */
+	private static List<Object> readTile(Reader r) throws IOException {
+		int header = r.readUnsignedInt();
+		int numLayers = header >>> 1;
+
+		List<Object> layers = new ArrayList<>(numLayers+1);
+		layers.add(header & 1);
+
+		for(int x = 0; x < numLayers; x++) {
+			long numberAndFlag = r.readUnsigned();
+			int number = (int)(numberAndFlag >>> 1);
+
+			List<Integer> layer;
+			if((numberAndFlag & 1) == 1) {
+				layer = new ArrayList<>(2);
+				layer.add(number);
+				layer.add(r.readSignedInt());
+			} else {
+				layer = new ArrayList<>(1);
+				layer.add(number);
+			}
+			layers.add(layer);
+		}
+
+		return layers;
+	}
+
+	private static void writeUnsigned(ByteArrayOutputStream baos, long value) {
+		while((value & ~0x7FL) != 0) {
+			baos.write((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		baos.write((int)value);
+	}
+
+	private static void writeSigned(ByteArrayOutputStream baos, long value) {
+		writeUnsigned(baos, (value << 1) ^ (value >> 63));
+	}
+
+	private static void writePosition(ByteArrayOutputStream baos, JsonPosition p) {
+		writeSigned(baos, p.getX());
+		writeSigned(baos, p.getY());
+	}
+
+	private static void writeString(ByteArrayOutputStream baos, String str) throws IOException {
+		byte[] bytes = (str != null ? str : "").getBytes(StandardCharsets.UTF_8);
+		writeUnsigned(baos, bytes.length);
+		baos.write(bytes);
+	}
+
+	private static void writeJson(ByteArrayOutputStream baos, Object o) throws IOException {
+		byte[] bytes = om.writeValueAsBytes(o);
+		writeUnsigned(baos, bytes.length);
+		baos.write(bytes);
+	}
+
+	/** An empty list is written as a single 0 byte; otherwise, as length-prefixed JSON. */
+	private static void writeJsonList(ByteArrayOutputStream baos, List<?> list) throws IOException {
+		if(list.isEmpty()) {
+			writeUnsigned(baos, 0);
+			return;
+		}
+		writeJson(baos, list);
+	}
+
+	/** Reads the fields of a binary frame update, in order, from the message byte array. */
+	private static final class Reader {
+		private final byte[] bytes;
+		private int pos = 0;
+
+		Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		int readByte() throws IOException {
+			if(pos >= bytes.length) {
+				throw new IOException("Unexpected end of binary frame update");
+			}
+			return bytes[pos++] & 0xFF;
+		}
+
+		long readUnsigned() throws IOException {
+			long result = 0;
+			int shift = 0;
+			int b;
+			do {
+				if(shift > 63) {
+					throw new IOException("Invalid variable length integer in binary frame update");
+				}
+				b = readByte();
+				result |= (long)(b & 0x7F) << shift;
+				shift += 7;
+			} while((b & 0x80) != 0);
+			return result;
+		}
+
+		int readUnsignedInt() throws IOException {
+			return (int)readUnsigned();
+		}
+
+		long readSigned() throws IOException {
+			long value = readUnsigned();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		int readSignedInt() throws IOException {
+			return (int)readSigned();
+		}
+
+		JsonPosition readPosition() throws IOException {
+			int x = readSignedInt();
+			int y = readSignedInt();
+			return new JsonPosition(x, y);
+		}
+
+		/** Positions inside events and tile properties are decoded as maps, as they are by Jackson. */
+		Map<String, Object> readPositionAsMap() throws IOException {
+			Map<String, Object> result = new LinkedHashMap<>();
+			result.put("x", readSignedInt());
+			result.put("y", readSignedInt());
+			return result;
+		}
+
+		private int readLength() throws IOException {
+			int length = readUnsignedInt();
+			if(length < 0 || length > bytes.length - pos) {
+				throw new IOException("Invalid length in binary frame update: "+length);
+			}
+			return length;
+		}
+
+		String readString() throws IOException {
+			int length = readLength();
+			String result = new String(bytes, pos, length, StandardCharsets.UTF_8);
+			pos += length;
+			return result;
+		}
+
+		@SuppressWarnings("unchecked")
+		Map<String, Object> readJsonMap() throws IOException {
+			int length = readLength();
+			Map<String, Object> result = om.readValue(bytes, pos, length, Map.class);
+			pos += length;
+			return result;
+		}
+
+		<T> List<T> readJsonList(TypeReference<List<T>> type) throws IOException {
+			int length = readLength();
+			if(length == 0) {
+				return new ArrayList<>();
+			}
+			List<T> result = om.readValue(bytes, pos, length, type);
+			pos += length;
+			return result;
+		}
+	}
+}
@@ -16,6 +16,11 @@
 
 package com.roguecloud.json;
 
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 public class JsonClientConnect extends JsonAbstractTypedMessage {
 	
 	public static final String TYPE = "ClientConnect"; 
@@ -34,6 +39,21 @@ public class JsonClientConnect extends JsonAbstractTypedMessage {
 	
 	private boolean initialConnect = false;
 
+	/** The frame update encodings supported by the client, in addition to JSON (for example, BinaryFrameUpdateCodec.ENCODING_NAME); may be null. */
+	@JsonInclude(Include.NON_NULL)
+	private List<String> frameUpdateEncodings;
+
+	/** Whether the client supports (streaming) CompressionContext messages; may be null. */
+	@JsonInclude(Include.NON_NULL)
+	private Boolean streamingCompression;
+
+	/** Whether the client supports receiving several messages in a single MessageEnvelope; may be null. */
+	@JsonInclude(Include.NON_NULL)
+	private Boolean messageBatching;
+
+	/** Whether the client supports creature deltas in JsonWorldState (see JsonWorldState.getCreatureDeltas()); may be null. */
+	@JsonInclude(Include.NON_NULL)
+	private Boolean creatureDeltas;
 	
 	public JsonClientConnect() {
 		setType(TYPE);
@@ -94,4 +114,36 @@ public class JsonClientConnect extends JsonAbstractTypedMessage {
 	public boolean isInitialConnect() {
 		return initialConnect;
 	}
+
+	public List<String> getFrameUpdateEncodings() {
+		return frameUpdateEncodings;
+	}
+
+	public void setFrameUpdateEncodings(List<String> frameUpdateEncodings) {
+		this.frameUpdateEncodings = frameUpdateEncodings;
+	}
+
+	public Boolean getStreamingCompression() {
+		return streamingCompression;
+	}
+
+	public void setStreamingCompression(Boolean streamingCompression) {
+		this.streamingCompression = streamingCompression;
+	}
+
+	public Boolean getMessageBatching() {
+		return messageBatching;
+	}
+
+	public void setMessageBatching(Boolean messageBatching) {
+		this.messageBatching = messageBatching;
+	}
+
+	public Boolean getCreatureDeltas() {
+		return creatureDeltas;
+	}
+
+	public void setCreatureDeltas(Boolean creatureDeltas) {
+		this.creatureDeltas = creatureDeltas;
+	}
 }
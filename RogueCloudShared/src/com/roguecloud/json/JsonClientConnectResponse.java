@@ -16,6 +16,9 @@
 
 package com.roguecloud.json;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 public class JsonClientConnectResponse extends JsonAbstractTypedMessage {
 
 	public static final String TYPE = "ClientConnectResponse";
@@ -25,6 +28,22 @@ public class JsonClientConnectResponse extends JsonAbstractTypedMessage {
 	private String connectResult;
 	
 	private Long roundEntered;
+
+	/** The encoding that the server will use for frame updates, chosen from those offered in JsonClientConnect; null for JSON. */
+	@JsonInclude(Include.NON_NULL)
+	private String frameUpdateEncoding;
+
+	/** Whether the server supports (streaming) CompressionContext messages, and will use them for this session; null if not. */
+	@JsonInclude(Include.NON_NULL)
+	private Boolean streamingCompression;
+
+	/** Whether the server will send several messages in a single MessageEnvelope to this session; null if not. */
+	@JsonInclude(Include.NON_NULL)
+	private Boolean messageBatching;
+
+	/** Whether the server will send creature deltas in the JsonWorldState of this session's frame updates; null if not. */
+	@JsonInclude(Include.NON_NULL)
+	private Boolean creatureDeltas;
 	
 	public JsonClientConnectResponse() {
 		setType(TYPE);
@@ -51,4 +70,36 @@ public class JsonClientConnectResponse extends JsonAbstractTypedMessage {
 	public void setRoundEntered(Long roundEntered) {
 		this.roundEntered = roundEntered;
 	}
+
+	public String getFrameUpdateEncoding() {
+		return frameUpdateEncoding;
+	}
+
+	public void setFrameUpdateEncoding(String frameUpdateEncoding) {
+		this.frameUpdateEncoding = frameUpdateEncoding;
+	}
+
+	public Boolean getStreamingCompression() {
+		return streamingCompression;
+	}
+
+	public void setStreamingCompression(Boolean streamingCompression) {
+		this.streamingCompression = streamingCompression;
+	}
+
+	public Boolean getMessageBatching() {
+		return messageBatching;
+	}
+
+	public void setMessageBatching(Boolean messageBatching) {
+		this.messageBatching = messageBatching;
+	}
+
+	public Boolean getCreatureDeltas() {
+		return creatureDeltas;
+	}
+
+	public void setCreatureDeltas(Boolean creatureDeltas) {
+		this.creatureDeltas = creatureDeltas;
+	}
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package com.roguecloud.json;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/** 
+ * The fields of a JsonVisibleCreature that have changed since the creature was last sent to the client; fields that have 
+ * not changed are null. Sent in JsonWorldState.getChangedCreatures(), see JsonClientConnect.getCreatureDeltas().
+ */
+public class JsonCreatureDelta {
+
+	long creatureId;
+
+	@JsonInclude(Include.NON_NULL)
+	JsonPosition position;
+
+	@JsonInclude(Include.NON_NULL)
+	Integer currHp;
+
+	@JsonInclude(Include.NON_NULL)
+	Integer maxHp;
+
+	@JsonInclude(Include.NON_NULL)
+	Integer level;
+
+	@JsonInclude(Include.NON_NULL)
+	Long weaponId;
+
+	@JsonInclude(Include.NON_NULL)
+	List<Long> armourIds;
+
+	@JsonInclude(Include.NON_NULL)
+	List<JsonEffect> effects;
+
+	public JsonCreatureDelta() {
+	}
+
+	public JsonCreatureDelta(long creatureId) {
+		this.creatureId = creatureId;
+	}
+
+	/** Apply the changed fields to the previous state of the creature */
+	public void applyTo(JsonVisibleCreature jvc) {
+		if(position != null) {
+			jvc.setPosition(position);
+		}
+		if(currHp != null) {
+			jvc.setCurrHp(currHp);
+		}
+		if(maxHp != null) {
+			jvc.setMaxHp(maxHp);
+		}
+		if(level != null) {
+			jvc.setLevel(level);
+		}
+		if(weaponId != null) {
+			jvc.setWeaponId(weaponId);
+		}
+		if(armourIds != null) {
+			jvc.setArmourIds(armourIds);
+		}
+		if(effects != null) {
+			jvc.setEffects(effects);
+		}
+	}
+
+	public long getCreatureId() {
+		return creatureId;
+	}
+
+	public void setCreatureId(long creatureId) {
+		this.creatureId = creatureId;
+	}
+
+	public JsonPosition getPosition() {
+		return position;
+	}
+
+	public void setPosition(JsonPosition position) {
+		this.position = position;
+	}
+
+	public Integer getCurrHp() {
+		return currHp;
+	}
+
+	public void setCurrHp(Integer currHp) {
+		this.currHp = currHp;
+	}
+
+	public Integer getMaxHp() {
+		return maxHp;
+	}
+
+	public void setMaxHp(Integer maxHp) {
+		this.maxHp = maxHp;
+	}
+
+	public Integer getLevel() {
+		return level;
+	}
+
+	public void setLevel(Integer level) {
+		this.level = level;
+	}
+
+	public Long getWeaponId() {
+		return weaponId;
+	}
+
+	public void setWeaponId(Long weaponId) {
+		this.weaponId = weaponId;
+	}
+
+	public List<Long> getArmourIds() {
+		return armourIds;
+	}
+
+	public void setArmourIds(List<Long> armourIds) {
+		this.armourIds = armourIds;
+	}
+
+	public List<JsonEffect> getEffects() {
+		return effects;
+	}
+
+	public void setEffects(List<JsonEffect> effects) {
+		this.effects = effects;
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.json;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+
+/**
+ * Decodes inbound JSON messages (those listed in JsonMessageMap) into their message classes, in a single pass over the
+ * message text.
+ *
+ * Previously, each message was parsed once into a Map (to read its 'type' field), then parsed again into the class
+ * for that type, and the action of a JsonActionMessage (which was left as a Map) was then converted by hand into its
+ * action class. Here, the message type is instead resolved by Jackson's polymorphic type handling: the 'type' field of
+ * JsonAbstractTypedMessage is the type id, and each message type (and action type) of JsonMessageMap is registered as
+ * a subtype. The action of a JsonActionMessage is decoded in the same way, so it is an instance of its action class
+ * (for example, JsonStepAction) rather than a Map.
+ *
+ * The ObjectMapper (and ObjectReaders) are created once and shared: ObjectReaders are immutable and thread safe, so
+ * a single instance of this class may be used by every session.
+ */
+public final class JsonMessageDecoder {
+
+	private static final JsonMessageDecoder instance = new JsonMessageDecoder();
+
+	/** Reads any message of JsonMessageMap, as its message class */
+	private final ObjectReader messageReader;
+
+	/** Plain (non-polymorphic) readers for decoding a specific class, see decode(String, Class) */
+	private final ObjectMapper plainMapper = new ObjectMapper();
+	private final ConcurrentHashMap<Class<?>, ObjectReader> plainReaders = new ConcurrentHashMap<>();
+
+	private JsonMessageDecoder() {
+		ObjectMapper om = new ObjectMapper();
+
+		// Nested JsonAbstractTypedMessage fields that are declared as a concrete class do not require a type id
+		om.enable(MapperFeature.USE_BASE_TYPE_AS_DEFAULT_IMPL);
+
+		om.addMixIn(JsonAbstractTypedMessage.class, TypedMessageMixIn.class);
+		om.addMixIn(JsonActionMessage.class, ActionMessageMixIn.class);
+
+		JsonMessageMap.getMap().forEach( (type, c) -> {
+			om.registerSubtypes(new NamedType(c, type));
+		});
+		JsonMessageMap.getActionMap().forEach( (type, c) -> {
+			om.registerSubtypes(new NamedType(c, type));
+		});
+
+		messageReader = om.readerFor(JsonAbstractTypedMessage.class);
+	}
+
+	public static JsonMessageDecoder getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Decode a message of any of the types of JsonMessageMap; the result is an instance of the class for the message's
+	 * 'type' field. An IOException is thrown if the message is not valid JSON, or its type is not recognized.
+	 */
+	public JsonAbstractTypedMessage decode(String str) throws IOException {
+		return messageReader.readValue(str);
+	}
+
+	/** Decode a message of a known class (without a type id), for example the first message of a connection. */
+	public <T> T decode(String str, Class<T> c) throws IOException {
+		ObjectReader reader = plainReaders.computeIfAbsent(c, e -> plainMapper.readerFor(e));
+		return reader.readValue(str);
+	}
+
+	/** The 'type' field of every JsonAbstractTypedMessage is its type id. */
+	@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXISTING_PROPERTY, property = "type", visible = true)
+	private static abstract class TypedMessageMixIn {
+	}
+
+	/** The action of JsonActionMessage is itself a JsonAbstractTypedMessage (see JsonMessageMap.getActionMap()) */
+	private static abstract class ActionMessageMixIn {
+		@JsonDeserialize(as = JsonAbstractTypedMessage.class)
+		@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXISTING_PROPERTY, property = "type", visible = true)
+		public Object action;
+
+		@JsonDeserialize(as = JsonAbstractTypedMessage.class)
+		@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXISTING_PROPERTY, property = "type", visible = true)
+		public abstract void setAction(Object action);
+	}
+}
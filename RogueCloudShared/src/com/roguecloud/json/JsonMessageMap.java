@@ -18,6 +18,13 @@ package com.roguecloud.json;
 
 import java.util.HashMap;
 
+import com.roguecloud.json.actions.JsonCombatAction;
+import com.roguecloud.json.actions.JsonDrinkItemAction;
+import com.roguecloud.json.actions.JsonEquipAction;
+import com.roguecloud.json.actions.JsonMoveInventoryItemAction;
+import com.roguecloud.json.actions.JsonNullAction;
+import com.roguecloud.json.actions.JsonStepAction;
+import com.roguecloud.json.browser.JsonBrowserConnect;
 import com.roguecloud.json.browser.JsonUpdateBrowserUI;
 import com.roguecloud.json.client.JsonHealthCheck;
 import com.roguecloud.json.client.JsonHealthCheckResponse;
@@ -26,6 +33,9 @@ public final class JsonMessageMap {
 
 	private static final HashMap<String, Class<?>> map = new HashMap<>();
 	
+	/** The actions that may be contained in a JsonActionMessage */
+	private static final HashMap<String, Class<?>> actionMap = new HashMap<>();
+	
 	static {
 		map.put(JsonClientConnect.TYPE, JsonClientConnect.class);
 		map.put(JsonClientConnectResponse.TYPE, JsonClientConnectResponse.class);
@@ -37,10 +47,22 @@ public final class JsonMessageMap {
 		map.put(JsonHealthCheck.TYPE, JsonHealthCheck.class);
 		map.put(JsonHealthCheckResponse.TYPE, JsonHealthCheckResponse.class);
 		map.put(JsonClientInterrupt.TYPE, JsonClientInterrupt.class);
+		map.put(JsonBrowserConnect.TYPE, JsonBrowserConnect.class);
+		
+		actionMap.put(JsonCombatAction.TYPE, JsonCombatAction.class);
+		actionMap.put(JsonStepAction.TYPE, JsonStepAction.class);
+		actionMap.put(JsonNullAction.TYPE, JsonNullAction.class);
+		actionMap.put(JsonMoveInventoryItemAction.TYPE, JsonMoveInventoryItemAction.class);
+		actionMap.put(JsonEquipAction.TYPE, JsonEquipAction.class);
+		actionMap.put(JsonDrinkItemAction.TYPE, JsonDrinkItemAction.class);
 	}
 	
 	public static HashMap<String, Class<?>> getMap() {
 		return map;
 	}
 	
+	public static HashMap<String, Class<?>> getActionMap() {
+		return actionMap;
+	}
+	
 }
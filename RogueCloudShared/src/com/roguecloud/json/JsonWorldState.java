@@ -19,6 +19,9 @@ package com.roguecloud.json;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 public class JsonWorldState {
 	int clientViewPosX;
 	int clientViewPosY;
@@ -39,6 +42,18 @@ public class JsonWorldState {
 
 	private List<JsonVisibleCreature> visibleCreatures = new ArrayList<>();
 	
+	/** If true, visibleCreatures contains only the creatures that are new to the client since its previous frame, and the 
+	 * creatures that it already has are updated by changedCreatures and removedCreatureIds. If null (a full frame, or 
+	 * a client that did not ask for creature deltas in JsonClientConnect), visibleCreatures contains every visible creature. */
+	@JsonInclude(Include.NON_NULL)
+	private Boolean creatureDeltas;
+	
+	@JsonInclude(Include.NON_EMPTY)
+	private List<JsonCreatureDelta> changedCreatures = new ArrayList<>();
+	
+	@JsonInclude(Include.NON_EMPTY)
+	private List<Long> removedCreatureIds = new ArrayList<>();
+	
 	private List<JsonVisibleObject> visibleObjects = new ArrayList<>();
 	
 	private List<Object> tileProperties = new ArrayList<>();
@@ -105,6 +120,30 @@ public class JsonWorldState {
 		this.visibleCreatures = visibleCreatures;
 	}
 
+	public Boolean getCreatureDeltas() {
+		return creatureDeltas;
+	}
+
+	public void setCreatureDeltas(Boolean creatureDeltas) {
+		this.creatureDeltas = creatureDeltas;
+	}
+
+	public List<JsonCreatureDelta> getChangedCreatures() {
+		return changedCreatures;
+	}
+
+	public void setChangedCreatures(List<JsonCreatureDelta> changedCreatures) {
+		this.changedCreatures = changedCreatures;
+	}
+
+	public List<Long> getRemovedCreatureIds() {
+		return removedCreatureIds;
+	}
+
+	public void setRemovedCreatureIds(List<Long> removedCreatureIds) {
+		this.removedCreatureIds = removedCreatureIds;
+	}
+
 	public List<JsonVisibleObject> getVisibleObjects() {
 		return visibleObjects;
 	}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.map;
+
+import com.roguecloud.Position;
+import com.roguecloud.RCRuntime;
+import com.roguecloud.utils.Logger;
+
+/**
+ * A persistent (copy-on-write) map, in which the world is divided into square chunks of CHUNK_SIZE x CHUNK_SIZE tiles.
+ *
+ * This class maintains the same properties as RCArrayMap:
+ * - The contents of the map should only be mutated from the game thread.
+ * - getTile(...) methods should only be used for read, and getTileForWrite(...) should be used for write.
+ * - cloneForRead() will produce a read-only map, which will not mutate and is safe to share across multiple threads.
+ *
+ * Unlike RCArrayMap, there is no overlay to collapse: cloneForRead() is O(1), as the read-only map shares the chunk array
+ * (and every chunk) with this map. Each clone begins a new 'generation' of this map. The first write to a chunk in a new
+ * generation copies that chunk (and, once per generation, the chunk array), and the first write to a tile in a new
+ * generation shallow clones that tile. Chunks and tiles which are not written to are never copied, so the cost of
+ * producing a snapshot for each tick scales with the number of tiles that changed, rather than with the size of the world.
+ *
+ * For internal use - see IMap for the public API of map.
+ */
+public final class RCChunkedMap implements IMap, IMutableMap {
+
+	private static final Logger log = Logger.getInstance();
+
+	private static final int CHUNK_BITS = 4;
+
+	/** Width and height of a chunk, in tiles */
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final int xSize, ySize;
+
+	/** Number of chunks in the y dimension; chunk (cx, cy) is at index cx*yChunks+cy */
+	private final int yChunks;
+
+	private Chunk[] chunks;
+
+	/** True if the chunk array is shared with a map returned by cloneForRead(), and thus must be copied before write. */
+	private boolean chunksShared = false;
+
+	/** Chunks whose generation matches this value are owned by this map, and may be written to; others are shared. */
+	private long generation = 0;
+
+	private boolean clonedForRead = false;
+
+	public RCChunkedMap(int xSize, int ySize) {
+		this.xSize = xSize;
+		this.ySize = ySize;
+		int xChunks = (xSize + CHUNK_MASK) >> CHUNK_BITS;
+		this.yChunks = (ySize + CHUNK_MASK) >> CHUNK_BITS;
+
+		this.chunks = new Chunk[xChunks*yChunks];
+	}
+
+	private RCChunkedMap(int xSize, int ySize, int yChunks, Chunk[] chunks) {
+		this.xSize = xSize;
+		this.ySize = ySize;
+		this.yChunks = yChunks;
+		this.chunks = chunks;
+	}
+
+	/** Create a new map containing the current (read) contents of the given map. Tiles are shared, not cloned. */
+	public static RCChunkedMap copyOf(IMap map) {
+		RCChunkedMap result = new RCChunkedMap(map.getXSize(), map.getYSize());
+		for(int x = 0; x < map.getXSize(); x++) {
+			for(int y = 0; y < map.getYSize(); y++) {
+				Tile t = map.getTile(x, y);
+				if(t != null) {
+					result.putTile(x, y, t);
+				}
+			}
+		}
+		return result;
+	}
+
+	public void setClonedForRead(boolean clonedForRead) {
+		this.clonedForRead = clonedForRead;
+	}
+
+	public boolean isClonedForRead() {
+		return clonedForRead;
+	}
+
+	public final void putTile(Position p, Tile t) {
+		putTile(p.getX(), p.getY(), t);
+	}
+
+	public final void putTile(int x, int y, Tile t) {
+		Chunk c = getChunkForWrite(x, y);
+		int index = tileIndex(x, y);
+		c.tiles[index] = t;
+		// The caller's tile may be shared, so the next write to this position must still clone it.
+		c.clearWritten(index);
+	}
+
+	public final Tile getTile(Position p) {
+		return getTile(p.getX(), p.getY());
+	}
+
+	public final Tile getTile(int x, int y) {
+		if(x < 0 || y < 0 || x >= xSize || y >= ySize) {
+			return null;
+		}
+
+		Chunk c = chunks[(x >> CHUNK_BITS)*yChunks + (y >> CHUNK_BITS)];
+		if(c == null) {
+			return null;
+		}
+
+		Tile tile = c.tiles[tileIndex(x, y)];
+		if(tile != null) {
+			tile.setTileForRead(true);
+		}
+		return tile;
+	}
+
+	public final Tile getTileForWriteUnchecked(Position p) {
+		return this.getTileForWrite(p.getX(), p.getY(), true);
+	}
+
+	/** As getTileForWrite(...), but may be called from threads other than the game thread (for example, by the client, which owns its own map). */
+	public final Tile getTileForWriteUnchecked(int x, int y) {
+		return this.getTileForWrite(x, y, true);
+	}
+
+	public final Tile getTileForWrite(Position p) {
+		return this.getTileForWrite(p.getX(), p.getY());
+	}
+
+	public final Tile getTileForWrite(int x, int y) {
+		return getTileForWrite(x, y, false);
+	}
+
+	@SuppressWarnings("unused")
+	private final Tile getTileForWrite(int x, int y, boolean ignoreAssert) {
+		if(!ignoreAssert) {
+			RCRuntime.assertGameThread();
+		}
+
+		if(RCRuntime.CHECK && isClonedForRead()) {
+			log.severe("Attempting to write to map that was cloned for read", null);
+			throw new RuntimeException("Attempting to write to map that was cloned for read.");
+		}
+
+		Chunk c = getChunkForWrite(x, y);
+		int index = tileIndex(x, y);
+
+		Tile t = c.tiles[index];
+		if(!c.isWritten(index)) {
+			// First write to this tile in this generation: the existing tile may be shared with a clone, so clone it.
+			t = t.shallowCloneUnchecked();
+			c.tiles[index] = t;
+			c.setWritten(index);
+		} else {
+			// Already cloned in this generation; it may have since been returned by getTile(...)
+			t.setTileForRead(false);
+		}
+
+		return t;
+	}
+
+	/** Return the chunk containing (x, y), copying it (and the chunk array) first if they are shared with a clone. */
+	private final Chunk getChunkForWrite(int x, int y) {
+		if(x < 0 || y < 0 || x >= xSize || y >= ySize) {
+			throw new IllegalArgumentException("Position is outside the map: ("+x+", "+y+")");
+		}
+
+		if(chunksShared) {
+			chunks = chunks.clone();
+			chunksShared = false;
+		}
+
+		int chunkIndex = (x >> CHUNK_BITS)*yChunks + (y >> CHUNK_BITS);
+
+		Chunk c = chunks[chunkIndex];
+		if(c == null) {
+			c = new Chunk(generation);
+			chunks[chunkIndex] = c;
+
+		} else if(c.generation != generation) {
+			c = new Chunk(generation, c);
+			chunks[chunkIndex] = c;
+		}
+
+		return c;
+	}
+
+	private static final int tileIndex(int x, int y) {
+		return ((x & CHUNK_MASK) << CHUNK_BITS) | (y & CHUNK_MASK);
+	}
+
+	public final int getXSize() {
+		return xSize;
+	}
+
+	public final int getYSize() {
+		return ySize;
+	}
+
+	public final RCChunkedMap cloneForRead() {
+		RCChunkedMap result = new RCChunkedMap(xSize, ySize, yChunks, chunks);
+		result.setClonedForRead(true);
+
+		// Every chunk is now shared with the clone; the next write to each will copy it.
+		chunksShared = true;
+		generation++;
+
+		return result;
+	}
+
+	/** A CHUNK_SIZE x CHUNK_SIZE square of tiles; only the map generation that created a chunk may write to it. */
+	private static final class Chunk {
+
+		private final Tile[] tiles;
+
+		/** Bit 'i' is set if tiles[i] has already been cloned for write in this generation. */
+		private final long[] written = new long[(CHUNK_SIZE*CHUNK_SIZE) >>> 6];
+
+		private final long generation;
+
+		Chunk(long generation) {
+			this.generation = generation;
+			this.tiles = new Tile[CHUNK_SIZE*CHUNK_SIZE];
+		}
+
+		Chunk(long generation, Chunk copyFrom) {
+			this.generation = generation;
+			this.tiles = copyFrom.tiles.clone();
+		}
+
+		boolean isWritten(int index) {
+			return (written[index >>> 6] & (1L << index)) != 0;
+		}
+
+		void setWritten(int index) {
+			written[index >>> 6] |= 1L << index;
+		}
+
+		void clearWritten(int index) {
+			written[index >>> 6] &= ~(1L << index);
+		}
+	}
+
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.map;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.roguecloud.Position;
+import com.roguecloud.RCRuntime;
+import com.roguecloud.creatures.ICreature;
+import com.roguecloud.items.IGroundObject;
+import com.roguecloud.utils.Logger;
+
+/**
+ * This class is principally for server-side use only.
+ *
+ * An index of the positions of objects on the map (creatures, or ground objects), so that the objects near a position may be
+ * found without reading every tile around it. The map is divided into BUCKET_SIZE x BUCKET_SIZE squares of tiles ("buckets"), and
+ * each bucket holds the objects that are on its tiles, along with the position that each was added at. The index must be kept
+ * in sync with the tiles of the map by the game thread, which calls add/remove/move(...) wherever it adds or removes an object on a tile.
+ *
+ * As with RCChunkedMap, snapshot() returns a read-only copy of the index that is not affected by later changes, for use by
+ * other threads (for example, the monster AI threads). Each bucket is an immutable array that is replaced (rather than modified)
+ * on change, so a snapshot only needs to share the bucket array; the bucket array itself is only copied on the next write.
+ *
+ * Writes are not thread safe, and must only occur on the game thread; snapshots are thread safe.
+ */
+public final class SpatialIndex<T> {
+
+	private static final Logger log = Logger.getInstance();
+
+	private static final int BUCKET_BITS = 3;
+
+	public static final int BUCKET_SIZE = 1 << BUCKET_BITS;
+
+	private static final Object[] EMPTY = new Object[0];
+
+	private final int xSize, ySize;
+
+	private final int yBuckets;
+
+	/** Each bucket is an array of Entry, which is never modified once it is in this array. Null if the bucket is empty. */
+	private Object[][] buckets;
+
+	/** Whether 'buckets' is shared with a snapshot, and must be copied before it is next written to */
+	private boolean bucketsShared = false;
+
+	private final boolean readOnly;
+
+	private int size = 0;
+
+	public SpatialIndex(int xSize, int ySize) {
+		this(xSize, ySize, new Object[((xSize + BUCKET_SIZE - 1) >> BUCKET_BITS) * ((ySize + BUCKET_SIZE - 1) >> BUCKET_BITS)][], 0, false);
+	}
+
+	private SpatialIndex(int xSize, int ySize, Object[][] buckets, int size, boolean readOnly) {
+		this.xSize = xSize;
+		this.ySize = ySize;
+		this.yBuckets = (ySize + BUCKET_SIZE - 1) >> BUCKET_BITS;
+		this.buckets = buckets;
+		this.size = size;
+		this.readOnly = readOnly;
+	}
+
+	/** Create an index of the creatures that are currently on the tiles of the given map. */
+	public static SpatialIndex<ICreature> buildCreatureIndex(IMap map) {
+		SpatialIndex<ICreature> result = new SpatialIndex<>(map.getXSize(), map.getYSize());
+		for(int x = 0; x < map.getXSize(); x++) {
+			for(int y = 0; y < map.getYSize(); y++) {
+				Tile t = map.getTile(x, y);
+				if(t != null) {
+					for(ICreature c : t.getCreatures()) {
+						result.addEntry(c, x, y);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/** Create an index of the ground objects that are currently on the tiles of the given map. */
+	public static SpatialIndex<IGroundObject> buildGroundObjectIndex(IMap map) {
+		SpatialIndex<IGroundObject> result = new SpatialIndex<>(map.getXSize(), map.getYSize());
+		for(int x = 0; x < map.getXSize(); x++) {
+			for(int y = 0; y < map.getYSize(); y++) {
+				Tile t = map.getTile(x, y);
+				if(t != null) {
+					for(IGroundObject go : t.getGroundObjects()) {
+						result.addEntry(go, x, y);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/** Add an object to the index, at the given position. */
+	public void add(T value, Position p) {
+		assertWritable();
+		addEntry(value, p.getX(), p.getY());
+	}
+
+	/** Remove an object (compared by identity) that was added at the given position; returns false if it was not found there. */
+	public boolean remove(T value, Position p) {
+		assertWritable();
+
+		int bucketIndex = bucketIndex(p.getX(), p.getY());
+		Object[] bucket = buckets[bucketIndex];
+		int index = indexOf(bucket, value, p.getX(), p.getY());
+		if(index == -1) {
+			return false;
+		}
+
+		Object[] newBucket = null;
+		if(bucket.length > 1) {
+			newBucket = new Object[bucket.length - 1];
+			System.arraycopy(bucket, 0, newBucket, 0, index);
+			System.arraycopy(bucket, index + 1, newBucket, index, bucket.length - index - 1);
+		}
+		bucketsForWrite()[bucketIndex] = newBucket;
+		size--;
+		return true;
+	}
+
+	/** Move an object from one position to another (for example, when a creature steps); returns false if it was not found at 'from'. */
+	public boolean move(T value, Position from, Position to) {
+		assertWritable();
+
+		int bucketIndex = bucketIndex(from.getX(), from.getY());
+		if(bucketIndex != bucketIndex(to.getX(), to.getY())) {
+			if(!remove(value, from)) {
+				return false;
+			}
+			add(value, to);
+			return true;
+		}
+
+		// Same bucket: replace the entry in place
+		Object[] bucket = buckets[bucketIndex];
+		int index = indexOf(bucket, value, from.getX(), from.getY());
+		if(index == -1) {
+			return false;
+		}
+		Object[] newBucket = bucket.clone();
+		newBucket[index] = new Entry<T>(value, to.getX(), to.getY());
+		bucketsForWrite()[bucketIndex] = newBucket;
+		return true;
+	}
+
+	/** Return a read-only copy of the index, which will not see later writes to this index. */
+	public SpatialIndex<T> snapshot() {
+		bucketsShared = true;
+		return new SpatialIndex<T>(xSize, ySize, buckets, size, true);
+	}
+
+	/** The total number of objects in the index */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return an unsorted list of the objects that are in the bounds of the rectangle (startX, startY) to (endX, endY) inclusive,
+	 * and that match the filter (which may be null).
+	 */
+	public List<T> findInRectangle(int startX, int startY, int endX, int endY, Predicate<? super T> filter) {
+		startX = Math.max(0, startX);
+		startY = Math.max(0, startY);
+		endX = Math.min(xSize - 1, endX);
+		endY = Math.min(ySize - 1, endY);
+
+		List<T> result = new ArrayList<>();
+		if(startX > endX || startY > endY) {
+			return result;
+		}
+
+		Object[][] b = buckets;
+		for(int bx = startX >> BUCKET_BITS; bx <= endX >> BUCKET_BITS; bx++) {
+			for(int by = startY >> BUCKET_BITS; by <= endY >> BUCKET_BITS; by++) {
+				Object[] bucket = b[bx * yBuckets + by];
+				if(bucket == null) { continue; }
+
+				for(Object o : bucket) {
+					@SuppressWarnings("unchecked")
+					Entry<T> e = (Entry<T>)o;
+					if(e.x >= startX && e.x <= endX && e.y >= startY && e.y <= endY && (filter == null || filter.test(e.value))) {
+						result.add(e.value);
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return (up to) the 'k' objects that are closest to 'center' (by manhattan distance), sorted ascending by distance, considering
+	 * only those that are in the bounds of the rectangle (startX, startY) to (endX, endY) inclusive, and that match the filter (which may be null).
+	 *
+	 * Buckets are visited in rings of increasing distance around the bucket containing 'center', and the search stops as soon as
+	 * no object in the next ring could be closer than the k-th closest object found so far.
+	 */
+	public List<T> findNearest(Position center, int k, int startX, int startY, int endX, int endY, Predicate<? super T> filter) {
+		startX = Math.max(0, startX);
+		startY = Math.max(0, startY);
+		endX = Math.min(xSize - 1, endX);
+		endY = Math.min(ySize - 1, endY);
+
+		if(k <= 0 || startX > endX || startY > endY) {
+			return new ArrayList<>();
+		}
+
+		final int cx = center.getX();
+		final int cy = center.getY();
+
+		final int minBx = startX >> BUCKET_BITS;
+		final int minBy = startY >> BUCKET_BITS;
+		final int maxBx = endX >> BUCKET_BITS;
+		final int maxBy = endY >> BUCKET_BITS;
+
+		final int cbx = Math.max(minBx, Math.min(maxBx, cx >> BUCKET_BITS));
+		final int cby = Math.max(minBy, Math.min(maxBy, cy >> BUCKET_BITS));
+
+		final int maxRing = Math.max(Math.max(cbx - minBx, maxBx - cbx), Math.max(cby - minBy, maxBy - cby));
+
+		// The closest objects found so far, sorted ascending by distance
+		Object[] best = new Object[k];
+		int[] bestDistance = new int[k];
+		int found = 0;
+
+		Object[][] b = buckets;
+		for(int ring = 0; ring <= maxRing; ring++) {
+
+			// Every tile in a bucket of this ring is at least this far from the center (the center may be on the edge of its bucket)
+			if(found == k && ring > 0 && bestDistance[k - 1] < (ring - 1) * BUCKET_SIZE + 1) {
+				break;
+			}
+
+			for(int bx = Math.max(minBx, cbx - ring); bx <= Math.min(maxBx, cbx + ring); bx++) {
+				boolean edgeColumn = bx == cbx - ring || bx == cbx + ring;
+				// Only the first and last rows of the ring, unless this column is on the left or right edge of the ring
+				int step = edgeColumn ? 1 : Math.max(1, 2 * ring);
+
+				for(int by = cby - ring; by <= cby + ring; by += step) {
+					if(by < minBy || by > maxBy) { continue; }
+
+					Object[] bucket = b[bx * yBuckets + by];
+					if(bucket == null) { continue; }
+
+					for(Object o : bucket) {
+						@SuppressWarnings("unchecked")
+						Entry<T> e = (Entry<T>)o;
+						if(e.x < startX || e.x > endX || e.y < startY || e.y > endY) { continue; }
+
+						int distance = Math.abs(e.x - cx) + Math.abs(e.y - cy);
+						if(found == k && distance >= bestDistance[k - 1]) { continue; }
+
+						if(filter != null && !filter.test(e.value)) { continue; }
+
+						// Insert into the sorted 'best' arrays
+						int pos = found < k ? found++ : k - 1;
+						while(pos > 0 && bestDistance[pos - 1] > distance) {
+							best[pos] = best[pos - 1];
+							bestDistance[pos] = bestDistance[pos - 1];
+							pos--;
+						}
+						best[pos] = e.value;
+						bestDistance[pos] = distance;
+					}
+				}
+			}
+		}
+
+		List<T> result = new ArrayList<>(found);
+		for(int x = 0; x < found; x++) {
+			@SuppressWarnings("unchecked")
+			T value = (T)best[x];
+			result.add(value);
+		}
+		return result;
+	}
+
+	/** Return every object in the index, in no particular order. */
+	public List<T> getAll() {
+		if(size == 0) {
+			return Collections.emptyList();
+		}
+		return findInRectangle(0, 0, xSize - 1, ySize - 1, null);
+	}
+
+	private void addEntry(T value, int x, int y) {
+		int bucketIndex = bucketIndex(x, y);
+		Object[] bucket = buckets[bucketIndex];
+		if(bucket == null) {
+			bucket = EMPTY;
+		}
+
+		Object[] newBucket = new Object[bucket.length + 1];
+		System.arraycopy(bucket, 0, newBucket, 0, bucket.length);
+		newBucket[bucket.length] = new Entry<T>(value, x, y);
+
+		bucketsForWrite()[bucketIndex] = newBucket;
+		size++;
+	}
+
+	private static int indexOf(Object[] bucket, Object value, int x, int y) {
+		if(bucket == null) {
+			return -1;
+		}
+		for(int index = 0; index < bucket.length; index++) {
+			Entry<?> e = (Entry<?>)bucket[index];
+			if(e.value == value && e.x == x && e.y == y) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private Object[][] bucketsForWrite() {
+		if(bucketsShared) {
+			buckets = buckets.clone();
+			bucketsShared = false;
+		}
+		return buckets;
+	}
+
+	private int bucketIndex(int x, int y) {
+		if(x < 0 || y < 0 || x >= xSize || y >= ySize) {
+			throw new IllegalArgumentException("Position is outside the map: ("+x+", "+y+")");
+		}
+		return (x >> BUCKET_BITS) * yBuckets + (y >> BUCKET_BITS);
+	}
+
+	private void assertWritable() {
+		RCRuntime.assertGameThread();
+
+		if(readOnly) {
+			log.severe("Attempting to write to a spatial index snapshot", null);
+			throw new RuntimeException("Attempting to write to a spatial index snapshot.");
+		}
+	}
+
+	/** An object, and the position it was added at; immutable. */
+	private static final class Entry<T> {
+		private final T value;
+		private final int x;
+		private final int y;
+
+		Entry(T value, int x, int y) {
+			this.value = value;
+			this.x = x;
+			this.y = y;
+		}
+	}
+}
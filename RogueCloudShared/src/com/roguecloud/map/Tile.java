@@ -235,6 +235,7 @@ public final class Tile {
 	}
 	
 	private void shallowCloneInternal(Tile t) {
+		t.lastTickUpdated = lastTickUpdated;
 		t.groundObjects.addAll(groundObjects);
 		t.creatures.addAll(creatures);
 		t.tileProperties.addAll(tileProperties);
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.map;
+
+import java.util.List;
+
+import com.roguecloud.Position;
+
+/**
+ * A cache of the serialized (wire) form of each map tile, so that a tile which is visible to many clients is only encoded
+ * once, rather than once per client per tick. The type of the serialized form (T) is determined by the caller, and must be
+ * immutable (for example, a pre-encoded JSON string, or a javax.json JsonArray).
+ *
+ * An entry is only returned if it was created from the same Tile object (by identity) and the same variant: once a tile has
+ * been included in a read-only clone of the map (see RCChunkedMap.cloneForRead()), any later write produces a new Tile object,
+ * and so a changed tile will never match a stale entry. Entries for the positions in the engine's changedTiles list should
+ * additionally be removed each tick, via invalidate(...), for tiles that change in other ways (for example, the death of a
+ * creature that is standing on them).
+ *
+ * The variant allows for tiles that may be presented in more than one way (for example, the browser view alternates between the
+ * creatures on a tile); pass 0 if there is only one presentation.
+ *
+ * Thread safety: get(...) and put(...) may be called concurrently from multiple threads. Entries are immutable (all fields
+ * are final), so a thread will see either a complete entry or no entry; two threads that both miss on the same tile will both
+ * encode it, and the last put(...) wins, which is harmless. invalidate(...) should only be called from the game thread while
+ * no other thread is using the cache.
+ */
+public final class TileSerializationCache<T> {
+
+	private final int xSize, ySize;
+
+	/** Indexed by x*ySize+y */
+	private final Entry<T>[] entries;
+
+	@SuppressWarnings("unchecked")
+	public TileSerializationCache(int xSize, int ySize) {
+		this.xSize = xSize;
+		this.ySize = ySize;
+		this.entries = (Entry<T>[]) new Entry<?>[xSize*ySize];
+	}
+
+	/** Return the cached serialized form of tile 't' at (x, y), or null if there is none. */
+	public final T get(int x, int y, Tile t, int variant) {
+		if(x < 0 || y < 0 || x >= xSize || y >= ySize) {
+			return null;
+		}
+
+		Entry<T> e = entries[x*ySize+y];
+		if(e == null || e.tile != t || e.variant != variant) {
+			return null;
+		}
+
+		return e.value;
+	}
+
+	public final void put(int x, int y, Tile t, int variant, T value) {
+		if(x < 0 || y < 0 || x >= xSize || y >= ySize) {
+			return;
+		}
+
+		entries[x*ySize+y] = new Entry<T>(t, variant, value);
+	}
+
+	/** Remove the entries for the given positions. */
+	public final void invalidate(List<Position> changedTiles) {
+		for(Position p : changedTiles) {
+			if(p.getX() < 0 || p.getY() < 0 || p.getX() >= xSize || p.getY() >= ySize) {
+				continue;
+			}
+			entries[p.getX()*ySize+p.getY()] = null;
+		}
+	}
+
+	/** Immutable cache entry: the serialized form of a specific Tile object, for a specific variant. */
+	private static final class Entry<T> {
+		final Tile tile;
+		final int variant;
+		final T value;
+
+		Entry(Tile tile, int variant, T value) {
+			this.tile = tile;
+			this.variant = variant;
+			this.value = value;
+		}
+	}
+}
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Predicate;
 
 import com.roguecloud.Position;
 import com.roguecloud.client.SelfState;
@@ -28,6 +29,7 @@ import com.roguecloud.creatures.ICreature;
 import com.roguecloud.items.IGroundObject;
 import com.roguecloud.items.Weapon;
 import com.roguecloud.map.IMap;
+import com.roguecloud.map.SpatialIndex;
 import com.roguecloud.map.Tile;
 
 /** Helper utility methods that coders may use to implement their agents.  */
@@ -112,6 +114,26 @@ public class AIUtils {
 		
 	}
 
+	/** As above, but on the server the ground object index of the world state is used (see SpatialIndex), rather than reading every tile in range. */
+	public static List<IGroundObject> findAndSortGroundObjectsInRange(int clientViewWidth, int clientViewHeight, Position myPos, WorldState worldState) {
+		SpatialIndex<IGroundObject> index = worldState.getGroundObjectIndex();
+		if(index == null) {
+			return findAndSortGroundObjectsInRange(clientViewWidth, clientViewHeight, myPos, worldState.getMap());
+		}
+
+		List<IGroundObject> result = index.findInRectangle(myPos.getX()-(clientViewWidth/2), myPos.getY()-(clientViewHeight/2), 
+				myPos.getX()+(clientViewWidth/2), myPos.getY()+(clientViewHeight/2), null);
+
+		Collections.sort(result,  (a, b) -> {
+			long aDistance = myPos.manhattanDistanceBetween(a.getPosition());
+			long bDistance = myPos.manhattanDistanceBetween(b.getPosition());
+			
+			return (int)(aDistance - bDistance);
+		});
+		
+		return result;
+	}
+
 	/** Remove creatures that represent other players from the given list. Other player's creatures cannot be attacked,
 	 * so this method will let you filter them out. */
 	public static void removePlayerCreaturesFromList(List<ICreature> creatures) {
@@ -224,6 +246,38 @@ public class AIUtils {
 	}
 
 
+	/** As above, but on the server the creature index of the world state is used (see SpatialIndex), rather than reading every tile in range. */
+	public static List<ICreature> findCreaturesInRange(int clientViewWidth, int clientViewHeight, Position myPos, WorldState worldState) {
+		SpatialIndex<ICreature> index = worldState.getCreatureIndex();
+		if(index == null) {
+			return findCreaturesInRange(clientViewWidth, clientViewHeight, myPos, worldState.getMap());
+		}
+		
+		return index.findInRectangle(myPos.getX()-(clientViewWidth/2), myPos.getY()-(clientViewHeight/2), 
+				myPos.getX()+(clientViewWidth/2), myPos.getY()+(clientViewHeight/2), e -> isOtherLiveCreature(e, myPos));
+	}
+
+	/** 
+	 * Return (up to) the 'k' alive creatures that are closest to myPos, within range of the viewWidth/viewHeight of myPos, and that 
+	 * match the filter (which may be null), sorted by which is closest. On the server this searches outward from myPos using
+	 * the creature index of the world state (see SpatialIndex), so only the creatures near myPos are read.
+	 */
+	public static List<ICreature> findClosestCreatures(int clientViewWidth, int clientViewHeight, Position myPos, int k, Predicate<ICreature> filter, WorldState worldState) {
+		SpatialIndex<ICreature> index = worldState.getCreatureIndex();
+		if(index == null) {
+			List<ICreature> result = findCreaturesInRange(clientViewWidth, clientViewHeight, myPos, worldState.getMap());
+			if(filter != null) {
+				result.removeIf(e -> !filter.test(e));
+			}
+			sortClosestCreatures(myPos, result);
+			return result.size() > k ? new ArrayList<>(result.subList(0, k)) : result;
+		}
+		
+		return index.findNearest(myPos, k, myPos.getX()-(clientViewWidth/2), myPos.getY()-(clientViewHeight/2), 
+				myPos.getX()+(clientViewWidth/2), myPos.getY()+(clientViewHeight/2), 
+				e -> isOtherLiveCreature(e, myPos) && (filter == null || filter.test(e)));
+	}
+
 	/** Return an unsorted list of creatures that are in a specific range (measured in # of tiles) from myPos on the map. */
 	public static List<ICreature> findCreaturesInRange(int range, IMap map, Position myPos) {
 		if(myPos == null) { return Collections.emptyList(); }
@@ -263,6 +317,18 @@ public class AIUtils {
 		return result;
 	}
 	
+	/** As above, but on the server the creature index of the world state is used (see SpatialIndex), rather than reading every tile in range. */
+	public static List<ICreature> findCreaturesInRange(int range, WorldState worldState, Position myPos) {
+		if(myPos == null) { return Collections.emptyList(); }
+
+		SpatialIndex<ICreature> index = worldState.getCreatureIndex();
+		if(index == null) {
+			return findCreaturesInRange(range, worldState.getMap(), myPos);
+		}
+		
+		return index.findInRectangle(myPos.getX()-range, myPos.getY()-range, myPos.getX()+range, myPos.getY()+range, e -> isOtherLiveCreature(e, myPos));
+	}
+	
 	/** Return an unsorted list of creatures that are in the bounds of the rectangle (startX, startY) to (endX, endY) inclusive, on the map. */
 	public static List<ICreature> findCreaturesInRectangle(int startX, int startY, int endX, int endY, Position myPos, IMap map) {
 		List<ICreature> result = new ArrayList<>();
@@ -288,15 +354,37 @@ public class AIUtils {
 		
 	}
 	
+	/** As above, but on the server the creature index of the world state is used (see SpatialIndex), rather than reading every tile in the rectangle. */
+	public static List<ICreature> findCreaturesInRectangle(int startX, int startY, int endX, int endY, Position myPos, WorldState worldState) {
+		SpatialIndex<ICreature> index = worldState.getCreatureIndex();
+		if(index == null) {
+			return findCreaturesInRectangle(startX, startY, endX, endY, myPos, worldState.getMap());
+		}
+		
+		return index.findInRectangle(startX, startY, endX, endY, e -> isOtherLiveCreature(e, myPos));
+	}
+	
+	/** Exclude ourselves, and dead creatures */
+	private static boolean isOtherLiveCreature(ICreature e, Position myPos) {
+		return !e.isDead() && (myPos == null || !e.getPosition().equals(myPos));
+	}
+	
 	/** Returns the closest accessible ground objects from your current position. */
 	public static FindClosestResult<IGroundObject> findClosestGroundObjectThatCanBeReached(IMap map, WorldState worldState, SelfState selfState) {
+		return findClosestGroundObjectThatCanBeReached(map, worldState, selfState, FastPathSearch.Algorithm.A_STAR);
+	}
+	
+	/** Returns the closest accessible ground objects from your current position, using the given path search algorithm (see FastPathSearch). */
+	public static FindClosestResult<IGroundObject> findClosestGroundObjectThatCanBeReached(IMap map, WorldState worldState, SelfState selfState, FastPathSearch.Algorithm algorithm) {
 		
-		List<IGroundObject> goList = findAndSortGroundObjectsInRange(worldState.getViewWidth(), worldState.getViewHeight(), selfState.getPlayer().getPosition(), map);
+		List<IGroundObject> goList = map == worldState.getMap() 
+				? findAndSortGroundObjectsInRange(worldState.getViewWidth(), worldState.getViewHeight(), selfState.getPlayer().getPosition(), worldState)
+				: findAndSortGroundObjectsInRange(worldState.getViewWidth(), worldState.getViewHeight(), selfState.getPlayer().getPosition(), map);
 		
 		// Find the closest creature that we can reach
 		while(goList.size() > 0) {
 			IGroundObject curr = goList.remove(0);
-			List<Position> routeToItem = FastPathSearch.doSearchWithAStar(selfState.getPlayer().getPosition(), curr.getPosition(), map);
+			List<Position> routeToItem = FastPathSearch.doSearchWithFallback(selfState.getPlayer().getPosition(), curr.getPosition(), Long.MAX_VALUE, map, algorithm);
 			if(routeToItem.size() > 0) {
 				routeToItem.remove(0);
 				return new FindClosestResult<IGroundObject>(routeToItem, curr);
@@ -310,15 +398,22 @@ public class AIUtils {
 
 	/** Returns the closest accessible creature from your current position. */
 	public static FindClosestResult<ICreature> findClosestCreatureThatCanBeReached(IMap map, WorldState worldState, SelfState selfState) {
+		return findClosestCreatureThatCanBeReached(map, worldState, selfState, FastPathSearch.Algorithm.A_STAR);
+	}
+	
+	/** Returns the closest accessible creature from your current position, using the given path search algorithm (see FastPathSearch). */
+	public static FindClosestResult<ICreature> findClosestCreatureThatCanBeReached(IMap map, WorldState worldState, SelfState selfState, FastPathSearch.Algorithm algorithm) {
 		
-		List<ICreature> creatures = AIUtils.findCreaturesInRange(worldState.getViewWidth(), worldState.getViewHeight(), selfState.getPlayer().getPosition(), map);
+		List<ICreature> creatures = map == worldState.getMap()
+				? AIUtils.findCreaturesInRange(worldState.getViewWidth(), worldState.getViewHeight(), selfState.getPlayer().getPosition(), worldState)
+				: AIUtils.findCreaturesInRange(worldState.getViewWidth(), worldState.getViewHeight(), selfState.getPlayer().getPosition(), map);
 		
 		AIUtils.sortClosestCreatures(selfState.getPlayer().getPosition(), creatures);
 		
 		// Find the closest creature that we can reach
 		while(creatures.size() > 0) {
 			ICreature curr = creatures.remove(0);
-			List<Position> routeToCreature = FastPathSearch.doSearchWithAStar(selfState.getPlayer().getPosition(), curr.getPosition(), map);
+			List<Position> routeToCreature = FastPathSearch.doSearchWithFallback(selfState.getPlayer().getPosition(), curr.getPosition(), Long.MAX_VALUE, map, algorithm);
 			if(routeToCreature.size() > 0) {
 				routeToCreature.remove(0);
 				return new FindClosestResult<ICreature>(routeToCreature, curr);
@@ -53,7 +53,8 @@ import com.roguecloud.map.Tile;
  * If you wish to constrain the search area, use findPath(...) but specify the maximum number of tiles to search. 
  * This should not be necessary for game client code (but is used server side to reduce CPU load on the hot path). 
  *
- * This class implements the algorithm described at https://en.wikipedia.org/wiki/A*_search_algorithm
+ * This class implements the algorithm described at https://en.wikipedia.org/wiki/A*_search_algorithm (the search 
+ * itself is performed by IndexedAStarSearch, which does not allocate per searched tile).
  **/
 public final class AStarSearch8Way {
 
@@ -65,6 +66,12 @@ public final class AStarSearch8Way {
 	/** Find a path between two points on a map. Restrict search to at most 'maxTilesToSearch': use this option 
 	 * to reduce CPU usage. */
 	public final static List<Position> findPath(Position start, Position goal, long maxTilesToSearch, IMap m) {
+		return IndexedAStarSearch.findPath(start, goal, maxTilesToSearch, m, true);
+	}
+	
+	/** The original object-per-node implementation of findPath(...), which is retained for comparison with 
+	 * IndexedAStarSearch (see PathFinderBenchmark); prefer findPath(...). */
+	public final static List<Position> findPathUsingNodes(Position start, Position goal, long maxTilesToSearch, IMap m) {
 
 		Node startNode = new Node(start);
 
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.roguecloud.RCRuntime;
+
+/**
+ * For internal server use only: streaming deflate compression for a single WebSocket session, in the style of the WebSocket
+ * permessage-deflate extension. Unlike CompressionUtils (which compresses each message on its own), the deflate dictionary
+ * is kept across messages: each message is compressed with a sync flush, so it may be decompressed as soon as it is received,
+ * but later messages may refer back to the content of earlier ones. As consecutive frame updates of the same view are
+ * very similar, this substantially improves both the compression ratio and the CPU cost.
+ *
+ * A streamed message begins with STREAMING_MARKER, which can not be the first byte of a message compressed by
+ * CompressionUtils (a zlib header), so decompress(...) accepts both kinds of message. This allows either side to begin
+ * streaming at any point after the other side has indicated that it supports it (see getStreamingCompression() of JsonClientConnect and JsonClientConnectResponse).
+ *
+ * Each direction has its own state: one thread may compress while another decompresses, but the messages in each direction
+ * must be compressed (and decompressed) in the order in which they are sent. The native deflater/inflater are created on
+ * first use, and are released by dispose(), which must be called once the session is closed.
+ */
+public final class CompressionContext {
+
+	private static final byte STREAMING_MARKER = 1;
+
+	/** A sync flush always ends with this empty stored block, which (as in permessage-deflate) is not sent. */
+	private static final byte[] SYNC_FLUSH_TRAILER = new byte[] { 0, 0, (byte)0xFF, (byte)0xFF };
+
+	private final Object deflateLock = new Object();
+	private final Object inflateLock = new Object();
+
+	private Deflater deflater_synch_deflateLock;
+	private Inflater inflater_synch_inflateLock;
+
+	private boolean disposed = false;
+
+	public CompressionContext() {
+	}
+
+	/** Whether the message was compressed by a CompressionContext, rather than by CompressionUtils. */
+	public static boolean isStreamingMessage(byte[] message) {
+		return RCRuntime.ENABLE_DEFLATE_COMPRESSION && message.length > 0 && message[0] == STREAMING_MARKER;
+	}
+
+	public ByteBuffer compress(String str) {
+		return compress(str.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public ByteBuffer compress(byte[] bytes) {
+
+		if(!RCRuntime.ENABLE_DEFLATE_COMPRESSION) {
+			return ByteBuffer.wrap(bytes);
+		}
+
+		synchronized(deflateLock) {
+			if(disposed) {
+				throw new IllegalStateException("Compression context is disposed.");
+			}
+
+			if(deflater_synch_deflateLock == null) {
+				deflater_synch_deflateLock = new Deflater(Deflater.BEST_SPEED, true);
+			}
+
+			Deflater deflater = deflater_synch_deflateLock;
+			deflater.setInput(bytes);
+
+			byte[] out = new byte[Math.max(64, bytes.length / 4)];
+			out[0] = STREAMING_MARKER;
+			int length = 1;
+
+			while(true) {
+				length += deflater.deflate(out, length, out.length - length, Deflater.SYNC_FLUSH);
+				if(length < out.length) {
+					// The flush is complete once the deflater no longer fills the output buffer
+					break;
+				}
+				out = Arrays.copyOf(out, out.length*2);
+			}
+
+			if(endsWithTrailer(out, length)) {
+				length -= SYNC_FLUSH_TRAILER.length;
+			}
+
+			return ByteBuffer.wrap(out, 0, length);
+		}
+	}
+
+	public String decompressToString(byte[] message) {
+		return new String(decompress(message), StandardCharsets.UTF_8);
+	}
+
+	/** Decompress a message that was compressed by either a CompressionContext or CompressionUtils. */
+	public byte[] decompress(byte[] message) {
+
+		if(!isStreamingMessage(message)) {
+			return CompressionUtils.decompressToBytes(message);
+		}
+
+		synchronized(inflateLock) {
+			if(disposed) {
+				throw new IllegalStateException("Compression context is disposed.");
+			}
+
+			if(inflater_synch_inflateLock == null) {
+				inflater_synch_inflateLock = new Inflater(true);
+			}
+
+			Inflater inflater = inflater_synch_inflateLock;
+
+			// Restore the sync flush trailer that was removed by compress(...)
+			byte[] in = Arrays.copyOfRange(message, 1, message.length + SYNC_FLUSH_TRAILER.length);
+			System.arraycopy(SYNC_FLUSH_TRAILER, 0, in, message.length - 1, SYNC_FLUSH_TRAILER.length);
+			inflater.setInput(in);
+
+			byte[] out = new byte[Math.max(256, message.length * 4)];
+			int length = 0;
+
+			try {
+				while(true) {
+					int count = inflater.inflate(out, length, out.length - length);
+					length += count;
+					if(length == out.length) {
+						out = Arrays.copyOf(out, out.length*2);
+					} else if(count == 0 || inflater.needsInput()) {
+						break;
+					}
+				}
+			} catch (DataFormatException e) {
+				throw new RuntimeException("Error on decompress", e);
+			}
+
+			return Arrays.copyOf(out, length);
+		}
+	}
+
+	/** Release the native deflater and inflater; this context may not be used afterwards. */
+	public void dispose() {
+		synchronized(deflateLock) {
+			synchronized(inflateLock) {
+				if(disposed) { return; }
+				disposed = true;
+
+				if(deflater_synch_deflateLock != null) {
+					deflater_synch_deflateLock.end();
+					deflater_synch_deflateLock = null;
+				}
+
+				if(inflater_synch_inflateLock != null) {
+					inflater_synch_inflateLock.end();
+					inflater_synch_inflateLock = null;
+				}
+			}
+		}
+	}
+
+	private static boolean endsWithTrailer(byte[] out, int length) {
+		if(length < SYNC_FLUSH_TRAILER.length) {
+			return false;
+		}
+		for(int x = 0; x < SYNC_FLUSH_TRAILER.length; x++) {
+			if(out[length - SYNC_FLUSH_TRAILER.length + x] != SYNC_FLUSH_TRAILER[x]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -16,14 +16,13 @@
 
 package com.roguecloud.utils;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.Inflater;
 
 import com.roguecloud.RCRuntime;
 
@@ -32,76 +31,107 @@ import com.roguecloud.RCRuntime;
  * 
  * You can disable compression setting RCRuntime.ENABLE_DEFLATE_COMPRESSION to false, but you must ensure that this value is
  * set to false on both the client and server.
+ * 
+ * Each message is compressed on its own; see CompressionContext for streaming compression across the messages of a session.
+ * The native Deflater/Inflater objects are pooled and reused between calls, rather than being created for each message 
+ * and left for finalization to release.
  * */
 public final class CompressionUtils {
 
 	private static final Logger log = Logger.getInstance();
 	
+	private static final int MAX_POOLED = 32;
+	
+	private static final ArrayBlockingQueue<Deflater> deflaterPool = new ArrayBlockingQueue<>(MAX_POOLED);
+	
+	private static final ArrayBlockingQueue<Inflater> inflaterPool = new ArrayBlockingQueue<>(MAX_POOLED);
+	
 	public static final ByteBuffer compressToByteBuffer(String str) {
-		return ByteBuffer.wrap(compressString(str));
+		return compressToByteBuffer(str.getBytes(StandardCharsets.UTF_8));
 	}
 	
 	public static final String decompressToString(byte[] bytes) {
-		return decompressString(bytes);
+		return new String(decompressToBytes(bytes), StandardCharsets.UTF_8);
 	}
 	
-	private final static byte[] compressString(String str) {
+	/** Compress a binary message (for example, one encoded by BinaryFrameUpdateCodec) */
+	public static final ByteBuffer compressToByteBuffer(byte[] bytes) {
 
-		// If compression is disabled, then just return a byte array of a UTF-8 string
+		// If compression is disabled, then just return the uncompressed bytes
 		if(!RCRuntime.ENABLE_DEFLATE_COMPRESSION) {
-			return str.getBytes();
+			return ByteBuffer.wrap(bytes);
 		}
 		
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		
-		DeflaterOutputStream dos = new DeflaterOutputStream(baos, new Deflater(Deflater.BEST_SPEED) );
+		Deflater deflater = deflaterPool.poll();
+		if(deflater == null) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+		}
 		
 		try {
-			dos.write(str.getBytes());
-			dos.close();
-			baos.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-			log.severe("Exception on compress", e, null);
-			throw new RuntimeException(e);
+			deflater.setInput(bytes);
+			deflater.finish();
+			
+			byte[] out = new byte[Math.max(64, bytes.length / 4)];
+			int length = 0;
+			while(!deflater.finished()) {
+				if(length == out.length) {
+					out = Arrays.copyOf(out, out.length*2);
+				}
+				length += deflater.deflate(out, length, out.length - length);
+			}
+			
+			return ByteBuffer.wrap(out, 0, length);
+			
+		} finally {
+			deflater.reset();
+			if(!deflaterPool.offer(deflater)) {
+				deflater.end();
+			}
 		}
-		
-		return baos.toByteArray();
 	}
-
 	
-	private final static String decompressString(byte[] str) {
+	/** Decompress a message without converting it to a String; the caller may then determine whether it is JSON or binary. */
+	public static final byte[] decompressToBytes(byte[] bytes) {
 		
 		// If compression is disabled, then the byte array is just a UTF-8 string
 		if(!RCRuntime.ENABLE_DEFLATE_COMPRESSION) {
-			return new String(str);
+			return bytes;
 		}
-
 		
-		InflaterInputStream dis = new InflaterInputStream(new ByteArrayInputStream(str));
+		Inflater inflater = inflaterPool.poll();
+		if(inflater == null) {
+			inflater = new Inflater();
+		}
 		
 		try {
-			return readIntoString(dis);
-		} catch (IOException e) {
+			inflater.setInput(bytes);
+			
+			byte[] out = new byte[Math.max(256, bytes.length * 4)];
+			int length = 0;
+			while(!inflater.finished()) {
+				if(length == out.length) {
+					out = Arrays.copyOf(out, out.length*2);
+				}
+				int count = inflater.inflate(out, length, out.length - length);
+				if(count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new DataFormatException("Truncated compressed message");
+				}
+				length += count;
+			}
+			
+			return Arrays.copyOf(out, length);
+			
+		} catch (DataFormatException e) {
 			e.printStackTrace();
 			log.severe("Error on decompress",  e, null);
 			throw new RuntimeException(e);
+			
+		} finally {
+			inflater.reset();
+			if(!inflaterPool.offer(inflater)) {
+				inflater.end();
+			}
 		}
 	}
-	
-	private static String readIntoString(InputStream is) throws IOException {
-
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		byte[] barr = new byte[64 * 1024];
-		int c;
-		while (-1 != (c = is.read(barr))) {
-			baos.write(barr, 0, c);
-		}
-		baos.close();
-		
-		return baos.toString();
-		
-	}
-		
 
 }
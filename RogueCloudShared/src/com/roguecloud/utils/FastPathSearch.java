@@ -57,16 +57,29 @@ import com.roguecloud.map.Tile;
  * 
  * To use only the Fast Path algorithm, without falling back to AStar, use doSearch(...)
  * 
+ * To fall back to Jump Point Search (see JumpPointSearch) rather than AStar, which is faster on open terrain, use:
+ * ```
+ * List<Position> path = FastPathSearch.doSearchWithFallback( startingPosition,  goalPosition, Long.MAX_VALUE, worldState.getMap(), FastPathSearch.Algorithm.JUMP_POINT_SEARCH);
+ * ```
+ * 
  * (This class is used extensively on the server side to allow for increased scalability of monster AIs) 
  * 
  */
 public class FastPathSearch {
 
+	/** The (4-way) shortest path algorithm to fall back to, when the fast path algorithm does not reach the goal. */
+	public static enum Algorithm { A_STAR, JUMP_POINT_SEARCH };
+	
 	public final static List<Position> doSearchWithAStar(Position start, Position goal, IMap m) {
 		return doSearchWithAStar(start, goal, Long.MAX_VALUE, m);
 	}
 	
 	public final static List<Position> doSearchWithAStar(Position start, Position goal, long maxTilesToSearch, IMap m) {
+		return doSearchWithFallback(start, goal, maxTilesToSearch, m, Algorithm.A_STAR);
+	}
+	
+	/** As doSearchWithAStar(...), but falling back to the given algorithm (rather than always AStar) */
+	public final static List<Position> doSearchWithFallback(Position start, Position goal, long maxTilesToSearch, IMap m, Algorithm fallback) {
 		
 		List<Position> currentList = doSearch(start, goal, m);
 		
@@ -77,7 +90,7 @@ public class FastPathSearch {
 				return removeDeadPathIfNecessary(currentList);
 			}
 			
-			List<Position> astarList = AStarSearch.findPath(lastPos, goal, maxTilesToSearch, m);
+			List<Position> astarList = findPath(lastPos, goal, maxTilesToSearch, m, fallback);
 			if(astarList.size() > 0) {
 				// A* got (somewhat) farther...
 				astarList.remove(0); 
@@ -98,16 +111,23 @@ public class FastPathSearch {
 			
 		} else {
 			// Our fast path algorithm had no luck, so just A* the whole thing.
-			return AStarSearch.findPath(start, goal, maxTilesToSearch, m);
+			return findPath(start, goal, maxTilesToSearch, m, fallback);
 		}
 	}
 	
 	
+	private static List<Position> findPath(Position start, Position goal, long maxTilesToSearch, IMap m, Algorithm algorithm) {
+		if(algorithm == Algorithm.JUMP_POINT_SEARCH) {
+			return JumpPointSearch.findPath(start, goal, maxTilesToSearch, m);
+		}
+		return AStarSearch.findPath(start, goal, maxTilesToSearch, m);
+	}
+	
 	/** When "bridging" between results from the fast path algorithm into results from the
 	 * a-star algorithm, there can be duplicate "dead path" elements, which can be removed.
 	 *   
 	 * Example: (0, 0), (1, 0), (0, 0), (1, 0), (1, 1) --> (0, 0), (1, 0), (1, 1)*/
-	private static final List<Position> removeDeadPathIfNecessary(List<Position> currentList) {
+	static final List<Position> removeDeadPathIfNecessary(List<Position> currentList) {
 		int firstDupePos = -1;
 		int secondDupePos = -1;
 		
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.roguecloud.Position;
+import com.roguecloud.map.IMap;
+import com.roguecloud.map.Tile;
+
+/**
+ * This class is principally for internal use: the A* engine behind AStarSearch, AStarSearch8Way and AStarSearchInterruptible,
+ * which should be used instead by game client code.
+ *
+ * Unlike a textbook implementation, no objects are allocated per node: each tile is identified by its int index (x + y * width),
+ * the g-score, parent, and open/closed state of each tile are stored in int arrays, and the open set is a binary heap of
+ * primitive keys. These arrays are held in a SearchArena, which is reused from search to search: rather than clearing the arrays,
+ * each search increments the arena's generation, and an entry is only valid if its stamp matches the current generation.
+ *
+ * The one-shot findPath(...) methods use a thread-local arena (for example, one per MonsterMachine thread), so the only
+ * allocation per search is the returned path. A resumable search (see AStarSearchInterruptible) must hold its arena across
+ * calls, and so borrows one from a shared pool, returning it on completion (or dispose()).
+ *
+ * As with AStarSearch, tiles that have not been seen (null) are assumed to be passable. Costs are integers: 10 for a
+ * horizontal/vertical step, and (8-way only) 14 for a diagonal step. Ties between nodes with the same f-score are broken
+ * in favour of the node that is furthest from the start, which substantially reduces the number of nodes expanded on open terrain.
+ *
+ * Instances are not thread safe.
+ */
+public final class IndexedAStarSearch {
+
+	private static final int STRAIGHT_COST = 10;
+	private static final int DIAGONAL_COST = 14;
+
+	private static final int[] DX_4 = new int[] { -1, 1, 0, 0 };
+	private static final int[] DY_4 = new int[] { 0, 0, -1, 1 };
+
+	private static final int[] DX_8 = new int[] { -1, 1, 0, 0, -1, 1, -1, 1 };
+	private static final int[] DY_8 = new int[] { 0, 0, -1, 1, -1, -1, 1, 1 };
+
+	/** Check the expiration time every this many expanded nodes; see AStarSearchInterruptible */
+	private static final int EXPIRE_CHECK_INTERVAL = 512;
+
+	private static final ThreadLocal<SearchArena> threadArena = ThreadLocal.withInitial(SearchArena::new);
+
+	/** Arenas for resumable searches, which may not use the thread-local arena. */
+	private static final ArrayBlockingQueue<SearchArena> arenaPool = new ArrayBlockingQueue<>(64);
+
+	private final IMap m;
+	private final int width;
+	private final int startIndex;
+	private final int goalIndex;
+	private final long maxTilesToSearch;
+	private final boolean eightWay;
+
+	private SearchArena arena;
+	private final boolean pooledArena;
+
+	private long tilesSearched = 0;
+
+	private List<Position> result = null;
+
+	private IndexedAStarSearch(Position start, Position goal, long maxTilesToSearch, IMap m, boolean eightWay, SearchArena arena, boolean pooledArena) {
+		this.m = m;
+		this.width = m.getXSize();
+		this.startIndex = start.getX() + start.getY() * width;
+		this.goalIndex = goal.getX() + goal.getY() * width;
+		this.maxTilesToSearch = maxTilesToSearch;
+		this.eightWay = eightWay;
+		this.arena = arena;
+		this.pooledArena = pooledArena;
+
+		arena.begin(m.getXSize() * m.getYSize());
+
+		if(!Position.isValid(start.getX(), start.getY(), m) || !Position.isValid(goal.getX(), goal.getY(), m)) {
+			result = new ArrayList<>();
+			release();
+			return;
+		}
+
+		arena.open(startIndex, 0, heuristic(startIndex), -1);
+	}
+
+	/** Find a 4-way path between two points, in the same form as AStarSearch.findPath(...) */
+	public static List<Position> findPath(Position start, Position goal, long maxTilesToSearch, IMap m) {
+		return findPath(start, goal, maxTilesToSearch, m, false);
+	}
+
+	/** Find a 4-way or 8-way path between two points, in the same form as AStarSearch.findPath(...) */
+	public static List<Position> findPath(Position start, Position goal, long maxTilesToSearch, IMap m, boolean eightWay) {
+		IndexedAStarSearch search = new IndexedAStarSearch(start, goal, maxTilesToSearch, m, eightWay, threadArena.get(), false);
+		search.run(Long.MAX_VALUE);
+		return search.result;
+	}
+
+	/** Create a search that may be run over multiple calls to run(...); the caller must call dispose() if the search is abandoned before it completes. */
+	public static IndexedAStarSearch createResumableSearch(Position start, Position goal, long maxTilesToSearch, IMap m, boolean eightWay) {
+		SearchArena arena = arenaPool.poll();
+		if(arena == null) {
+			arena = new SearchArena();
+		}
+		return new IndexedAStarSearch(start, goal, maxTilesToSearch, m, eightWay, arena, true);
+	}
+
+	/** Search until a path is found, no path is possible, or System.nanoTime() passes expireTimeInNanos. Returns true if the search is complete. */
+	public boolean run(long expireTimeInNanos) {
+		if(result != null) {
+			return true;
+		}
+
+		final SearchArena a = arena;
+		final int[] dx = eightWay ? DX_8 : DX_4;
+		final int[] dy = eightWay ? DY_8 : DY_4;
+		final int xSize = width;
+		final int ySize = m.getYSize();
+
+		int count = 0;
+
+		while(a.heapSize > 0 && tilesSearched < maxTilesToSearch) {
+
+			if(++count == EXPIRE_CHECK_INTERVAL) {
+				count = 0;
+				if(expireTimeInNanos != Long.MAX_VALUE && System.nanoTime() > expireTimeInNanos) {
+					return false;
+				}
+			}
+
+			int current = a.pop();
+			if(a.isClosed(current)) {
+				// A stale heap entry, for a node that was since reached by a cheaper path.
+				continue;
+			}
+
+			if(current == goalIndex) {
+				result = reconstructPath(current);
+				release();
+				return true;
+			}
+
+			a.close(current);
+			tilesSearched++;
+
+			int cx = current % xSize;
+			int cy = current / xSize;
+			int currentG = a.g[current];
+
+			for(int d = 0; d < dx.length; d++) {
+				int nx = cx + dx[d];
+				int ny = cy + dy[d];
+				if(nx < 0 || ny < 0 || nx >= xSize || ny >= ySize) {
+					continue;
+				}
+
+				int neighbour = nx + ny * xSize;
+				if(a.isClosed(neighbour)) {
+					continue;
+				}
+
+				if(!a.isSeen(neighbour)) {
+					Tile t = m.getTile(nx, ny);
+					// Here we assume that if we haven't seen a tile yet, that it is passable.
+					if(t != null && !t.isPresentlyPassable()) {
+						a.close(neighbour);
+						tilesSearched++;
+						continue;
+					}
+				}
+
+				int tentativeG = currentG + (d < 4 ? STRAIGHT_COST : DIAGONAL_COST);
+				if(a.isSeen(neighbour) && tentativeG >= a.g[neighbour]) {
+					continue; // This is not a better path.
+				}
+
+				a.open(neighbour, tentativeG, tentativeG + heuristic(neighbour), current);
+			}
+		}
+
+		// No path exists, or we hit the search limit
+		result = new ArrayList<>();
+		release();
+		return true;
+	}
+
+	/** The path found by the search (in the same form as AStarSearch.findPath(...)), or null if the search is not yet complete. */
+	public List<Position> getResult() {
+		return result;
+	}
+
+	/** Return the arena of an abandoned resumable search to the pool; has no effect if the search has completed. */
+	public void dispose() {
+		release();
+	}
+
+	private void release() {
+		if(arena == null) { return; }
+
+		if(pooledArena) {
+			arenaPool.offer(arena);
+		}
+		arena = null;
+	}
+
+	private int heuristic(int index) {
+		int dx = Math.abs(index % width - goalIndex % width);
+		int dy = Math.abs(index / width - goalIndex / width);
+		if(eightWay) {
+			return STRAIGHT_COST * Math.max(dx, dy) + (DIAGONAL_COST - STRAIGHT_COST) * Math.min(dx, dy);
+		}
+		return STRAIGHT_COST * (dx + dy);
+	}
+
+	private List<Position> reconstructPath(int current) {
+		List<Position> totalPath = new ArrayList<>();
+		while(current != -1) {
+			totalPath.add(new Position(current % width, current / width));
+			current = arena.parent[current];
+		}
+		Collections.reverse(totalPath);
+		return totalPath;
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.roguecloud.Position;
+import com.roguecloud.client.WorldState;
+import com.roguecloud.map.IMap;
+
+/** 
+ * This class is principally for server-side use only.
+ * 
+ * This class has the same API behaviour as FastPathSearch.doSearchWithAStar(...), except that the A* portion of the search 
+ * is performed by AStarSearchInterruptible, and so is limited to a caller-provided expiration time. If the search does not
+ * complete in time, doSearch(...) returns null, and the next call to doSearch(...) (for example, on the next game tick) will 
+ * resume the search from where it left off, rather than starting again.
+ * 
+ * If a NavigationGraph is provided, a goal that can not be reached from the start returns an empty list immediately, rather
+ * than after a search of every tile that can be reached from the start. Likewise, if a SharedPathCache is provided (via the 
+ * WorldState), a path that another monster has already requested may be returned from the cache.
+ * 
+ * One instance of this class should be used per AI; instances are not thread safe. 
+ **/
+public final class InterruptiblePathSearch {
+
+	/** 
+	 * An in-progress search will be resumed if the new goal is within this many tiles of the original goal (ie a slowly moving 
+	 * target). When the resumed search completes, the final leg of the path is re-targeted from the original goal to the new goal.
+	 **/
+	private static final int GOAL_TOLERANCE = 2;
+	
+	/** The maximum number of tiles searched for the re-targeted final leg; if it is not found, the search is restarted for the new goal. */
+	private static final long FINAL_LEG_MAX_TILES_TO_SEARCH = 128;
+	
+	/** The in-progress A* search, or null if there is none */
+	private AStarSearchInterruptible search = null;
+	
+	/** The result of the fast path portion of the in-progress search; the A* search begins at the last position of this list. */
+	private List<Position> fastPathPrefix = null;
+	
+	private Position searchStart = null;
+	
+	/** 
+	 * Returns a path in the same form as FastPathSearch.doSearchWithAStar(...) (an empty list if there is no path), or null if
+	 * the search did not complete before 'expireTimeInNanos' (as per System.nanoTime()): in this case call again later to continue.
+	 **/
+	public final List<Position> doSearch(Position start, Position goal, long maxTilesToSearch, IMap m, long expireTimeInNanos) {
+		return doSearch(start, goal, maxTilesToSearch, m, null, expireTimeInNanos);
+	}
+	
+	/** 
+	 * As below, using the map and navigation graph of 'worldState'. If the world state has a SharedPathCache, and another
+	 * monster has already requested the same goal on this tick, the path is read from the cache rather than searched for. 
+	 **/
+	public final List<Position> doSearch(Position start, Position goal, long maxTilesToSearch, WorldState worldState, long expireTimeInNanos) {
+		
+		NavigationGraph navigation = worldState.getNavigationGraph();
+		SharedPathCache pathCache = worldState.getPathCache();
+		
+		if(pathCache != null && (navigation == null || navigation.isReachable(start, goal))) {
+			List<Position> sharedPath = pathCache.findPath(start, goal);
+			if(sharedPath != null) {
+				abandon();
+				return sharedPath;
+			}
+		}
+		
+		return doSearch(start, goal, maxTilesToSearch, worldState.getMap(), navigation, expireTimeInNanos);
+	}
+	
+	/** As above, but first checks (in O(1)) that the goal can be reached from the start, using 'navigation' (which may be null). */
+	public final List<Position> doSearch(Position start, Position goal, long maxTilesToSearch, IMap m, NavigationGraph navigation, long expireTimeInNanos) {
+		
+		if(navigation != null && !navigation.isReachable(start, goal)) {
+			abandon();
+			return new ArrayList<>();
+		}
+		
+		if(search != null) {
+			if(search.getGoal().manhattanDistanceBetween(goal) > GOAL_TOLERANCE || !searchStart.equals(start)) {
+				// The search is no longer relevant, so start over.
+				abandon();
+			}
+		}
+		
+		if(search == null) {
+			
+			List<Position> currentList = FastPathSearch.doSearch(start, goal, m);
+
+			// The fast path always contains at least the start position
+			Position lastPos = currentList.get(currentList.size()-1);
+			if(lastPos.equals(goal)) {
+				return FastPathSearch.removeDeadPathIfNecessary(currentList);
+			}
+			
+			searchStart = start;
+			fastPathPrefix = currentList;
+			search = new AStarSearchInterruptible(lastPos, goal, maxTilesToSearch, m);
+			
+			if(!search.startSearch(expireTimeInNanos)) {
+				return null;
+			}
+			
+		} else if(!search.continueSearch(expireTimeInNanos)) {
+			return null;
+		}
+		
+		// The search is complete
+		List<Position> astarList = search.getResult();
+		List<Position> currentList = fastPathPrefix;
+		Position searchGoal = search.getGoal();
+		abandon();
+		
+		if(astarList.size() == 0) {
+			if(!searchGoal.equals(goal)) {
+				// No path to the original goal, but the new goal may still be reachable, so search for it instead.
+				return doSearch(start, goal, maxTilesToSearch, m, navigation, expireTimeInNanos);
+			}
+			
+			// No path from the end of the fast path to the goal
+			return astarList;
+		}
+		
+		// The first A* position is the last fast path position
+		astarList.remove(0);
+		currentList.addAll(astarList);
+		
+		if(!searchGoal.equals(goal)) {
+			// The goal has moved since the search began, so re-target the end of the path to it.
+			currentList = retarget(currentList, goal, m);
+			if(currentList == null) {
+				return doSearch(start, goal, maxTilesToSearch, m, navigation, expireTimeInNanos);
+			}
+		}
+		
+		return FastPathSearch.removeDeadPathIfNecessary(currentList);
+	}
+	
+	/** 
+	 * Change the path (which ends at the original goal of the search) to end at 'goal', which is within GOAL_TOLERANCE of it: 
+	 * the path is cut short if it already passes through 'goal', otherwise a path from the original goal to 'goal' is 
+	 * appended. Returns null if there is no such path within FINAL_LEG_MAX_TILES_TO_SEARCH.
+	 **/
+	private static List<Position> retarget(List<Position> path, Position goal, IMap m) {
+		
+		int index = path.indexOf(goal);
+		if(index != -1) {
+			return new ArrayList<>(path.subList(0, index+1));
+		}
+		
+		List<Position> finalLeg = AStarSearch.findPath(path.get(path.size()-1), goal, FINAL_LEG_MAX_TILES_TO_SEARCH, m);
+		if(finalLeg.size() == 0) {
+			return null;
+		}
+		
+		// The first position of the final leg is the last position of the path
+		path.addAll(finalLeg.subList(1, finalLeg.size()));
+		return path;
+	}
+	
+	/** Whether a search was interrupted, and will be resumed by the next call to doSearch(...) */
+	public final boolean isSearchInProgress() {
+		return search != null;
+	}
+	
+	/** The goal of the in-progress search, or null if there is none */
+	public final Position getInProgressGoal() {
+		return search != null ? search.getGoal() : null;
+	}
+	
+	/** Discard any in-progress search. */
+	public final void abandon() {
+		if(search != null) {
+			search.dispose();
+		}
+		search = null;
+		fastPathPrefix = null;
+		searchStart = null;
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.roguecloud.Position;
+import com.roguecloud.map.IMap;
+import com.roguecloud.map.Tile;
+
+/**
+ * This class may be used to find the shortest path between two positions on the map, in the same way as AStarSearch (4-way)
+ * or AStarSearch8Way (8-way), and returns a path in the same form: a list of positions from the start to the goal (inclusive),
+ * or an empty list if there is no path.
+ *
+ * ```
+ * List<Position> path = JumpPointSearch.findPath( startingPosition,  goalPosition, worldState.getMap());
+ * ```
+ *
+ * Jump Point Search (https://en.wikipedia.org/wiki/Jump_point_search) is A*, except that rather than adding every neighbouring
+ * tile to the open set, the search "jumps" in a straight line until it reaches a tile where the path might need to turn
+ * (for example, the corner of a wall). On open terrain (grass, roads) this places far fewer tiles in the open set than A*,
+ * while still finding a shortest path. On maps that are mostly walls and corridors, A* may be faster: on the map-new.txt world
+ * (see PathFinderBenchmark), the 8-way search is faster than AStarSearch8Way, but the 4-way search is slower than AStarSearch,
+ * as each vertical jump must scan horizontally from every tile.
+ *
+ * The 8-way search allows the same diagonal moves as AStarSearch8Way (a diagonal step only requires that the destination
+ * is passable). In the 4-way search, a vertical jump scans horizontally from each tile it passes, in the same way that a
+ * diagonal jump scans both straight directions in the 8-way search.
+ *
+ * As with AStarSearch, tiles that have not been seen (null) are assumed to be passable. When 'maxTilesToSearch' is specified,
+ * it limits the number of tiles that are scanned by jumps.
+ */
+public final class JumpPointSearch {
+
+	private static final int STRAIGHT_COST = 10;
+	private static final int DIAGONAL_COST = 14;
+
+	private static final ThreadLocal<SearchArena> threadArena = ThreadLocal.withInitial(SearchArena::new);
+
+	private final IMap m;
+	private final int width;
+	private final int height;
+	private final int goalX;
+	private final int goalY;
+	private final long maxTilesToSearch;
+	private final boolean eightWay;
+
+	private final SearchArena arena;
+
+	private long tilesSearched = 0;
+
+	private JumpPointSearch(Position goal, long maxTilesToSearch, IMap m, boolean eightWay) {
+		this.m = m;
+		this.width = m.getXSize();
+		this.height = m.getYSize();
+		this.goalX = goal.getX();
+		this.goalY = goal.getY();
+		this.maxTilesToSearch = maxTilesToSearch;
+		this.eightWay = eightWay;
+		this.arena = threadArena.get();
+	}
+
+	/** Find a 4-way path between two points on a map. */
+	public static List<Position> findPath(Position start, Position goal, IMap m) {
+		return findPath(start, goal, Long.MAX_VALUE, m);
+	}
+
+	/** Find a 4-way path between two points on a map, scanning at most 'maxTilesToSearch' tiles. */
+	public static List<Position> findPath(Position start, Position goal, long maxTilesToSearch, IMap m) {
+		return new JumpPointSearch(goal, maxTilesToSearch, m, false).search(start);
+	}
+
+	/** Find an 8-way path between two points on a map. */
+	public static List<Position> findPath8Way(Position start, Position goal, IMap m) {
+		return findPath8Way(start, goal, Long.MAX_VALUE, m);
+	}
+
+	/** Find an 8-way path between two points on a map, scanning at most 'maxTilesToSearch' tiles. */
+	public static List<Position> findPath8Way(Position start, Position goal, long maxTilesToSearch, IMap m) {
+		return new JumpPointSearch(goal, maxTilesToSearch, m, true).search(start);
+	}
+
+	private List<Position> search(Position start) {
+		if(!Position.isValid(start.getX(), start.getY(), m) || !Position.isValid(goalX, goalY, m)) {
+			return new ArrayList<>();
+		}
+
+		final SearchArena a = arena;
+		a.begin(width * height);
+
+		int startIndex = start.getX() + start.getY() * width;
+		int goalIndex = goalX + goalY * width;
+
+		a.open(startIndex, 0, heuristic(start.getX(), start.getY()), -1);
+
+		while(a.heapSize > 0 && tilesSearched < maxTilesToSearch) {
+			int current = a.pop();
+			if(a.isClosed(current)) {
+				// A stale heap entry, for a jump point that was since reached by a cheaper path.
+				continue;
+			}
+
+			if(current == goalIndex) {
+				return reconstructPath(current);
+			}
+
+			a.close(current);
+
+			expand(current);
+		}
+
+		// No path exists, or we hit the search limit
+		return new ArrayList<>();
+	}
+
+	/** Jump from the current jump point in each direction that a shortest path may continue in, given the direction it arrived from. */
+	private void expand(int current) {
+		int x = current % width;
+		int y = current / width;
+
+		int parent = arena.parent[current];
+		if(parent == -1) {
+			// The start: search every direction
+			jumpFrom(current, 1, 0);
+			jumpFrom(current, -1, 0);
+			jumpFrom(current, 0, 1);
+			jumpFrom(current, 0, -1);
+			if(eightWay) {
+				jumpFrom(current, 1, 1);
+				jumpFrom(current, 1, -1);
+				jumpFrom(current, -1, 1);
+				jumpFrom(current, -1, -1);
+			}
+			return;
+		}
+
+		int dx = Integer.signum(x - parent % width);
+		int dy = Integer.signum(y - parent / width);
+
+		if(!eightWay) {
+			if(dx != 0) {
+				jumpFrom(current, dx, 0);
+				// Forced neighbours: the tile behind us (on that side) is blocked
+				if(!isPassable(x - dx, y + 1)) { jumpFrom(current, 0, 1); }
+				if(!isPassable(x - dx, y - 1)) { jumpFrom(current, 0, -1); }
+			} else {
+				jumpFrom(current, 0, dy);
+				jumpFrom(current, 1, 0);
+				jumpFrom(current, -1, 0);
+			}
+
+		} else if(dx != 0 && dy != 0) {
+			jumpFrom(current, dx, 0);
+			jumpFrom(current, 0, dy);
+			jumpFrom(current, dx, dy);
+			if(!isPassable(x - dx, y)) { jumpFrom(current, -dx, dy); }
+			if(!isPassable(x, y - dy)) { jumpFrom(current, dx, -dy); }
+
+		} else if(dx != 0) {
+			jumpFrom(current, dx, 0);
+			if(!isPassable(x, y + 1)) { jumpFrom(current, dx, 1); }
+			if(!isPassable(x, y - 1)) { jumpFrom(current, dx, -1); }
+
+		} else {
+			jumpFrom(current, 0, dy);
+			if(!isPassable(x + 1, y)) { jumpFrom(current, 1, dy); }
+			if(!isPassable(x - 1, y)) { jumpFrom(current, -1, dy); }
+		}
+	}
+
+	private void jumpFrom(int current, int dx, int dy) {
+		int x = current % width;
+		int y = current / width;
+
+		int jumpPoint = eightWay ? jump8Way(x, y, dx, dy) : jump4Way(x, y, dx, dy);
+		if(jumpPoint == -1 || arena.isClosed(jumpPoint)) {
+			return;
+		}
+
+		int steps = Math.max(Math.abs(jumpPoint % width - x), Math.abs(jumpPoint / width - y));
+		int tentativeG = arena.g[current] + steps * (dx != 0 && dy != 0 ? DIAGONAL_COST : STRAIGHT_COST);
+
+		if(arena.isSeen(jumpPoint) && tentativeG >= arena.g[jumpPoint]) {
+			return; // This is not a better path.
+		}
+
+		arena.open(jumpPoint, tentativeG, tentativeG + heuristic(jumpPoint % width, jumpPoint / width), current);
+	}
+
+	/** Step from (x, y) in direction (dx, dy) until we reach a jump point (returned as a tile index), or a wall (returns -1). */
+	private int jump4Way(int x, int y, int dx, int dy) {
+		while(true) {
+			x += dx;
+			y += dy;
+
+			if(!isPassable(x, y)) {
+				return -1;
+			}
+			tilesSearched++;
+
+			if(x == goalX && y == goalY) {
+				return x + y * width;
+			}
+
+			if(dx != 0) {
+				if((isPassable(x, y + 1) && !isPassable(x - dx, y + 1)) || (isPassable(x, y - 1) && !isPassable(x - dx, y - 1))) {
+					return x + y * width;
+				}
+			} else if(jump4Way(x, y, 1, 0) != -1 || jump4Way(x, y, -1, 0) != -1) {
+				return x + y * width;
+			}
+		}
+	}
+
+	/** As jump4Way(...), but for 8-way movement. */
+	private int jump8Way(int x, int y, int dx, int dy) {
+		while(true) {
+			x += dx;
+			y += dy;
+
+			if(!isPassable(x, y)) {
+				return -1;
+			}
+			tilesSearched++;
+
+			if(x == goalX && y == goalY) {
+				return x + y * width;
+			}
+
+			if(dx != 0 && dy != 0) {
+				if((!isPassable(x - dx, y) && isPassable(x - dx, y + dy)) || (!isPassable(x, y - dy) && isPassable(x + dx, y - dy))) {
+					return x + y * width;
+				}
+				if(jump8Way(x, y, dx, 0) != -1 || jump8Way(x, y, 0, dy) != -1) {
+					return x + y * width;
+				}
+
+			} else if(dx != 0) {
+				if((!isPassable(x, y + 1) && isPassable(x + dx, y + 1)) || (!isPassable(x, y - 1) && isPassable(x + dx, y - 1))) {
+					return x + y * width;
+				}
+
+			} else {
+				if((!isPassable(x + 1, y) && isPassable(x + 1, y + dy)) || (!isPassable(x - 1, y) && isPassable(x - 1, y + dy))) {
+					return x + y * width;
+				}
+			}
+		}
+	}
+
+	private boolean isPassable(int x, int y) {
+		if(x < 0 || y < 0 || x >= width || y >= height) {
+			return false;
+		}
+		// Jumps read the same tiles many times, and IMap.getTile(...) is comparatively expensive, so each tile is only read once per search.
+		int index = x + y * width;
+		int known = arena.passable[index];
+		if(known == arena.generation) {
+			return true;
+		} else if(known == -arena.generation) {
+			return false;
+		}
+
+		// Here we assume that if we haven't seen a tile yet, that it is passable.
+		Tile t = m.getTile(x, y);
+		boolean result = t == null || t.isPresentlyPassable();
+		arena.passable[index] = result ? arena.generation : -arena.generation;
+		return result;
+	}
+
+	private int heuristic(int x, int y) {
+		int dx = Math.abs(x - goalX);
+		int dy = Math.abs(y - goalY);
+		if(eightWay) {
+			return STRAIGHT_COST * Math.max(dx, dy) + (DIAGONAL_COST - STRAIGHT_COST) * Math.min(dx, dy);
+		}
+		return STRAIGHT_COST * (dx + dy);
+	}
+
+	/** Walk back through the jump points, filling in the tiles between each pair. */
+	private List<Position> reconstructPath(int current) {
+		List<Position> reversed = new ArrayList<>();
+
+		int x = current % width;
+		int y = current / width;
+		reversed.add(new Position(x, y));
+
+		int parent = arena.parent[current];
+		while(parent != -1) {
+			int px = parent % width;
+			int py = parent / width;
+			int dx = Integer.signum(px - x);
+			int dy = Integer.signum(py - y);
+			while(x != px || y != py) {
+				x += dx;
+				y += dy;
+				reversed.add(new Position(x, y));
+			}
+			parent = arena.parent[parent];
+		}
+
+		List<Position> result = new ArrayList<>(reversed.size());
+		for(int i = reversed.size() - 1; i >= 0; i--) {
+			result.add(reversed.get(i));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * For internal server use only: a batch of messages that are sent to the client as a single WebSocket message, so that
+ * all the messages that the server queues for a client during a game tick (the frame update, any re-sent action responses,
+ * an interrupt, etc) are compressed together and written with a single socket write.
+ *
+ * The envelope is the (uncompressed) content of a binary message: ENVELOPE_MARKER, followed by each message as an
+ * unsigned varint length and the message bytes. A message is either UTF-8 JSON or a binary frame update (see
+ * BinaryFrameUpdateCodec); neither may begin with ENVELOPE_MARKER. The envelope is only sent to clients that have indicated
+ * that they support it (see getMessageBatching() of JsonClientConnect and JsonClientConnectResponse).
+ */
+public final class MessageEnvelope {
+
+	private static final byte ENVELOPE_MARKER = 2;
+
+	private MessageEnvelope() {
+	}
+
+	public static boolean isEnvelope(byte[] message) {
+		return message.length > 0 && message[0] == ENVELOPE_MARKER;
+	}
+
+	public static byte[] encode(List<byte[]> messages) {
+		int size = 1;
+		for(byte[] msg : messages) {
+			size += 5 + msg.length;
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+		out.write(ENVELOPE_MARKER);
+
+		for(byte[] msg : messages) {
+			writeVarint(out, msg.length);
+			out.write(msg, 0, msg.length);
+		}
+
+		return out.toByteArray();
+	}
+
+	/** Split an envelope into its messages, in the order in which they were encoded. */
+	public static List<byte[]> decode(byte[] envelope) {
+		if(!isEnvelope(envelope)) {
+			throw new IllegalArgumentException("Not a message envelope.");
+		}
+
+		List<byte[]> result = new ArrayList<>();
+
+		int pos = 1;
+		while(pos < envelope.length) {
+			int length = 0;
+			int shift = 0;
+			while(true) {
+				if(pos >= envelope.length || shift > 28) {
+					throw new IllegalArgumentException("Truncated message envelope.");
+				}
+				byte b = envelope[pos++];
+				length |= (b & 0x7F) << shift;
+				if((b & 0x80) == 0) { break; }
+				shift += 7;
+			}
+
+			if(length < 0 || pos + length > envelope.length) {
+				throw new IllegalArgumentException("Truncated message envelope.");
+			}
+
+			result.add(Arrays.copyOfRange(envelope, pos, pos + length));
+			pos += length;
+		}
+
+		return result;
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		while((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+}
@@ -0,0 +1,642 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.roguecloud.Position;
+import com.roguecloud.map.IMap;
+import com.roguecloud.map.Tile;
+
+/**
+ * This class is principally for server-side use only.
+ *
+ * A precomputed view of which parts of the map can be reached from which other parts, built once from the generated world
+ * map (see GameEngine), and then kept up to date as the passability of individual tiles changes. It contains:
+ *
+ * - The connected component of each tile: two tiles are reachable from each other (4-way) if and only if they have the same
+ *   component, so isReachable(...) is O(1). This allows an AI to discard an unreachable goal (for example, a tile inside
+ *   a walled building) without a full A* search of everything that is reachable from the start.
+ *
+ * - A coarse region graph, in the style of HPA*: the map is divided into square clusters, and a node is placed at each entrance
+ *   between neighbouring clusters. The graph contains the (in-cluster) distance between each pair of nodes in a cluster, so
+ *   findPath(...) may search the graph of clusters rather than the individual tiles, and then only needs to refine the path
+ *   one cluster at a time. The resulting path is near-optimal, rather than optimal.
+ *
+ * As with AStarSearch, tiles that are null are assumed to be passable.
+ *
+ * Instances are immutable, and may be shared between threads: updateTiles(...) returns a new graph (sharing the unchanged
+ * clusters with this one) if the passability of any tile has changed. When a tile becomes passable, the components on each side
+ * of it are merged (relabelling the smaller); when a tile becomes impassable, the component that contained it is relabelled
+ * from each of the tile's neighbours, in case it has been split in two. Only the clusters containing (or adjacent to) a
+ * changed tile are rebuilt.
+ */
+public final class NavigationGraph {
+
+	/** The width and height of each cluster of the region graph, in tiles */
+	private static final int CLUSTER_SIZE = 16;
+
+	/** As in HPA*, an entrance that is wider than this has a node at each end, rather than one in the middle. */
+	private static final int MAX_SINGLE_NODE_ENTRANCE = 6;
+
+	private static final int[] DX = new int[] { -1, 1, 0, 0 };
+	private static final int[] DY = new int[] { 0, 0, -1, 1 };
+
+	private final int width;
+	private final int height;
+
+	private final int clustersX;
+	private final int clustersY;
+
+	private boolean[] passable;
+
+	/** The component of each tile (x + y * width), or 0 if the tile is impassable */
+	private int[] component;
+
+	/** The number of tiles in each component, indexed by component */
+	private int[] componentSize;
+
+	private int nextComponent = 1;
+
+	/** Indexed by cx + cy * clustersX */
+	private Cluster[] clusters;
+
+	/** The index of the first node of each cluster in the node arrays below (the nodes of a cluster are contiguous)  */
+	private int[] clusterNodeOffset;
+
+	/** The tile of each node */
+	private int[] nodeTile;
+
+	/** The cluster of each node */
+	private int[] nodeCluster;
+
+	/** The node (in the neighbouring cluster) that each node is connected to by an entrance */
+	private int[] nodePartner;
+
+	private NavigationGraph(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.clustersX = (width + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+		this.clustersY = (height + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+	}
+
+	/** Build the components and the region graph of the given map. */
+	public static NavigationGraph build(IMap m) {
+		NavigationGraph g = new NavigationGraph(m.getXSize(), m.getYSize());
+
+		int tiles = g.width * g.height;
+		g.passable = new boolean[tiles];
+		g.component = new int[tiles];
+		g.componentSize = new int[64];
+
+		for(int y = 0; y < g.height; y++) {
+			for(int x = 0; x < g.width; x++) {
+				g.passable[x + y * g.width] = isPassable(m.getTile(x, y));
+			}
+		}
+
+		int[] queue = new int[tiles];
+		for(int index = 0; index < tiles; index++) {
+			if(g.passable[index] && g.component[index] == 0) {
+				int label = g.newComponent();
+				g.componentSize[label] = g.relabel(index, 0, label, queue);
+			}
+		}
+
+		g.clusters = new Cluster[g.clustersX * g.clustersY];
+		for(int c = 0; c < g.clusters.length; c++) {
+			g.clusters[c] = g.buildCluster(c % g.clustersX, c / g.clustersX);
+		}
+		g.indexNodes();
+
+		return g;
+	}
+
+	/**
+	 * Return a graph that reflects the current passability of the given tiles of 'm' (for example, the tiles that changed
+	 * during a game tick); if the passability of none of them has changed, this graph is returned.
+	 */
+	public NavigationGraph updateTiles(IMap m, Collection<Position> changedTiles) {
+
+		NavigationGraph result = null;
+		boolean[] dirtyClusters = null;
+		int[] queue = null;
+
+		for(Position p : changedTiles) {
+			if(!Position.isValid(p.getX(), p.getY(), m)) { continue; }
+
+			int index = p.getX() + p.getY() * width;
+			boolean newPassable = isPassable(m.getTile(p));
+			if((result != null ? result.passable[index] : passable[index]) == newPassable) {
+				continue;
+			}
+
+			if(result == null) {
+				result = copyForUpdate();
+				dirtyClusters = new boolean[clusters.length];
+				queue = new int[width * height];
+			}
+
+			if(newPassable) {
+				result.addPassableTile(index, queue);
+			} else {
+				result.removePassableTile(index, queue);
+			}
+
+			// The tile's own cluster and, if the tile is on the edge of its cluster, the cluster(s) on the other side of that edge
+			dirtyClusters[clusterOf(p.getX(), p.getY())] = true;
+			for(int d = 0; d < DX.length; d++) {
+				int nx = p.getX() + DX[d];
+				int ny = p.getY() + DY[d];
+				if(nx >= 0 && ny >= 0 && nx < width && ny < height) {
+					dirtyClusters[clusterOf(nx, ny)] = true;
+				}
+			}
+		}
+
+		if(result == null) {
+			return this;
+		}
+
+		for(int c = 0; c < dirtyClusters.length; c++) {
+			if(dirtyClusters[c]) {
+				result.clusters[c] = result.buildCluster(c % clustersX, c / clustersX);
+			}
+		}
+		result.indexNodes();
+
+		return result;
+	}
+
+	/** Whether there is a (4-way) path between the two positions; this does not consider creatures that are in the way. */
+	public boolean isReachable(Position start, Position goal) {
+		if(!isValid(start) || !isValid(goal)) {
+			return false;
+		}
+
+		int startComponent = component[start.getX() + start.getY() * width];
+		return startComponent != 0 && startComponent == component[goal.getX() + goal.getY() * width];
+	}
+
+	/** The connected component of the position: positions are reachable from each other if they have the same (non-zero) component. */
+	public int getComponent(Position p) {
+		return isValid(p) ? component[p.getX() + p.getY() * width] : 0;
+	}
+
+	/** The number of passable tiles that are reachable from the given position (including itself), or 0 if it is impassable. */
+	public int getComponentSize(Position p) {
+		int c = getComponent(p);
+		return c != 0 ? componentSize[c] : 0;
+	}
+
+	/**
+	 * Find a (4-way) path between two points, in the same form as AStarSearch.findPath(...): the path is first found on the
+	 * region graph, then each step of that path is refined into tiles (using 'm'). The path is near-optimal, rather than
+	 * optimal. If the goal is unreachable, this returns an empty list immediately.
+	 */
+	public List<Position> findPath(Position start, Position goal, IMap m) {
+
+		if(!isReachable(start, goal)) {
+			return new ArrayList<>();
+		}
+
+		int startCluster = clusterOf(start.getX(), start.getY());
+		int goalCluster = clusterOf(goal.getX(), goal.getY());
+
+		if(startCluster == goalCluster || start.manhattanDistanceBetween(goal) <= CLUSTER_SIZE) {
+			// Nearby positions are cheaper to search for directly
+			return IndexedAStarSearch.findPath(start, goal, Long.MAX_VALUE, m);
+		}
+
+		List<Position> waypoints = findAbstractPath(start, goal, startCluster, goalCluster);
+		if(waypoints == null) {
+			// Only possible if the positions are connected by a path that leaves and re-enters a cluster without using an entrance
+			return IndexedAStarSearch.findPath(start, goal, Long.MAX_VALUE, m);
+		}
+
+		List<Position> result = new ArrayList<>();
+		result.add(start);
+
+		Position last = start;
+		for(Position next : waypoints) {
+			if(next.equals(last)) {
+				continue;
+			}
+
+			if(next.manhattanDistanceBetween(last) == 1) {
+				result.add(next);
+			} else {
+				List<Position> segment = IndexedAStarSearch.findPath(last, next, Long.MAX_VALUE, m);
+				if(segment.size() == 0) {
+					// The map has changed since this graph was built
+					return segment;
+				}
+				result.addAll(segment.subList(1, segment.size()));
+			}
+			last = next;
+		}
+
+		return result;
+	}
+
+	/** Search the region graph for a path from start to goal; returns the positions of the nodes on the path (ending with the goal), or null if there is none. */
+	private List<Position> findAbstractPath(Position start, Position goal, int startCluster, int goalCluster) {
+
+		int nodes = nodeTile.length;
+		final int goalNode = nodes; // The goal is a virtual node, after all the real nodes
+
+		int[] startCosts = clusterDistancesFrom(start.getX() + start.getY() * width, startCluster);
+		int[] goalCosts = clusterDistancesFrom(goal.getX() + goal.getY() * width, goalCluster);
+
+		int[] g = new int[nodes + 1];
+		int[] parent = new int[nodes + 1];
+		boolean[] closed = new boolean[nodes + 1];
+		Arrays.fill(g, Integer.MAX_VALUE);
+
+		PriorityQueue<Long> open = new PriorityQueue<>();
+
+		int startOffset = clusterNodeOffset[startCluster];
+		for(int k = 0; k < startCosts.length; k++) {
+			if(startCosts[k] >= 0) {
+				int node = startOffset + k;
+				g[node] = startCosts[k];
+				parent[node] = -1;
+				open.add(key(g[node] + heuristic(nodeTile[node], goal), node));
+			}
+		}
+
+		int goalOffset = clusterNodeOffset[goalCluster];
+
+		while(!open.isEmpty()) {
+			int current = (int)(open.poll() & 0xFFFFFFFFL);
+			if(closed[current]) {
+				continue;
+			}
+			closed[current] = true;
+
+			if(current == goalNode) {
+				List<Position> result = new ArrayList<>();
+				result.add(goal);
+				for(int node = parent[goalNode]; node != -1; node = parent[node]) {
+					result.add(new Position(nodeTile[node] % width, nodeTile[node] / width));
+				}
+				Collections.reverse(result);
+				return result;
+			}
+
+			int c = nodeCluster[current];
+			int offset = clusterNodeOffset[c];
+			int[] distances = clusters[c].distances[current - offset];
+
+			// The other nodes of the cluster
+			for(int k = 0; k < distances.length; k++) {
+				if(distances[k] >= 0 && offset + k != current) {
+					relax(current, offset + k, g[current] + distances[k], goal, g, parent, closed, open);
+				}
+			}
+
+			// The node on the other side of the entrance
+			if(nodePartner[current] != -1) {
+				relax(current, nodePartner[current], g[current] + 1, goal, g, parent, closed, open);
+			}
+
+			// The goal itself
+			if(c == goalCluster && goalCosts[current - goalOffset] >= 0) {
+				relax(current, goalNode, g[current] + goalCosts[current - goalOffset], goal, g, parent, closed, open);
+			}
+		}
+
+		return null;
+	}
+
+	private void relax(int from, int to, int newG, Position goal, int[] g, int[] parent, boolean[] closed, PriorityQueue<Long> open) {
+		if(closed[to] || newG >= g[to]) {
+			return;
+		}
+		g[to] = newG;
+		parent[to] = from;
+		open.add(key(newG + (to < nodeTile.length ? heuristic(nodeTile[to], goal) : 0), to));
+	}
+
+	private static long key(int f, int node) {
+		return ((long)f << 32) | node;
+	}
+
+	private int heuristic(int tile, Position goal) {
+		return Math.abs(tile % width - goal.getX()) + Math.abs(tile / width - goal.getY());
+	}
+
+	/** The in-cluster distance from the given tile to each node of the cluster (-1 if the node can not be reached without leaving the cluster) */
+	private int[] clusterDistancesFrom(int fromTile, int c) {
+		Cluster cluster = clusters[c];
+		int cx = c % clustersX;
+		int cy = c / clustersX;
+
+		int[] tileDistances = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+		clusterBfs(fromTile, cx * CLUSTER_SIZE, cy * CLUSTER_SIZE, tileDistances, new int[CLUSTER_SIZE * CLUSTER_SIZE]);
+
+		int[] result = new int[cluster.nodes.length];
+		for(int k = 0; k < result.length; k++) {
+			result[k] = tileDistances[localIndex(cluster.nodes[k], cx, cy)];
+		}
+		return result;
+	}
+
+	private int clusterOf(int x, int y) {
+		return (x / CLUSTER_SIZE) + (y / CLUSTER_SIZE) * clustersX;
+	}
+
+	private int localIndex(int tile, int cx, int cy) {
+		return (tile % width - cx * CLUSTER_SIZE) + (tile / width - cy * CLUSTER_SIZE) * CLUSTER_SIZE;
+	}
+
+	private boolean isValid(Position p) {
+		return p.getX() >= 0 && p.getY() >= 0 && p.getX() < width && p.getY() < height;
+	}
+
+	private static boolean isPassable(Tile t) {
+		// As with AStarSearch, we assume that if we haven't seen a tile yet, that it is passable.
+		return t == null || t.isPresentlyPassable();
+	}
+
+	// Components ------------------------------------------------------------------------------------
+
+	private NavigationGraph copyForUpdate() {
+		NavigationGraph g = new NavigationGraph(width, height);
+		g.passable = passable.clone();
+		g.component = component.clone();
+		g.componentSize = componentSize.clone();
+		g.nextComponent = nextComponent;
+		g.clusters = clusters.clone();
+		return g;
+	}
+
+	private int newComponent() {
+		int label = nextComponent++;
+		if(label >= componentSize.length) {
+			componentSize = Arrays.copyOf(componentSize, componentSize.length * 2);
+		}
+		componentSize[label] = 0;
+		return label;
+	}
+
+	private void addPassableTile(int index, int[] queue) {
+		passable[index] = true;
+
+		// The largest neighbouring component absorbs the others
+		int largest = 0;
+		for(int d = 0; d < DX.length; d++) {
+			int neighbour = neighbourOf(index, d);
+			if(neighbour != -1 && component[neighbour] != 0 && componentSize[component[neighbour]] > componentSize[largest]) {
+				largest = component[neighbour];
+			}
+		}
+
+		if(largest == 0) {
+			largest = newComponent();
+		}
+
+		component[index] = largest;
+		componentSize[largest]++;
+
+		for(int d = 0; d < DX.length; d++) {
+			int neighbour = neighbourOf(index, d);
+			if(neighbour != -1 && component[neighbour] != 0 && component[neighbour] != largest) {
+				int other = component[neighbour];
+				componentSize[largest] += relabel(neighbour, other, largest, queue);
+				componentSize[other] = 0;
+			}
+		}
+	}
+
+	private void removePassableTile(int index, int[] queue) {
+		int old = component[index];
+
+		passable[index] = false;
+		component[index] = 0;
+		componentSize[old] = 0;
+
+		// Each part of the old component (if it was split) contains at least one of the tile's neighbours
+		for(int d = 0; d < DX.length; d++) {
+			int neighbour = neighbourOf(index, d);
+			if(neighbour != -1 && component[neighbour] == old) {
+				int label = newComponent();
+				componentSize[label] = relabel(neighbour, old, label, queue);
+			}
+		}
+	}
+
+	/** Flood fill the passable tiles that are labelled 'from' (and are connected to 'start') with 'to'; returns the number of tiles relabelled. */
+	private int relabel(int start, int from, int to, int[] queue) {
+		int head = 0;
+		int tail = 0;
+
+		component[start] = to;
+		queue[tail++] = start;
+
+		while(head < tail) {
+			int current = queue[head++];
+			for(int d = 0; d < DX.length; d++) {
+				int neighbour = neighbourOf(current, d);
+				if(neighbour != -1 && passable[neighbour] && component[neighbour] == from) {
+					component[neighbour] = to;
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+
+		return tail;
+	}
+
+	private int neighbourOf(int index, int direction) {
+		int nx = index % width + DX[direction];
+		int ny = index / width + DY[direction];
+		if(nx < 0 || ny < 0 || nx >= width || ny >= height) {
+			return -1;
+		}
+		return nx + ny * width;
+	}
+
+	// Region graph ---------------------------------------------------------------------------------
+
+	private Cluster buildCluster(int cx, int cy) {
+		int x0 = cx * CLUSTER_SIZE;
+		int y0 = cy * CLUSTER_SIZE;
+		int x1 = Math.min(width, x0 + CLUSTER_SIZE) - 1;
+		int y1 = Math.min(height, y0 + CLUSTER_SIZE) - 1;
+
+		List<int[]> entrances = new ArrayList<>();
+
+		if(cx > 0) {
+			addEntrances(x0, y0, 0, 1, y1 - y0 + 1, -1, 0, entrances); // left
+		}
+		if(x1 < width - 1) {
+			addEntrances(x1, y0, 0, 1, y1 - y0 + 1, 1, 0, entrances); // right
+		}
+		if(cy > 0) {
+			addEntrances(x0, y0, 1, 0, x1 - x0 + 1, 0, -1, entrances); // top
+		}
+		if(y1 < height - 1) {
+			addEntrances(x0, y1, 1, 0, x1 - x0 + 1, 0, 1, entrances); // bottom
+		}
+
+		int[] nodes = new int[entrances.size()];
+		int[] partners = new int[entrances.size()];
+		for(int k = 0; k < nodes.length; k++) {
+			nodes[k] = entrances.get(k)[0];
+			partners[k] = entrances.get(k)[1];
+		}
+
+		int[][] distances = new int[nodes.length][];
+		int[] tileDistances = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+		int[] queue = new int[CLUSTER_SIZE * CLUSTER_SIZE];
+		for(int k = 0; k < nodes.length; k++) {
+			clusterBfs(nodes[k], x0, y0, tileDistances, queue);
+			distances[k] = new int[nodes.length];
+			for(int k2 = 0; k2 < nodes.length; k2++) {
+				distances[k][k2] = tileDistances[localIndex(nodes[k2], cx, cy)];
+			}
+		}
+
+		return new Cluster(nodes, partners, distances);
+	}
+
+	/**
+	 * Scan 'length' tiles along one edge of a cluster, starting at (x, y) and moving by (stepX, stepY); an entrance is a run of
+	 * tiles that are passable on both sides of the edge, where the other side is offset by (outX, outY).
+	 **/
+	private void addEntrances(int x, int y, int stepX, int stepY, int length, int outX, int outY, List<int[]> entrances) {
+		int runStart = -1;
+		for(int i = 0; i <= length; i++) {
+			boolean open = false;
+			if(i < length) {
+				int inside = (x + stepX * i) + (y + stepY * i) * width;
+				int outside = (x + stepX * i + outX) + (y + stepY * i + outY) * width;
+				open = passable[inside] && passable[outside];
+			}
+
+			if(open && runStart == -1) {
+				runStart = i;
+			} else if(!open && runStart != -1) {
+				int runEnd = i - 1;
+				if(runEnd - runStart + 1 > MAX_SINGLE_NODE_ENTRANCE) {
+					addEntrance(x, y, stepX, stepY, runStart, outX, outY, entrances);
+					addEntrance(x, y, stepX, stepY, runEnd, outX, outY, entrances);
+				} else {
+					addEntrance(x, y, stepX, stepY, (runStart + runEnd) / 2, outX, outY, entrances);
+				}
+				runStart = -1;
+			}
+		}
+	}
+
+	private void addEntrance(int x, int y, int stepX, int stepY, int i, int outX, int outY, List<int[]> entrances) {
+		int inside = (x + stepX * i) + (y + stepY * i) * width;
+		int outside = (x + stepX * i + outX) + (y + stepY * i + outY) * width;
+		entrances.add(new int[] { inside, outside });
+	}
+
+	/** Breadth-first search of the passable tiles of the cluster with top left (x0, y0); 'result' receives the distance to each tile of the cluster (or -1). */
+	private void clusterBfs(int fromTile, int x0, int y0, int[] result, int[] queue) {
+		int x1 = Math.min(width, x0 + CLUSTER_SIZE);
+		int y1 = Math.min(height, y0 + CLUSTER_SIZE);
+
+		Arrays.fill(result, -1);
+
+		int head = 0;
+		int tail = 0;
+
+		result[(fromTile % width - x0) + (fromTile / width - y0) * CLUSTER_SIZE] = 0;
+		queue[tail++] = fromTile;
+
+		while(head < tail) {
+			int current = queue[head++];
+			int currentDistance = result[(current % width - x0) + (current / width - y0) * CLUSTER_SIZE];
+
+			for(int d = 0; d < DX.length; d++) {
+				int nx = current % width + DX[d];
+				int ny = current / width + DY[d];
+				if(nx < x0 || ny < y0 || nx >= x1 || ny >= y1) {
+					continue;
+				}
+
+				int local = (nx - x0) + (ny - y0) * CLUSTER_SIZE;
+				int neighbour = nx + ny * width;
+				if(result[local] == -1 && passable[neighbour]) {
+					result[local] = currentDistance + 1;
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+	}
+
+	/** Assign each node of each cluster an index, and connect the nodes on each side of each entrance. */
+	private void indexNodes() {
+		clusterNodeOffset = new int[clusters.length + 1];
+		for(int c = 0; c < clusters.length; c++) {
+			clusterNodeOffset[c + 1] = clusterNodeOffset[c] + clusters[c].nodes.length;
+		}
+
+		int nodes = clusterNodeOffset[clusters.length];
+		nodeTile = new int[nodes];
+		nodeCluster = new int[nodes];
+		nodePartner = new int[nodes];
+
+		for(int c = 0; c < clusters.length; c++) {
+			Cluster cluster = clusters[c];
+			for(int k = 0; k < cluster.nodes.length; k++) {
+				int node = clusterNodeOffset[c] + k;
+				nodeTile[node] = cluster.nodes[k];
+				nodeCluster[node] = c;
+				nodePartner[node] = -1;
+
+				int partnerTile = cluster.partners[k];
+				int partnerCluster = clusterOf(partnerTile % width, partnerTile / width);
+				Cluster other = clusters[partnerCluster];
+				for(int k2 = 0; k2 < other.nodes.length; k2++) {
+					if(other.nodes[k2] == partnerTile && other.partners[k2] == cluster.nodes[k]) {
+						nodePartner[node] = clusterNodeOffset[partnerCluster] + k2;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/** The entrance nodes of a single cluster, and the in-cluster distance between each pair of them. Immutable. */
+	private static final class Cluster {
+		/** The tile of each node */
+		final int[] nodes;
+
+		/** The tile (in the neighbouring cluster) on the other side of each node's entrance */
+		final int[] partners;
+
+		/** distances[a][b] is the length of the shortest path from node a to node b that stays within the cluster, or -1 if there is none */
+		final int[][] distances;
+
+		Cluster(int[] nodes, int[] partners, int[][] distances) {
+			this.nodes = nodes;
+			this.partners = partners;
+			this.distances = distances;
+		}
+	}
+}
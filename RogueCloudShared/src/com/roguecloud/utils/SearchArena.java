@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.utils;
+
+import java.util.Arrays;
+
+/**
+ * For internal use only: the reusable per-search state of IndexedAStarSearch and JumpPointSearch, indexed by tile (x + y * width).
+ *
+ * g/parent are only valid for a tile if seen[tile] == generation, and a tile is closed if closed[tile] == generation, so
+ * begin(...) does not need to clear the arrays between searches. The open set is a binary heap ordered by (f-score ascending,
+ * g-score descending), packed into a long.
+ *
+ * Instances are not thread safe.
+ */
+final class SearchArena {
+	int generation = 0;
+
+	int[] seen = new int[0];
+	int[] closed = new int[0];
+	int[] g = new int[0];
+	int[] parent = new int[0];
+
+	/** The passability of each tile, as looked up from the map during this search: generation if passable, -generation if not (see JumpPointSearch) */
+	int[] passable = new int[0];
+
+	long[] heapKeys = new long[256];
+	int[] heapNodes = new int[256];
+	int heapSize = 0;
+
+	void begin(int tiles) {
+		if(seen.length < tiles) {
+			seen = new int[tiles];
+			closed = new int[tiles];
+			g = new int[tiles];
+			parent = new int[tiles];
+			passable = new int[tiles];
+			generation = 0;
+		}
+
+		generation++;
+		if(generation == Integer.MAX_VALUE) {
+			Arrays.fill(seen, 0);
+			Arrays.fill(closed, 0);
+			Arrays.fill(passable, 0);
+			generation = 1;
+		}
+
+		heapSize = 0;
+	}
+
+	boolean isSeen(int index) {
+		return seen[index] == generation;
+	}
+
+	boolean isClosed(int index) {
+		return closed[index] == generation;
+	}
+
+	void close(int index) {
+		closed[index] = generation;
+	}
+
+	void open(int index, int gScore, int fScore, int parentIndex) {
+		seen[index] = generation;
+		g[index] = gScore;
+		parent[index] = parentIndex;
+		push(((long)fScore << 32) | (0xFFFFFFFFL - gScore), index);
+	}
+
+	private void push(long key, int node) {
+		if(heapSize == heapKeys.length) {
+			heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+			heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+		}
+
+		int pos = heapSize++;
+		while(pos > 0) {
+			int parentPos = (pos - 1) >>> 1;
+			if(heapKeys[parentPos] <= key) { break; }
+			heapKeys[pos] = heapKeys[parentPos];
+			heapNodes[pos] = heapNodes[parentPos];
+			pos = parentPos;
+		}
+		heapKeys[pos] = key;
+		heapNodes[pos] = node;
+	}
+
+	int pop() {
+		int result = heapNodes[0];
+
+		heapSize--;
+		long key = heapKeys[heapSize];
+		int node = heapNodes[heapSize];
+
+		int pos = 0;
+		int half = heapSize >>> 1;
+		while(pos < half) {
+			int child = 2 * pos + 1;
+			if(child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+				child++;
+			}
+			if(key <= heapKeys[child]) { break; }
+			heapKeys[pos] = heapKeys[child];
+			heapNodes[pos] = heapNodes[child];
+			pos = child;
+		}
+		heapKeys[pos] = key;
+		heapNodes[pos] = node;
+
+		return result;
+	}
+}
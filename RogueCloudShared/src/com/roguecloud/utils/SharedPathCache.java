@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.roguecloud.Position;
+import com.roguecloud.map.IMap;
+import com.roguecloud.map.Tile;
+
+/**
+ * This class is principally for server-side use only.
+ *
+ * Path results that are shared by all the monsters that are searching toward the same goal (for example, a dozen monsters
+ * that are chasing the same player) on the same map snapshot. One instance is created per snapshot (that is, per game tick,
+ * see GameEngine), and is passed to monsters in their WorldState.
+ *
+ * The first request for a goal is not answered (findPath(...) returns null), and the caller should search for the path itself,
+ * as most goals are only requested by a single monster. Once a goal has been requested HOT_GOAL_REQUESTS times, a flow field
+ * is built for it: a breadth-first search outward from the goal (up to MAX_FIELD_DISTANCE steps), giving the distance to the
+ * goal from every tile nearby. Every later request for that goal is answered by walking downhill on the flow field from the
+ * start, without any search.
+ *
+ * Paths are 4-way, and in the same form as AStarSearch.findPath(...). As with AStarSearch, tiles that are null are assumed to
+ * be passable.
+ *
+ * Instances are thread safe: each flow field is built once (by the first thread that needs it), then shared read-only.
+ */
+public final class SharedPathCache {
+
+	/** The number of requests for a goal, in a single snapshot, before a flow field is built for it */
+	private static final int HOT_GOAL_REQUESTS = 2;
+
+	/** Flow fields extend this many steps from the goal; requests from further away are not answered. */
+	private static final int MAX_FIELD_DISTANCE = 48;
+
+	private static final int[] DX = new int[] { -1, 1, 0, 0 };
+	private static final int[] DY = new int[] { 0, 0, -1, 1 };
+
+	private final IMap map;
+
+	private final ConcurrentHashMap<Position, GoalEntry> goals = new ConcurrentHashMap<>();
+
+	public SharedPathCache(IMap map) {
+		this.map = map;
+	}
+
+	/**
+	 * Returns a path from start to goal, in the same form as AStarSearch.findPath(...) (an empty list if there is no path),
+	 * or null if the goal is not (yet) hot, or the start is too far from the goal: in this case the caller should search for
+	 * the path itself.
+	 */
+	public List<Position> findPath(Position start, Position goal) {
+		if(!start.isValid(map) || !goal.isValid(map)) {
+			return null;
+		}
+
+		GoalEntry entry = goals.computeIfAbsent(goal, g -> new GoalEntry());
+		if(entry.requests.incrementAndGet() < HOT_GOAL_REQUESTS) {
+			return null;
+		}
+
+		return entry.getOrBuildField(goal).pathFrom(start);
+	}
+
+	/** The requests for a single goal, and the flow field (once the goal is hot) */
+	private final class GoalEntry {
+		private final AtomicInteger requests = new AtomicInteger();
+
+		private final Object lock = new Object();
+
+		private FlowField field_synch_lock;
+
+		FlowField getOrBuildField(Position goal) {
+			synchronized(lock) {
+				if(field_synch_lock == null) {
+					field_synch_lock = new FlowField(goal);
+				}
+				return field_synch_lock;
+			}
+		}
+	}
+
+	/** The distance to the goal from each tile of a square window around the goal (-1 if the tile can not reach the goal within the window). Immutable once built. */
+	private final class FlowField {
+		private final int x0;
+		private final int y0;
+		private final int size;
+
+		private final int[] distance;
+
+		/** Whether the search was stopped by MAX_FIELD_DISTANCE (rather than by running out of reachable tiles) */
+		private boolean truncated = false;
+
+		FlowField(Position goal) {
+			this.x0 = goal.getX() - MAX_FIELD_DISTANCE;
+			this.y0 = goal.getY() - MAX_FIELD_DISTANCE;
+			this.size = MAX_FIELD_DISTANCE * 2 + 1;
+
+			distance = new int[size * size];
+			Arrays.fill(distance, -1);
+
+			int[] queue = new int[size * size];
+			int head = 0;
+			int tail = 0;
+
+			if(!isPassable(goal.getX(), goal.getY())) {
+				// As with AStarSearch, there is no path to an impassable goal.
+				return;
+			}
+
+			int goalLocal = localIndex(goal.getX(), goal.getY());
+			distance[goalLocal] = 0;
+			queue[tail++] = goalLocal;
+
+			while(head < tail) {
+				int current = queue[head++];
+				int currentDistance = distance[current];
+				if(currentDistance == MAX_FIELD_DISTANCE) {
+					truncated = true;
+					continue;
+				}
+
+				int cx = current % size + x0;
+				int cy = current / size + y0;
+
+				for(int d = 0; d < DX.length; d++) {
+					int nx = cx + DX[d];
+					int ny = cy + DY[d];
+					if(nx < 0 || ny < 0 || nx >= map.getXSize() || ny >= map.getYSize()) {
+						continue;
+					}
+
+					int local = localIndex(nx, ny);
+					if(distance[local] != -1) {
+						continue;
+					}
+
+					if(!isPassable(nx, ny)) {
+						continue;
+					}
+
+					distance[local] = currentDistance + 1;
+					queue[tail++] = local;
+				}
+			}
+		}
+
+		List<Position> pathFrom(Position start) {
+			int x = start.getX();
+			int y = start.getY();
+
+			if(x < x0 || y < y0 || x >= x0 + size || y >= y0 + size || distance[localIndex(x, y)] == -1) {
+				// If the search was not truncated, then every (passable) tile that can reach the goal is in the field.
+				return truncated || !isPassable(x, y) ? null : new ArrayList<>();
+			}
+
+			int remaining = distance[localIndex(x, y)];
+
+			List<Position> result = new ArrayList<>(remaining + 1);
+			result.add(start);
+
+			// Each step moves to a neighbour that is one step closer to the goal
+			while(remaining > 0) {
+				for(int d = 0; d < DX.length; d++) {
+					int nx = x + DX[d];
+					int ny = y + DY[d];
+					if(nx >= x0 && ny >= y0 && nx < x0 + size && ny < y0 + size && distance[localIndex(nx, ny)] == remaining - 1) {
+						x = nx;
+						y = ny;
+						break;
+					}
+				}
+				remaining--;
+				result.add(new Position(x, y));
+			}
+
+			return result;
+		}
+
+		private boolean isPassable(int x, int y) {
+			// Here we assume that if we haven't seen a tile yet, that it is passable.
+			Tile t = map.getTile(x, y);
+			return t == null || t.isPresentlyPassable();
+		}
+
+		private int localIndex(int x, int y) {
+			return (x - x0) + (y - y0) * size;
+		}
+	}
+}
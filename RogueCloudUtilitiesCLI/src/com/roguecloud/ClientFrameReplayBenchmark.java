@@ -0,0 +1,469 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package com.roguecloud;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.websocket.Session;
+
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.roguecloud.client.ClientState;
+import com.roguecloud.client.IEventLog;
+import com.roguecloud.client.ISessionWrapper;
+import com.roguecloud.client.IWebsocketFactory;
+import com.roguecloud.client.RemoteClient;
+import com.roguecloud.client.SelfState;
+import com.roguecloud.client.WorldState;
+import com.roguecloud.creatures.IMutableCreature;
+import com.roguecloud.creatures.Monster;
+import com.roguecloud.creatures.PlayerCreature;
+import com.roguecloud.items.ArmourSet;
+import com.roguecloud.items.Weapon;
+import com.roguecloud.items.Weapon.WeaponType;
+import com.roguecloud.json.BinaryFrameUpdateCodec;
+import com.roguecloud.json.JsonFrameUpdate;
+import com.roguecloud.json.JsonSelfState;
+import com.roguecloud.json.JsonVisibleCreature;
+import com.roguecloud.json.JsonWorldState;
+import com.roguecloud.json.JsonWorldState.JsonViewFrame;
+import com.roguecloud.map.ITerrain;
+import com.roguecloud.map.ImmutableImpassableTerrain;
+import com.roguecloud.map.ImmutablePassableTerrain;
+import com.roguecloud.map.RCChunkedMap;
+import com.roguecloud.map.RCCloneMap;
+import com.roguecloud.map.Tile;
+import com.roguecloud.map.TileSerializationCache;
+import com.roguecloud.map.TileType;
+
+/**
+ * Simple benchmark of the agent API's application of frame updates (ClientWorldState.receiveFrameUpdate(...)), replaying a
+ * recorded stream of binary frame updates (as BinaryFrameUpdateCodec sends them) of a player exploring a world that is 
+ * MAP_SCALE times the default width and height, among wandering monsters.
+ * 
+ * Pass a file name as the first argument: if the file exists, the frame stream is replayed from it, otherwise the stream
+ * is recorded (by WorldStateJsonGenerator, as GameEngine generates it) and written to the file. With no argument, the 
+ * stream is recorded in memory.
+ * 
+ * The CPU time and bytes allocated per frame are reported for each quarter of the stream, as the number of tiles the
+ * agent has seen grows. For comparison, the cost of the full map clone that was previously made of the client map on every 
+ * frame (RCCloneMap.cloneMap(), on a map holding the same tiles) is reported alongside; this is sampled every 
+ * CLONE_SAMPLE_INTERVAL frames, as it is proportional to the number of tiles seen.
+ */
+public class ClientFrameReplayBenchmark {
+
+	private static final int MAP_SCALE = 4;
+
+	private static final int FRAMES = 4000;
+
+	private static final int MONSTERS = 400;
+
+	private static final int CLONE_SAMPLE_INTERVAL = 25;
+
+	private static final int QUARTERS = 4;
+
+	public static void main(String[] args) throws IOException {
+
+		List<byte[]> frames;
+
+		File file = args.length > 0 ? new File(args[0]) : null;
+		if(file != null && file.exists()) {
+			frames = readFrames(file);
+			System.out.println("Replaying "+frames.size()+" frames from "+file.getPath());
+		} else {
+			frames = recordFrames();
+			if(file != null) {
+				writeFrames(frames, file);
+				System.out.println("Recorded "+frames.size()+" frames to "+file.getPath());
+			}
+		}
+
+		long totalBytes = 0;
+		for(byte[] frame : frames) {
+			totalBytes += frame.length;
+		}
+		System.out.println("Average frame size: "+(totalBytes / frames.size())+" bytes");
+		System.out.println();
+
+		// Warm up before measuring
+		for(int x = 0; x < 3; x++) {
+			replay(frames, false);
+		}
+
+		replay(frames, true);
+
+		cloneMapRun(frames);
+	}
+
+	/** Apply every frame to a new ClientWorldState, reporting the cost of each quarter of the stream */
+	private static void replay(List<byte[]> frames, boolean report) {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+		ClientState cs = new ClientState("benchmark", "benchmark", "benchmark", new NullRemoteClient(), new NullWebsocketFactory(), 0);
+
+		if(report) {
+			System.out.println("* ClientWorldState.receiveFrameUpdate(...)");
+		}
+
+		int framesPerQuarter = frames.size() / QUARTERS;
+		for(int q = 0; q < QUARTERS; q++) {
+
+			int start = q * framesPerQuarter;
+			int end = q == QUARTERS - 1 ? frames.size() : start + framesPerQuarter;
+
+			long startCpuInNanos = threadBean.getCurrentThreadCpuTime();
+			long startAllocated = getAllocatedBytes(threadBean);
+
+			for(int x = start; x < end; x++) {
+				cs.getClientWorldState().receiveFrameUpdate(frames.get(x));
+			}
+
+			long cpuInNanos = threadBean.getCurrentThreadCpuTime() - startCpuInNanos;
+			long allocated = getAllocatedBytes(threadBean) - startAllocated;
+
+			if(report) {
+				System.out.println(String.format("   frames %5d-%5d: cpu usecs per frame: %8.1f, bytes allocated per frame: %,10d", 
+						start + 1, end, cpuInNanos / 1000d / (end - start), allocated / (end - start)));
+			}
+		}
+
+		if(report) {
+			System.out.println();
+		}
+
+		cs.getClientWorldState().dispose();
+	}
+
+	/** Apply the tiles of every frame to an RCCloneMap, timing only the per-frame cloneMap() */
+	private static void cloneMapRun(List<byte[]> frames) throws IOException {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+		System.out.println("* RCCloneMap.cloneMap() (previously called on every frame, sampled every "+CLONE_SAMPLE_INTERVAL+" frames)");
+
+		RCCloneMap map = null;
+
+		int framesPerQuarter = frames.size() / QUARTERS;
+		for(int q = 0; q < QUARTERS; q++) {
+
+			int start = q * framesPerQuarter;
+			int end = q == QUARTERS - 1 ? frames.size() : start + framesPerQuarter;
+
+			long cpuInNanos = 0;
+			long allocated = 0;
+			int samples = 0;
+			int tilesSeen = 0;
+
+			for(int x = start; x < end; x++) {
+				JsonWorldState jws = BinaryFrameUpdateCodec.decode(frames.get(x)).getWorldState();
+				if(map == null) {
+					map = new RCCloneMap(jws.getWorldWidth(), jws.getWorldHeight());
+				}
+
+				applyTiles(jws, map);
+
+				if(x % CLONE_SAMPLE_INTERVAL == 0) {
+					long startCpuInNanos = threadBean.getCurrentThreadCpuTime();
+					long startAllocated = getAllocatedBytes(threadBean);
+
+					RCCloneMap clone = map.cloneMap();
+
+					cpuInNanos += threadBean.getCurrentThreadCpuTime() - startCpuInNanos;
+					allocated += getAllocatedBytes(threadBean) - startAllocated;
+					samples++;
+					tilesSeen = 0;
+					for(int mx = 0; mx < clone.getXSize(); mx++) {
+						for(int my = 0; my < clone.getYSize(); my++) {
+							if(clone.getTile(mx, my) != null) {
+								tilesSeen++;
+							}
+						}
+					}
+				}
+			}
+
+			if(samples > 0) {
+				System.out.println(String.format("   frames %5d-%5d: cpu usecs per frame: %8.1f, bytes allocated per frame: %,10d (%,d tiles seen)", 
+						start + 1, end, cpuInNanos / 1000d / samples, allocated / samples, tilesSeen));
+			}
+		}
+
+		System.out.println();
+	}
+
+	/** Put the tiles of the frame into the map, with the same terrain as ClientWorldState creates */
+	@SuppressWarnings("rawtypes")
+	private static void applyTiles(JsonWorldState jws, RCCloneMap map) {
+		for(JsonViewFrame jvf : jws.getFrames()) {
+			int index = 0;
+			for(int y = 0; y < jvf.getH(); y++) {
+				for(int x = 0; x < jvf.getW(); x++) {
+					List layers = (List)jvf.getData().get(index);
+					boolean passable = (Integer)layers.get(0) == 1;
+
+					List<ITerrain> terrainList = new ArrayList<>();
+					for(int layersIndex = 1; layersIndex < layers.size(); layersIndex++) {
+						List currLayer = (List) layers.get(layersIndex);
+						TileType tt = new TileType((Integer)currLayer.get(0));
+						terrainList.add(passable ? new ImmutablePassableTerrain(tt) : new ImmutableImpassableTerrain(tt));
+					}
+
+					map.putTile(jws.getClientViewPosX()+x+jvf.getX(), jws.getClientViewPosY()+y+jvf.getY(), new Tile(passable, terrainList));
+					index++;
+				}
+			}
+		}
+	}
+
+	/** Simulate FRAMES ticks of a player exploring the world, and encode the player's frame update of each. */
+	private static List<byte[]> recordFrames() throws IOException {
+		Random r = new Random(0);
+
+		int width = RCConstants.WORLD_WIDTH * MAP_SCALE;
+		int height = RCConstants.WORLD_HEIGHT * MAP_SCALE;
+		int clientWidth = RCConstants.AGENT_CLIENT_VIEW_WIDTH;
+		int clientHeight = RCConstants.AGENT_CLIENT_VIEW_HEIGHT;
+
+		RCChunkedMap map = new RCChunkedMap(width, height);
+		for(int x = 0; x < width; x++) {
+			for(int y = 0; y < height; y++) {
+				TileType tt = new TileType(1+r.nextInt(2000));
+				if(r.nextInt(10) == 0) {
+					map.putTile(x, y, new Tile(false, new ImmutableImpassableTerrain(tt)));
+				} else {
+					map.putTile(x, y, new Tile(true, new ImmutablePassableTerrain(tt)));
+				}
+			}
+		}
+
+		long nextId = 1;
+
+		Weapon bareHands = new Weapon(nextId++, "Bare hands", 1, 4, 0, 1, 1, WeaponType.ONE_HANDED, new TileType(1));
+
+		PlayerCreature player = new PlayerCreature("benchmark", nextId++, findPassable(map, r), new TileType(2), new ArmourSet());
+		player.setWeapon(bareHands);
+		player.setMaxHp(250);
+		player.setCurrHp(player.getMaxHp());
+		map.getTileForWriteUnchecked(player.getPosition()).getCreaturesForModification().add(player);
+
+		List<Monster> monsters = new ArrayList<>();
+		for(int x = 0; x < MONSTERS; x++) {
+			Weapon w = new Weapon(nextId++, "Claws", 1, 6, 0, 1, 1, WeaponType.ONE_HANDED, new TileType(1));
+			Monster m = new Monster("Monster "+x, nextId++, findPassable(map, r), new TileType(3+r.nextInt(20)), w, 1+r.nextInt(10), new ArmourSet());
+			map.getTileForWriteUnchecked(m.getPosition()).getCreaturesForModification().add(m);
+			monsters.add(m);
+		}
+
+		EngineWebsocketState ews = new EngineWebsocketState();
+		ews.setPlayerCreature(player);
+		ews.setWidth(clientWidth);
+		ews.setHeight(clientHeight);
+
+		TileSerializationCache<RawValue> tileCache = new TileSerializationCache<>(width, height);
+		TileSerializationCache<byte[]> binaryTileCache = new TileSerializationCache<>(width, height);
+		GameEngine.PreviousEvents previousEvents = new GameEngine.PreviousEvents();
+
+		List<Position> changedTiles = new ArrayList<>();
+
+		Position target = findPassable(map, r);
+
+		List<byte[]> result = new ArrayList<>();
+		for(int frame = 1; frame <= FRAMES; frame++) {
+
+			changedTiles.clear();
+
+			// The player heads toward a distant target, choosing a new target when it is reached or blocked
+			Position next = stepToward(player.getPosition(), target);
+			if(next.equals(player.getPosition()) || !move(player, next, map, changedTiles)) {
+				target = findPassable(map, r);
+			}
+
+			for(Monster m : monsters) {
+				Position p = m.getPosition();
+				Position mNext = new Position(p.getX() + r.nextInt(3) - 1, p.getY() + r.nextInt(3) - 1);
+				move(m, mNext, map, changedTiles);
+			}
+
+			tileCache.invalidate(changedTiles);
+			binaryTileCache.invalidate(changedTiles);
+
+			boolean full = frame == 1;
+
+			List<Long> newlySeenObjectIds = new ArrayList<>();
+			Map<Long, JsonVisibleCreature> sentCreatures = new HashMap<>();
+
+			JsonWorldState jws = WorldStateJsonGenerator.generateJsonWorldState(clientWidth, clientHeight, ews, map.cloneForRead(), 
+					changedTiles, previousEvents, frame - 1, null, null, full, newlySeenObjectIds, tileCache, binaryTileCache, 
+					full ? null : ews.getCreaturesSentToPlayer(), sentCreatures);
+
+			JsonSelfState jss = new JsonSelfState();
+			jss.setPlayerId(player.getId());
+
+			JsonFrameUpdate jfu = new JsonFrameUpdate();
+			jfu.setWorldState(jws);
+			jfu.setSelfState(jss);
+			jfu.setFull(full);
+			jfu.setGameTicks(frame);
+			jfu.setFrame(frame);
+
+			result.add(BinaryFrameUpdateCodec.encode(jfu));
+
+			// As GameEngine.sendFrameUpdate(...)
+			for(Long objectId : newlySeenObjectIds) {
+				ews.putObjectSeenByPlayer(objectId);
+			}
+			ews.setCreaturesSentToPlayer(sentCreatures);
+			ews.setCurrClientWorldX(jws.getClientViewPosX());
+			ews.setCurrClientWorldY(jws.getClientViewPosY());
+			ews.setNextFrame(ews.getNextFrame()+1);
+		}
+
+		return result;
+	}
+
+	/** Move the creature to the given position, if it is passable and unoccupied. */
+	private static boolean move(IMutableCreature creature, Position to, RCChunkedMap map, List<Position> changedTiles) {
+		if(!to.isValid(map)) {
+			return false;
+		}
+
+		Tile dest = map.getTile(to);
+		if(dest == null || !dest.isPresentlyPassable() || !dest.getCreatures().isEmpty()) {
+			return false;
+		}
+
+		Position from = creature.getPosition();
+		map.getTileForWriteUnchecked(from).getCreaturesForModification().remove(creature);
+		map.getTileForWriteUnchecked(to).getCreaturesForModification().add(creature);
+		creature.setPosition(to);
+
+		changedTiles.add(from);
+		changedTiles.add(to);
+		return true;
+	}
+
+	private static Position stepToward(Position from, Position to) {
+		int dx = Integer.signum(to.getX() - from.getX());
+		int dy = Integer.signum(to.getY() - from.getY());
+		if(dx != 0 && dy != 0) {
+			// 4-way movement: close the larger distance first
+			if(Math.abs(to.getX() - from.getX()) > Math.abs(to.getY() - from.getY())) {
+				dy = 0;
+			} else {
+				dx = 0;
+			}
+		}
+		return new Position(from.getX() + dx, from.getY() + dy);
+	}
+
+	private static Position findPassable(RCChunkedMap map, Random r) {
+		while(true) {
+			Position p = new Position(r.nextInt(map.getXSize()), r.nextInt(map.getYSize()));
+			Tile t = map.getTile(p);
+			if(t.isPresentlyPassable() && t.getCreatures().isEmpty()) {
+				return p;
+			}
+		}
+	}
+
+	/** Frames are written as a sequence of (length, bytes) */
+	private static void writeFrames(List<byte[]> frames, File file) throws IOException {
+		try(DataOutputStream dos = new DataOutputStream(new FileOutputStream(file))) {
+			for(byte[] frame : frames) {
+				dos.writeInt(frame.length);
+				dos.write(frame);
+			}
+		}
+	}
+
+	private static List<byte[]> readFrames(File file) throws IOException {
+		List<byte[]> result = new ArrayList<>();
+		try(DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+			while(true) {
+				int length;
+				try {
+					length = dis.readInt();
+				} catch(EOFException e) {
+					break;
+				}
+				byte[] frame = new byte[length];
+				dis.readFully(frame);
+				result.add(frame);
+			}
+		}
+		return result;
+	}
+
+	private static long getAllocatedBytes(ThreadMXBean threadBean) {
+		if(threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/** An agent that does nothing with the world state it is given */
+	private static class NullRemoteClient extends RemoteClient {
+		@Override
+		public void stateUpdate(SelfState selfState, WorldState worldState, IEventLog eventLog) {
+		}
+	}
+
+	/** A session that is never connected; frames are passed directly to ClientWorldState. */
+	private static class NullWebsocketFactory implements IWebsocketFactory {
+		@Override
+		public ISessionWrapper createSessionWrapper(ClientState cs) {
+			return new ISessionWrapper() {
+				@Override
+				public void initialConnect(String url) {
+				}
+
+				@Override
+				public void write(String str) {
+				}
+
+				@Override
+				public void receiveJson(String str, Session session) {
+				}
+
+				@Override
+				public void receiveBinaryFrameUpdate(byte[] binaryFrameUpdate, Session session) {
+				}
+
+				@Override
+				public void dispose() {
+				}
+
+				@Override
+				public boolean isDisposed() {
+					return false;
+				}
+			};
+		}
+	}
+}
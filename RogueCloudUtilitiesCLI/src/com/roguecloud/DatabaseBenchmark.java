@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.roguecloud.db.DbLeaderboardEntry;
+import com.roguecloud.db.DbUser;
+import com.roguecloud.db.MemoryDatabase;
+import com.roguecloud.db.file.IDBBackend;
+import com.roguecloud.utils.ServerUtil;
+
+/**
+ * Simple benchmark of MemoryDatabase under the mixed read traffic of a busy server: logins (as CredentialsServlet and
+ * RsDatabase.createOrUpdateUser do), leaderboard pages (as RsDatabase does) and rank lookups (as the end-of-round browser UI does),
+ * while a writer thread writes a round's worth of leaderboard entries every WRITE_INTERVAL_IN_MSECS (far more often than the end of
+ * each round does).
+ *
+ * Each run is repeated with an increasing number of reader threads, both against the database as it is ("snapshot reads"), and
+ * with every operation (reads and writes) serialized on a single lock ("locked reads"), as reads were before MemoryDatabase
+ * published immutable snapshots. The database is backed by an in-memory backend, so no IO is measured.
+ */
+public class DatabaseBenchmark {
+
+	private static final int USERS = 2000;
+	private static final int ROUNDS = 5000;
+	private static final int PLAYERS_PER_ROUND = 20;
+
+	private static final long WRITE_INTERVAL_IN_MSECS = 10;
+
+	private static final long RUN_TIME_IN_NANOS = TimeUnit.NANOSECONDS.convert(3, TimeUnit.SECONDS);
+
+	private static final int[] READER_THREADS = new int[] { 1, 2, 4, 8 };
+
+	public static void main(String[] args) throws InterruptedException {
+
+		MemoryDatabase db = new MemoryDatabase(new InMemoryBackend());
+
+		// Warm up both modes before measuring either.
+		for(int x = 0; x < 2; x++) {
+			run(db, 4, false, null);
+			run(db, 4, true, null);
+		}
+
+		for(int threads : READER_THREADS) {
+			run(db, threads, false, "Snapshot reads");
+			run(db, threads, true, "Locked reads");
+		}
+	}
+
+	private static void run(MemoryDatabase db, int readerThreads, boolean lockedReads, String name) throws InterruptedException {
+
+		final Object globalLock = new Object();
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		final AtomicLong logins = new AtomicLong();
+		final AtomicLong pages = new AtomicLong();
+		final AtomicLong writes = new AtomicLong();
+
+		CountDownLatch done = new CountDownLatch(readerThreads + 1);
+
+		List<Thread> threadList = new ArrayList<>();
+
+		for(int t = 0; t < readerThreads; t++) {
+			final Random r = new Random(t);
+			threadList.add(new Thread() {
+				@Override
+				public void run() {
+					long checksum = 0;
+					while(!stop.get()) {
+						int op = r.nextInt(10);
+						long userId = r.nextInt(USERS) + 1;
+
+						if(op < 7) {
+							// Login
+							String username = "user"+userId;
+							boolean valid;
+							if(lockedReads) {
+								synchronized(globalLock) {
+									valid = db.isValidPasswordForUser(username, username);
+								}
+							} else {
+								valid = db.isValidPasswordForUser(username, username);
+							}
+							checksum += valid ? 1 : 0;
+							logins.incrementAndGet();
+
+						} else {
+							// Leaderboard page, and the user's rank
+							List<DbLeaderboardEntry> l;
+							Long[] scoreAndRank;
+							if(lockedReads) {
+								synchronized(globalLock) {
+									l = op < 9 ? db.getBestOverallLeaderboardEntries(200) : db.getBestPreviousXRoundsOfLeaderboardEntries(960, 200);
+								}
+								synchronized(globalLock) {
+									scoreAndRank = db.getUserBestScoreAndRank(userId);
+								}
+							} else {
+								l = op < 9 ? db.getBestOverallLeaderboardEntries(200) : db.getBestPreviousXRoundsOfLeaderboardEntries(960, 200);
+								scoreAndRank = db.getUserBestScoreAndRank(userId);
+							}
+							checksum += l.size() + (scoreAndRank != null ? scoreAndRank[1] : 0);
+							pages.incrementAndGet();
+						}
+					}
+					if(checksum == 42) { System.out.println(); }
+					done.countDown();
+				}
+			});
+		}
+
+		// The writer: update the scores of the most recent round
+		threadList.add(new Thread() {
+			@Override
+			public void run() {
+				Random r = new Random(-1);
+				while(!stop.get()) {
+					for(int p = 1; p <= PLAYERS_PER_ROUND; p++) {
+						DbLeaderboardEntry dle = new DbLeaderboardEntry(p, r.nextInt(100000), ROUNDS, System.currentTimeMillis());
+						if(lockedReads) {
+							synchronized(globalLock) {
+								db.createOrUpdateDbLeaderboardEntry(dle);
+							}
+						} else {
+							db.createOrUpdateDbLeaderboardEntry(dle);
+						}
+						writes.incrementAndGet();
+					}
+					try { Thread.sleep(WRITE_INTERVAL_IN_MSECS); } catch (InterruptedException e) { /* ignore */ }
+				}
+				done.countDown();
+			}
+		});
+
+		threadList.forEach( e -> e.start() );
+		Thread.sleep(TimeUnit.MILLISECONDS.convert(RUN_TIME_IN_NANOS, TimeUnit.NANOSECONDS));
+		stop.set(true);
+		done.await();
+
+		if(name != null) {
+			double seconds = RUN_TIME_IN_NANOS / 1000000000d;
+			System.out.println(String.format("%-16s %d reader threads: %,10.0f logins/sec, %,9.0f leaderboard pages/sec, %,9.0f writes/sec",
+					name, readerThreads, logins.get() / seconds, pages.get() / seconds, writes.get() / seconds));
+		}
+	}
+
+	/** A backend with USERS users (each with their username as their password), and PLAYERS_PER_ROUND entries in each of ROUNDS rounds; writes are discarded. */
+	private static class InMemoryBackend implements IDBBackend {
+
+		@Override
+		public List<DbUser> getAllUsers() {
+			List<DbUser> result = new ArrayList<>();
+			for(int x = 1; x <= USERS; x++) {
+				result.add(new DbUser(x, "user"+x, ServerUtil.SHA_256_FIELD+ServerUtil.oneWayFunction("user"+x)));
+			}
+			return result;
+		}
+
+		@Override
+		public List<DbLeaderboardEntry> getAllLeaderboardEntries() {
+			Random r = new Random(0);
+			List<DbLeaderboardEntry> result = new ArrayList<>();
+			for(int round = 1; round <= ROUNDS; round++) {
+				for(int p = 0; p < PLAYERS_PER_ROUND; p++) {
+					result.add(new DbLeaderboardEntry(r.nextInt(USERS) + 1, r.nextInt(100000), round, 0));
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public void writeNewOrExistingUsers(List<DbUser> users) {
+		}
+
+		@Override
+		public void writeNewOrExistingLeaderboardEntries(List<DbLeaderboardEntry> dbe) {
+		}
+
+		@Override
+		public long getAndIncrementNextRoundId() {
+			return ROUNDS + 1;
+		}
+	}
+}
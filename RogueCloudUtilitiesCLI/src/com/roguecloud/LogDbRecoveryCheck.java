@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+
+package com.roguecloud;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.roguecloud.db.DbLeaderboardEntry;
+import com.roguecloud.db.file.LogDbBackend;
+
+/**
+ * Checks the recovery of LogDbBackend from a log whose last write was only partly written to disk (as after an OS crash or
+ * power loss). Each case writes leaderboard entries for users 1 to 5 (score 100) in a single batch, damages the second 
+ * record on disk, reopens the log, writes a new score of 50 for user 3, and reopens the log again. Only the entries before the
+ * damaged record, and the new entry, should remain: { 1=100, 3=50 }.
+ * 
+ * - Lost record: the second record is all zeroes (its page was not written), but the records after it were written.
+ * - Torn record: the second record has the wrong checksum.
+ * 
+ * The log is created in a new temporary directory, which is deleted afterwards. Exits with a non-zero status if a case fails.
+ */
+public class LogDbRecoveryCheck {
+
+	private static final long ROUND_ID = 1;
+
+	/** As in LogDbBackend */
+	private static final int SEGMENT_HEADER_SIZE = 8;
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	public static void main(String[] args) throws IOException {
+
+		boolean success = true;
+		success &= runCase("Lost record", true);
+		success &= runCase("Torn record", false);
+
+		System.out.println(success ? "All cases passed." : "One or more cases FAILED.");
+		if(!success) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean runCase(String name, boolean lostRecord) throws IOException {
+		File dbRoot = Files.createTempDirectory("log-db-recovery-check").toFile();
+		try {
+			LogDbBackend db = new LogDbBackend(dbRoot);
+			List<DbLeaderboardEntry> entries = new ArrayList<>();
+			for(long userId = 1; userId <= 5; userId++) {
+				entries.add(new DbLeaderboardEntry(userId, 100, ROUND_ID, 1));
+			}
+			db.writeNewOrExistingLeaderboardEntries(entries);
+
+			damageRecord(new File(new File(dbRoot, "log"), "segment-0000000001.log"), 1, lostRecord);
+
+			db = new LogDbBackend(dbRoot);
+			List<DbLeaderboardEntry> update = new ArrayList<>();
+			update.add(new DbLeaderboardEntry(3, 50, ROUND_ID, 2));
+			db.writeNewOrExistingLeaderboardEntries(update);
+
+			db = new LogDbBackend(dbRoot);
+			Map<Long, Long> scores = new TreeMap<>();
+			for(DbLeaderboardEntry dle : db.getAllLeaderboardEntries()) {
+				scores.put(dle.getUserId(), dle.getScore());
+			}
+
+			boolean pass = scores.toString().equals("{1=100, 3=50}");
+			System.out.println("* "+name+": "+(pass ? "passed" : "FAILED")+", scores after recovery: "+scores);
+			return pass;
+
+		} finally {
+			deleteRecursively(dbRoot);
+		}
+	}
+
+	/** Zero the given record (by index, from 0) of the segment, or corrupt its checksum. */
+	private static void damageRecord(File segment, int recordIndex, boolean zero) throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+			long pos = SEGMENT_HEADER_SIZE;
+			for(int x = 0; x < recordIndex; x++) {
+				raf.seek(pos);
+				pos += RECORD_HEADER_SIZE + raf.readInt();
+			}
+
+			raf.seek(pos);
+			int length = raf.readInt();
+			int checksum = raf.readInt();
+
+			raf.seek(pos);
+			if(zero) {
+				raf.write(new byte[RECORD_HEADER_SIZE + length]);
+			} else {
+				raf.seek(pos + 4);
+				raf.writeInt(~checksum);
+			}
+		}
+	}
+
+	private static void deleteRecursively(File f) {
+		File[] children = f.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		f.delete();
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.roguecloud.map.IMap;
+import com.roguecloud.map.IMutableMap;
+import com.roguecloud.map.ITerrain;
+import com.roguecloud.map.RCArrayMap;
+import com.roguecloud.map.RCChunkedMap;
+import com.roguecloud.map.Tile;
+
+/**
+ * Simple benchmark of the game engine's per-tick map workload, comparing RCArrayMap (HashMap overlay) and RCChunkedMap
+ * (copy-on-write chunks) on a world of the default size. Pass a scale factor as the first argument to multiply the world
+ * width and height (for example, 4 for a 644x764 world).
+ *
+ * Each simulated tick: write to a few dozen tiles (as creature steps do), collapse the overlay into a new map (a no-op
+ * for RCChunkedMap), clone the result for read (as is given to the monster threads), then perform the reads of a 
+ * typical tick: each agent view, and a number of random point reads (as AIUtils and A* do).
+ *
+ * For each map, the CPU time, bytes allocated, and GC count/time are reported per tick, with the read portion of the
+ * tick (which is where the maps differ most) also reported on its own.
+ */
+public class MapBenchmark {
+
+	private static int WIDTH = RCConstants.WORLD_WIDTH;
+	private static int HEIGHT = RCConstants.WORLD_HEIGHT;
+
+	private static final int TICKS = 2000;
+	private static final int WRITES_PER_TICK = 60;
+	private static final int AGENT_VIEWS_PER_TICK = 10;
+	private static final int POINT_READS_PER_TICK = 50000;
+
+	private interface MapOps {
+		IMutableMap newMap();
+		IMutableMap collapse(IMutableMap m);
+	}
+
+	public static void main(String[] args) {
+
+		if(args.length > 0) {
+			int scale = Integer.parseInt(args[0]);
+			WIDTH *= scale;
+			HEIGHT *= scale;
+		}
+
+		MapOps arrayMapOps = new MapOps() {
+			public IMutableMap newMap() { return new RCArrayMap(WIDTH, HEIGHT); }
+			public IMutableMap collapse(IMutableMap m) { return ((RCArrayMap)m).collapseOverlayIntoNewMap(); }
+		};
+
+		MapOps chunkedMapOps = new MapOps() {
+			public IMutableMap newMap() { return new RCChunkedMap(WIDTH, HEIGHT); }
+			public IMutableMap collapse(IMutableMap m) { return m; }
+		};
+
+		polluteHashMapProfile();
+
+		// Warm up both implementations before measuring either.
+		for(int x = 0; x < 3; x++) {
+			run(arrayMapOps, null);
+			run(chunkedMapOps, null);
+		}
+
+		run(arrayMapOps, "RCArrayMap");
+		run(chunkedMapOps, "RCChunkedMap");
+	}
+
+	private static void run(MapOps ops, String name) {
+
+		IMutableMap map = ops.newMap();
+		for(int x = 0; x < WIDTH; x++) {
+			for(int y = 0; y < HEIGHT; y++) {
+				map.putTile(x,  y, new Tile(true, (ITerrain)null));
+			}
+		}
+
+		final Random r = new Random(0);
+
+		// Generate the point read coordinates up front, so that the read loop measures the map rather than the random number generator.
+		final int[] pointReads = new int[POINT_READS_PER_TICK*2];
+		for(int p = 0; p < pointReads.length; p += 2) {
+			pointReads[p] = r.nextInt(WIDTH);
+			pointReads[p+1] = r.nextInt(HEIGHT);
+		}
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+		long startCpuInNanos = threadBean.getCurrentThreadCpuTime();
+		long startAllocated = getAllocatedBytes(threadBean);
+		long[] startGc = getGcCountAndTime();
+		long startTimeInNanos = System.nanoTime();
+
+		long checksum = 0;
+
+		long readCpuInNanos = 0;
+		long readAllocated = 0;
+
+		for(int tick = 0; tick < TICKS; tick++) {
+
+			for(int w = 0; w < WRITES_PER_TICK; w++) {
+				map.getTileForWrite(r.nextInt(WIDTH), r.nextInt(HEIGHT));
+			}
+
+			map = ops.collapse(map);
+			IMap readMap = map.cloneForRead();
+
+			// A few more writes after the clone, as happens while the monster threads are running
+			for(int w = 0; w < WRITES_PER_TICK; w++) {
+				map.getTileForWrite(r.nextInt(WIDTH), r.nextInt(HEIGHT));
+			}
+
+			long readStartCpu = threadBean.getCurrentThreadCpuTime();
+			long readStartAllocated = getAllocatedBytes(threadBean);
+
+			for(int v = 0; v < AGENT_VIEWS_PER_TICK; v++) {
+				int viewX = r.nextInt(WIDTH - RCConstants.AGENT_CLIENT_VIEW_WIDTH);
+				int viewY = r.nextInt(HEIGHT - RCConstants.AGENT_CLIENT_VIEW_HEIGHT);
+				for(int x = viewX; x < viewX + RCConstants.AGENT_CLIENT_VIEW_WIDTH; x++) {
+					for(int y = viewY; y < viewY + RCConstants.AGENT_CLIENT_VIEW_HEIGHT; y++) {
+						if(map.getTile(x, y).isPresentlyPassable()) { checksum++; }
+					}
+				}
+			}
+
+			for(int p = 0; p < pointReads.length; p += 2) {
+				if(readMap.getTile(pointReads[p], pointReads[p+1]).isPresentlyPassable()) { checksum++; }
+			}
+
+			readCpuInNanos += threadBean.getCurrentThreadCpuTime() - readStartCpu;
+			readAllocated += getAllocatedBytes(threadBean) - readStartAllocated;
+		}
+
+		if(name == null) {
+			// Warm up only
+			return;
+		}
+
+		long elapsedInNanos = System.nanoTime() - startTimeInNanos;
+		long cpuInNanos = threadBean.getCurrentThreadCpuTime() - startCpuInNanos;
+		long allocated = getAllocatedBytes(threadBean) - startAllocated;
+		long[] endGc = getGcCountAndTime();
+
+		System.out.println("* "+name+" ("+WIDTH+"x"+HEIGHT+", "+TICKS+" ticks, checksum "+checksum+")");
+		System.out.println("   elapsed msecs: "+TimeUnit.MILLISECONDS.convert(elapsedInNanos, TimeUnit.NANOSECONDS));
+		System.out.println("   cpu usecs per tick: "+TimeUnit.MICROSECONDS.convert(cpuInNanos, TimeUnit.NANOSECONDS)/TICKS);
+		System.out.println("   cpu usecs per tick (reads only): "+TimeUnit.MICROSECONDS.convert(readCpuInNanos, TimeUnit.NANOSECONDS)/TICKS);
+		if(startAllocated >= 0) {
+			System.out.println("   bytes allocated per tick: "+allocated/TICKS);
+			System.out.println("   bytes allocated per tick (reads only): "+readAllocated/TICKS);
+		}
+		System.out.println("   gc count: "+(endGc[0] - startGc[0])+"  gc msecs: "+(endGc[1] - startGc[1]));
+		System.out.println();
+	}
+
+	/** 
+	 * On the server, HashMap is used with many different key types, so the JIT can not inline the key's hashCode()/equals()
+	 * into HashMap.get(...), and the Coord allocated by RCArrayMap.getTile(...) escapes. Reproduce that here, otherwise
+	 * the benchmark would measure a best case that the server never sees.
+	 */
+	private static void polluteHashMapProfile() {
+		HashMap<Object, Object> map = new HashMap<>();
+		Object[] keys = new Object[] { "key", 1l, 1, new Position(1, 1), 1d, 'c' };
+		for(Object key : keys) {
+			map.put(key, key);
+		}
+		for(int x = 0; x < 100000; x++) {
+			if(map.get(keys[x % keys.length]) == null) { throw new IllegalStateException(); }
+		}
+	}
+
+	/** Returns -1 if the JVM does not support per-thread allocation counters. */
+	private static long getAllocatedBytes(ThreadMXBean threadBean) {
+		if(threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static long[] getGcCountAndTime() {
+		long count = 0;
+		long time = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return new long[] { count, time };
+	}
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018, 2019 IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.roguecloud;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.roguecloud.json.JsonAbstractTypedMessage;
+import com.roguecloud.json.JsonActionMessage;
+import com.roguecloud.json.JsonMessageDecoder;
+import com.roguecloud.json.JsonMessageMap;
+import com.roguecloud.json.JsonPosition;
+import com.roguecloud.json.actions.JsonCombatAction;
+import com.roguecloud.json.actions.JsonDrinkItemAction;
+import com.roguecloud.json.actions.JsonEquipAction;
+import com.roguecloud.json.actions.JsonMoveInventoryItemAction;
+import com.roguecloud.json.actions.JsonNullAction;
+import com.roguecloud.json.actions.JsonStepAction;
+import com.roguecloud.json.client.JsonHealthCheckResponse;
+
+/**
+ * Simple benchmark of the decoding of inbound agent messages, as received by ServerMessageReceiver: CLIENTS agents each
+ * sending ACTIONS_PER_SECOND_PER_CLIENT action messages per second (mostly steps and attacks, as agents send), plus
+ * the occasional health check response.
+ *
+ * The messages are decoded both by JsonMessageDecoder, and as they were decoded previously (a new ObjectMapper per
+ * message, a parse into a Map to read the type, a second parse into the message class, then the conversion of the action
+ * Map into its action class). For each, the CPU time and bytes allocated per message are reported, along with the
+ * fraction of a single CPU core that is needed to decode the traffic of CLIENTS agents.
+ */
+public class MessageDecodingBenchmark {
+
+	private static final int CLIENTS = 500;
+	private static final int ACTIONS_PER_SECOND_PER_CLIENT = 10;
+
+	/** The number of seconds of traffic to decode in each run */
+	private static final int SECONDS = 20;
+
+	private interface Decoder {
+		Object decode(String str) throws IOException;
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		List<String> messages = generateMessages(CLIENTS * ACTIONS_PER_SECOND_PER_CLIENT * SECONDS);
+
+		Decoder previous = str -> decodeAsPreviously(str);
+		Decoder decoder = str -> JsonMessageDecoder.getInstance().decode(str);
+
+		// Warm up both before measuring either.
+		for(int x = 0; x < 2; x++) {
+			run(null, previous, messages);
+			run(null, decoder, messages);
+		}
+
+		run("Previous (Map, then class)", previous, messages);
+		run("JsonMessageDecoder", decoder, messages);
+	}
+
+	private static void run(String name, Decoder d, List<String> messages) throws IOException {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+		long startCpuInNanos = threadBean.getCurrentThreadCpuTime();
+		long startAllocated = getAllocatedBytes(threadBean);
+
+		long checksum = 0;
+		for(String str : messages) {
+			Object o = d.decode(str);
+			if(o instanceof JsonActionMessage && ((JsonActionMessage)o).getAction() instanceof JsonStepAction) {
+				checksum++;
+			}
+		}
+
+		if(name == null) {
+			// Warm up only
+			return;
+		}
+
+		long cpuInNanos = threadBean.getCurrentThreadCpuTime() - startCpuInNanos;
+		long allocated = getAllocatedBytes(threadBean) - startAllocated;
+
+		double nanosPerMessage = (double)cpuInNanos / messages.size();
+		double coreFraction = nanosPerMessage * CLIENTS * ACTIONS_PER_SECOND_PER_CLIENT / TimeUnit.NANOSECONDS.convert(1, TimeUnit.SECONDS);
+
+		System.out.println("* "+name+" ("+messages.size()+" messages, checksum "+checksum+")");
+		System.out.println(String.format("   cpu usecs per message: %.2f", nanosPerMessage / 1000d));
+		if(startAllocated >= 0) {
+			System.out.println("   bytes allocated per message: "+allocated/messages.size());
+		}
+		System.out.println(String.format("   %% of one core for %d clients x %d actions/sec: %.1f%%", CLIENTS, ACTIONS_PER_SECOND_PER_CLIENT, coreFraction * 100));
+		System.out.println();
+	}
+
+	/** The messages, serialized as the agent API (ClientState) serializes them */
+	private static List<String> generateMessages(int count) throws IOException {
+		ObjectMapper om = new ObjectMapper();
+		Random r = new Random(0);
+
+		List<String> result = new ArrayList<>(count);
+		for(int x = 0; x < count; x++) {
+			int type = r.nextInt(100);
+
+			if(type < 2) {
+				JsonHealthCheckResponse hcr = new JsonHealthCheckResponse();
+				hcr.setId(r.nextInt(100000));
+				result.add(om.writeValueAsString(hcr));
+				continue;
+			}
+
+			JsonAbstractTypedMessage action;
+			if(type < 60) {
+				JsonStepAction step = new JsonStepAction();
+				step.setDestination(new JsonPosition(r.nextInt(RCConstants.WORLD_WIDTH), r.nextInt(RCConstants.WORLD_HEIGHT)));
+				action = step;
+			} else if(type < 85) {
+				JsonCombatAction combat = new JsonCombatAction();
+				combat.setTargetCreatureId(r.nextInt(100000));
+				action = combat;
+			} else if(type < 90) {
+				JsonEquipAction equip = new JsonEquipAction();
+				equip.setObjectId(r.nextInt(100000));
+				action = equip;
+			} else if(type < 94) {
+				JsonDrinkItemAction drink = new JsonDrinkItemAction();
+				drink.setId(r.nextInt(100000));
+				action = drink;
+			} else if(type < 97) {
+				JsonMoveInventoryItemAction move = new JsonMoveInventoryItemAction();
+				move.setObjectId(r.nextInt(100000));
+				move.setDropItem(r.nextBoolean());
+				action = move;
+			} else {
+				action = new JsonNullAction();
+			}
+
+			JsonActionMessage jam = new JsonActionMessage();
+			jam.setAction(action);
+			jam.setMessageId(x);
+			result.add(om.writeValueAsString(jam));
+		}
+
+		return result;
+	}
+
+	/** The decoding of ServerMessageReceiver, before JsonMessageDecoder */
+	@SuppressWarnings("rawtypes")
+	private static Object decodeAsPreviously(String str) throws IOException {
+		ObjectMapper om = new ObjectMapper();
+		String messageType = (String) om.readValue(str, Map.class).get("type");
+
+		Class<?> c = JsonMessageMap.getMap().get(messageType);
+
+		Object o = om.readValue(str, c);
+
+		if(o instanceof JsonActionMessage) {
+			JsonActionMessage jam = (JsonActionMessage)o;
+			Map map = (Map) jam.getAction();
+
+			String type = (String) map.get("type");
+
+			if(type.equals(JsonCombatAction.TYPE)) {
+				jam.setAction(new JsonCombatAction(map));
+			} else if(type.equals(JsonStepAction.TYPE)) {
+				jam.setAction(new JsonStepAction(map));
+			} else if(type.equals(JsonNullAction.TYPE)) {
+				jam.setAction(new JsonNullAction());
+			} else if(type.equals(JsonMoveInventoryItemAction.TYPE)) {
+				jam.setAction(new JsonMoveInventoryItemAction(map));
+			} else if(type.equals(JsonEquipAction.TYPE)) {
+				jam.setAction(new JsonEquipAction(map));
+			} else if(type.equals(JsonDrinkItemAction.TYPE)) {
+				jam.setAction(new JsonDrinkItemAction(map));
+			}
+		}
+
+		return o;
+	}
+
+	private static long getAllocatedBytes(ThreadMXBean threadBean) {
+		if(threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+}
@@ -16,57 +16,124 @@
 
 package com.roguecloud;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import com.roguecloud.map.IMap;
-import com.roguecloud.map.ITerrain;
-import com.roguecloud.map.RCArrayMap;
 import com.roguecloud.map.Tile;
 import com.roguecloud.utils.AStarSearch;
+import com.roguecloud.utils.AStarSearch8Way;
+import com.roguecloud.utils.FastPathSearch;
+import com.roguecloud.utils.IndexedAStarSearch;
+import com.roguecloud.utils.JumpPointSearch;
+import com.roguecloud.utils.NavigationGraph;
+import com.roguecloud.utils.RoomList;
+import com.roguecloud.utils.ServerUtil;
+import com.roguecloud.utils.UniverseParserUtil;
+import com.roguecloud.utils.WorldGenFileMappings;
 
-/** Simple benchmark of pathfinding classes, like FastPathSearch or AStarSearch.*/
+/** Simple benchmark of pathfinding classes, like FastPathSearch or AStarSearch.
+ * 
+ * Compares the original object-per-node A* engine (AStarSearch.findPathUsingNodes(...)), IndexedAStarSearch (which 
+ * AStarSearch.findPath(...) now uses), and JumpPointSearch, on the game world generated from map-new.txt. Each engine searches 
+ * the same sequence of random start/goal pairs (only pairs that are reachable from each other are used, see NavigationGraph), 
+ * and the searches per second and bytes allocated per search are reported for each.
+ * 
+ * As with the server, this should be run from the directory of one of the other projects (eg RogueCloudUtilitiesCLI), so that 
+ * ServerUtil.getServerResource(...) can find the RogueCloudServer/WebContent/universe directory. */
 public class PathFinderBenchmark {
 
-	private static IMap setup() {
-		RCArrayMap map = new RCArrayMap(1000, 1000);
+	private static final long SECONDS_PER_ENGINE = 15;
+	
+	private static final int NUMBER_OF_PAIRS = 1024;
+	
+	private interface PathEngine {
+		List<Position> findPath(Position start, Position goal, IMap map);
+	}
+	
+	private static IMap setup() throws IOException, InterruptedException {
+		
+		WorldGenFileMappings mappings = new WorldGenFileMappings(ServerUtil.getServerResource(UniverseParserUtil.class, "/universe/map-new-mappings.txt"));
+		
+		return WorldGenFromFile.generateMapFromInputStream(new RoomList(null), 
+				ServerUtil.getServerResource(UniverseParserUtil.class, "/universe/map-new.txt"), mappings).getMap();
+	}
+	
+	/** Random pairs of passable positions, where the goal can be reached from the start. */
+	private static List<Position[]> generatePairs(IMap map) {
+		NavigationGraph navigation = NavigationGraph.build(map);
 		
-		for(int x = 0; x < map.getXSize(); x++) {
-			for(int y = 0; y < map.getYSize(); y++) {
-				map.putTile(x,  y, new Tile(true, (ITerrain)null));
+		final Random r = new Random(0);
+		
+		List<Position[]> result = new ArrayList<>();
+		while(result.size() < NUMBER_OF_PAIRS) {
+			Position start = new Position(r.nextInt(map.getXSize()), r.nextInt(map.getYSize()));
+			Position goal = new Position(r.nextInt(map.getXSize()), r.nextInt(map.getYSize()));
+			
+			Tile startTile = map.getTile(start);
+			if(startTile != null && startTile.isPresentlyPassable() && navigation.isReachable(start, goal)) {
+				result.add(new Position[] { start, goal });
 			}
 		}
 		
-		return map;
+		return result;
 	}
 	
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException, InterruptedException {
 		
 		IMap map = setup();
 		
+		System.out.println("* Map size: "+map.getXSize()+"x"+map.getYSize());
+		
+		List<Position[]> pairs = generatePairs(map);
+		
+		run("AStarSearch (nodes)", (start, goal, m) -> AStarSearch.findPathUsingNodes(start, goal, Long.MAX_VALUE, m), map, pairs);
+		
+		run("IndexedAStarSearch", (start, goal, m) -> IndexedAStarSearch.findPath(start, goal, Long.MAX_VALUE, m), map, pairs);
+		
+		run("JumpPointSearch", (start, goal, m) -> JumpPointSearch.findPath(start, goal, m), map, pairs);
+		
+		run("AStarSearch8Way", (start, goal, m) -> AStarSearch8Way.findPath(start, goal, m), map, pairs);
+		
+		run("JumpPointSearch (8-way)", (start, goal, m) -> JumpPointSearch.findPath8Way(start, goal, m), map, pairs);
+		
+		run("FastPathSearch (A*)", (start, goal, m) -> FastPathSearch.doSearchWithFallback(start, goal, Long.MAX_VALUE, m, FastPathSearch.Algorithm.A_STAR), map, pairs);
+		
+		run("FastPathSearch (JPS)", (start, goal, m) -> FastPathSearch.doSearchWithFallback(start, goal, Long.MAX_VALUE, m, FastPathSearch.Algorithm.JUMP_POINT_SEARCH), map, pairs);
+		
+	}
+	
+	private static void run(String name, PathEngine engine, IMap map, List<Position[]> pairs) {
+		
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		
 		long startTimeInNanos = System.nanoTime();
 		
+		long startAllocated = getAllocatedBytes(threadBean);
+		
 		int count = 0; 
 		
-		long expireTimeInNanos = System.nanoTime() + TimeUnit.NANOSECONDS.convert(15, TimeUnit.SECONDS);
+		long totalPathLength = 0;
 		
-		final Random r = new Random(0);
+		long expireTimeInNanos = System.nanoTime() + TimeUnit.NANOSECONDS.convert(SECONDS_PER_ENGINE, TimeUnit.SECONDS);
 		
 		while(true) {
 			
-			Position start = new Position(r.nextInt(1000), r.nextInt(1000));
-			
-			Position goal = new Position(r.nextInt(1000), r.nextInt(1000));
-			
+			// Each engine searches the same start/goal pairs, in the same order
+			Position[] pair = pairs.get(count % pairs.size());
 			
-//			List<Position> result = FastPathSearch.doSearchWithAStar(start, goal, map);
-			
-			List<Position> result = AStarSearch.findPath(start, goal, Long.MAX_VALUE, map);
+			List<Position> result = engine.findPath(pair[0], pair[1], map);
 			if(result.size() == 0) {
 				throw new RuntimeException();
 			}
 			
+			totalPathLength += result.size();
+			
 			if(count % 512 == 0 && count > 0) {
 				System.out.println(" curr: " +count);
 				if(System.nanoTime() > expireTimeInNanos) {
@@ -79,19 +146,33 @@ public class PathFinderBenchmark {
 		
 		long elapsedTimeInNanos = System.nanoTime() - startTimeInNanos;
 		
+		long allocated = getAllocatedBytes(threadBean) - startAllocated;
+		
 		long elapsedTimeInMsecs = TimeUnit.MILLISECONDS.convert(elapsedTimeInNanos, TimeUnit.NANOSECONDS);
 		
 		System.out.println();
 		
+		System.out.println("* "+name);
+		
 		System.out.println("elapsed time: " +elapsedTimeInMsecs +" / count: " + count );
 
 		System.out.println( "iterations per second: "+ (double)count/ ((double)elapsedTimeInMsecs/1000d));
 		
+		System.out.println("average path length: "+ (double)totalPathLength / (double)count);
 		
+		if(startAllocated >= 0) {
+			System.out.println("bytes allocated per search: "+ allocated / count);
+		}
 		
+		System.out.println();
 		
-//		System.out.println("msecs per item:"+(double)elapsedTimeInMsecs/(double)count);
-//		System.out.println("items per item:"+(double)elapsedTimeInMsecs/(double)count);
-		
+	}
+	
+	/** Returns -1 if the JVM does not support per-thread allocation counters. */
+	private static long getAllocatedBytes(ThreadMXBean threadBean) {
+		if(threadBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
 	}
 }